@@ -0,0 +1,277 @@
+/**
+ * @(#)BenchmarkStages.java
+ * The ToolRental side of the benchmarks in bench/toolrental/bench. See Stages for why the benchmarks go through it.
+ *
+ * @author Iain St. John
+ * @version 1.00 2026/10/18
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import toolrental.bench.Stages;
+
+public class BenchmarkStages implements Stages {
+	//The benchmarks rent from this date on, a Thursday shortly before Independence Day
+	static final String CHECKOUT_DATE = "07/02/20";
+
+	private String[] args;
+	private String[] badArgs; //as args, but with a discount of 101
+	private final CheckoutRequest request = new CheckoutRequest();
+	private Tool tool;
+	private int days;
+	private HolidayRules rules;
+	private LocalDate checkoutDate;
+	private long checkoutDay;
+	private RentalAgreement agreement;
+	private QuoteCache cache;
+	private final ReceiptWriter writer = new ReceiptWriter();
+	private final StringBuilder receipt = new StringBuilder(256);
+	private final ByteBuffer receiptBytes = ByteBuffer.allocateDirect(256);
+	private final CharBuffer receiptChars = CharBuffer.allocate(256);
+	private final AgreementMessage message = new AgreementMessage();
+	private final ByteBuffer messageBytes = ByteBuffer.allocateDirect(256);
+	private ToolInventory inventory;
+	private LocalDate askedFrom;
+	private int askedDays;
+	private PromotionPlan promotions;
+	private String[] orderArgs;
+	private String[][] lineArgs; //the lines of the order, as runPOS arguments
+	private ToolCatalog replacedCatalog; //the default catalog before setUpOrder() installed a generated one
+
+	public void setUp(String code, int days, String holidays) throws IOException {
+		args = new String[] {code, CHECKOUT_DATE, Integer.toString(days), "10"};
+		badArgs = new String[] {code, CHECKOUT_DATE, Integer.toString(days), "101"};
+		tool = ToolCatalog.getDefault().get(code);
+		this.days = days;
+		rules = holidays(holidays);
+		checkoutDate = LocalDate.of(2020, 7, 2);
+		checkoutDay = checkoutDate.toEpochDay();
+		//compile every year the longest rental touches, so the benchmarks measure lookups rather than the first compile
+		ChargeableDayCounter.count(rules, checkoutDay, 3650, true, true);
+		ChargeableDayCounter.count(HolidayRules.getDefault(), checkoutDay, 3650, true, true);
+		if(tool != null) {
+			agreement = new RentalAgreement(tool, checkoutDate, days, 10, rules);
+			cache = new QuoteCache(1024, rules);
+			message.wrapForEncode(messageBytes, 0).encode(agreement);
+		}
+	}
+
+	public Object runPOS() throws CheckoutDiscountException {
+		return new Checkout().runPOS(args);
+	}
+
+	public long parseDate() {
+		return CheckoutParser.parseDate(args[1]);
+	}
+
+	public int parseArgs() {
+		return CheckoutParser.parse(ToolCatalog.getDefault(), args, request);
+	}
+
+	public int parseMalformedArgs() {
+		return CheckoutParser.parse(ToolCatalog.getDefault(), badArgs, request);
+	}
+
+	public Object runPOSMalformed() {
+		try {
+			return new Checkout().runPOS(badArgs);
+		}
+		catch(CheckoutDiscountException e) {
+			return e;
+		}
+	}
+
+	public Object resolveTool() {
+		return ToolCatalog.getDefault().get(args[0]);
+	}
+
+	public boolean validateTool() {
+		return ToolCatalog.getDefault().contains(args[0]);
+	}
+
+	public Object dueDate() {
+		return LocalDate.ofEpochDay(checkoutDay + days);
+	}
+
+	public int chargeableDays() {
+		return ChargeableDayCounter.count(rules, checkoutDay, days, tool.isWeekendExempt(), tool.isHolidayExempt());
+	}
+
+	public Object agreement() {
+		return new RentalAgreement(tool, checkoutDate, days, 10, rules);
+	}
+
+	public Object cachedAgreement() {
+		return cache.quote(args[0], checkoutDate, days, 10);
+	}
+
+	public String agreementToString() {
+		return agreement.toString();
+	}
+
+	public String getCorrect(int index) {
+		return agreement.getCorrect(index);
+	}
+
+	public int renderToBuilder() {
+		receipt.setLength(0);
+		return ReceiptWriter.appendTo(receipt, agreement).length();
+	}
+
+	public int renderToChars() {
+		receiptChars.clear();
+		writer.writeTo(agreement, receiptChars);
+		return receiptChars.position();
+	}
+
+	public int renderToBytes() {
+		receiptBytes.clear();
+		writer.writeTo(agreement, receiptBytes);
+		return receiptBytes.position();
+	}
+
+	public int encodeMessage() {
+		return message.wrapForEncode(messageBytes, 0).encode(agreement).getEncodedLength();
+	}
+
+	public long decodeMessage() {
+		message.wrapForDecode(messageBytes, 0);
+		Tool found = message.getTool(ToolCatalog.getDefault());
+		return message.getCheckoutDay() + message.getDaysRented() + message.getDiscountPercent() + message.getChargeableDays()
+			+ message.getBaseChargeCents() + message.getPromotionAmountCents() + message.getDiscountAmountCents()
+			+ message.getFinalChargeCents() + ((found == null) ? 0 : found.getId());
+	}
+
+	public void setUpInventory(int unitsPerTool, int bookings, int days) {
+		ToolCatalog catalog = ToolCatalog.standard();
+		inventory = new ToolInventory(catalog, unitsPerTool);
+		LocalDate first = LocalDate.of(2020, 1, 1);
+		Random random = new Random(18);
+		int booked = 0;
+		for(int i = 0; i < bookings; i++) {
+			String code = catalog.get(random.nextInt(catalog.size())).getCode();
+			if(inventory.reserve(code, first.plusDays(random.nextInt(1827)), 1 + random.nextInt(14)) != null) {
+				booked++;
+			}
+		}
+		System.out.println("\nBooked " + booked + " of " + bookings + " rentals.");
+		askedFrom = LocalDate.of(2022, 7, 1);
+		askedDays = days;
+	}
+
+	public Object freeUnitsOfType() {
+		return inventory.freeUnitsOfType(ToolCatalog.standard(), "Jackhammer", askedFrom, askedFrom.plusDays(askedDays));
+	}
+
+	public Object earliestAvailable() {
+		return inventory.earliestAvailable("CHNS", askedFrom, askedDays);
+	}
+
+	public void setUpPromotions(int count) {
+		String types[] = {"Ladder", "Chainsaw", "Jackhammer"};
+		Random random = new Random(20);
+		List<Promotion> declared = new ArrayList<Promotion>();
+		for(int i = 0; i < count; i++) {
+			Promotion.Builder builder = new Promotion.Builder("Promotion " + i);
+			//The first dozen are for the tools, tier and coupon priced. Those after them are for other types, tiers and coupons.
+			String type = (i < 12) ? types[random.nextInt(types.length)] : "Type" + i;
+			switch(i % 4) {
+				case 0:
+					builder.type(type);
+					break;
+				case 1:
+					builder.days(1 + random.nextInt(60)).forType((random.nextInt(3) == 0) ? null : type);
+					break;
+				case 2:
+					builder.loyalty((i < 12) ? "GOLD" : "TIER" + i);
+					break;
+				default:
+					builder.coupon((i < 12) ? "SPRING5" : "COUPON" + i);
+					break;
+			}
+			builder.percentOff(1 + random.nextInt(20)).cap(500 + random.nextInt(2000)).priority(random.nextInt(10));
+			declared.add(builder.build());
+		}
+		promotions = new Promotions(count + " promotions", declared).getPlan();
+		tool = ToolCatalog.getDefault().get("CHNS");
+		System.out.println("\n" + promotions.promotionsFor(tool, 30, "GOLD", "SPRING5").size() + " of " + count
+			+ " promotions apply.");
+	}
+
+	public long promotionsOff() {
+		return promotions.amountOff(tool, 30, 4470, "GOLD", "SPRING5");
+	}
+
+	public void setUpOrder(int lines, String codes) {
+		String standard[] = {"LADW", "CHNS", "JAKR", "JAKD"};
+		String code[] = new String[lines];
+		if(codes.equals("distinct")) {
+			//Every kind of exemption, among brands and types as many as a real catalog's
+			ToolCatalog.Builder builder = new ToolCatalog.Builder();
+			for(int i = 0; i < lines; i++) {
+				code[i] = String.format("T%03X", i);
+				builder.add(code[i], "Brand " + (i % 40), "Type " + (i % 25), 99 + 10 * (i % 50), i % 3 > 0, i % 3 == 2);
+			}
+			replacedCatalog = ToolCatalog.install(builder.build());
+		}
+		else {
+			for(int i = 0; i < lines; i++) {
+				code[i] = standard[i % standard.length];
+			}
+		}
+		orderArgs = new String[3 + lines];
+		orderArgs[0] = CHECKOUT_DATE;
+		orderArgs[1] = "7";
+		orderArgs[2] = "10";
+		lineArgs = new String[lines][];
+		for(int i = 0; i < lines; i++) {
+			orderArgs[3 + i] = code[i];
+			lineArgs[i] = new String[] {code[i], CHECKOUT_DATE, "7", "10"};
+		}
+	}
+
+	public void tearDownOrder() {
+		if(replacedCatalog != null) {
+			ToolCatalog.install(replacedCatalog);
+			replacedCatalog = null;
+		}
+	}
+
+	public String runOrder() throws CheckoutDiscountException {
+		return new Checkout().runOrder(orderArgs).toString();
+	}
+
+	public int runSeparateCheckouts() throws CheckoutDiscountException {
+		Checkout checkout = new Checkout();
+		int length = 0;
+		for(String[] line : lineArgs) {
+			length += checkout.runPOS(line).toString().length();
+		}
+		return length;
+	}
+
+	//"sparse" is the store's two default holidays, and "dense" is the eleven US federal holidays.
+	static HolidayRules holidays(String density) throws IOException {
+		if(density.equals("sparse")) {
+			return HolidayRules.unitedStates();
+		}
+		return HolidayRules.parse("federal", Arrays.asList(
+			"New Year's Day = fixed 1 1 observed",
+			"Martin Luther King Jr. Day = nth 3 MONDAY 1",
+			"Presidents' Day = nth 3 MONDAY 2",
+			"Memorial Day = last MONDAY 5",
+			"Juneteenth = fixed 6 19 observed",
+			"Independence Day = fixed 7 4 observed",
+			"Labor Day = nth 1 MONDAY 9",
+			"Columbus Day = nth 2 MONDAY 10",
+			"Veterans Day = fixed 11 11 observed",
+			"Thanksgiving = nth 4 THURSDAY 11",
+			"Christmas Day = fixed 12 25 observed"));
+	}
+}
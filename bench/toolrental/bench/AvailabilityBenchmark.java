@@ -0,0 +1,58 @@
+/**
+ * @(#)AvailabilityBenchmark.java
+ * Benchmarks the booking calendar's questions of a ToolInventory with many rentals booked: which units of a type are free over
+ * a range of days, and the earliest date a tool can be rented for so long.
+ *
+ * @author Iain St. John
+ * @version 1.00 2026/10/18
+ */
+
+package toolrental.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AvailabilityBenchmark {
+	@Param({"25", "250"})
+	public int unitsPerTool;
+
+	@Param({"100000"})
+	public int bookings;
+
+	@Param({"7", "30"})
+	public int days;
+
+	private Stages stages;
+
+	@Setup
+	public void setUp() throws Exception {
+		stages = Stages.create();
+		stages.setUpInventory(unitsPerTool, bookings, days);
+	}
+
+	@Benchmark
+	public Object freeUnitsOfType() {
+		return stages.freeUnitsOfType();
+	}
+
+	@Benchmark
+	public Object earliestAvailable() {
+		return stages.earliestAvailable();
+	}
+}
@@ -0,0 +1,57 @@
+/**
+ * @(#)BenchmarkRunner.java
+ * Runs the JMH benchmarks of ToolRental with the GC profiler, so every result comes with its allocation rate (the
+ * gc.alloc.rate.norm column is bytes allocated per operation).
+ *
+ * The benchmarks live in bench/, apart from src/, so the application itself doesn't need JMH. To build and run them, with
+ * jmh-core, jmh-generator-annprocess, jopt-simple and commons-math3 on the classpath, leaving out the tests in src/, which
+ * need JUnit:
+ *     javac -d out -cp <jmh jars> $(ls src/*.java | grep -v Test) bench/*.java bench/toolrental/bench/*.java
+ *     java -cp out:<jmh jars> toolrental.bench.BenchmarkRunner [JMH options, e.g. a benchmark name or -p days=365]
+ * As with JMH's own launcher, -h shows the options, and -l, -lp, -lprof and -lrf list the benchmarks, the benchmarks with
+ * their parameters, the profilers and the result formats, without running anything.
+ *
+ * @author Iain St. John
+ * @version 1.00 2026/10/18
+ */
+
+package toolrental.bench;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+public class BenchmarkRunner {
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException, IOException {
+		CommandLineOptions command = new CommandLineOptions(args);
+		Options options = new OptionsBuilder()
+			.parent(command)
+			.addProfiler(GCProfiler.class)
+			.build();
+		Runner runner = new Runner(options);
+		if(command.shouldHelp()) {
+			command.showHelp();
+		}
+		else if(command.shouldList()) {
+			runner.list();
+		}
+		else if(command.shouldListWithParams()) {
+			runner.listWithParams(command);
+		}
+		else if(command.shouldListProfilers()) {
+			command.listProfilers();
+		}
+		else if(command.shouldListResultFormats()) {
+			command.listResultFormats();
+		}
+		else {
+			runner.run();
+		}
+	}
+}
@@ -0,0 +1,71 @@
+/**
+ * @(#)CheckoutBenchmark.java
+ * Benchmarks a whole Checkout.runPOS() call, from the command line arguments to a finished RentalAgreement, and the
+ * parsing of its arguments on its own. Malformed arguments are measured both as CheckoutParser's error code and as the
+ * exception runPOS throws for them.
+ *
+ * @author Iain St. John
+ * @version 1.00 2026/10/18
+ */
+
+package toolrental.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CheckoutBenchmark {
+	@Param({"LADW", "CHNS", "JAKR", "JAKD"})
+	public String tool;
+
+	@Param({"1", "7", "30", "365", "3650"})
+	public int days;
+
+	private Stages stages;
+
+	@Setup
+	public void setUp() throws Exception {
+		stages = Stages.create();
+		stages.setUp(tool, days, "sparse");
+	}
+
+	@Benchmark
+	public Object runPOS() throws Exception {
+		return stages.runPOS();
+	}
+
+	@Benchmark
+	public long parseDate() {
+		return stages.parseDate();
+	}
+
+	@Benchmark
+	public int parseArgs() {
+		return stages.parseArgs();
+	}
+
+	@Benchmark
+	public int parseMalformedArgs() {
+		return stages.parseMalformedArgs();
+	}
+
+	@Benchmark
+	public Object runPOSMalformed() {
+		return stages.runPOSMalformed();
+	}
+}
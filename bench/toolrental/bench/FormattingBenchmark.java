@@ -0,0 +1,83 @@
+/**
+ * @(#)FormattingBenchmark.java
+ * Benchmarks turning a finished RentalAgreement into text: the whole agreement through toString() and through ReceiptWriter,
+ * and each of the getCorrect() fields the tests check, and encoding and decoding it as an AgreementMessage.
+ *
+ * @author Iain St. John
+ * @version 1.00 2026/10/18
+ */
+
+package toolrental.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormattingBenchmark {
+	@Param({"LADW", "JAKR"})
+	public String tool;
+
+	@Param({"1", "365"})
+	public int days;
+
+	private Stages stages;
+
+	@Setup
+	public void setUp() throws Exception {
+		stages = Stages.create();
+		stages.setUp(tool, days, "sparse");
+	}
+
+	@Benchmark
+	public String agreementToString() {
+		return stages.agreementToString();
+	}
+
+	@Benchmark
+	public void getCorrect(Blackhole bh) {
+		for(int i = 0; i < 7; i++) {
+			bh.consume(stages.getCorrect(i));
+		}
+	}
+
+	@Benchmark
+	public int renderToBuilder() {
+		return stages.renderToBuilder();
+	}
+
+	@Benchmark
+	public int renderToBytes() {
+		return stages.renderToBytes();
+	}
+
+	@Benchmark
+	public int renderToChars() {
+		return stages.renderToChars();
+	}
+
+	@Benchmark
+	public int encodeMessage() {
+		return stages.encodeMessage();
+	}
+
+	@Benchmark
+	public long decodeMessage() {
+		return stages.decodeMessage();
+	}
+}
@@ -0,0 +1,66 @@
+/**
+ * @(#)OrderBenchmark.java
+ * Benchmarks a multi-line order checked out with Checkout.runOrder() and written as one receipt, against the same tools
+ * checked out one at a time with runPOS() and written as a receipt each. Divide by lines for the cost of a line.
+ *
+ * With codes=standard the lines cycle through the four standard tools, so a large order is mostly repeats that runOrder()
+ * merges into four lines of large quantities. With codes=distinct every line is a different tool of a generated catalog, so
+ * each line is looked up, priced and written on its own, as in a real order of many tools.
+ *
+ * @author Iain St. John
+ * @version 1.00 2026/10/18
+ */
+
+package toolrental.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderBenchmark {
+	@Param({"1", "10", "100", "1000"})
+	public int lines;
+
+	@Param({"standard", "distinct"})
+	public String codes;
+
+	private Stages stages;
+
+	@Setup
+	public void setUp() throws Exception {
+		stages = Stages.create();
+		stages.setUp("LADW", 7, "sparse");
+		stages.setUpOrder(lines, codes);
+	}
+
+	@TearDown
+	public void tearDown() {
+		stages.tearDownOrder();
+	}
+
+	@Benchmark
+	public Object runOrder() throws Exception {
+		return stages.runOrder();
+	}
+
+	@Benchmark
+	public int runSeparateCheckouts() throws Exception {
+		return stages.runSeparateCheckouts();
+	}
+}
@@ -0,0 +1,46 @@
+/**
+ * @(#)PromotionBenchmark.java
+ * Benchmarks working out what a PromotionPlan takes off a rental, as the number of promotions marketing has declared grows.
+ *
+ * @author Iain St. John
+ * @version 1.00 2026/10/18
+ */
+
+package toolrental.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PromotionBenchmark {
+	@Param({"0", "12", "120", "1200"})
+	public int promotions;
+
+	private Stages stages;
+
+	@Setup
+	public void setUp() throws Exception {
+		stages = Stages.create();
+		stages.setUpPromotions(promotions);
+	}
+
+	@Benchmark
+	public long promotionsOff() {
+		return stages.promotionsOff();
+	}
+}
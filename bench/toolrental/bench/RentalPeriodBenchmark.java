@@ -0,0 +1,68 @@
+/**
+ * @(#)RentalPeriodBenchmark.java
+ * Benchmarks the date work of a RentalAgreement: the due date, the chargeable days of the rental period, and building the
+ * whole agreement, across tools, rental lengths and holiday densities.
+ *
+ * @author Iain St. John
+ * @version 1.00 2026/10/18
+ */
+
+package toolrental.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RentalPeriodBenchmark {
+	@Param({"LADW", "CHNS", "JAKR", "JAKD"})
+	public String tool;
+
+	@Param({"1", "7", "30", "365", "3650"})
+	public int days;
+
+	@Param({"sparse", "dense"})
+	public String holidays;
+
+	private Stages stages;
+
+	@Setup
+	public void setUp() throws Exception {
+		stages = Stages.create();
+		stages.setUp(tool, days, holidays);
+	}
+
+	@Benchmark
+	public Object dueDate() {
+		return stages.dueDate();
+	}
+
+	@Benchmark
+	public int chargeableDays() {
+		return stages.chargeableDays();
+	}
+
+	@Benchmark
+	public Object agreement() {
+		return stages.agreement();
+	}
+
+	@Benchmark
+	public Object cachedAgreement() {
+		return stages.cachedAgreement();
+	}
+}
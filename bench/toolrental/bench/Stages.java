@@ -0,0 +1,122 @@
+/**
+ * @(#)Stages.java
+ * The stages of a checkout, as seen by the benchmarks. JMH only runs benchmarks that are in a package, and the ToolRental
+ * classes are in the default package, which a package can't import. So the benchmarks call the application through this
+ * interface, implemented by BenchmarkStages in the default package. Each benchmark calls one implementation only, so the JIT
+ * inlines the calls just as if they were direct.
+ *
+ * @author Iain St. John
+ * @version 1.00 2026/10/18
+ */
+
+package toolrental.bench;
+
+public interface Stages {
+   /**Prepares the inputs of every stage.
+    *
+    *@param tool      the tool code to rent.
+    *@param days      the number of days to rent it.
+    *@param holidays  "sparse" for the store's two default holidays, or "dense" for the eleven US federal holidays.
+    */
+	void setUp(String tool, int days, String holidays) throws Exception;
+
+	//A whole Checkout.runPOS() call, from command line arguments to a finished RentalAgreement
+	Object runPOS() throws Exception;
+
+	//The mm/dd/yy parsing runPOS does for its date argument
+	long parseDate();
+
+	//Parsing and validating all four of runPOS's arguments, without pricing them
+	int parseArgs();
+
+	//As parseArgs, with a discount of 101, which CheckoutParser reports as an error code
+	int parseMalformedArgs();
+
+	//runPOS with a discount of 101, which it reports by throwing CheckoutDiscountException
+	Object runPOSMalformed();
+
+	//Looking the tool code up in the default ToolCatalog
+	Object resolveTool();
+
+	//Checking the tool code is in the default ToolCatalog
+	boolean validateTool();
+
+	//The due date of the rental
+	Object dueDate();
+
+	//The chargeable days of the rental period
+	int chargeableDays();
+
+	//Building the RentalAgreement from its already parsed inputs
+	Object agreement();
+
+	//The same RentalAgreement from a QuoteCache, where it is always a hit after the first call
+	Object cachedAgreement();
+
+	//The RentalAgreement made by setUp(), as text
+	String agreementToString();
+
+	//One of the getCorrect() fields of the RentalAgreement made by setUp()
+	String getCorrect(int index);
+
+	//The RentalAgreement made by setUp(), written by ReceiptWriter into a reused builder. Returns the length written.
+	int renderToBuilder();
+
+	//The RentalAgreement made by setUp(), written by ReceiptWriter into a reused byte buffer. Returns the length written.
+	int renderToBytes();
+
+	//The RentalAgreement made by setUp(), written by ReceiptWriter into a reused char buffer. Returns the length written.
+	int renderToChars();
+
+	//The RentalAgreement made by setUp(), encoded as an AgreementMessage into a reused buffer. Returns the length written.
+	int encodeMessage();
+
+	//Reading every field of the AgreementMessage of that agreement in place, and finding its tool in the default catalog
+	long decodeMessage();
+
+   /**Prepares a ToolInventory for the availability stages, booked with random rentals of up to two weeks from 2020 to 2024.
+    *
+    *@param unitsPerTool  the units of each standard tool.
+    *@param bookings      the rentals to book. Those finding no unit free are left out.
+    *@param days          the length of the rentals the stages ask about.
+    */
+	void setUpInventory(int unitsPerTool, int bookings, int days);
+
+	//The free units of every Jackhammer for a rental from the middle of the booked years
+	Object freeUnitsOfType();
+
+	//The earliest date a chainsaw is free for a rental, from the middle of the booked years
+	Object earliestAvailable();
+
+   /**Prepares a PromotionPlan of random promotions for promotionsOff(), spread over the tool types, rental lengths, loyalty
+    *tiers and coupons the way a season's promotions are, so that a rental gets only a few of them.
+    *
+    *@param promotions  the number of promotions.
+    */
+	void setUpPromotions(int promotions);
+
+	//The amount the prepared promotions take off a month's chainsaw rental by a GOLD customer presenting a coupon
+	long promotionsOff();
+
+   /**Prepares an order of the given number of tools, rented for a week.
+    *
+    *@param lines  the number of tool codes in the order.
+    *@param codes  "standard" to cycle through the four standard tool codes, or "distinct" to install a generated catalog with
+    *              a tool for every line, and give each line its own code.
+    */
+	void setUpOrder(int lines, String codes);
+
+	//Puts back the default catalog setUpOrder() found, if it installed another.
+	void tearDownOrder();
+
+	//The prepared order from Checkout.runOrder(), as its single receipt
+	String runOrder() throws Exception;
+
+	//The same tools checked out one at a time with Checkout.runPOS(), each as its own receipt. Returns the total length.
+	int runSeparateCheckouts() throws Exception;
+
+	//Creates the application's implementation.
+	static Stages create() throws ReflectiveOperationException {
+		return (Stages) Class.forName("BenchmarkStages").getDeclaredConstructor().newInstance();
+	}
+}
@@ -0,0 +1,51 @@
+/**
+ * @(#)ToolLookupBenchmark.java
+ * Benchmarks resolving a tool code to its Tool, and validating a code, against the default ToolCatalog.
+ *
+ * @author Iain St. John
+ * @version 1.00 2026/10/18
+ */
+
+package toolrental.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ToolLookupBenchmark {
+	@Param({"LADW", "CHNS", "JAKR", "JAKD", "XXXX"})
+	public String tool;
+
+	private Stages stages;
+
+	@Setup
+	public void setUp() throws Exception {
+		stages = Stages.create();
+		stages.setUp(tool, 1, "sparse");
+	}
+
+	@Benchmark
+	public Object resolve() {
+		return stages.resolveTool();
+	}
+
+	@Benchmark
+	public boolean validate() {
+		return stages.validateTool();
+	}
+}
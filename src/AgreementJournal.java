@@ -0,0 +1,690 @@
+/**
+ * @(#)AgreementJournal.java
+ * Keeps every signed RentalAgreement in an append-only file, so that none is lost once it has been printed, and finds them
+ * again by tool code or by due date without reading the whole file.
+ *
+ * The file is a header followed by one fixed-width 128 byte record per agreement, all big-endian. The header takes the room
+ * of one record, so records never straddle the 1 GB regions the file is mapped in.
+ *     header:  int magic ('RENT'), short version (1), short record size (128), 120 bytes unused
+ *     record:  4 bytes   tool code, ASCII
+ *              1 byte    flags: 1 = exempt on weekends, 2 = exempt on holidays
+ *              1 byte    discount percentage
+ *              2 bytes   unused
+ *              4 bytes   checkout date, as an epoch day
+ *              4 bytes   days rented
+ *              4 bytes   chargeable days
+ *              4 bytes   unused
+ *              8 bytes   daily charge in cents
+ *              8 bytes   base charge in cents
+ *              8 bytes   discount amount in cents
+ *              8 bytes   final charge in cents
+ *              28 bytes  brand: 1 byte length, then up to 27 bytes of UTF-8
+ *              28 bytes  type: as brand
+ *              8 bytes   amount taken off by promotions in cents (0 in journals written before there were promotions)
+ *              4 bytes   unused
+ *              4 bytes   CRC-32 of the 124 bytes before it
+ * A record holds everything printed on the agreement, so it reads back the same after the tool's price or the holidays have
+ * changed. Its first 120 bytes are laid out as the block of an AgreementMessage, and both classes find the fields by the offset
+ * constants below. An agreement's number is the position of its record in the file, counting from 0.
+ *
+ * append() returns once its agreement is on disk. Agreements appended by several threads at once are written together and
+ * share one fsync: the first thread to find no write in progress writes every agreement waiting, while the others wait for
+ * it (group commit). A crash can leave a partly written record at the end of the file. Its checksum gives it away, and it is
+ * cut off when the file is next opened, since no one was told it had been kept.
+ *
+ * Opening a journal maps the file into memory and replays every record to rebuild the indexes by tool code and by due date,
+ * which are only kept in memory. Records are read back through the same mapping. So that reads between appends don't map
+ * the file again each time, the mapping reaches past the last record, which makes the file longer than its records while
+ * the journal is open. Closing the journal cuts the file back to its records, and opening it after a crash does the same.
+ *
+ *     java AgreementJournal <journal file> [mm/dd/yy]          replays a journal, and counts the agreements due on a date
+ *     java AgreementJournal -generate <count> <journal file>   appends random agreements to a journal
+ *
+ * @author Iain St. John
+ * @version 1.00 2026/10/18
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+public final class AgreementJournal implements AutoCloseable {
+	static final int MAGIC = 0x52454E54; //"RENT"
+	static final short VERSION = 1;
+	static final int RECORD_SIZE = 128;
+	static final int HEADER_SIZE = RECORD_SIZE;
+	static final int CHECKSUM_OFFSET = RECORD_SIZE - 4;
+	//Where each field starts in a record. An AgreementMessage's block puts its fields at the same offsets.
+	static final int TOOL_CODE = 0;
+	static final int FLAGS = 4;
+	static final int DISCOUNT_PERCENT = 5;
+	static final int CHECKOUT_DAY = 8;
+	static final int DAYS_RENTED = 12;
+	static final int CHARGEABLE_DAYS = 16;
+	static final int DAILY_CHARGE = 24;
+	static final int BASE_CHARGE = 32;
+	static final int DISCOUNT_AMOUNT = 40;
+	static final int FINAL_CHARGE = 48;
+	static final int BRAND = 56;
+	static final int TYPE = BRAND + ToolCatalogFile.NAME_SIZE;
+	static final int PROMOTION_AMOUNT = TYPE + ToolCatalogFile.NAME_SIZE;
+	static final int FIELDS_SIZE = PROMOTION_AMOUNT + 8; //the bytes up to the end of the last field
+	static final int REGION_SIZE = 1 << 30;
+	//The least a region is mapped for when reading, so that it reaches past the records being appended
+	static final int MIN_MAPPING = 1 << 20;
+	//Record numbers are kept as ints in the indexes
+	static final long MAX_RECORDS = Integer.MAX_VALUE;
+
+	private final Path file;
+	private final FileChannel channel;
+	private final long truncatedBytes;
+
+	//Appending, guarded by this. Agreements are encoded into pending until a thread writes them.
+	private final CRC32 crc = new CRC32();
+	private ByteBuffer pending = ByteBuffer.allocate(64 * RECORD_SIZE);
+	private ByteBuffer spare = ByteBuffer.allocate(64 * RECORD_SIZE);
+	private long next; //the number the next agreement appended will get
+	private long durable; //agreements before this number are on disk
+	private boolean writing; //true while a thread is writing and syncing a batch
+	private IOException failure; //set if a batch couldn't be written, after which nothing more is appended
+	private boolean closed;
+	private long syncs;
+
+	//Reading, guarded by indexLock
+	private final Object indexLock = new Object();
+	private final Postings byTool = new Postings();
+	private final Postings byDueDay = new Postings();
+	private final MappedByteBuffer[] regions = new MappedByteBuffer[(int) ((MAX_RECORDS + 1) * RECORD_SIZE / REGION_SIZE) + 1];
+	private final Map<Integer, KnownTool> tools = new HashMap<Integer, KnownTool>();
+	private final Map<String, String> names = new HashMap<String, String>();
+	private long visible; //agreements before this number are indexed and may be read
+	private int mappings; //times a region has been mapped
+
+   /**Opens a journal, creating the file if there isn't one, and replays the agreements already in it.
+    *
+    *@param file  the journal file.
+    *@throws IOException  if the file can't be read or written, or isn't a journal.
+    */
+	public AgreementJournal(Path file) throws IOException {
+		this.file = file;
+		channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+		try {
+			long size = channel.size();
+			if(size == 0) {
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+				header.putInt(MAGIC).putShort(VERSION).putShort((short) RECORD_SIZE);
+				header.clear();
+				while(header.hasRemaining()) {
+					channel.write(header, header.position());
+				}
+				channel.force(true);
+				size = HEADER_SIZE;
+			}
+			truncatedBytes = size - replay(size);
+			if(truncatedBytes > 0) {
+				channel.truncate(HEADER_SIZE + visible * RECORD_SIZE);
+				channel.force(true);
+			}
+			next = durable = visible;
+		}
+		catch(IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	//Indexes every intact record, and returns where the last one ends.
+	private long replay(long size) throws IOException {
+		if(size < HEADER_SIZE) {
+			throw new IOException(file + " is too short to be an agreement journal.");
+		}
+		long records = Math.min((size - HEADER_SIZE) / RECORD_SIZE, MAX_RECORDS);
+		synchronized(indexLock) {
+			ByteBuffer header = region(0, HEADER_SIZE);
+			if(header.getInt(0) != MAGIC) {
+				throw new IOException(file + " is not an agreement journal.");
+			}
+			if(header.getShort(4) != VERSION || header.getShort(6) != RECORD_SIZE) {
+				throw new IOException(file + " is an agreement journal of an unsupported version.");
+			}
+			CRC32 check = new CRC32();
+			ByteBuffer view = null;
+			int viewRegion = -1;
+			for(long n = 0; n < records; n++) {
+				long at = HEADER_SIZE + n * RECORD_SIZE;
+				int r = (int) (at / REGION_SIZE);
+				if(r != viewRegion) {
+					view = region(r, Math.min(REGION_SIZE, size - (long) r * REGION_SIZE)).duplicate();
+					viewRegion = r;
+				}
+				int offset = (int) (at % REGION_SIZE);
+				view.limit(offset + CHECKSUM_OFFSET);
+				view.position(offset);
+				check.reset();
+				check.update(view);
+				view.limit(view.capacity());
+				if((int) check.getValue() != view.getInt(offset + CHECKSUM_OFFSET)) {
+					break; //written only in part when the journal last stopped
+				}
+				index((int) n, view, offset);
+			}
+			long end = HEADER_SIZE + visible * RECORD_SIZE;
+			if(end < size) {
+				Arrays.fill(regions, null); //the file is about to be cut short, so nothing past the end may stay mapped
+			}
+			return end;
+		}
+	}
+
+	//Adds a record to the indexes. Records must be indexed in order.
+	private void index(int number, ByteBuffer buffer, int offset) {
+		byTool.add(buffer.getInt(offset), number);
+		byDueDay.add(buffer.getInt(offset + CHECKOUT_DAY) + buffer.getInt(offset + DAYS_RENTED), number);
+		visible = number + 1L;
+	}
+
+	//Returns region r of the file, mapped for at least the given number of bytes.
+	private ByteBuffer region(int r, long length) throws IOException {
+		MappedByteBuffer region = regions[r];
+		if(region == null || region.capacity() < length) {
+			region = channel.map(FileChannel.MapMode.READ_ONLY, (long) r * REGION_SIZE, length);
+			regions[r] = region;
+			mappings++;
+		}
+		return region;
+	}
+
+	//Returns region r mapped for every record indexed so far. A region still being appended to is mapped past its last record,
+	//to twice as far as before, so reading agreements as they are appended maps it again only after the file has doubled. The
+	//mapping makes the file that long, and close() cuts the room it added off again.
+	private ByteBuffer readable(int r) throws IOException {
+		long length = Math.min(REGION_SIZE, HEADER_SIZE + visible * RECORD_SIZE - (long) r * REGION_SIZE);
+		MappedByteBuffer region = regions[r];
+		if(region != null && region.capacity() >= length) {
+			return region;
+		}
+		long ahead = (region == null) ? MIN_MAPPING : 2L * region.capacity();
+		return region(r, Math.min(REGION_SIZE, Math.max(length, ahead)));
+	}
+
+   /**Appends an agreement, returning once it is on disk.
+    *
+    *@return long  the agreement's number.
+    *@throws IOException  if the journal can't be written, or has been closed, or the tool's brand or type is too long for
+    *                     a record.
+    */
+	public long append(RentalAgreement agreement) throws IOException {
+		long number;
+		synchronized(this) {
+			number = add(agreement);
+		}
+		awaitDurable(number + 1);
+		return number;
+	}
+
+   /**Appends several agreements at once, with one fsync, returning once they are all on disk. Either every agreement is
+    *appended or, if one can't be encoded, none is.
+    *
+    *@return long  the number of the first agreement. The rest are numbered in order after it.
+    *@throws IOException  as append() does.
+    */
+	public long appendAll(List<RentalAgreement> agreements) throws IOException {
+		long first;
+		synchronized(this) {
+			first = next;
+			int mark = pending.position();
+			try {
+				for(RentalAgreement agreement : agreements) {
+					add(agreement);
+				}
+			}
+			catch(IOException e) {
+				pending.position(mark);
+				next = first;
+				throw e;
+			}
+		}
+		awaitDurable(first + agreements.size());
+		return first;
+	}
+
+	//Encodes an agreement into pending, and returns its number.
+	private long add(RentalAgreement agreement) throws IOException {
+		if(closed) {
+			throw new IOException("The agreement journal " + file + " is closed.");
+		}
+		if(failure != null) {
+			throw new IOException("The agreement journal " + file + " could not be written.", failure);
+		}
+		if(next >= MAX_RECORDS) {
+			throw new IOException("The agreement journal " + file + " is full.");
+		}
+		if(pending.remaining() < RECORD_SIZE) {
+			ByteBuffer larger = ByteBuffer.allocate(pending.capacity() * 2);
+			pending.flip();
+			larger.put(pending);
+			pending = larger;
+		}
+		int r = pending.position();
+		Tool tool = agreement.getTool();
+		byte[] record = pending.array();
+		Arrays.fill(record, r, r + RECORD_SIZE, (byte) 0);
+		for(int c = 0; c < 4; c++) {
+			record[r + TOOL_CODE + c] = (byte) tool.getCode().charAt(c);
+		}
+		int flags = (tool.isWeekendExempt() ? ToolCatalogFile.WEEKENDS_EXEMPT : 0)
+			| (tool.isHolidayExempt() ? ToolCatalogFile.HOLIDAYS_EXEMPT : 0);
+		pending.put(r + FLAGS, (byte) flags);
+		pending.put(r + DISCOUNT_PERCENT, (byte) agreement.getDiscountPercent());
+		pending.putInt(r + CHECKOUT_DAY, (int) agreement.getCheckoutDay());
+		pending.putInt(r + DAYS_RENTED, agreement.getDaysRented());
+		pending.putInt(r + CHARGEABLE_DAYS, agreement.getChargeableDays());
+		pending.putLong(r + DAILY_CHARGE, agreement.getDailyChargeCents());
+		pending.putLong(r + BASE_CHARGE, agreement.getBaseChargeCents());
+		pending.putLong(r + DISCOUNT_AMOUNT, agreement.getDiscountAmountCents());
+		pending.putLong(r + FINAL_CHARGE, agreement.getFinalChargeCents());
+		ToolCatalogFile.writeName(pending, r + BRAND, tool.getBrand(), tool);
+		ToolCatalogFile.writeName(pending, r + TYPE, tool.getType(), tool);
+		pending.putLong(r + PROMOTION_AMOUNT, agreement.getPromotionAmountCents());
+		crc.reset();
+		crc.update(record, r, CHECKSUM_OFFSET);
+		pending.putInt(r + CHECKSUM_OFFSET, (int) crc.getValue());
+		pending.position(r + RECORD_SIZE);
+		return next++;
+	}
+
+	//Waits until the agreements before the given number are on disk, writing them itself if no other thread is.
+	private void awaitDurable(long count) throws IOException {
+		ByteBuffer batch;
+		long first;
+		synchronized(this) {
+			boolean interrupted = false;
+			while(durable < count && failure == null && writing) {
+				try {
+					wait();
+				}
+				catch(InterruptedException e) {
+					interrupted = true; //the agreement is already on its way to disk, so keep waiting for it
+				}
+			}
+			if(interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			if(failure != null) {
+				throw new IOException("The agreement journal " + file + " could not be written.", failure);
+			}
+			if(durable >= count) {
+				return;
+			}
+			//No one is writing, so the agreements are still pending: write them, and any others waiting with them
+			writing = true;
+			batch = pending;
+			pending = spare;
+			spare = null;
+			first = durable;
+		}
+		IOException error = null;
+		try {
+			batch.flip();
+			long at = HEADER_SIZE + first * RECORD_SIZE;
+			while(batch.hasRemaining()) {
+				at += channel.write(batch, at);
+			}
+			channel.force(false);
+			synchronized(indexLock) {
+				for(int r = 0; r < batch.limit(); r += RECORD_SIZE) {
+					index((int) visible, batch, r);
+				}
+			}
+		}
+		catch(IOException e) {
+			error = e;
+		}
+		finally {
+			synchronized(this) {
+				batch.clear();
+				spare = batch;
+				writing = false;
+				syncs++;
+				if(error == null) {
+					durable = visible;
+				}
+				else {
+					failure = error;
+				}
+				notifyAll();
+			}
+		}
+		if(error != null) {
+			throw error;
+		}
+	}
+
+	//Returns the agreement with the given number.
+	public RentalAgreement get(long number) throws IOException {
+		synchronized(indexLock) {
+			if(number < 0 || number >= visible) {
+				throw new IndexOutOfBoundsException("There is no agreement " + number + " in a journal of " + visible + ".");
+			}
+			return read((int) number);
+		}
+	}
+
+	//Returns every agreement for the tool with the given code, in the order they were made.
+	public List<RentalAgreement> forTool(String toolCode) throws IOException {
+		int key = ToolCatalog.pack(toolCode);
+		synchronized(indexLock) {
+			return (key == 0) ? Collections.<RentalAgreement>emptyList() : readAll(byTool.get(key));
+		}
+	}
+
+	//Returns every agreement due back on the given date, in the order they were made.
+	public List<RentalAgreement> dueOn(LocalDate date) throws IOException {
+		synchronized(indexLock) {
+			return readAll(byDueDay.get((int) date.toEpochDay()));
+		}
+	}
+
+	//Returns the number of agreements due back on the given date.
+	public int countDueOn(LocalDate date) {
+		synchronized(indexLock) {
+			return byDueDay.count((int) date.toEpochDay());
+		}
+	}
+
+	private List<RentalAgreement> readAll(int[] numbers) throws IOException {
+		List<RentalAgreement> agreements = new ArrayList<RentalAgreement>(numbers.length);
+		for(int number : numbers) {
+			agreements.add(read(number));
+		}
+		return agreements;
+	}
+
+	private RentalAgreement read(int number) throws IOException {
+		long at = HEADER_SIZE + (long) number * RECORD_SIZE;
+		int r = (int) (at / REGION_SIZE);
+		int offset = (int) (at % REGION_SIZE);
+		ByteBuffer region = readable(r);
+		return new RentalAgreement(toolOf(region, offset), region.getInt(offset + CHECKOUT_DAY),
+			region.getInt(offset + DAYS_RENTED), region.get(offset + DISCOUNT_PERCENT), region.getInt(offset + CHARGEABLE_DAYS),
+			region.getLong(offset + BASE_CHARGE), region.getLong(offset + PROMOTION_AMOUNT), region.getLong(offset + DISCOUNT_AMOUNT),
+			region.getLong(offset + FINAL_CHARGE));
+	}
+
+	//Adds the agreements numbered from first on to a history, reading their fields straight from the mapping.
+	void copyTo(RentalHistory history, long first) throws IOException {
+		synchronized(indexLock) {
+			if(first > visible) {
+				throw new IOException("The agreement journal " + file + " holds only " + visible + " agreements, not " + first + ".");
+			}
+			for(long n = first; n < visible; n++) {
+				long at = HEADER_SIZE + n * RECORD_SIZE;
+				int r = (int) (at / REGION_SIZE);
+				int offset = (int) (at % REGION_SIZE);
+				ByteBuffer region = readable(r);
+				history.add(toolOf(region, offset), region.getInt(offset + CHECKOUT_DAY), region.getInt(offset + DAYS_RENTED),
+					region.getInt(offset + CHARGEABLE_DAYS), region.getLong(offset + BASE_CHARGE),
+					region.getLong(offset + PROMOTION_AMOUNT), region.getLong(offset + DISCOUNT_AMOUNT),
+					region.getLong(offset + FINAL_CHARGE));
+			}
+		}
+	}
+
+	//The tool described by a record: the catalog's own Tool if it hasn't changed since, or else a Tool as it was then.
+	private Tool toolOf(ByteBuffer region, int offset) throws IOException {
+		int code = region.getInt(offset);
+		KnownTool known = tools.get(code);
+		if(known != null && known.describes(region, offset)) {
+			return known.tool;
+		}
+		char[] chars = new char[4];
+		for(int c = 0; c < 4; c++) {
+			chars[c] = (char) (region.get(offset + TOOL_CODE + c) & 0xFF);
+		}
+		int flags = region.get(offset + FLAGS);
+		boolean weekendsExempt = (flags & ToolCatalogFile.WEEKENDS_EXEMPT) != 0;
+		boolean holidaysExempt = (flags & ToolCatalogFile.HOLIDAYS_EXEMPT) != 0;
+		long dailyCharge = region.getLong(offset + DAILY_CHARGE);
+		byte[] scratch = new byte[ToolCatalogFile.NAME_SIZE];
+		String brand = ToolCatalogFile.readName(region, offset + BRAND, scratch, names);
+		String type = ToolCatalogFile.readName(region, offset + TYPE, scratch, names);
+		Tool tool = ToolCatalog.getDefault().get(new String(chars));
+		if(tool == null || tool.getDailyChargeCents() != dailyCharge || tool.isWeekendExempt() != weekendsExempt
+				|| tool.isHolidayExempt() != holidaysExempt || !tool.getBrand().equals(brand) || !tool.getType().equals(type)) {
+			tool = new Tool(-1, new String(chars), brand, type, dailyCharge, weekendsExempt, holidaysExempt);
+		}
+		tools.put(code, new KnownTool(tool, region, offset));
+		return tool;
+	}
+
+	//Number of agreements in the journal.
+	public long size() {
+		synchronized(indexLock) {
+			return visible;
+		}
+	}
+
+	//Number of bytes cut from the end of the file when it was opened, left there by a write that never finished, or as room
+	//for reading ahead by a journal that was never closed.
+	public long getTruncatedBytes() {
+		return truncatedBytes;
+	}
+
+	//Number of times a region of the file has been mapped.
+	int getMappingCount() {
+		synchronized(indexLock) {
+			return mappings;
+		}
+	}
+
+	//Number of times appended agreements have been synced to disk. Group commit keeps this below the number appended.
+	public synchronized long getSyncCount() {
+		return syncs;
+	}
+
+	public Path getFile() {
+		return file;
+	}
+
+	//Waits for any agreements being appended to reach the disk, cuts off the room mapped past them, and closes the file.
+	public void close() throws IOException {
+		long end;
+		synchronized(this) {
+			closed = true;
+			boolean interrupted = false;
+			while((writing || durable < next) && failure == null) {
+				try {
+					wait();
+				}
+				catch(InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if(interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			end = HEADER_SIZE + durable * RECORD_SIZE;
+		}
+		try {
+			if(channel.isOpen()) {
+				channel.truncate(end);
+			}
+		}
+		finally {
+			channel.close();
+		}
+	}
+
+	//A tool as last read from a record, with the bytes of the record that describe it.
+	private static final class KnownTool {
+		final Tool tool;
+		final byte[] description = new byte[8 + 2 * ToolCatalogFile.NAME_SIZE];
+		final byte flags;
+
+		KnownTool(Tool tool, ByteBuffer region, int offset) {
+			this.tool = tool;
+			flags = region.get(offset + FLAGS);
+			for(int i = 0; i < 8; i++) {
+				description[i] = region.get(offset + DAILY_CHARGE + i);
+			}
+			for(int i = 8; i < description.length; i++) {
+				description[i] = region.get(offset + BRAND - 8 + i);
+			}
+		}
+
+		//True if the record at the offset describes the same tool: the same flags, daily charge, brand and type.
+		boolean describes(ByteBuffer region, int offset) {
+			if(region.get(offset + FLAGS) != flags) {
+				return false;
+			}
+			for(int i = 0; i < 8; i++) {
+				if(region.get(offset + DAILY_CHARGE + i) != description[i]) {
+					return false;
+				}
+			}
+			for(int i = 8; i < description.length; i++) {
+				if(region.get(offset + BRAND - 8 + i) != description[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+   /**Lists of record numbers by int key, in an open addressing table with linear probing. Each list stays in the order its
+    *numbers were added.
+    */
+	private static final class Postings {
+		private int[] keys = new int[64];
+		private int[][] lists = new int[64][];
+		private int[] sizes = new int[64];
+		private int count;
+
+		void add(int key, int number) {
+			int slot = slotOf(key);
+			if(lists[slot] == null) {
+				if(2 * (count + 1) > keys.length) {
+					grow();
+					slot = slotOf(key);
+				}
+				keys[slot] = key;
+				lists[slot] = new int[4];
+				count++;
+			}
+			int[] list = lists[slot];
+			if(sizes[slot] == list.length) {
+				list = Arrays.copyOf(list, list.length * 2);
+				lists[slot] = list;
+			}
+			list[sizes[slot]++] = number;
+		}
+
+		int[] get(int key) {
+			int slot = slotOf(key);
+			return (lists[slot] == null) ? new int[0] : Arrays.copyOf(lists[slot], sizes[slot]);
+		}
+
+		int count(int key) {
+			return sizes[slotOf(key)];
+		}
+
+		//The slot holding the key, or the empty slot it would go in.
+		private int slotOf(int key) {
+			int mask = keys.length - 1;
+			int slot = (key * 0x9E3779B9) & mask;
+			while(lists[slot] != null && keys[slot] != key) {
+				slot = (slot + 1) & mask;
+			}
+			return slot;
+		}
+
+		private void grow() {
+			int[] oldKeys = keys;
+			int[][] oldLists = lists;
+			int[] oldSizes = sizes;
+			keys = new int[oldKeys.length * 2];
+			lists = new int[oldKeys.length * 2][];
+			sizes = new int[oldKeys.length * 2];
+			for(int i = 0; i < oldKeys.length; i++) {
+				if(oldLists[i] != null) {
+					int slot = slotOf(oldKeys[i]);
+					keys[slot] = oldKeys[i];
+					lists[slot] = oldLists[i];
+					sizes[slot] = oldSizes[i];
+				}
+			}
+		}
+	}
+
+	//Appends the given number of random agreements for the standard tools, checked out in 2015 - 2024, in batches.
+	static void generate(AgreementJournal journal, int count, long seed) throws IOException {
+		Random random = new Random(seed);
+		ToolCatalog catalog = ToolCatalog.standard();
+		HolidayRules rules = HolidayRules.getDefault();
+		long firstDay = LocalDate.of(2015, 1, 1).toEpochDay();
+		List<RentalAgreement> batch = new ArrayList<RentalAgreement>(4096);
+		for(int i = 0; i < count; i++) {
+			Tool tool = catalog.get(random.nextInt(catalog.size()));
+			LocalDate date = LocalDate.ofEpochDay(firstDay + random.nextInt(3653));
+			batch.add(new RentalAgreement(tool, date, 1 + random.nextInt(30), random.nextInt(5) * 10, rules));
+			if(batch.size() == 4096 || i == count - 1) {
+				journal.appendAll(batch);
+				batch.clear();
+			}
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if(args.length == 3 && args[0].equals("-generate")) {
+			int count = Integer.parseInt(args[1]);
+			long start = System.nanoTime();
+			try(AgreementJournal journal = new AgreementJournal(Paths.get(args[2]))) {
+				generate(journal, count, System.nanoTime());
+				double seconds = (System.nanoTime() - start) / 1e9;
+				System.out.printf("Appended %d agreements to %s in %.2f s (%.0f/sec, %d syncs). It now holds %d.%n", count, args[2],
+					seconds, count / seconds, journal.getSyncCount(), journal.size());
+			}
+			return;
+		}
+		if(args.length < 1 || args.length > 2) {
+			System.err.println("Usage: java AgreementJournal <journal file> [mm/dd/yy]");
+			System.err.println("       java AgreementJournal -generate <count> <journal file>");
+			return;
+		}
+		long start = System.nanoTime();
+		try(AgreementJournal journal = new AgreementJournal(Paths.get(args[0]))) {
+			System.out.printf("Replayed %d agreements in %.1f ms.%n", journal.size(), (System.nanoTime() - start) / 1e6);
+			if(journal.getTruncatedBytes() > 0) {
+				System.out.println("Cut " + journal.getTruncatedBytes() + " bytes of an unfinished write from the end of the file.");
+			}
+			if(args.length == 2) {
+				long day = CheckoutParser.parseDate(args[1]);
+				if(day == CheckoutParser.NOT_A_DATE) {
+					System.err.println(CheckoutParser.message(CheckoutParser.BAD_DATE));
+					return;
+				}
+				start = System.nanoTime();
+				List<RentalAgreement> due = journal.dueOn(LocalDate.ofEpochDay(day));
+				long owed = 0;
+				for(RentalAgreement agreement : due) {
+					owed += agreement.getFinalChargeCents();
+				}
+				System.out.printf("%d agreements due back on %s, for %s, read in %.2f ms.%n", due.size(), args[1],
+					Money.format(owed), (System.nanoTime() - start) / 1e6);
+			}
+		}
+	}
+}
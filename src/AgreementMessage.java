@@ -0,0 +1,351 @@
+/**
+ * @(#)AgreementMessage.java
+ * A RentalAgreement in a compact binary form, for passing agreements between terminals, the QuoteService and the back office
+ * without writing and reparsing their text. An AgreementMessage is a flyweight: it holds no fields of its own, only a position
+ * in a ByteBuffer, and reads and writes each field in place. One message object can be wrapped around message after message,
+ * so neither encoding nor decoding allocates, unless a brand or type isn't plain ASCII.
+ *
+ * A message is an 8 byte header followed by a block of fixed-width fields, all big-endian:
+ *     header:  short block length, short template (1 = agreement), short schema ('TR'), short version
+ *     block:   4 bytes   tool code, ASCII
+ *              1 byte    flags: 1 = exempt on weekends, 2 = exempt on holidays
+ *              1 byte    discount percentage
+ *              2 bytes   unused
+ *              4 bytes   checkout date, as an epoch day
+ *              4 bytes   days rented
+ *              4 bytes   chargeable days
+ *              4 bytes   unused
+ *              8 bytes   daily charge in cents
+ *              8 bytes   base charge in cents
+ *              8 bytes   discount amount in cents
+ *              8 bytes   final charge in cents
+ *              28 bytes  brand: 1 byte length, then up to 27 bytes of UTF-8
+ *              28 bytes  type: as brand
+ *              8 bytes   amount taken off by promotions in cents
+ * The block is the first 120 bytes of an AgreementJournal record, at the offsets the journal names, so a record can be
+ * copied into a message (and back, less its checksum) byte for byte.
+ * A later version may add fields only at the end of the block, and says how long its block is in the header. A reader skips
+ * the fields it doesn't know by the block length, so messages of several versions can follow one another in a buffer, and a
+ * reader of a later version reads the default for a field an earlier message is too short to hold.
+ *
+ * @author Iain St. John
+ * @version 1.00 2026/10/18
+ */
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+public final class AgreementMessage {
+	public static final short TEMPLATE = 1;
+	public static final short SCHEMA = 0x5452; //"TR"
+	public static final short VERSION = 1;
+	public static final int HEADER_SIZE = 8;
+	public static final int BLOCK_LENGTH = AgreementJournal.FIELDS_SIZE; //of this version
+	public static final String CONTENT_TYPE = "application/x-rental-agreement";
+
+	//Where each field starts in the block, as in a journal record
+	private static final int TOOL_CODE = AgreementJournal.TOOL_CODE;
+	private static final int FLAGS = AgreementJournal.FLAGS;
+	private static final int DISCOUNT_PERCENT = AgreementJournal.DISCOUNT_PERCENT;
+	private static final int CHECKOUT_DAY = AgreementJournal.CHECKOUT_DAY;
+	private static final int DAYS_RENTED = AgreementJournal.DAYS_RENTED;
+	private static final int CHARGEABLE_DAYS = AgreementJournal.CHARGEABLE_DAYS;
+	private static final int DAILY_CHARGE = AgreementJournal.DAILY_CHARGE;
+	private static final int BASE_CHARGE = AgreementJournal.BASE_CHARGE;
+	private static final int DISCOUNT_AMOUNT = AgreementJournal.DISCOUNT_AMOUNT;
+	private static final int FINAL_CHARGE = AgreementJournal.FINAL_CHARGE;
+	private static final int BRAND = AgreementJournal.BRAND;
+	private static final int TYPE = AgreementJournal.TYPE;
+	private static final int PROMOTION_AMOUNT = AgreementJournal.PROMOTION_AMOUNT;
+
+	private ByteBuffer buffer;
+	private int block; //offset of the block
+	private int blockLength;
+	private int version;
+
+   /**Starts a message of this version at the given offset, and writes its header. The fields are then written by encode().
+    *
+    *@param buffer  a big-endian buffer with room for a message at the offset.
+    *@param offset  where the message starts.
+    *@return AgreementMessage  this message.
+    *@throws IndexOutOfBoundsException  if the message wouldn't fit.
+    */
+	public AgreementMessage wrapForEncode(ByteBuffer buffer, int offset) {
+		checkOrder(buffer);
+		if(offset < 0 || buffer.limit() - offset < HEADER_SIZE + BLOCK_LENGTH) {
+			throw new IndexOutOfBoundsException("A message needs " + (HEADER_SIZE + BLOCK_LENGTH) + " bytes, but only "
+				+ (buffer.limit() - offset) + " are left at " + offset + ".");
+		}
+		wrap(buffer, offset, BLOCK_LENGTH, VERSION);
+		buffer.putShort(offset, (short) BLOCK_LENGTH);
+		buffer.putShort(offset + 2, TEMPLATE);
+		buffer.putShort(offset + 4, SCHEMA);
+		buffer.putShort(offset + 6, VERSION);
+		return this;
+	}
+
+   /**Reads the message at the given offset. Its fields are read in place by the getters.
+    *
+    *@param buffer  a big-endian buffer holding a message at the offset.
+    *@param offset  where the message starts.
+    *@return AgreementMessage  this message.
+    *@throws IllegalArgumentException  if the bytes at the offset aren't an agreement message.
+    *@throws BufferUnderflowException  if the buffer ends before the message does.
+    */
+	public AgreementMessage wrapForDecode(ByteBuffer buffer, int offset) {
+		checkOrder(buffer);
+		if(offset < 0 || buffer.limit() - offset < HEADER_SIZE) {
+			throw new BufferUnderflowException();
+		}
+		int length = buffer.getShort(offset) & 0xFFFF;
+		if(buffer.getShort(offset + 2) != TEMPLATE || buffer.getShort(offset + 4) != SCHEMA) {
+			throw new IllegalArgumentException("There is no agreement message at " + offset + ".");
+		}
+		int v = buffer.getShort(offset + 6);
+		//Version 1 is the shortest there will ever be
+		if(v < 1 || length < BLOCK_LENGTH) {
+			throw new IllegalArgumentException("The agreement message at " + offset + " is of version " + v + " with a block of "
+				+ length + " bytes.");
+		}
+		if(buffer.limit() - offset - HEADER_SIZE < length) {
+			throw new BufferUnderflowException();
+		}
+		wrap(buffer, offset, length, v);
+		return this;
+	}
+
+	private void wrap(ByteBuffer buffer, int offset, int blockLength, int version) {
+		this.buffer = buffer;
+		block = offset + HEADER_SIZE;
+		this.blockLength = blockLength;
+		this.version = version;
+	}
+
+	private static void checkOrder(ByteBuffer buffer) {
+		if(buffer.order() != ByteOrder.BIG_ENDIAN) {
+			throw new IllegalArgumentException("Agreement messages are big-endian.");
+		}
+	}
+
+   /**Writes an agreement's fields into a message wrapped for encoding.
+    *
+    *@param agreement  the agreement.
+    *@return AgreementMessage  this message.
+    *@throws IllegalArgumentException  if the tool's brand or type is too long for a message.
+    */
+	public AgreementMessage encode(RentalAgreement agreement) {
+		Tool tool = agreement.getTool();
+		String code = tool.getCode();
+		for(int c = 0; c < 4; c++) {
+			buffer.put(block + TOOL_CODE + c, (byte) code.charAt(c));
+		}
+		int flags = (tool.isWeekendExempt() ? ToolCatalogFile.WEEKENDS_EXEMPT : 0)
+			| (tool.isHolidayExempt() ? ToolCatalogFile.HOLIDAYS_EXEMPT : 0);
+		buffer.put(block + FLAGS, (byte) flags);
+		buffer.put(block + DISCOUNT_PERCENT, (byte) agreement.getDiscountPercent());
+		buffer.putShort(block + DISCOUNT_PERCENT + 1, (short) 0); //unused
+		buffer.putInt(block + CHECKOUT_DAY, (int) agreement.getCheckoutDay());
+		buffer.putInt(block + DAYS_RENTED, agreement.getDaysRented());
+		buffer.putInt(block + CHARGEABLE_DAYS, agreement.getChargeableDays());
+		buffer.putInt(block + CHARGEABLE_DAYS + 4, 0); //unused
+		buffer.putLong(block + DAILY_CHARGE, agreement.getDailyChargeCents());
+		buffer.putLong(block + BASE_CHARGE, agreement.getBaseChargeCents());
+		buffer.putLong(block + DISCOUNT_AMOUNT, agreement.getDiscountAmountCents());
+		buffer.putLong(block + FINAL_CHARGE, agreement.getFinalChargeCents());
+		putName(block + BRAND, tool.getBrand(), tool);
+		putName(block + TYPE, tool.getType(), tool);
+		buffer.putLong(block + PROMOTION_AMOUNT, agreement.getPromotionAmountCents());
+		return this;
+	}
+
+	//Writes a name as ToolCatalogFile does, without encoding it into a new array when it is plain ASCII.
+	private void putName(int at, String name, Tool tool) {
+		int length = name.length();
+		boolean ascii = length < ToolCatalogFile.NAME_SIZE;
+		for(int i = 0; ascii && i < length; i++) {
+			ascii = name.charAt(i) < 0x80;
+		}
+		if(ascii) {
+			buffer.put(at, (byte) length);
+			for(int i = 0; i < length; i++) {
+				buffer.put(at + 1 + i, (byte) name.charAt(i));
+			}
+			return;
+		}
+		byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+		if(bytes.length >= ToolCatalogFile.NAME_SIZE) {
+			throw new IllegalArgumentException("\"" + name + "\" of tool " + tool.getCode() + " is longer than "
+				+ (ToolCatalogFile.NAME_SIZE - 1) + " bytes.");
+		}
+		buffer.put(at, (byte) bytes.length);
+		for(int i = 0; i < bytes.length; i++) {
+			buffer.put(at + 1 + i, bytes[i]);
+		}
+	}
+
+	//The length of the whole message, header and all, which is where the next message starts.
+	public int getEncodedLength() {
+		return HEADER_SIZE + blockLength;
+	}
+
+	public int getVersion() {
+		return version;
+	}
+
+	//The tool code packed into an int, as ToolCatalog packs it.
+	public int getToolKey() {
+		return buffer.getInt(block + TOOL_CODE);
+	}
+
+	public StringBuilder appendToolCode(StringBuilder sb) {
+		for(int c = 0; c < 4; c++) {
+			sb.append((char) (buffer.get(block + TOOL_CODE + c) & 0xFF));
+		}
+		return sb;
+	}
+
+	public boolean isWeekendExempt() {
+		return (buffer.get(block + FLAGS) & ToolCatalogFile.WEEKENDS_EXEMPT) != 0;
+	}
+
+	public boolean isHolidayExempt() {
+		return (buffer.get(block + FLAGS) & ToolCatalogFile.HOLIDAYS_EXEMPT) != 0;
+	}
+
+	public int getDiscountPercent() {
+		return buffer.get(block + DISCOUNT_PERCENT);
+	}
+
+	public long getCheckoutDay() {
+		return buffer.getInt(block + CHECKOUT_DAY);
+	}
+
+	public long getDueDay() {
+		return getCheckoutDay() + getDaysRented();
+	}
+
+	public int getDaysRented() {
+		return buffer.getInt(block + DAYS_RENTED);
+	}
+
+	public int getChargeableDays() {
+		return buffer.getInt(block + CHARGEABLE_DAYS);
+	}
+
+	public long getDailyChargeCents() {
+		return buffer.getLong(block + DAILY_CHARGE);
+	}
+
+	public long getBaseChargeCents() {
+		return buffer.getLong(block + BASE_CHARGE);
+	}
+
+	public long getPromotionAmountCents() {
+		return buffer.getLong(block + PROMOTION_AMOUNT);
+	}
+
+	public long getDiscountAmountCents() {
+		return buffer.getLong(block + DISCOUNT_AMOUNT);
+	}
+
+	public long getFinalChargeCents() {
+		return buffer.getLong(block + FINAL_CHARGE);
+	}
+
+	public StringBuilder appendBrand(StringBuilder sb) {
+		return appendName(sb, block + BRAND);
+	}
+
+	public StringBuilder appendType(StringBuilder sb) {
+		return appendName(sb, block + TYPE);
+	}
+
+	private StringBuilder appendName(StringBuilder sb, int at) {
+		int length = Math.min(buffer.get(at) & 0xFF, ToolCatalogFile.NAME_SIZE - 1);
+		for(int i = 0; i < length; i++) {
+			if(buffer.get(at + 1 + i) < 0) {
+				return sb.append(name(at));
+			}
+		}
+		for(int i = 0; i < length; i++) {
+			sb.append((char) buffer.get(at + 1 + i));
+		}
+		return sb;
+	}
+
+	private String name(int at) {
+		byte[] bytes = new byte[Math.min(buffer.get(at) & 0xFF, ToolCatalogFile.NAME_SIZE - 1)];
+		for(int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(at + 1 + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+   /**Finds the message's tool in a catalog without decoding its brand and type into strings.
+    *
+    *@param catalog  the catalog to look in.
+    *@return Tool    the catalog's tool, or null if it has no tool with the message's code, or that tool has a different brand,
+    *                type, daily charge or exemptions than the message's.
+    */
+	public Tool getTool(ToolCatalog catalog) {
+		int id = catalog.idOfKey(getToolKey());
+		if(id < 0) {
+			return null;
+		}
+		Tool tool = catalog.get(id);
+		if(tool.getDailyChargeCents() != getDailyChargeCents() || tool.isWeekendExempt() != isWeekendExempt()
+				|| tool.isHolidayExempt() != isHolidayExempt() || !nameEquals(block + BRAND, tool.getBrand())
+				|| !nameEquals(block + TYPE, tool.getType())) {
+			return null;
+		}
+		return tool;
+	}
+
+	private boolean nameEquals(int at, String name) {
+		int length = buffer.get(at) & 0xFF;
+		if(length == name.length()) {
+			boolean ascii = true;
+			for(int i = 0; ascii && i < length; i++) {
+				char c = name.charAt(i);
+				if(c >= 0x80) {
+					ascii = false;
+				}
+				else if(buffer.get(at + 1 + i) != c) {
+					return false;
+				}
+			}
+			if(ascii) {
+				return true;
+			}
+		}
+		return name(at).equals(name);
+	}
+
+	//Makes a RentalAgreement of the message, with the default catalog's tool if it is the same tool, as the journal does.
+	public RentalAgreement toAgreement() {
+		Tool tool = getTool(ToolCatalog.getDefault());
+		if(tool == null) {
+			String code = appendToolCode(new StringBuilder(4)).toString();
+			tool = new Tool(-1, code, name(block + BRAND), name(block + TYPE), getDailyChargeCents(),
+				isWeekendExempt(), isHolidayExempt());
+		}
+		return new RentalAgreement(tool, getCheckoutDay(), getDaysRented(), getDiscountPercent(), getChargeableDays(),
+			getBaseChargeCents(), getPromotionAmountCents(), getDiscountAmountCents(), getFinalChargeCents());
+	}
+
+	//Appends the text of the agreement, as its toString() would be, straight from the message when its tool is in the catalog.
+	public StringBuilder appendTo(StringBuilder sb, ToolCatalog catalog) {
+		Tool tool = getTool(catalog);
+		if(tool == null) {
+			return ReceiptWriter.appendTo(sb, toAgreement());
+		}
+		return ReceiptWriter.appendTo(sb, tool, getCheckoutDay(), getDueDay(), getDaysRented(), getDiscountPercent(),
+			getBaseChargeCents(), getPromotionAmountCents(), getDiscountAmountCents(), getFinalChargeCents());
+	}
+
+	public String toString() {
+		return (buffer == null) ? "AgreementMessage (unwrapped)" : appendTo(new StringBuilder(320), ToolCatalog.getDefault()).toString();
+	}
+}
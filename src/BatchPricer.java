@@ -0,0 +1,163 @@
+/**
+ * @(#)BatchPricer.java
+ * Prices a whole RentalBatch in one call, for re-pricing and what-if runs that need far more quotes than building a Checkout and
+ * RentalAgreement for each one allows.
+ *
+ * The pricer is built once from a ToolCatalog, whose daily charges and exemptions are copied into primitive arrays, so a
+ * request only refers to its tool by its id in the catalog. The holiday calendar of the year being priced is looked up once
+ * and reused for every request in that year. Pricing follows exactly the same rules as RentalAgreement, and gives the same results.
+ * Every request is priced with the promotions for a customer with no loyalty tier or coupon, and each tool's row of the
+ * promotion table is looked up when the pricer is built.
+ *
+ * A BatchPricer holds no mutable state, so one instance may be shared by any number of threads, each with its own results.
+ *
+ * @author Iain St. John
+ * @version 1.00 2026/10/18
+ */
+
+public final class BatchPricer {
+	private final ToolCatalog catalog;
+	private final HolidayRules holidayRules;
+	private final PromotionPlan promotions;
+	private final long[] dailyCharge;
+	private final boolean[] weekendsExempt;
+	private final boolean[] holidaysExempt;
+	private final int[] promotionRow;
+
+   /**Creates a pricer for the tools of a catalog. A request's tool index is the tool's id in the catalog.
+    *
+    *@param catalog  the tools that may be priced.
+    *@param rules    the holidays that tools exempt from holiday charges are not charged on.
+    */
+	public BatchPricer(ToolCatalog catalog, HolidayRules rules) {
+		this(catalog, rules, Promotions.getDefault().getPlan());
+	}
+
+   /**As above, with the given promotions instead of the default ones.
+    *
+    *@param promotions  the promotions that may apply.
+    */
+	public BatchPricer(ToolCatalog catalog, HolidayRules rules, PromotionPlan promotions) {
+		this.catalog = catalog;
+		holidayRules = rules;
+		this.promotions = promotions;
+		int count = catalog.size();
+		dailyCharge = new long[count];
+		weekendsExempt = new boolean[count];
+		holidaysExempt = new boolean[count];
+		promotionRow = new int[count];
+		for(int i = 0; i < count; i++) {
+			Tool tool = catalog.get(i);
+			dailyCharge[i] = tool.getDailyChargeCents();
+			weekendsExempt[i] = tool.isWeekendExempt();
+			holidaysExempt[i] = tool.isHolidayExempt();
+			promotionRow[i] = promotions.rowOf(tool.getType());
+		}
+	}
+
+	//A pricer for the default catalog with the default holidays.
+	public static BatchPricer standard() {
+		return new BatchPricer(ToolCatalog.getDefault(), HolidayRules.getDefault());
+	}
+
+	//Returns the index of the tool with the given code, or -1 if there isn't one.
+	public int toolIndex(String code) {
+		return catalog.idOf(code);
+	}
+
+	public int toolCount() {
+		return dailyCharge.length;
+	}
+
+	public Tool getTool(int index) {
+		return catalog.get(index);
+	}
+
+	public ToolCatalog getCatalog() {
+		return catalog;
+	}
+
+	public HolidayRules getHolidayRules() {
+		return holidayRules;
+	}
+
+	public PromotionPlan getPromotions() {
+		return promotions;
+	}
+
+   /**Prices every request in the batch.
+    *
+    *@param batch  the requests to price.
+    *@param out    receives one result per request, in the same order.
+    */
+	public void price(RentalBatch batch, PricingResults out) {
+		out.resize(batch.size);
+		price(batch, 0, batch.size, out);
+	}
+
+   /**Prices requests from through to-1 of the batch into the same positions of out, which must already be large enough. Used
+    *to price separate parts of one batch at the same time.
+    */
+	void price(RentalBatch batch, int from, int to, PricingResults out) {
+		int[] toolColumn = batch.tool;
+		int[] dayColumn = batch.checkoutDay;
+		int[] daysColumn = batch.days;
+		int[] discountColumn = batch.discount;
+		boolean promoting = !promotions.isEmpty();
+		//The year most recently priced, so consecutive requests in the same year skip the holiday lookup
+		BusinessDayIndex year = null;
+		long yearFirst = 0;
+		long yearEnd = 0;
+		for(int i = from; i < to; i++) {
+			int t = toolColumn[i];
+			int days = daysColumn[i];
+			int disc = discountColumn[i];
+			byte status = PricingResults.OK;
+			if(t < 0 || t >= dailyCharge.length) {
+				status = PricingResults.UNKNOWN_TOOL;
+			}
+			else if(CheckoutParser.checkDayCount(days) != CheckoutParser.OK) {
+				status = PricingResults.BAD_DAY_COUNT;
+			}
+			else if(disc < 0 || disc > 100) {
+				status = PricingResults.BAD_DISCOUNT;
+			}
+			out.status[i] = status;
+			if(status != PricingResults.OK) {
+				out.dueDay[i] = 0;
+				out.chargeableDays[i] = 0;
+				out.baseCharge[i] = 0;
+				out.promotionAmount[i] = 0;
+				out.discountAmount[i] = 0;
+				out.finalCharge[i] = 0;
+				continue;
+			}
+
+			long first = dayColumn[i] + 1L;
+			long last = dayColumn[i] + (long) days;
+			int chargeable;
+			if(!weekendsExempt[t]) {
+				chargeable = days;
+			}
+			else if(year != null && first >= yearFirst && last < yearEnd) {
+				chargeable = year.chargeableDays(first, last, holidaysExempt[t]);
+			}
+			else {
+				chargeable = BusinessDayIndex.chargeableDays(holidayRules, first, last, holidaysExempt[t]);
+				year = holidayRules.forYear(BusinessDayIndex.yearOf(first));
+				yearFirst = year.getFirstDay();
+				yearEnd = yearFirst + year.getLength();
+			}
+
+			long base = chargeable * dailyCharge[t];
+			long promotion = promoting
+				? promotions.amountOff(promotionRow[t], days, base, PromotionPlan.OTHER, PromotionPlan.OTHER) : 0;
+			out.dueDay[i] = (int) last;
+			out.chargeableDays[i] = chargeable;
+			out.baseCharge[i] = base;
+			out.promotionAmount[i] = promotion;
+			out.discountAmount[i] = RentalAgreement.discountAmount(base - promotion, disc);
+			out.finalCharge[i] = RentalAgreement.finalCharge(base - promotion, disc);
+		}
+	}
+}
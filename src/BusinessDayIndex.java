@@ -0,0 +1,202 @@
+/**
+ * @(#)BusinessDayIndex.java
+ * An immutable index of one calendar year, marking which days are weekends and which are observed holidays, along with running
+ * counts of the chargeable days so that the chargeable days of any range within the year cost two array lookups.
+ *
+ * Each year is compiled from a HolidayRules set the first time it is needed, and then shared by every RentalAgreement using that
+ * set. Days are handled as epoch days (days since 01/01/1970, which was a Thursday).
+ *
+ * The Gregorian calendar repeats every 400 years, which is also a whole number of weeks, so the weekends and holidays of any
+ * year are those of the year 400 years earlier or later. A range longer than a year or two is counted from the running counts
+ * of one such cycle, 2000 - 2399, so it costs the same as a short one however many years it spans.
+ *
+ * @author Iain St. John
+ * @version 1.00 2026/10/18
+ */
+
+public final class BusinessDayIndex {
+	//DAYS_BEFORE_MONTH[m] = days before the 1st of month m+1 in a year that isn't a leap year
+	private static final short[] DAYS_BEFORE_MONTH = {0, 31, 59, 90, 120, 151, 181, 212, 243, 273, 304, 334, 365};
+
+	//The cycle the running counts of long ranges are kept for
+	static final int CYCLE_YEARS = 400;
+	static final int CYCLE_FIRST_YEAR = 2000;
+	static final long CYCLE_DAYS = 146097; //20871 weeks
+	private static final long CYCLE_FIRST_DAY = 10957; //01/01/2000
+
+	private final int year;
+	private final long firstDay; //epoch day of January 1st
+	private final int length; //365 or 366
+	private final long[] weekends; //bit i set if day i of the year is a Saturday or Sunday
+	private final long[] holidays; //bit i set if day i of the year is an observed holiday
+	private final short[] weekdaysBefore; //weekdaysBefore[i] = number of weekdays among days 0..i-1 of the year
+	private final short[] businessDaysBefore; //as above, but also leaving out observed holidays
+
+	BusinessDayIndex(int year, HolidayRules rules) {
+		this.year = year;
+		firstDay = yearStart(year);
+		length = (int) (yearStart(year + 1) - firstDay);
+		weekends = new long[(length + 63) >>> 6];
+		holidays = new long[weekends.length];
+
+		for(int i = 0; i < length; i++) {
+			if(fallsOnWeekend(firstDay + i)) {
+				weekends[i >>> 6] |= 1L << i;
+			}
+		}
+		for(long day : rules.observedDays(year, firstDay, firstDay + length - 1)) {
+			int i = (int) (day - firstDay);
+			holidays[i >>> 6] |= 1L << i;
+		}
+
+		weekdaysBefore = new short[length + 1];
+		businessDaysBefore = new short[length + 1];
+		for(int i = 0; i < length; i++) {
+			boolean weekend = (weekends[i >>> 6] & (1L << i)) != 0;
+			boolean holiday = (holidays[i >>> 6] & (1L << i)) != 0;
+			weekdaysBefore[i + 1] = (short) (weekdaysBefore[i] + (weekend ? 0 : 1));
+			businessDaysBefore[i + 1] = (short) (businessDaysBefore[i] + (weekend || holiday ? 0 : 1));
+		}
+	}
+
+   /**Returns the index for the given year under the default holiday rules.
+    *
+    *@param year  the calendar year.
+    *@return BusinessDayIndex  the shared index of that year.
+    */
+	public static BusinessDayIndex forYear(int year) {
+		return HolidayRules.getDefault().forYear(year);
+	}
+
+   /**Counts the chargeable days from first through last (inclusive). A range within one or two calendar years is counted from
+    *their indexes, and a longer one from the running counts of the 400 year cycle, so no more than two indexes are looked up.
+    *
+    *@param rules           the holiday rules in effect.
+    *@param first           the first day of the range, as an epoch day.
+    *@param last            the last day of the range, as an epoch day.
+    *@param holidaysExempt  true if observed holidays are left out as well as weekends.
+    *@return int            the number of weekdays (or business days) in the range.
+    */
+	public static int chargeableDays(HolidayRules rules, long first, long last, boolean holidaysExempt) {
+		if(first > last) {
+			return 0;
+		}
+		int y = yearOf(first);
+		if(yearOf(last) - y > 1) {
+			return (int) (daysBefore(rules, last + 1, holidaysExempt) - daysBefore(rules, first, holidaysExempt));
+		}
+		int days = 0;
+		while(first <= last) {
+			BusinessDayIndex index = rules.forYear(y);
+			int from = (int) (first - index.firstDay);
+			int to = (int) Math.min(last - index.firstDay + 1, index.length);
+			short[] before = holidaysExempt ? index.businessDaysBefore : index.weekdaysBefore;
+			days += before[to] - before[from];
+			first = index.firstDay + index.length;
+			y++;
+		}
+		return days;
+	}
+
+	//The chargeable days from 01/01/2000 up to (not including) the given day, or less than zero for the days before 2000.
+	private static long daysBefore(HolidayRules rules, long day, boolean holidaysExempt) {
+		long cycles = Math.floorDiv(day - CYCLE_FIRST_DAY, CYCLE_DAYS);
+		long inCycle = day - cycles * CYCLE_DAYS;
+		int y = yearOf(inCycle);
+		BusinessDayIndex index = rules.forYear(y);
+		int[] yearsBefore = rules.cycleDaysBefore(holidaysExempt);
+		short[] before = holidaysExempt ? index.businessDaysBefore : index.weekdaysBefore;
+		return cycles * yearsBefore[CYCLE_YEARS] + yearsBefore[y - CYCLE_FIRST_YEAR] + before[(int) (inCycle - index.firstDay)];
+	}
+
+   /**Counts the chargeable days from first through last (inclusive), both of which must fall within this year.
+    *
+    *@param first           the first day of the range, as an epoch day.
+    *@param last            the last day of the range, as an epoch day.
+    *@param holidaysExempt  true if observed holidays are left out as well as weekends.
+    *@return int            the number of weekdays (or business days) in the range.
+    */
+	public int chargeableDays(long first, long last, boolean holidaysExempt) {
+		short[] before = holidaysExempt ? businessDaysBefore : weekdaysBefore;
+		return before[(int) (last - firstDay) + 1] - before[(int) (first - firstDay)];
+	}
+
+	public int getYear() {
+		return year;
+	}
+
+	//Epoch day of January 1st of this year.
+	public long getFirstDay() {
+		return firstDay;
+	}
+
+	//Number of days in this year.
+	public int getLength() {
+		return length;
+	}
+
+	//Returns true if the given day of this year (0 is January 1st) is a Saturday or Sunday.
+	public boolean isWeekend(int dayOfYear) {
+		return (weekends[dayOfYear >>> 6] & (1L << dayOfYear)) != 0;
+	}
+
+	//Returns true if the given day of this year (0 is January 1st) is an observed holiday.
+	public boolean isHoliday(int dayOfYear) {
+		return (holidays[dayOfYear >>> 6] & (1L << dayOfYear)) != 0;
+	}
+
+	//01/01/1970 was a Thursday, so epoch days 2 and 3 (mod 7) are Saturdays and Sundays.
+	private static boolean fallsOnWeekend(long epochDay) {
+		int dow = (int) Math.floorMod(epochDay, 7L);
+		return dow == 2 || dow == 3;
+	}
+
+	//Epoch day of January 1st of the given year, in the proleptic Gregorian calendar.
+	static long yearStart(int year) {
+		long y = year - 1L;
+		long leapDays = Math.floorDiv(y, 4) - Math.floorDiv(y, 100) + Math.floorDiv(y, 400);
+		return 365L * (year - 1970) + leapDays - 477; //477 leap days occur before 1970
+	}
+
+	//The year containing the given epoch day. The estimate is never off by more than one year.
+	static int yearOf(long epochDay) {
+		int year = (int) Math.floorDiv(epochDay * 400, 146097) + 1970;
+		if(yearStart(year) > epochDay) {
+			year--;
+		}
+		else if(yearStart(year + 1) <= epochDay) {
+			year++;
+		}
+		return year;
+	}
+
+	static boolean isLeapYear(int year) {
+		return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+	}
+
+	//Number of days in the given month (1 - 12) of the given year.
+	static int daysInMonth(int year, int month) {
+		return DAYS_BEFORE_MONTH[month] - DAYS_BEFORE_MONTH[month - 1] + ((month == 2 && isLeapYear(year)) ? 1 : 0);
+	}
+
+	//Epoch day of the given date, which must exist.
+	static long epochDay(int year, int month, int dayOfMonth) {
+		int leap = (month > 2 && isLeapYear(year)) ? 1 : 0;
+		return yearStart(year) + DAYS_BEFORE_MONTH[month - 1] + leap + dayOfMonth - 1;
+	}
+
+   /**Splits an epoch day into its year, month and day of the month, packed as year * 10000 + month * 100 + day, so a date can be
+    *printed without creating a LocalDate.
+    */
+	static int yearMonthDay(long epochDay) {
+		int year = yearOf(epochDay);
+		int dayOfYear = (int) (epochDay - yearStart(year));
+		int leap = isLeapYear(year) ? 1 : 0;
+		int month = 1;
+		while(month < 12 && dayOfYear >= DAYS_BEFORE_MONTH[month] + ((month >= 2) ? leap : 0)) {
+			month++;
+		}
+		int dayOfMonth = dayOfYear - DAYS_BEFORE_MONTH[month - 1] - ((month > 2) ? leap : 0) + 1;
+		return year * 10000 + month * 100 + dayOfMonth;
+	}
+}
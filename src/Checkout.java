@@ -5,40 +5,26 @@
  *
  * Arguments passed on the command line should be passed in the following order: toolcode, days rented, discount.
  *
- * This class is responsible for accepting and validating user input for variables, and then using those variables to generate and return the
- * applicable RentalAgreement.
+ * An order of several tools rented together, sharing one checkout date, number of days and discount, is checked out with
+ * runOrder(), which parses the shared arguments once and prices the whole order as a single RentalOrder with a single receipt.
+ *
+ * This class is responsible for accepting user input, and then using it to generate and return the applicable RentalAgreement. The input is
+ * parsed and validated by CheckoutParser, which reports problems as error codes. A Checkout keeps no state of its own, so one instance may
+ * serve any number of callers at once.
  *
  * @author Iain St. John
  * @version 1.00 2016/3/20
  */
  
-import java.lang.Exception;
 import java.util.Scanner;
-import java.util.Date;
-import java.util.Calendar;
 
 
 
 public class Checkout {
-	//Static variables for a Tool Checkout
-	private String toolCode; //A Tool's unique identifier 
-	private int rentalDayCount; //The number of days a customer rents the Tool.
-	private int discount; //The discount percentage to apply to the checkout of the specified tool.
-	private Date checkoutDate; //The date on which this Checkout is performed
-	
-	static final String KNOWN_TOOL_CODES = "LADW CHNS JAKR JAKD";
-	
 	//default, empty constructor
 	public Checkout() {
 	}
 	
-	//Define RentalDayCountException locally. CheckoutDiscountException was too, initially, but was moved to it's own separate file, since it needed to be defined within the test class.
-	static class RentalDayCountException extends Exception {
-		public RentalDayCountException(String message) {
-			super(message);
-		}
-	}
-	
     /**
      * @param args the command line arguments. Possible legal arguments:
      * @param args[0]  Tool code of the desired tool.
@@ -46,162 +32,127 @@ public class Checkout {
      * @param args[2]  Number of days to rent the tool.
      * @param args[3]  The discount percentage to apply to the transaction.
      * 
+     * @throws CheckoutDiscountException  if the discount given on the command line isn't between 0 and 100.
+     * @throws IllegalArgumentException   if any other argument given on the command line is wrong.
      */
     public RentalAgreement runPOS(String[] args) throws CheckoutDiscountException {
-    	//give initial values to checkout variables
-	   	toolCode = null;
-	   	String dateStr = null;
-    	rentalDayCount = -1;
-    	discount = -1;
+    	//Take the catalog once, so the whole checkout uses one price list even if a new one is installed meanwhile
+    	ToolCatalog catalog = ToolCatalog.getDefault();
+    	CheckoutRequest request = new CheckoutRequest();
     	
-		//Begin parsing command line arguments, if any are present. Only expecting one, the tool code.
+		//Parse the command line arguments, if all four are present. Bad arguments only become exceptions here, at the edge.
 		if(args.length == 4) {
-			if(KNOWN_TOOL_CODES.contains(args[0])) {
-				toolCode = args[0];
-			}
-			else {
-				System.err.println("Argument is not a tool code! Ignoring.");
+			byte error = CheckoutParser.parse(catalog, args, request);
+			if(error == CheckoutParser.BAD_DISCOUNT) {
+				throw new CheckoutDiscountException(CheckoutParser.message(error));
 			}
-			
-			//Parse rental day count
-			try  {
-				rentalDayCount = Integer.parseInt(args[2]);
-				//Ensure that the number entered is greater than 1
-				try {
-					checkRentalDayCount();
-				}
-				catch(RentalDayCountException rdce) {
-					System.err.println("\n" + rdce.getMessage());
-					rentalDayCount = -1;
-				}
+			if(error == CheckoutParser.UNKNOWN_TOOL) {
+				RentalAgreement.lookUpTool(catalog, args[0]); //throws, naming the code
 			}
-			catch(NumberFormatException e) {
-				System.err.println(e.getMessage());
+			if(error != CheckoutParser.OK) {
+				throw new IllegalArgumentException(CheckoutParser.message(error));
 			}
-	
-			//Parse discount percentage	
-			discount = Integer.parseInt(args[3]);
-			checkDiscount();
-			
-			
-			//Parse the date string
-			dateStr = args[1];
-			String parts[] = dateStr.split("/");
-			int mon = Integer.parseInt(parts[0]);
-			int day = Integer.parseInt(parts[1]);
-			int yr = Integer.parseInt(parts[2]);
-			Calendar c = Calendar.getInstance();
-			mon--; //Decrement month, calendars store them as 0 - 11
-			yr+=2000; //year is 20##, not just ##.
-			c.set(Calendar.DATE,day);
-			c.set(Calendar.MONTH,mon);
-			c.set(Calendar.YEAR,yr);
-			checkoutDate = c.getTime();
 		}
 		else {
-			Scanner in = new Scanner(System.in);
-			String input = "";
-			//if there was not a valid tool code on the command line, it will still be null
-			while(toolCode == null) {
-				System.out.print("Please enter tool code now>>>");
-				input = in.next();
-				if(KNOWN_TOOL_CODES.contains(input.trim())){
-					toolCode = input;
-				}
-				else {
-					System.out.println("\nUnrecognized tool code! Please try again.");
-				}
+			readRequest(new Scanner(System.in), catalog, request);
+		}
+		return request.toAgreement(HolidayRules.getDefault());
+    }
+    
+    /**
+     * @param args the command line arguments of a multi-line order:
+     * @param args[0]  The checkout date formated mm/dd/yy
+     * @param args[1]  Number of days to rent every tool.
+     * @param args[2]  The discount percentage to apply to the whole order.
+     * @param args[3]  Tool code of the first tool, followed by the code of each other tool. A code given more than once
+     *                 rents that many of the tool.
+     * 
+     * @throws CheckoutDiscountException  if the discount isn't between 0 and 100.
+     * @throws IllegalArgumentException   if any other argument is wrong, or no tool code is given.
+     */
+    public RentalOrder runOrder(String[] args) throws CheckoutDiscountException {
+    	ToolCatalog catalog = ToolCatalog.getDefault();
+    	OrderRequest request = new OrderRequest();
+		byte error = CheckoutParser.parseOrder(catalog, args, request);
+		if(error == CheckoutParser.BAD_DISCOUNT) {
+			throw new CheckoutDiscountException(CheckoutParser.message(error));
+		}
+		if(error == CheckoutParser.UNKNOWN_TOOL) {
+			for(int i = 3; i < args.length; i++) {
+				RentalAgreement.lookUpTool(catalog, String.valueOf(args[i]).trim()); //throws, naming the first bad code
+			}
+		}
+		if(error != CheckoutParser.OK) {
+			throw new IllegalArgumentException(CheckoutParser.message(error));
+		}
+		return request.toOrder(HolidayRules.getDefault());
+    }
+    
+    /* Prompts for each input in turn, asking again until it is valid. CheckoutParser reports what is wrong with an input as an error
+     * code, and its message is shown before asking again. */
+    private static void readRequest(Scanner in, ToolCatalog catalog, CheckoutRequest request) {
+		String toolCode = null;
+		String input;
+		while(toolCode == null) {
+			System.out.print("Please enter tool code now>>>");
+			input = in.next().trim();
+			if(catalog.contains(input)) {
+				toolCode = input;
 			}
-			
-			//Reaching this point means that a valid tool code has been acquired. Next, get rentalDayCount
-			while(rentalDayCount == -1) {
-				System.out.print("For how many days do you want to rent " + toolCode +"? >>>");
-				input = in.next();
-				//Ensure that the user entered an integer
-				try  {
-					rentalDayCount = Integer.parseInt(input.trim());
-					//Ensure that the number entered is greater than 1
-					try {
-						checkRentalDayCount();
-					}
-					catch(RentalDayCountException rdce) {
-						System.out.println("\n" + rdce.getMessage());
-						rentalDayCount = -1;
-						continue;
-					}
-				}
-				catch(NumberFormatException e) {
-					System.out.println(e.getMessage());
-					continue;
-				}
+			else {
+				System.out.println("\nUnrecognized tool code! Please try again.");
 			}
+		}
 		
-			//Finally, acquire a discount
-			while(discount == -1) {
-				System.out.print("Enter the discount to apply to this transaction as a raw integer between 0 and 100. >>>");
-				input = in.next();
-				//Ensure an integer was entered
-				try {
-					discount = Integer.parseInt(input.trim());
-					try {
-						checkDiscount();
-					}
-					catch(CheckoutDiscountException cde) {
-						System.out.println("\n" + cde.getMessage());
-						discount = -1;
-						continue;
-					}
-				}
-				catch(NumberFormatException ex) {
-					System.out.println(ex.getMessage());
-					continue;
-				}
+		//Reaching this point means that a valid tool code has been acquired. Next, get the number of days to rent
+		String days = null;
+		while(days == null) {
+			System.out.print("For how many days do you want to rent " + toolCode +"? >>>");
+			input = in.next();
+			byte error = validNumber(input, CheckoutParser.DAYS_NOT_A_NUMBER);
+			if(error == CheckoutParser.OK) {
+				error = CheckoutParser.checkDayCount(CheckoutParser.parseInt(input));
 			}
-			
-			while(dateStr == null) {
-				System.out.println("Enter the date of the Checkout as mm/dd/yy >>>");
-				dateStr = in.next();
-				//Parse the date string
-				int mon, day, yr;
-				try {
-					String parts[] = dateStr.split("/");
-					mon = Integer.parseInt(parts[0]);
-					day = Integer.parseInt(parts[1]);
-					yr = Integer.parseInt(parts[2]);
-				}
-				catch(Exception exc) {
-					System.out.println(exc.getMessage());
-					continue;
-				}
-				
-				Calendar c = Calendar.getInstance();
-				mon--; //months from 0 to 11
-				yr += 2000;
-				c.set(yr,mon,day);
-				checkoutDate = c.getTime();
+			if(error == CheckoutParser.OK) {
+				days = input;
 			}
-			in.close();
-		}//End of the else code block
-		return new RentalAgreement(toolCode, checkoutDate, rentalDayCount, discount);
-    }
-    
-    /* The next two private helper methods check the logical contraints on rentalDayCount and discount. A customer cannot rent any given
-     * tool for any less than 1 day, and a discount cannot be lower than 0 percent or higher than 100 percent. If the variable of 
-     * the respective function is valid, it will simply check the truth value of the if statement, skip over the if block, and exit the 
-     * function unceremoniously. If the variable is invalid, however, a correct instance of the local Exceptions defined above will be thrown
-     * and a error message will be printed. Then, the variable will be restored to its initial value set at the beginning of the main function
-     * (-1) so that the while loops for validation keep executing. */
-    
-    private void checkRentalDayCount() throws RentalDayCountException {
-    	if(rentalDayCount < 1) {
-    		throw new RentalDayCountException("Invalid rental day count. Unable to rent a tool for any less than 1 day.");
-    	}
+			else {
+				System.out.println("\n" + CheckoutParser.message(error));
+			}
+		}
+		
+		//Next, acquire a discount
+		String discount = null;
+		while(discount == null) {
+			System.out.print("Enter the discount to apply to this transaction as a raw integer between 0 and 100. >>>");
+			input = in.next();
+			byte error = validNumber(input, CheckoutParser.DISCOUNT_NOT_A_NUMBER);
+			if(error == CheckoutParser.OK) {
+				error = CheckoutParser.checkDiscount(CheckoutParser.parseInt(input));
+			}
+			if(error == CheckoutParser.OK) {
+				discount = input;
+			}
+			else {
+				System.out.println("\n" + CheckoutParser.message(error));
+			}
+		}
+		
+		//Finally, the date. A date that doesn't exist, such as 02/30/16, is rejected rather than rolled over.
+		byte error = CheckoutParser.BAD_DATE;
+		while(error != CheckoutParser.OK) {
+			System.out.println("Enter the date of the Checkout as mm/dd/yy >>>");
+			input = in.next();
+			error = CheckoutParser.parse(catalog, toolCode, input, days, discount, request);
+			if(error != CheckoutParser.OK) {
+				System.out.println(CheckoutParser.message(error));
+			}
+		}
+		in.close();
     }
     
-    private void checkDiscount() throws CheckoutDiscountException {
-    	if(discount < 0 || discount > 100) {
-    		throw new CheckoutDiscountException("Percentages are only in the range of 0 to 100 (0 to 1.0)" +
-    				"The minimum possible discount is 0 (full price), and the maximum is 100 (free)");
-    	}
+    //Returns OK if the input is a whole number, or the given error code if it isn't.
+    private static byte validNumber(String input, byte error) {
+    	return (CheckoutParser.parseInt(input) == CheckoutParser.NOT_A_NUMBER) ? error : CheckoutParser.OK;
     }
 }
@@ -0,0 +1,390 @@
+/**
+ * @(#)CheckoutLogProcessor.java
+ * Replays a log of checkouts, such as the transaction logs of the store terminals, pricing every record and writing out its
+ * rental agreement. Each line of the log is one checkout, with the same four fields runPOS() takes, separated by commas:
+ *
+ *     JAKR,07/02/20,4,50
+ *
+ * that is the tool code, the checkout date as mm/dd/yy, the number of days rented and the discount percentage. Spaces around
+ * fields, blank lines and Windows line endings are allowed.
+ *
+ * The log is read through one large buffer and parsed straight from its bytes, without creating a String per line or field.
+ * Records are priced a few thousand at a time by a BatchPricer, and their agreements are written to the output through another
+ * buffer, each followed by a blank line. A record that can't be priced is written as a line saying why, in its place. The
+ * buffers and the batch are allocated once, so memory use is the same for a log of any size.
+ *
+ * A processor keeps its buffers between runs, so each thread should use its own.
+ *
+ *     java CheckoutLogProcessor <log file> [output file]       writes to standard output if no output file is given
+ *     java CheckoutLogProcessor -generate <records> <log file>  writes a log of random checkouts to replay
+ *
+ * @author Iain St. John
+ * @version 1.00 2026/10/18
+ */
+
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+public final class CheckoutLogProcessor {
+	static final int BUFFER_SIZE = 1 << 20;
+	static final int BATCH_SIZE = 4096;
+	//The output is flushed before writing a record once less than this is left, which is far more than any agreement needs
+	private static final int RECORD_ROOM = 4096;
+	private static final int FAILED = Integer.MIN_VALUE;
+
+	private final BatchPricer pricer;
+	private final ToolCatalog catalog;
+	private final ByteBuffer in;
+	private final ByteBuffer out;
+	private final RentalBatch batch = new RentalBatch(BATCH_SIZE);
+	private final PricingResults results = new PricingResults();
+	private final boolean[] malformed = new boolean[BATCH_SIZE]; //lines of the batch that aren't checkout records
+	private final long[] lineNumbers = new long[BATCH_SIZE];
+	private final ReceiptWriter writer = new ReceiptWriter();
+	private final StringBuilder message = new StringBuilder(80);
+	private final String lineSeparator = System.lineSeparator();
+
+	private int pos; //where parsing has got to in the line being parsed
+	private long records;
+	private long rejected;
+
+   /**Creates a processor.
+    *
+    *@param pricer  prices the records, with its catalog and holidays.
+    */
+	public CheckoutLogProcessor(BatchPricer pricer) {
+		this(pricer, BUFFER_SIZE);
+	}
+
+	//Creates a processor with a smaller input buffer, so that lines spanning two reads can be tested.
+	CheckoutLogProcessor(BatchPricer pricer, int bufferSize) {
+		this.pricer = pricer;
+		catalog = pricer.getCatalog();
+		in = ByteBuffer.allocate(bufferSize);
+		out = ByteBuffer.allocate(Math.max(bufferSize, 2 * RECORD_ROOM));
+	}
+
+   /**Prices every record read from source, writing their agreements to sink. Neither channel is closed.
+    *
+    *@param source  the log to replay.
+    *@param sink    receives the agreements.
+    *@return Report  the number of records, how many were rejected, and how long it took.
+    *@throws IOException  if either channel fails.
+    */
+	public Report process(ReadableByteChannel source, WritableByteChannel sink) throws IOException {
+		long start = System.nanoTime();
+		records = 0;
+		rejected = 0;
+		batch.clear();
+		in.clear();
+		out.clear();
+		byte[] bytes = in.array();
+		long bytesRead = 0;
+		long line = 0;
+		boolean skipping = false; //in the middle of a line too long to fit in the buffer, which has already been rejected
+		boolean eof = false;
+		while(!eof) {
+			int n = source.read(in);
+			if(n < 0) {
+				eof = true;
+			}
+			else {
+				bytesRead += n;
+			}
+			int p = 0;
+			int limit = in.position();
+			while(p < limit) {
+				int end = p;
+				while(end < limit && bytes[end] != '\n') {
+					end++;
+				}
+				if(end == limit && !eof) {
+					break; //the rest of the line hasn't been read yet
+				}
+				if(skipping) {
+					skipping = false;
+				}
+				else {
+					line++;
+					addRecord(bytes, p, end, line, sink);
+				}
+				p = end + 1;
+			}
+			//Keep the unfinished line, moving it to the start of the buffer
+			in.flip().position(Math.min(p, limit));
+			in.compact();
+			if(!in.hasRemaining()) {
+				if(!skipping) {
+					line++;
+					addMalformed(line, sink);
+					skipping = true;
+				}
+				in.clear();
+			}
+		}
+		priceBatch(sink);
+		flush(sink);
+		return new Report(records, rejected, bytesRead, System.nanoTime() - start);
+	}
+
+	//Parses the line held in bytes from through to-1 and adds it to the batch. Blank lines are skipped.
+	private void addRecord(byte[] bytes, int from, int to, long line, WritableByteChannel sink) throws IOException {
+		if(to > from && bytes[to - 1] == '\r') {
+			to--; //a Windows line ending
+		}
+		pos = from;
+		skipSpaces(bytes, to);
+		if(pos == to) {
+			return;
+		}
+		int codeStart = pos;
+		while(pos < to && bytes[pos] != ',' && bytes[pos] != ' ' && bytes[pos] != '\t') {
+			pos++;
+		}
+		int codeEnd = pos;
+		int key = 0; //as packed by ToolCatalog.pack(), 0 if it can't be a tool code
+		if(codeEnd - codeStart == 4) {
+			for(int i = codeStart; i < codeEnd; i++) {
+				int c = bytes[i]; //negative for bytes of 0x80 and up
+				if(c <= ' ' || c > '~') {
+					key = 0;
+					break;
+				}
+				key = (key << 8) | c;
+			}
+		}
+		int month = FAILED;
+		int day = FAILED;
+		int year = FAILED;
+		int days = FAILED;
+		int discount = FAILED;
+		if(field(bytes, to)) {
+			month = readInt(bytes, to, 2, false);
+			if(month != FAILED && expect(bytes, to, '/')) {
+				day = readInt(bytes, to, 2, false);
+				if(day != FAILED && expect(bytes, to, '/')) {
+					year = readInt(bytes, to, 2, false);
+				}
+			}
+		}
+		if(year != FAILED && field(bytes, to)) {
+			days = readInt(bytes, to, 9, true);
+			if(days != FAILED && field(bytes, to)) {
+				discount = readInt(bytes, to, 9, true);
+			}
+		}
+		if(discount != FAILED) {
+			skipSpaces(bytes, to);
+		}
+		year += 2000; //year is 20##, as runPOS() takes it
+		if(discount == FAILED || pos != to || codeStart == codeEnd || month < 1 || month > 12 || day < 1
+				|| day > BusinessDayIndex.daysInMonth(year, month)) {
+			addMalformed(line, sink);
+			return;
+		}
+		int slot = batch.size();
+		malformed[slot] = false;
+		lineNumbers[slot] = line;
+		batch.add(catalog.idOfKey(key), (int) BusinessDayIndex.epochDay(year, month, day), days, discount);
+		records++;
+		if(batch.size() == BATCH_SIZE) {
+			priceBatch(sink);
+		}
+	}
+
+	private void addMalformed(long line, WritableByteChannel sink) throws IOException {
+		int slot = batch.size();
+		malformed[slot] = true;
+		lineNumbers[slot] = line;
+		batch.add(-1, 0, 0, 0);
+		records++;
+		if(batch.size() == BATCH_SIZE) {
+			priceBatch(sink);
+		}
+	}
+
+	//Moves past a comma and the spaces around it. Returns false if there isn't one.
+	private boolean field(byte[] bytes, int to) {
+		skipSpaces(bytes, to);
+		if(!expect(bytes, to, ',')) {
+			return false;
+		}
+		skipSpaces(bytes, to);
+		return true;
+	}
+
+	private boolean expect(byte[] bytes, int to, char c) {
+		if(pos < to && bytes[pos] == c) {
+			pos++;
+			return true;
+		}
+		return false;
+	}
+
+	private void skipSpaces(byte[] bytes, int to) {
+		while(pos < to && (bytes[pos] == ' ' || bytes[pos] == '\t')) {
+			pos++;
+		}
+	}
+
+	//Reads a number of 1 to maxDigits digits, optionally negative. Returns FAILED if there isn't one.
+	private int readInt(byte[] bytes, int to, int maxDigits, boolean signed) {
+		boolean negative = signed && expect(bytes, to, '-');
+		int start = pos;
+		int n = 0;
+		while(pos < to && pos - start < maxDigits && bytes[pos] >= '0' && bytes[pos] <= '9') {
+			n = n * 10 + (bytes[pos++] - '0');
+		}
+		if(pos == start || (pos < to && bytes[pos] >= '0' && bytes[pos] <= '9')) {
+			return FAILED;
+		}
+		return negative ? -n : n;
+	}
+
+	//Prices the records collected so far and writes them out.
+	private void priceBatch(WritableByteChannel sink) throws IOException {
+		pricer.price(batch, results);
+		for(int i = 0; i < batch.size(); i++) {
+			if(out.remaining() < RECORD_ROOM) {
+				flush(sink);
+			}
+			byte status = results.getStatus(i);
+			if(status == PricingResults.OK) {
+				writer.writeTo(catalog.get(batch.getToolIndex(i)), batch, results, i, out);
+			}
+			else {
+				rejected++;
+				message.setLength(0);
+				message.append("Line ").append(lineNumbers[i]).append(": ");
+				if(malformed[i]) {
+					message.append("not a checkout record of tool code, mm/dd/yy, days rented and discount.");
+				}
+				else if(status == PricingResults.UNKNOWN_TOOL) {
+					message.append("tool code not recognized.");
+				}
+				else if(status == PricingResults.BAD_DAY_COUNT) {
+					message.append("unable to rent a tool for any less than 1 day, or more than ").append(CheckoutParser.MAX_DAYS_RENTED)
+						.append('.');
+				}
+				else {
+					message.append("discount is not in the range of 0 to 100.");
+				}
+				putAscii(message);
+			}
+			putAscii(lineSeparator);
+			putAscii(lineSeparator);
+		}
+		batch.clear();
+	}
+
+	private void putAscii(CharSequence s) {
+		for(int i = 0; i < s.length(); i++) {
+			out.put((byte) s.charAt(i));
+		}
+	}
+
+	private void flush(WritableByteChannel sink) throws IOException {
+		out.flip();
+		while(out.hasRemaining()) {
+			sink.write(out);
+		}
+		out.clear();
+	}
+
+   /**The outcome of replaying a log.
+    */
+	public static final class Report {
+		private final long records;
+		private final long rejected;
+		private final long bytes;
+		private final long nanos;
+
+		Report(long records, long rejected, long bytes, long nanos) {
+			this.records = records;
+			this.rejected = rejected;
+			this.bytes = bytes;
+			this.nanos = nanos;
+		}
+
+		//Number of records read, not counting blank lines.
+		public long getRecords() {
+			return records;
+		}
+
+		//Number of records that couldn't be priced.
+		public long getRejected() {
+			return rejected;
+		}
+
+		public long getBytes() {
+			return bytes;
+		}
+
+		public long getNanos() {
+			return nanos;
+		}
+
+		public double getRecordsPerSecond() {
+			return records / Math.max(nanos / 1e9, 1e-9);
+		}
+
+		public String toString() {
+			return String.format("%d records (%d rejected), %.1f MB in %.2f s: %.0f records/sec, %.1f MB/sec",
+				records, rejected, bytes / 1e6, nanos / 1e9, getRecordsPerSecond(), bytes / 1e6 / Math.max(nanos / 1e9, 1e-9));
+		}
+	}
+
+	//Writes a log of random checkouts of the default catalog's tools.
+	static void generate(long count, Path file) throws IOException {
+		ToolCatalog tools = ToolCatalog.getDefault();
+		Random random = new Random(42);
+		try(BufferedWriter log = Files.newBufferedWriter(file, StandardCharsets.US_ASCII)) {
+			StringBuilder sb = new StringBuilder(64);
+			for(long i = 0; i < count; i++) {
+				sb.setLength(0);
+				sb.append(tools.get(random.nextInt(tools.size())).getCode()).append(',');
+				ReceiptWriter.appendDate(sb, BusinessDayIndex.yearStart(2015) + random.nextInt(3650));
+				sb.append(',').append(1 + random.nextInt(90)).append(',').append(random.nextInt(101)).append('\n');
+				log.append(sb);
+			}
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if(args.length == 3 && args[0].equals("-generate")) {
+			generate(Long.parseLong(args[1]), Paths.get(args[2]));
+			return;
+		}
+		if(args.length < 1 || args.length > 2) {
+			System.err.println("Usage: java CheckoutLogProcessor <log file> [output file]");
+			System.err.println("       java CheckoutLogProcessor -generate <records> <log file>");
+			return;
+		}
+		CheckoutLogProcessor processor = new CheckoutLogProcessor(BatchPricer.standard());
+		try(FileChannel source = FileChannel.open(Paths.get(args[0]), StandardOpenOption.READ)) {
+			Report report;
+			if(args.length == 2) {
+				try(FileChannel sink = FileChannel.open(Paths.get(args[1]), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+						StandardOpenOption.TRUNCATE_EXISTING)) {
+					report = processor.process(source, sink);
+				}
+			}
+			else {
+				report = processor.process(source, new FileOutputStream(FileDescriptor.out).getChannel());
+			}
+			System.err.println(report);
+		}
+	}
+}
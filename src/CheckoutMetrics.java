@@ -0,0 +1,398 @@
+/**
+ * @(#)CheckoutMetrics.java
+ * Measures how long each stage of a checkout takes: looking up the tool, parsing the rest of the inputs, working out the due
+ * date, counting the chargeable days, pricing, and writing out the agreement. Each stage has a LatencyHistogram in nanoseconds
+ * for all tools together, and one for each tool code.
+ *
+ * A catalog may have thousands of tools, so the histograms of single tools are coarse ones (LatencyHistogram.COARSE_PRECISION,
+ * within about 12%, 16 KB for a tool's six stages), and only the first toolrental.metrics.maxTools tools checked out (256 by
+ * default) get any. That bounds them at about 4 MB. Checkouts of tools beyond those are still counted for all tools.
+ *
+ * Nothing is measured unless the toolrental.metrics system property is true, or measuring is switched on with setEnabled() or
+ * through JMX. While it is off, each stage costs a read of one volatile boolean and nothing else, so the calls stay in the
+ * checkout path for good and measuring can be switched on in production while a latency problem is looked into.
+ *
+ * The histograms can be read three ways:
+ *   scrape()          -- plain text in the Prometheus format, which QuoteService serves at /metrics.
+ *   registerMBeans()  -- each stage's histogram for all tools becomes an MXBean named toolrental:type=CheckoutStage,stage=<stage>,
+ *                        beside toolrental:type=CheckoutMetrics for switching measuring on and off. Single tools are only in
+ *                        the scrape, so a large catalog doesn't fill the MBean server.
+ *   JDK Flight Recorder -- on Java 11 and later, a stage taking at least toolrental.metrics.jfrThresholdNanos (1 ms by
+ *                        default) is also recorded as a toolrental.CheckoutStage event, whenever a recording has that event
+ *                        enabled. The event type is made by reflection, so the tool rental still runs on Java 8 without it.
+ *
+ * @author Iain St. John
+ * @version 1.00 2026/10/18
+ */
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Constructor;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+public final class CheckoutMetrics {
+	public enum Stage {
+		TOOL_LOOKUP("toolLookup"),
+		PARSE("parse"),
+		DUE_DATE("dueDate"),
+		CHARGEABLE_DAYS("chargeableDays"),
+		PRICING("pricing"),
+		FORMAT("format");
+
+		private final String label;
+
+		Stage(String label) {
+			this.label = label;
+		}
+
+		//The name the stage goes by in the scrape, in JMX and in JFR events.
+		public String getLabel() {
+			return label;
+		}
+	}
+
+	//The quantiles reported by scrape() and JMX
+	private static final double QUANTILES[] = {0.5, 0.9, 0.99, 0.999};
+	private static final Stage STAGES[] = Stage.values();
+	private static final long JFR_THRESHOLD = Long.getLong("toolrental.metrics.jfrThresholdNanos", 1000000L);
+	private static final int MAX_TOOLS = Integer.getInteger("toolrental.metrics.maxTools", 256);
+
+	private static volatile boolean enabled = Boolean.getBoolean("toolrental.metrics");
+	private static final LatencyHistogram ALL_TOOLS[] = newHistograms(LatencyHistogram.PRECISION);
+	private static final ConcurrentHashMap<String, LatencyHistogram[]> BY_TOOL = new ConcurrentHashMap<String, LatencyHistogram[]>();
+	private static boolean registered; //guarded by the class
+
+	private CheckoutMetrics() {
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	public static void setEnabled(boolean on) {
+		enabled = on;
+	}
+
+   /**Marks the start of the first stage to be measured.
+    *
+    *@return long  the time now, to be passed to lap(), or 0 if nothing is being measured.
+    */
+	public static long start() {
+		return enabled ? System.nanoTime() : 0;
+	}
+
+   /**Records a stage as having taken from since until now, against the tool if there is one. Passing the result on to the next
+    *lap() measures the stage after it.
+    *
+    *@param stage  the stage that has just finished.
+    *@param tool   the tool being checked out, or null if it isn't known (an unrecognized tool code, say).
+    *@param since  when the stage began, from start() or the previous lap().
+    *@return long  the time now, or 0 if since was 0 because nothing was being measured.
+    */
+	public static long lap(Stage stage, Tool tool, long since) {
+		if(since == 0) {
+			return 0;
+		}
+		long now = System.nanoTime();
+		record(stage, tool, now - since);
+		return now;
+	}
+
+	static void record(Stage stage, Tool tool, long nanos) {
+		ALL_TOOLS[stage.ordinal()].record(nanos);
+		LatencyHistogram histograms[] = (tool == null) ? null : forTool(tool.getCode());
+		if(histograms != null) {
+			histograms[stage.ordinal()].record(nanos);
+		}
+		if(nanos >= JFR_THRESHOLD && Jfr.AVAILABLE) {
+			Jfr.emit(stage, tool, nanos);
+		}
+	}
+
+	//The latencies of the given stage for all tools.
+	public static LatencyHistogram get(Stage stage) {
+		return ALL_TOOLS[stage.ordinal()];
+	}
+
+	//The latencies of the given stage for one tool. A tool never measured, or past the number tracked, has an empty histogram.
+	public static LatencyHistogram get(Stage stage, String toolCode) {
+		LatencyHistogram histograms[] = BY_TOOL.get(toolCode);
+		return (histograms == null) ? new LatencyHistogram(LatencyHistogram.COARSE_PRECISION) : histograms[stage.ordinal()];
+	}
+
+	//Forgets everything measured so far. The histograms of tools already seen stay, empty.
+	public static void reset() {
+		for(LatencyHistogram histogram : ALL_TOOLS) {
+			histogram.reset();
+		}
+		for(LatencyHistogram histograms[] : BY_TOOL.values()) {
+			for(LatencyHistogram histogram : histograms) {
+				histogram.reset();
+			}
+		}
+	}
+
+	//The tool's histograms, or null if it is past the number of tools tracked. Racing threads may track a few more than that.
+	private static LatencyHistogram[] forTool(String code) {
+		LatencyHistogram histograms[] = BY_TOOL.get(code);
+		if(histograms == null && BY_TOOL.size() < MAX_TOOLS) {
+			histograms = newHistograms(LatencyHistogram.COARSE_PRECISION);
+			LatencyHistogram raced[] = BY_TOOL.putIfAbsent(code, histograms);
+			if(raced != null) {
+				histograms = raced;
+			}
+		}
+		return histograms;
+	}
+
+	//Number of tools with histograms of their own.
+	public static int getToolCount() {
+		return BY_TOOL.size();
+	}
+
+	private static LatencyHistogram[] newHistograms(int precision) {
+		LatencyHistogram histograms[] = new LatencyHistogram[STAGES.length];
+		for(int i = 0; i < histograms.length; i++) {
+			histograms[i] = new LatencyHistogram(precision);
+		}
+		return histograms;
+	}
+
+	//Returns every histogram in the Prometheus text format, as summaries of nanoseconds.
+	public static String scrape() {
+		return appendTo(new StringBuilder(4096)).toString();
+	}
+
+	public static StringBuilder appendTo(StringBuilder sb) {
+		sb.append("# HELP toolrental_metrics_enabled Whether checkout stages are being measured.\n");
+		sb.append("# TYPE toolrental_metrics_enabled gauge\n");
+		sb.append("toolrental_metrics_enabled ").append(enabled ? 1 : 0).append('\n');
+		sb.append("# HELP toolrental_checkout_stage_nanos How long each stage of a checkout took, in nanoseconds.\n");
+		sb.append("# TYPE toolrental_checkout_stage_nanos summary\n");
+		Map<String, LatencyHistogram[]> tools = new TreeMap<String, LatencyHistogram[]>(BY_TOOL);
+		for(Stage stage : STAGES) {
+			appendSummary(sb, stage, null, ALL_TOOLS[stage.ordinal()]);
+			for(Map.Entry<String, LatencyHistogram[]> tool : tools.entrySet()) {
+				appendSummary(sb, stage, tool.getKey(), tool.getValue()[stage.ordinal()]);
+			}
+		}
+		sb.append("# HELP toolrental_checkout_stage_max_nanos The longest each stage of a checkout took, in nanoseconds.\n");
+		sb.append("# TYPE toolrental_checkout_stage_max_nanos gauge\n");
+		for(Stage stage : STAGES) {
+			appendLabels(sb.append("toolrental_checkout_stage_max_nanos"), stage, null, null);
+			sb.append(' ').append(ALL_TOOLS[stage.ordinal()].getMax()).append('\n');
+		}
+		return sb;
+	}
+
+	//A tool's stage that has never been measured is left out, rather than filling the scrape with zeroes.
+	private static void appendSummary(StringBuilder sb, Stage stage, String tool, LatencyHistogram histogram) {
+		long count = histogram.getTotal();
+		if(tool != null && count == 0) {
+			return;
+		}
+		long latencies[] = histogram.percentiles(QUANTILES);
+		for(int i = 0; i < QUANTILES.length; i++) {
+			appendLabels(sb.append("toolrental_checkout_stage_nanos"), stage, tool, Double.toString(QUANTILES[i]));
+			sb.append(' ').append(latencies[i]).append('\n');
+		}
+		appendLabels(sb.append("toolrental_checkout_stage_nanos_sum"), stage, tool, null);
+		sb.append(' ').append(histogram.getSum()).append('\n');
+		appendLabels(sb.append("toolrental_checkout_stage_nanos_count"), stage, tool, null);
+		sb.append(' ').append(count).append('\n');
+	}
+
+	private static void appendLabels(StringBuilder sb, Stage stage, String tool, String quantile) {
+		sb.append("{stage=\"").append(stage.getLabel()).append('"');
+		if(tool != null) {
+			sb.append(",tool=\"");
+			//Tool codes are printable ASCII, of which only these two need escaping in a label
+			for(int i = 0; i < tool.length(); i++) {
+				char c = tool.charAt(i);
+				if(c == '"' || c == '\\') {
+					sb.append('\\');
+				}
+				sb.append(c);
+			}
+			sb.append('"');
+		}
+		if(quantile != null) {
+			sb.append(",quantile=\"").append(quantile).append('"');
+		}
+		sb.append('}');
+	}
+
+	//The stage histograms as seen through JMX. Latencies are in nanoseconds.
+	public interface StageMXBean {
+		String getStage();
+		long getCount();
+		double getMeanNanos();
+		long getP50Nanos();
+		long getP90Nanos();
+		long getP99Nanos();
+		long getP999Nanos();
+		long getMaxNanos();
+	}
+
+	public interface ControlMXBean {
+		boolean isEnabled();
+		void setEnabled(boolean on);
+		void reset();
+	}
+
+	private static final class StageView implements StageMXBean {
+		private final Stage stage;
+		private final LatencyHistogram histogram;
+
+		StageView(Stage stage, LatencyHistogram histogram) {
+			this.stage = stage;
+			this.histogram = histogram;
+		}
+
+		public String getStage() {
+			return stage.getLabel();
+		}
+
+		public long getCount() {
+			return histogram.getTotal();
+		}
+
+		public double getMeanNanos() {
+			return histogram.getMean();
+		}
+
+		public long getP50Nanos() {
+			return histogram.percentile(0.5);
+		}
+
+		public long getP90Nanos() {
+			return histogram.percentile(0.9);
+		}
+
+		public long getP99Nanos() {
+			return histogram.percentile(0.99);
+		}
+
+		public long getP999Nanos() {
+			return histogram.percentile(0.999);
+		}
+
+		public long getMaxNanos() {
+			return histogram.getMax();
+		}
+	}
+
+	private static final class Control implements ControlMXBean {
+		public boolean isEnabled() {
+			return CheckoutMetrics.isEnabled();
+		}
+
+		public void setEnabled(boolean on) {
+			CheckoutMetrics.setEnabled(on);
+		}
+
+		public void reset() {
+			CheckoutMetrics.reset();
+		}
+	}
+
+   /**Registers each stage's histogram for all tools with the platform MBean server, along with a control for switching
+    *measuring on and off. Calling this again does nothing.
+    */
+	public static synchronized void registerMBeans() {
+		if(registered) {
+			return;
+		}
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName control = new ObjectName("toolrental:type=CheckoutMetrics");
+			if(!server.isRegistered(control)) {
+				server.registerMBean(new Control(), control);
+			}
+			for(Stage stage : STAGES) {
+				ObjectName name = new ObjectName("toolrental:type=CheckoutStage,stage=" + stage.getLabel());
+				if(!server.isRegistered(name)) {
+					server.registerMBean(new StageView(stage, ALL_TOOLS[stage.ordinal()]), name);
+				}
+			}
+		}
+		catch(JMException e) {
+			throw new IllegalStateException("Could not register the checkout metrics with JMX", e);
+		}
+		registered = true;
+	}
+
+	//The toolrental.CheckoutStage JFR event, made through jdk.jfr.EventFactory so that nothing here needs Java 11 to compile or run.
+	private static final class Jfr {
+		static final boolean AVAILABLE;
+		private static final MethodHandle NEW_EVENT; //() -> jdk.jfr.Event
+		private static final MethodHandle SET; //(Event, int, Object) -> void
+		private static final MethodHandle SHOULD_COMMIT; //(Event) -> boolean
+		private static final MethodHandle COMMIT; //(Event) -> void
+
+		static {
+			MethodHandle newEvent = null;
+			MethodHandle set = null;
+			MethodHandle shouldCommit = null;
+			MethodHandle commit = null;
+			try {
+				Class<?> event = Class.forName("jdk.jfr.Event");
+				Class<?> factoryClass = Class.forName("jdk.jfr.EventFactory");
+				Constructor<?> annotation = Class.forName("jdk.jfr.AnnotationElement").getConstructor(Class.class, Object.class);
+				Constructor<?> field = Class.forName("jdk.jfr.ValueDescriptor").getConstructor(Class.class, String.class, List.class);
+				Class<?> label = Class.forName("jdk.jfr.Label");
+				List<Object> annotations = Arrays.asList(
+					annotation.newInstance(Class.forName("jdk.jfr.Name"), "toolrental.CheckoutStage"),
+					annotation.newInstance(label, "Checkout Stage"),
+					annotation.newInstance(Class.forName("jdk.jfr.Category"), new String[] {"Tool Rental"}),
+					annotation.newInstance(Class.forName("jdk.jfr.Description"),
+						"A stage of a checkout that took at least toolrental.metrics.jfrThresholdNanos"));
+				//The fields, in the order emit() sets them
+				List<Object> fields = Arrays.asList(
+					field.newInstance(String.class, "stage", Collections.singletonList(annotation.newInstance(label, "Stage"))),
+					field.newInstance(String.class, "tool", Collections.singletonList(annotation.newInstance(label, "Tool Code"))),
+					field.newInstance(long.class, "nanos", Arrays.asList(annotation.newInstance(label, "Time Taken"),
+						annotation.newInstance(Class.forName("jdk.jfr.Timespan"), "NANOSECONDS"))));
+				Object factory = factoryClass.getMethod("create", List.class, List.class).invoke(null, annotations, fields);
+				MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+				newEvent = lookup.findVirtual(factoryClass, "newEvent", MethodType.methodType(event)).bindTo(factory);
+				set = lookup.findVirtual(event, "set", MethodType.methodType(void.class, int.class, Object.class));
+				shouldCommit = lookup.findVirtual(event, "shouldCommit", MethodType.methodType(boolean.class));
+				commit = lookup.findVirtual(event, "commit", MethodType.methodType(void.class));
+			}
+			catch(ReflectiveOperationException | RuntimeException | LinkageError e) {
+				newEvent = null; //no Flight Recorder in this JVM
+			}
+			AVAILABLE = newEvent != null;
+			NEW_EVENT = newEvent;
+			SET = set;
+			SHOULD_COMMIT = shouldCommit;
+			COMMIT = commit;
+		}
+
+		static void emit(Stage stage, Tool tool, long nanos) {
+			try {
+				Object event = NEW_EVENT.invoke();
+				if((boolean) SHOULD_COMMIT.invoke(event)) {
+					SET.invoke(event, 0, stage.getLabel());
+					SET.invoke(event, 1, (tool == null) ? null : tool.getCode());
+					SET.invoke(event, 2, nanos);
+					COMMIT.invoke(event);
+				}
+			}
+			catch(Throwable e) {
+				//A lost event is not worth failing a checkout over
+			}
+		}
+	}
+}
@@ -0,0 +1,267 @@
+/**
+ * @(#)CheckoutParser.java
+ * Parses and validates the inputs of a checkout: a tool code, a checkout date as mm/dd/yy, a number of days to rent and a
+ * discount percentage. Problems are reported as an error code rather than by throwing, so that a burst of bad input costs no
+ * more than good input does, and the result goes into a CheckoutRequest supplied by the caller.
+ *
+ * The inputs of a multi-line order, a checkout date, days rented and discount shared by any number of tool codes, are parsed
+ * in the same way into an OrderRequest.
+ *
+ * Every method is static and keeps nothing between calls, so any number of threads may parse at once, each with its own
+ * CheckoutRequest. Checkout turns the error codes into its exceptions for the callers of runPOS() and runOrder().
+ *
+ * @author Iain St. John
+ * @version 1.00 2026/10/18
+ */
+
+public final class CheckoutParser {
+	//Error codes. The first four are the same as the statuses of PricingResults.
+	public static final byte OK = 0;
+	public static final byte UNKNOWN_TOOL = 1; //no tool in the catalog has the code
+	public static final byte BAD_DAY_COUNT = 2; //less than 1 day, or more than MAX_DAYS_RENTED, rented
+	public static final byte BAD_DISCOUNT = 3; //discount outside of 0 - 100
+	public static final byte BAD_DATE = 4; //not mm/dd/yy, or no such date
+	public static final byte DAYS_NOT_A_NUMBER = 5;
+	public static final byte DISCOUNT_NOT_A_NUMBER = 6;
+	public static final byte WRONG_ARGUMENT_COUNT = 7; //not the four arguments runPOS() takes
+	public static final byte NO_ORDER_LINES = 8; //no tool codes after the three arguments runOrder() starts with
+
+	//The longest rental taken, ten years
+	public static final int MAX_DAYS_RENTED = 3653;
+
+	//Returned by parseInt() and parseDate() for text that isn't a number or date
+	public static final int NOT_A_NUMBER = Integer.MIN_VALUE;
+	public static final long NOT_A_DATE = Long.MIN_VALUE;
+
+	private static final String MESSAGES[] = {
+		"OK",
+		"Unrecognized tool code!",
+		"Invalid rental day count. Unable to rent a tool for any less than 1 day, or more than " + MAX_DAYS_RENTED + ".",
+		"Percentages are only in the range of 0 to 100 (0 to 1.0)" +
+			"The minimum possible discount is 0 (full price), and the maximum is 100 (free)",
+		"The checkout date must be a date formatted mm/dd/yy.",
+		"The number of days to rent must be a whole number.",
+		"The discount must be a whole number.",
+		"Expected four arguments: tool code, checkout date, days rented and discount.",
+		"Expected a checkout date, days rented and discount, followed by at least one tool code."
+	};
+
+	private CheckoutParser() {
+	}
+
+   /**Parses the four arguments runPOS() takes, in the order it takes them: tool code, checkout date, days rented and discount.
+    *
+    *@param catalog  the tools that may be rented.
+    *@param args     the arguments.
+    *@param out      receives the request if it is valid.
+    *@return byte    OK, or the error code of the first argument that is wrong.
+    */
+	public static byte parse(ToolCatalog catalog, String[] args, CheckoutRequest out) {
+		if(args.length != 4) {
+			return WRONG_ARGUMENT_COUNT;
+		}
+		return parse(catalog, args[0], args[1], args[2], args[3], out);
+	}
+
+   /**Parses and validates the inputs of a checkout. They are checked in the order runPOS() always has: tool code, days rented,
+    *discount and then date.
+    *
+    *@return byte  OK, or the error code of the first input that is wrong. out is only filled in if the inputs are valid.
+    */
+	public static byte parse(ToolCatalog catalog, String toolCode, CharSequence date, CharSequence days, CharSequence discount,
+			CheckoutRequest out) {
+		long started = CheckoutMetrics.start();
+		int toolId = (toolCode == null) ? -1 : catalog.idOf(toolCode.trim());
+		Tool tool = (toolId < 0) ? null : catalog.get(toolId);
+		long looked = CheckoutMetrics.lap(CheckoutMetrics.Stage.TOOL_LOOKUP, tool, started);
+		if(tool == null) {
+			return UNKNOWN_TOOL;
+		}
+		byte error = parseInputs(tool, date, days, discount, out);
+		CheckoutMetrics.lap(CheckoutMetrics.Stage.PARSE, tool, looked);
+		return error;
+	}
+
+   /**Parses the arguments runOrder() takes: checkout date, days rented and discount, followed by the code of each tool in the
+    *order. A code given more than once rents that many of the tool. The shared inputs are parsed once, and each line costs
+    *only its catalog lookup. They are checked in the order runPOS() checks them: tool codes, days rented, discount and date.
+    *
+    *@param catalog  the tools that may be rented.
+    *@param args     the arguments.
+    *@param out      receives the order if it is valid.
+    *@return byte    OK, or the error code of the first argument that is wrong.
+    */
+	public static byte parseOrder(ToolCatalog catalog, String[] args, OrderRequest out) {
+		if(args.length < 4) {
+			return NO_ORDER_LINES;
+		}
+		out.clear();
+		for(int i = 3; i < args.length; i++) {
+			int toolId = (args[i] == null) ? -1 : catalog.idOf(args[i].trim());
+			if(toolId < 0) {
+				return UNKNOWN_TOOL;
+			}
+			out.add(catalog.get(toolId));
+		}
+		int daysRented = parseInt(args[1]);
+		if(daysRented == NOT_A_NUMBER) {
+			return DAYS_NOT_A_NUMBER;
+		}
+		byte error = checkDayCount(daysRented);
+		if(error != OK) {
+			return error;
+		}
+		int discountPerc = parseInt(args[2]);
+		if(discountPerc == NOT_A_NUMBER) {
+			return DISCOUNT_NOT_A_NUMBER;
+		}
+		error = checkDiscount(discountPerc);
+		if(error != OK) {
+			return error;
+		}
+		long checkoutDay = parseDate(args[0]);
+		if(checkoutDay == NOT_A_DATE) {
+			return BAD_DATE;
+		}
+		out.checkoutDay = checkoutDay;
+		out.daysRented = daysRented;
+		out.discountPerc = discountPerc;
+		return OK;
+	}
+
+	//Parses and validates the inputs after the tool code, once the tool is known.
+	private static byte parseInputs(Tool tool, CharSequence date, CharSequence days, CharSequence discount, CheckoutRequest out) {
+		int daysRented = parseInt(days);
+		if(daysRented == NOT_A_NUMBER) {
+			return DAYS_NOT_A_NUMBER;
+		}
+		byte error = checkDayCount(daysRented);
+		if(error != OK) {
+			return error;
+		}
+		int discountPerc = parseInt(discount);
+		if(discountPerc == NOT_A_NUMBER) {
+			return DISCOUNT_NOT_A_NUMBER;
+		}
+		error = checkDiscount(discountPerc);
+		if(error != OK) {
+			return error;
+		}
+		long checkoutDay = parseDate(date);
+		if(checkoutDay == NOT_A_DATE) {
+			return BAD_DATE;
+		}
+		out.tool = tool;
+		out.checkoutDay = checkoutDay;
+		out.daysRented = daysRented;
+		out.discountPerc = discountPerc;
+		return OK;
+	}
+
+	//A customer cannot rent any given tool for any less than 1 day, or for longer than MAX_DAYS_RENTED.
+	public static byte checkDayCount(int days) {
+		return (days < 1 || days > MAX_DAYS_RENTED) ? BAD_DAY_COUNT : OK;
+	}
+
+	//A discount cannot be lower than 0 percent or higher than 100 percent.
+	public static byte checkDiscount(int discountPerc) {
+		return (discountPerc < 0 || discountPerc > 100) ? BAD_DISCOUNT : OK;
+	}
+
+   /**Parses a whole number, which may be negative and may have spaces around it.
+    *
+    *@return int  the number, or NOT_A_NUMBER if the text isn't one or doesn't fit in an int.
+    */
+	public static int parseInt(CharSequence s) {
+		if(s == null) {
+			return NOT_A_NUMBER;
+		}
+		int end = s.length();
+		while(end > 0 && s.charAt(end - 1) == ' ') {
+			end--;
+		}
+		int i = 0;
+		while(i < end && s.charAt(i) == ' ') {
+			i++;
+		}
+		boolean negative = i < end && s.charAt(i) == '-';
+		if(negative || (i < end && s.charAt(i) == '+')) {
+			i++;
+		}
+		if(i == end) {
+			return NOT_A_NUMBER;
+		}
+		long n = 0;
+		for(; i < end; i++) {
+			char c = s.charAt(i);
+			if(c < '0' || c > '9') {
+				return NOT_A_NUMBER;
+			}
+			n = n * 10 + (c - '0');
+			if(n > Integer.MAX_VALUE) {
+				return NOT_A_NUMBER; //the one int this rejects, Integer.MIN_VALUE, is never a valid count or discount
+			}
+		}
+		return (int) (negative ? -n : n);
+	}
+
+   /**Parses a date written as mm/dd/yy in the years 2000 - 2099, where the month and day may also be one digit. Spaces around
+    *the date are allowed.
+    *
+    *@return long  the date as an epoch day, or NOT_A_DATE if the text isn't such a date or the date doesn't exist, such as
+    *              02/30/16.
+    */
+	public static long parseDate(CharSequence s) {
+		if(s == null) {
+			return NOT_A_DATE;
+		}
+		int end = s.length();
+		while(end > 0 && s.charAt(end - 1) == ' ') {
+			end--;
+		}
+		int i = 0;
+		while(i < end && s.charAt(i) == ' ') {
+			i++;
+		}
+		int month = 0;
+		int day = 0;
+		int year = 0;
+		for(int field = 0; field < 3; field++) {
+			int start = i;
+			int n = 0;
+			while(i < end && i - start < 2 && s.charAt(i) >= '0' && s.charAt(i) <= '9') {
+				n = n * 10 + (s.charAt(i++) - '0');
+			}
+			if(i == start) {
+				return NOT_A_DATE;
+			}
+			if(field == 0) {
+				month = n;
+			}
+			else if(field == 1) {
+				day = n;
+			}
+			else {
+				year = n + 2000; //year is 20##, not just ##.
+			}
+			if(field < 2) {
+				if(i == end || s.charAt(i) != '/') {
+					return NOT_A_DATE;
+				}
+				i++;
+			}
+		}
+		if(i != end) {
+			return NOT_A_DATE;
+		}
+		if(month < 1 || month > 12 || day < 1 || day > BusinessDayIndex.daysInMonth(year, month)) {
+			return NOT_A_DATE;
+		}
+		return BusinessDayIndex.epochDay(year, month, day);
+	}
+
+	//A message describing an error code, worded as Checkout has always reported it.
+	public static String message(byte error) {
+		return (error >= 0 && error < MESSAGES.length) ? MESSAGES[error] : "Unknown error " + error;
+	}
+}
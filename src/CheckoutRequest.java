@@ -0,0 +1,46 @@
+/**
+ * @(#)CheckoutRequest.java
+ * The parsed and validated inputs of one checkout: the tool, the checkout date as an epoch day, the number of days rented and
+ * the discount percentage. CheckoutParser fills one in, and it can then be priced as a RentalAgreement.
+ *
+ * A request is meant to be reused by one thread for checkout after checkout, so parsing doesn't allocate. It holds nothing
+ * until CheckoutParser reports that it parsed successfully.
+ *
+ * @author Iain St. John
+ * @version 1.00 2026/10/18
+ */
+
+import java.time.LocalDate;
+
+public final class CheckoutRequest {
+	Tool tool;
+	long checkoutDay;
+	int daysRented;
+	int discountPerc;
+
+	public Tool getTool() {
+		return tool;
+	}
+
+	//The checkout date as an epoch day.
+	public long getCheckoutDay() {
+		return checkoutDay;
+	}
+
+	public LocalDate getCheckoutDate() {
+		return LocalDate.ofEpochDay(checkoutDay);
+	}
+
+	public int getDaysRented() {
+		return daysRented;
+	}
+
+	public int getDiscountPercent() {
+		return discountPerc;
+	}
+
+	//Prices the request.
+	public RentalAgreement toAgreement(HolidayRules rules) {
+		return new RentalAgreement(tool, getCheckoutDate(), daysRented, discountPerc, rules);
+	}
+}
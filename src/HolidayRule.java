@@ -0,0 +1,125 @@
+/**
+ * @(#)HolidayRule.java
+ * A single holiday, described by when it falls in any given year. A rule is one of:
+ * fixed    -- a fixed date, e.g. July 4th.
+ * nth      -- the nth given weekday of a month, e.g. the first Monday of September.
+ * last     -- the last given weekday of a month, e.g. the last Monday of May.
+ * Any rule may also be observed on the nearest weekday, meaning a Saturday holiday is observed the Friday before and a Sunday
+ * holiday the Monday after.
+ *
+ * Rules are only evaluated while a year of a HolidayRules set is being compiled, never while pricing a rental.
+ *
+ * @author Iain St. John
+ * @version 1.00 2026/10/18
+ */
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+
+public final class HolidayRule {
+	public enum Kind { FIXED, NTH_WEEKDAY, LAST_WEEKDAY }
+
+	private final String name;
+	private final Kind kind;
+	private final int month; //1 - 12
+	private final int dayOfMonth; //FIXED only
+	private final DayOfWeek dayOfWeek; //NTH_WEEKDAY and LAST_WEEKDAY only
+	private final int nth; //NTH_WEEKDAY only, 1 - 5
+	private final boolean observed;
+
+	private HolidayRule(String name, Kind kind, int month, int dayOfMonth, DayOfWeek dayOfWeek, int nth, boolean observed) {
+		this.name = name;
+		this.kind = kind;
+		this.month = month;
+		this.dayOfMonth = dayOfMonth;
+		this.dayOfWeek = dayOfWeek;
+		this.nth = nth;
+		this.observed = observed;
+	}
+
+	public static HolidayRule fixed(String name, int month, int dayOfMonth, boolean observed) {
+		LocalDate.of(2000, month, dayOfMonth); //leap year, so this only rejects dates that never exist
+		return new HolidayRule(name, Kind.FIXED, month, dayOfMonth, null, 0, observed);
+	}
+
+	public static HolidayRule nthWeekday(String name, int nth, DayOfWeek dayOfWeek, int month, boolean observed) {
+		if(nth < 1 || nth > 5) {
+			throw new IllegalArgumentException("A month only has a 1st through 5th " + dayOfWeek + ", not a " + nth + ".");
+		}
+		LocalDate.of(2000, month, 1);
+		return new HolidayRule(name, Kind.NTH_WEEKDAY, month, 0, dayOfWeek, nth, observed);
+	}
+
+	public static HolidayRule lastWeekday(String name, DayOfWeek dayOfWeek, int month, boolean observed) {
+		LocalDate.of(2000, month, 1);
+		return new HolidayRule(name, Kind.LAST_WEEKDAY, month, 0, dayOfWeek, 0, observed);
+	}
+
+   /**Returns the epoch day on which this holiday is observed in the given year, or Long.MIN_VALUE if it does not occur that
+    *year (a 5th weekday the month doesn't have, or February 29th outside a leap year). An observed holiday may land in the
+    *year before or after, when a January 1st falls on a Saturday for example.
+    *
+    *@param year  the year whose holiday is wanted.
+    *@return long  the observed date as an epoch day.
+    */
+	public long observedDay(int year) {
+		LocalDate date;
+		LocalDate first = LocalDate.of(year, month, 1);
+		switch(kind) {
+			case FIXED:
+				if(dayOfMonth > first.lengthOfMonth()) {
+					return Long.MIN_VALUE;
+				}
+				date = first.withDayOfMonth(dayOfMonth);
+				break;
+			case NTH_WEEKDAY:
+				date = first.with(TemporalAdjusters.dayOfWeekInMonth(nth, dayOfWeek));
+				if(date.getMonthValue() != month) {
+					return Long.MIN_VALUE;
+				}
+				break;
+			default:
+				date = first.with(TemporalAdjusters.lastInMonth(dayOfWeek));
+				break;
+		}
+		if(observed) {
+			if(date.getDayOfWeek() == DayOfWeek.SATURDAY) {
+				date = date.minusDays(1);
+			}
+			else if(date.getDayOfWeek() == DayOfWeek.SUNDAY) {
+				date = date.plusDays(1);
+			}
+		}
+		return date.toEpochDay();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	public boolean isObserved() {
+		return observed;
+	}
+
+	//Returns the rule in the same form it is written in a holiday file.
+	public String toString() {
+		String s = name + " = ";
+		switch(kind) {
+			case FIXED:
+				s += "fixed " + month + " " + dayOfMonth;
+				break;
+			case NTH_WEEKDAY:
+				s += "nth " + nth + " " + dayOfWeek + " " + month;
+				break;
+			default:
+				s += "last " + dayOfWeek + " " + month;
+				break;
+		}
+		return observed ? s + " observed" : s;
+	}
+}
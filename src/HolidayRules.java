@@ -0,0 +1,215 @@
+/**
+ * @(#)HolidayRules.java
+ * A named set of HolidayRule, such as the holidays observed by one region's stores. A set is compiled one year at a time into
+ * a BusinessDayIndex the first time that year is priced, so the number of rules has no effect on the cost of a checkout.
+ *
+ * Rule sets may be read from a plain text file, one holiday per line, in the form
+ *     name = fixed MONTH DAY [observed]
+ *     name = nth N WEEKDAY MONTH [observed]
+ *     name = last WEEKDAY MONTH [observed]
+ * where WEEKDAY is a day name such as MONDAY, and MONTH is 1 - 12. Blank lines and lines starting with # are ignored.
+ *
+ * The default set is the two holidays this store has always observed, Independence Day and Labor Day, unless the
+ * toolrental.holidays system property names a rule file to use instead.
+ *
+ * @author Iain St. John
+ * @version 1.00 2026/10/18
+ */
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.DayOfWeek;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+public final class HolidayRules {
+	private static final int FIRST_RECENT_YEAR = 1900;
+	private static final int RECENT_YEARS = 500;
+
+	private final String name;
+	private final List<HolidayRule> rules;
+	//The years of this set compiled so far, from 1900 through 2399. That takes in the whole 400 year cycle BusinessDayIndex
+	//counts long ranges with, so no range needs a year outside it kept. Other years are compiled each time they are asked for.
+	private final AtomicReferenceArray<BusinessDayIndex> recentYears = new AtomicReferenceArray<BusinessDayIndex>(RECENT_YEARS);
+	//cycleDaysBefore[h][i] = chargeable days of the cycle's years before year 2000 + i, without (h = 0) or with holidays exempt
+	private volatile int[][] cycleDaysBefore;
+
+	public HolidayRules(String name, List<HolidayRule> rules) {
+		this.name = name;
+		this.rules = Collections.unmodifiableList(new ArrayList<HolidayRule>(rules));
+	}
+
+	//Lazily loads the default rule set the first time it is used.
+	private static class DefaultHolder {
+		static final HolidayRules DEFAULT = loadDefault();
+	}
+
+   /**Returns the rule set used by every RentalAgreement that isn't given one. This is the file named by the
+    *toolrental.holidays system property if it is set, and Independence Day and Labor Day otherwise.
+    */
+	public static HolidayRules getDefault() {
+		return DefaultHolder.DEFAULT;
+	}
+
+	//Independence Day (July 4th, observed on the nearest weekday) and Labor Day (the first Monday of September).
+	public static HolidayRules unitedStates() {
+		return new HolidayRules("US", Arrays.asList(
+			HolidayRule.fixed("Independence Day", 7, 4, true),
+			HolidayRule.nthWeekday("Labor Day", 1, DayOfWeek.MONDAY, 9, false)));
+	}
+
+	private static HolidayRules loadDefault() {
+		String file = System.getProperty("toolrental.holidays");
+		if(file == null) {
+			return unitedStates();
+		}
+		try {
+			return load(Paths.get(file));
+		}
+		catch(IOException e) {
+			throw new IllegalStateException("Unable to load holidays from " + file + ": " + e.getMessage(), e);
+		}
+	}
+
+   /**Reads a rule set from a holiday file. The set is named after the file.
+    *
+    *@param file  the holiday file to read.
+    *@return HolidayRules  the rules in the file.
+    *@throws IOException  if the file can't be read, or a line of it isn't a valid rule.
+    */
+	public static HolidayRules load(Path file) throws IOException {
+		String fileName = file.getFileName().toString();
+		int dot = fileName.lastIndexOf('.');
+		return parse(dot > 0 ? fileName.substring(0, dot) : fileName, Files.readAllLines(file, StandardCharsets.UTF_8));
+	}
+
+   /**Parses the lines of a holiday file into a rule set.
+    *
+    *@param name   the name to give the set.
+    *@param lines  the lines of the file.
+    *@return HolidayRules  the rules described by the lines.
+    *@throws IOException  if a line isn't a valid rule. The message gives the line number.
+    */
+	public static HolidayRules parse(String name, List<String> lines) throws IOException {
+		List<HolidayRule> rules = new ArrayList<HolidayRule>();
+		int lineNumber = 0;
+		for(String line : lines) {
+			lineNumber++;
+			line = line.trim();
+			if(line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			try {
+				rules.add(parseRule(line));
+			}
+			catch(RuntimeException e) {
+				throw new IOException("Line " + lineNumber + " is not a valid holiday rule (" + e.getMessage() + "): " + line, e);
+			}
+		}
+		return new HolidayRules(name, rules);
+	}
+
+	private static HolidayRule parseRule(String line) {
+		int eq = line.indexOf('=');
+		if(eq < 1) {
+			throw new IllegalArgumentException("expected name = rule");
+		}
+		String holiday = line.substring(0, eq).trim();
+		String parts[] = line.substring(eq + 1).trim().split("\\s+");
+		int n = parts.length;
+		boolean observed = parts[n - 1].equalsIgnoreCase("observed");
+		if(observed) {
+			n--;
+		}
+		String kind = parts[0].toLowerCase(Locale.ROOT);
+		if(kind.equals("fixed") && n == 3) {
+			return HolidayRule.fixed(holiday, Integer.parseInt(parts[1]), Integer.parseInt(parts[2]), observed);
+		}
+		else if(kind.equals("nth") && n == 4) {
+			return HolidayRule.nthWeekday(holiday, Integer.parseInt(parts[1]), weekday(parts[2]), Integer.parseInt(parts[3]), observed);
+		}
+		else if(kind.equals("last") && n == 3) {
+			return HolidayRule.lastWeekday(holiday, weekday(parts[1]), Integer.parseInt(parts[2]), observed);
+		}
+		throw new IllegalArgumentException("expected fixed, nth or last followed by its fields");
+	}
+
+	private static DayOfWeek weekday(String s) {
+		return DayOfWeek.valueOf(s.toUpperCase(Locale.ROOT));
+	}
+
+   /**Returns the compiled index of the given year for this rule set, compiling it if this is the first time the year has been
+    *asked for. Years before 1900 or after 2399 aren't kept, and are compiled again each time.
+    */
+	public BusinessDayIndex forYear(int year) {
+		int slot = year - FIRST_RECENT_YEAR;
+		if(slot >= 0 && slot < RECENT_YEARS) {
+			BusinessDayIndex index = recentYears.get(slot);
+			if(index == null) {
+				index = compile(year);
+				recentYears.set(slot, index);
+			}
+			return index;
+		}
+		return compile(year);
+	}
+
+	private BusinessDayIndex compile(int year) {
+		return new BusinessDayIndex(year, this);
+	}
+
+   /**Returns the running counts of chargeable days over the 400 year cycle from 2000, one for each year and one for the whole
+    *cycle, working them out the first time they are needed. Two threads may both work them out, with the same result.
+    */
+	int[] cycleDaysBefore(boolean holidaysExempt) {
+		int[][] counts = cycleDaysBefore;
+		if(counts == null) {
+			counts = new int[2][BusinessDayIndex.CYCLE_YEARS + 1];
+			for(int i = 0; i < BusinessDayIndex.CYCLE_YEARS; i++) {
+				BusinessDayIndex index = forYear(BusinessDayIndex.CYCLE_FIRST_YEAR + i);
+				long first = index.getFirstDay();
+				long last = first + index.getLength() - 1;
+				counts[0][i + 1] = counts[0][i] + index.chargeableDays(first, last, false);
+				counts[1][i + 1] = counts[1][i] + index.chargeableDays(first, last, true);
+			}
+			cycleDaysBefore = counts;
+		}
+		return counts[holidaysExempt ? 1 : 0];
+	}
+
+   /**Evaluates every rule for the years on either side of the given one as well, since an observed holiday can move across
+    *New Year's. Returns the epoch days of the holidays observed within the given year.
+    */
+	long[] observedDays(int year, long firstDay, long lastDay) {
+		long days[] = new long[rules.size() * 3];
+		int count = 0;
+		for(HolidayRule rule : rules) {
+			for(int y = year - 1; y <= year + 1; y++) {
+				long day = rule.observedDay(y);
+				if(day >= firstDay && day <= lastDay) {
+					days[count++] = day;
+				}
+			}
+		}
+		return Arrays.copyOf(days, count);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public List<HolidayRule> getRules() {
+		return rules;
+	}
+
+	public String toString() {
+		return name + " " + rules;
+	}
+}
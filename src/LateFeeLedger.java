@@ -0,0 +1,416 @@
+/**
+ * @(#)LateFeeLedger.java
+ * Keeps the late fees of every open RentalAgreement, by its number in the AgreementJournal. A tool returned after its due date
+ * is charged its daily charge for each chargeable day it was late, the days after the due date through the day it came back,
+ * counted under the same weekend and holiday rules as its rental period. A fee is never discounted.
+ *
+ * accrueThrough() is the nightly job. It brings every open agreement's accrued fee up to date without re-pricing any of them:
+ *   - Tools fall into three classes by what they are charged for: every day, weekdays, or weekdays that aren't holidays. For
+ *     each class the ledger keeps a running count of chargeable days since it was started, one entry per day.
+ *   - An overdue agreement remembers the count of its class as of its due date, so its fee is its daily charge times how far
+ *     the count has moved on since.
+ *   - Each class also keeps the sum of the daily charges of its overdue agreements, and the sum of each one's daily charge
+ *     times its starting count. The fees of all of them together are then the current count times the first sum, less the
+ *     second.
+ * A night's run therefore costs a few lookups for each new day, plus one step for each agreement falling due that day, however
+ * many agreements are already overdue. Agreements not yet due wait in a bucket for their due date.
+ *
+ * What has accrued is kept in memory only, and is rebuilt by opening the journal's agreements again. Which of them have come
+ * back can't be told from the journal, so a ledger may be given a returns file: each checkIn() appends the agreement's number
+ * and return date to it, 12 bytes big-endian, and forces it to disk before returning the fee. A ledger made later over the
+ * same file knows those agreements are back, and open() skips them. A crash can leave a partly written return at the end of
+ * the file; it is cut off when the file is next opened, as the fee for it was never given out.
+ *
+ * Every method is synchronized, so the nightly job and the returns desk may share one.
+ *
+ *     java LateFeeLedger <journal file> <mm/dd/yy> <nights>   opens every agreement in a journal not recorded as returned in
+ *                                                             <journal file>.returns as of a date, and accrues fees
+ *
+ * @author Iain St. John
+ * @version 1.00 2026/10/18
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public final class LateFeeLedger implements Closeable {
+	//The states of an agreement number
+	private static final byte UNKNOWN = 0; //never opened
+	private static final byte NOT_DUE = 1; //open, waiting in the bucket for the day after its due date
+	private static final byte OVERDUE = 2; //open and past its due date
+	private static final byte RETURNED = 3;
+
+	//Classes of tool, by what they are charged for
+	private static final int EVERY_DAY = 0;
+	private static final int WEEKDAYS = 1;
+	private static final int WORKING_DAYS = 2; //weekdays that aren't holidays
+	private static final int CLASSES = 3;
+
+	//A return in the returns file: long agreement number, int epoch day it came back
+	private static final int RETURN_SIZE = 12;
+
+	private final HolidayRules rules;
+	private final long firstDay; //the day the counts start from
+	private long lastDay; //the day fees have been accrued through
+
+	//counts[class][d] is the number of chargeable days of the class from the day after firstDay through firstDay + d
+	private final int[][] counts = new int[CLASSES][];
+	private final long[] overdueRate = new long[CLASSES]; //sum of the daily charges of the overdue agreements of each class
+	private final long[] overdueStart = new long[CLASSES]; //sum of their daily charges times their starting counts
+	private int overdue;
+	private int open;
+
+	//Columns indexed by agreement number
+	private byte[] state = new byte[1024];
+	private byte[] toolClass = new byte[1024];
+	private long[] dailyCharge = new long[1024];
+	private int[] dueDay = new int[1024];
+	private int[] start = new int[1024]; //the count of the agreement's class when it fell due; may be below 0 if opened late
+
+	private final Map<Integer, Bucket> dueOn = new HashMap<Integer, Bucket>();
+	private final Path returnsFile; //null if returns are kept in memory only
+	private final FileChannel returns;
+	private int returnCount;
+
+	//The agreements due on one day that haven't been reached yet
+	private static final class Bucket {
+		int[] numbers = new int[4];
+		int size;
+
+		void add(int number) {
+			if(size == numbers.length) {
+				numbers = Arrays.copyOf(numbers, size * 2);
+			}
+			numbers[size++] = number;
+		}
+	}
+
+   /**Creates an empty ledger with fees accrued through the given day.
+    *
+    *@param asOf   the day fees have been accrued through, usually the last day the store was open.
+    *@param rules  the holidays that tools exempt from holiday charges are not charged on.
+    */
+	public LateFeeLedger(LocalDate asOf, HolidayRules rules) {
+		this.rules = rules;
+		firstDay = asOf.toEpochDay();
+		lastDay = firstDay;
+		for(int c = 0; c < CLASSES; c++) {
+			counts[c] = new int[64];
+		}
+		returnsFile = null;
+		returns = null;
+	}
+
+   /**Creates an empty ledger with fees accrued through the given day, which records returns in a file. The agreements the
+    *file already holds are taken as returned.
+    *
+    *@param asOf     the day fees have been accrued through, usually the last day the store was open.
+    *@param rules    the holidays that tools exempt from holiday charges are not charged on.
+    *@param returns  the returns file, created if there isn't one.
+    *@throws IOException  if the file can't be read, or holds an agreement number out of range.
+    */
+	public LateFeeLedger(LocalDate asOf, HolidayRules rules, Path returns) throws IOException {
+		this.rules = rules;
+		firstDay = asOf.toEpochDay();
+		lastDay = firstDay;
+		for(int c = 0; c < CLASSES; c++) {
+			counts[c] = new int[64];
+		}
+		returnsFile = returns;
+		this.returns = FileChannel.open(returns, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+		try {
+			long size = this.returns.size();
+			long whole = size - size % RETURN_SIZE;
+			ByteBuffer buffer = ByteBuffer.allocate(RETURN_SIZE * 1024);
+			for(long at = 0; at < whole; ) {
+				buffer.clear();
+				buffer.limit((int) Math.min(buffer.capacity(), whole - at));
+				while(buffer.hasRemaining()) {
+					if(this.returns.read(buffer, at + buffer.position()) < 0) {
+						throw new IOException(returns + " was cut short while it was read.");
+					}
+				}
+				buffer.flip();
+				while(buffer.hasRemaining()) {
+					long number = buffer.getLong();
+					buffer.getInt();
+					if(number < 0 || number > Integer.MAX_VALUE - 8) {
+						throw new IOException(returns + " holds agreement number " + number + ", which is out of range.");
+					}
+					ensureCapacity((int) number);
+					if(state[(int) number] != RETURNED) {
+						state[(int) number] = RETURNED;
+						returnCount++;
+					}
+				}
+				at += buffer.limit();
+			}
+			if(whole < size) {
+				this.returns.truncate(whole);
+				this.returns.force(true);
+			}
+			this.returns.position(whole);
+		}
+		catch(IOException e) {
+			this.returns.close();
+			throw e;
+		}
+	}
+
+	//The late fee for a rental returned on the given day, as if nothing had been accrued.
+	public static long lateFee(RentalAgreement agreement, LocalDate returned, HolidayRules rules) {
+		Tool tool = agreement.getTool();
+		return lateFee(agreement.getDailyChargeCents(), tool.isWeekendExempt(), tool.isHolidayExempt(), agreement.getDueDay(),
+			returned.toEpochDay(), rules);
+	}
+
+	private static long lateFee(long daily, boolean weekendsExempt, boolean holidaysExempt, long due, long returned,
+			HolidayRules rules) {
+		if(returned <= due) {
+			return 0;
+		}
+		return daily * ChargeableDayCounter.count(rules, due, (int) (returned - due), weekendsExempt, holidaysExempt);
+	}
+
+	private static int classOf(Tool tool) {
+		if(!tool.isWeekendExempt()) {
+			return EVERY_DAY;
+		}
+		return tool.isHolidayExempt() ? WORKING_DAYS : WEEKDAYS;
+	}
+
+	//The count of a class through the given day, which must be from firstDay through lastDay.
+	private int count(int c, long day) {
+		return counts[c][(int) (day - firstDay)];
+	}
+
+   /**Starts accruing late fees for an agreement. An agreement already overdue starts with the fees it has run up through the
+    *last day accrued.
+    *
+    *@param number     the agreement's number in the journal.
+    *@param agreement  the agreement.
+    *@return boolean   true if it was opened, false if it has already been returned.
+    *@throws IllegalArgumentException  if the agreement is open already.
+    */
+	public synchronized boolean open(long number, RentalAgreement agreement) {
+		if(number < 0 || number > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("Agreement number " + number + " is out of range.");
+		}
+		int n = (int) number;
+		ensureCapacity(n);
+		if(state[n] == RETURNED) {
+			return false;
+		}
+		if(state[n] != UNKNOWN) {
+			throw new IllegalArgumentException("Agreement " + number + " has already been opened.");
+		}
+		Tool tool = agreement.getTool();
+		int c = classOf(tool);
+		toolClass[n] = (byte) c;
+		dailyCharge[n] = agreement.getDailyChargeCents();
+		dueDay[n] = (int) agreement.getDueDay();
+		open++;
+		if(dueDay[n] >= lastDay) {
+			state[n] = NOT_DUE;
+			Bucket bucket = dueOn.get(dueDay[n]);
+			if(bucket == null) {
+				bucket = new Bucket();
+				dueOn.put(dueDay[n], bucket);
+			}
+			bucket.add(n);
+		}
+		else {
+			//Start the agreement as far behind the current count as it has been chargeable days late
+			int late = ChargeableDayCounter.count(rules, dueDay[n], (int) (lastDay - dueDay[n]), tool.isWeekendExempt(),
+				tool.isHolidayExempt());
+			startOverdue(n, count(c, lastDay) - late);
+		}
+		return true;
+	}
+
+	private void ensureCapacity(int n) {
+		if(n >= state.length) {
+			int size = Math.max(n + 1, state.length * 2);
+			state = Arrays.copyOf(state, size);
+			toolClass = Arrays.copyOf(toolClass, size);
+			dailyCharge = Arrays.copyOf(dailyCharge, size);
+			dueDay = Arrays.copyOf(dueDay, size);
+			start = Arrays.copyOf(start, size);
+		}
+	}
+
+	private void startOverdue(int n, int startCount) {
+		int c = toolClass[n];
+		state[n] = OVERDUE;
+		start[n] = startCount;
+		overdueRate[c] += dailyCharge[n];
+		overdueStart[c] += dailyCharge[n] * startCount;
+		overdue++;
+	}
+
+   /**The nightly job. Accrues fees for every day after the last one accrued, through the given day.
+    *
+    *@param day  the day to accrue through. A day already accrued through does nothing.
+    *@return int  the number of agreements that fell overdue.
+    */
+	public synchronized int accrueThrough(LocalDate day) {
+		long through = day.toEpochDay();
+		int fellDue = 0;
+		if(through - firstDay >= Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("Can't accrue through " + day + ", too long after " + LocalDate.ofEpochDay(firstDay));
+		}
+		for(long d = lastDay + 1; d <= through; d++) {
+			int i = (int) (d - firstDay);
+			if(i >= counts[0].length) {
+				for(int c = 0; c < CLASSES; c++) {
+					counts[c] = Arrays.copyOf(counts[c], counts[c].length * 2);
+				}
+			}
+			//Whether day d itself is chargeable, for each class
+			counts[EVERY_DAY][i] = counts[EVERY_DAY][i - 1] + 1;
+			counts[WEEKDAYS][i] = counts[WEEKDAYS][i - 1] + ChargeableDayCounter.count(rules, d - 1, 1, true, false);
+			counts[WORKING_DAYS][i] = counts[WORKING_DAYS][i - 1] + ChargeableDayCounter.count(rules, d - 1, 1, true, true);
+			lastDay = d;
+			//Agreements due the day before start accruing today
+			Bucket bucket = dueOn.remove((int) (d - 1));
+			if(bucket != null) {
+				for(int b = 0; b < bucket.size; b++) {
+					int n = bucket.numbers[b];
+					if(state[n] == NOT_DUE) {
+						startOverdue(n, count(toolClass[n], d - 1));
+						fellDue++;
+					}
+				}
+			}
+		}
+		return fellDue;
+	}
+
+   /**Checks an agreement's tool back in, and stops accruing fees for it. A ledger with a returns file has the return on disk
+    *before this returns.
+    *
+    *@param number    the agreement's number in the journal.
+    *@param returned  the day the tool came back.
+    *@return long     the late fee owed, in cents. This is worked out afresh for the return date, which may be after the last
+    *                 day accrued.
+    *@throws IllegalArgumentException  if the agreement isn't open.
+    *@throws IOException  if the return can't be written to the returns file. The agreement is left open.
+    */
+	public synchronized long checkIn(long number, LocalDate returned) throws IOException {
+		int n = openNumber(number);
+		if(returns != null) {
+			ByteBuffer record = ByteBuffer.allocate(RETURN_SIZE);
+			record.putLong(number).putInt((int) returned.toEpochDay()).flip();
+			if(!returns.isOpen()) {
+				throw new IOException("The returns file " + returnsFile + " is closed.");
+			}
+			while(record.hasRemaining()) {
+				returns.write(record);
+			}
+			returns.force(false);
+		}
+		int c = toolClass[n];
+		if(state[n] == OVERDUE) {
+			overdueRate[c] -= dailyCharge[n];
+			overdueStart[c] -= dailyCharge[n] * start[n];
+			overdue--;
+		}
+		state[n] = RETURNED; //left in its bucket, if it is still in one, and skipped when its due date comes
+		open--;
+		returnCount++;
+		return lateFee(dailyCharge[n], c != EVERY_DAY, c == WORKING_DAYS, dueDay[n], returned.toEpochDay(), rules);
+	}
+
+	//The fee an open agreement has accrued through the last day accrued, in cents.
+	public synchronized long accruedFee(long number) {
+		int n = openNumber(number);
+		if(state[n] != OVERDUE) {
+			return 0;
+		}
+		return dailyCharge[n] * (count(toolClass[n], lastDay) - start[n]);
+	}
+
+	private int openNumber(long number) {
+		if(number < 0 || number >= state.length || (state[(int) number] != NOT_DUE && state[(int) number] != OVERDUE)) {
+			throw new IllegalArgumentException("Agreement " + number + " is not open.");
+		}
+		return (int) number;
+	}
+
+	//The fees accrued by every open agreement through the last day accrued, in cents.
+	public synchronized long getAccruedFees() {
+		long total = 0;
+		for(int c = 0; c < CLASSES; c++) {
+			total += count(c, lastDay) * overdueRate[c] - overdueStart[c];
+		}
+		return total;
+	}
+
+	public synchronized int getOverdueCount() {
+		return overdue;
+	}
+
+	public synchronized int getOpenCount() {
+		return open;
+	}
+
+	//Number of agreements returned, including those in the returns file when the ledger was made.
+	public synchronized int getReturnedCount() {
+		return returnCount;
+	}
+
+	//The day fees have been accrued through.
+	public synchronized LocalDate getLastAccrued() {
+		return LocalDate.ofEpochDay(lastDay);
+	}
+
+	//Closes the returns file, if there is one.
+	public synchronized void close() throws IOException {
+		if(returns != null) {
+			returns.close();
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if(args.length < 3) {
+			System.err.println("Usage: java LateFeeLedger <journal file> <mm/dd/yy> <nights>");
+			return;
+		}
+		long day = CheckoutParser.parseDate(args[1]);
+		if(day == CheckoutParser.NOT_A_DATE) {
+			System.err.println(CheckoutParser.message(CheckoutParser.BAD_DATE));
+			return;
+		}
+		int nights = Integer.parseInt(args[2]);
+		try(AgreementJournal journal = new AgreementJournal(Paths.get(args[0]));
+				LateFeeLedger ledger = new LateFeeLedger(LocalDate.ofEpochDay(day), HolidayRules.getDefault(),
+					Paths.get(args[0] + ".returns"))) {
+			long start = System.nanoTime();
+			for(long n = 0; n < journal.size(); n++) {
+				ledger.open(n, journal.get(n));
+			}
+			System.out.printf("Opened %d agreements as of %s in %.0f ms, %d already returned, %d overdue with %s accrued.%n",
+				ledger.getOpenCount(), args[1], (System.nanoTime() - start) / 1e6, ledger.getReturnedCount(),
+				ledger.getOverdueCount(), Money.format(ledger.getAccruedFees()));
+			for(int night = 1; night <= nights; night++) {
+				LocalDate through = LocalDate.ofEpochDay(day + night);
+				start = System.nanoTime();
+				int fellDue = ledger.accrueThrough(through);
+				long micros = (System.nanoTime() - start) / 1000;
+				StringBuilder line = ReceiptWriter.appendDate(new StringBuilder(80), through);
+				line.append(": ").append(fellDue).append(" fell due, ").append(ledger.getOverdueCount()).append(" overdue, ");
+				Money.appendTo(line, ledger.getAccruedFees()).append(" accrued, in ").append(micros).append(" us");
+				System.out.println(line);
+			}
+		}
+	}
+}
@@ -0,0 +1,157 @@
+/**
+ * @(#)LatencyHistogram.java
+ * Counts latencies in buckets about 3% wide, in the manner of an HDR histogram: one bucket per unit up to 64, then 32 buckets
+ * for each doubling, up to 2^43 units (over two hours in nanoseconds), with anything longer counted in the last bucket. A
+ * percentile is therefore never off by more than about 3%, however long the latencies, and the histogram never grows. It takes
+ * 1248 buckets, about 10 KB.
+ *
+ * Where many histograms are kept, a coarser one may be made with fewer buckets to each doubling. With 8 (COARSE_PRECISION) a
+ * percentile is within about 12%, in 328 buckets, about 2.6 KB.
+ *
+ * Recording takes no lock, so any number of threads may record into one histogram while another reads it. A reading taken
+ * while latencies are being recorded may leave out the few recorded during it.
+ *
+ * @author Iain St. John
+ * @version 1.00 2026/10/18
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public final class LatencyHistogram {
+	static final int MAX_MAGNITUDE = 42; //the highest power of two with buckets of its own
+	//Buckets to each doubling are 2^precision
+	static final int PRECISION = 5;
+	static final int COARSE_PRECISION = 3;
+	static final int BUCKETS = buckets(PRECISION);
+
+	private final int precision;
+	private final AtomicLongArray counts;
+	private final LongAdder total = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	//A histogram with buckets about 3% wide.
+	public LatencyHistogram() {
+		this(PRECISION);
+	}
+
+	//A histogram with 2^precision buckets to each doubling, from 1 (buckets about 50% wide) to 5 (about 3% wide).
+	public LatencyHistogram(int precision) {
+		if(precision < 1 || precision > PRECISION) {
+			throw new IllegalArgumentException("A histogram has 2 to 32 buckets to each doubling, not 2^" + precision + ".");
+		}
+		this.precision = precision;
+		counts = new AtomicLongArray(buckets(precision));
+	}
+
+	//The number of buckets of a histogram of the given precision.
+	static int buckets(int precision) {
+		return (2 << precision) + (MAX_MAGNITUDE - precision) * (1 << precision);
+	}
+
+	//Counts a latency. Negative latencies, which a clock stepping backwards can give, count as 0.
+	public void record(long latency) {
+		latency = Math.max(latency, 0);
+		counts.incrementAndGet(bucket(latency, precision));
+		total.increment();
+		sum.add(latency);
+		long highest = max.get();
+		while(latency > highest && !max.compareAndSet(highest, latency)) {
+			highest = max.get();
+		}
+	}
+
+	static int bucket(long latency) {
+		return bucket(latency, PRECISION);
+	}
+
+	static int bucket(long latency, int precision) {
+		int linear = 2 << precision; //one bucket per unit below this, 64 at the default precision
+		if(latency < linear) {
+			return (int) latency;
+		}
+		int magnitude = 63 - Long.numberOfLeadingZeros(latency);
+		if(magnitude > MAX_MAGNITUDE) {
+			return buckets(precision) - 1;
+		}
+		int top = (int) (latency >>> (magnitude - precision)); //32 - 63 at the default precision
+		return linear + (magnitude - precision - 1) * (1 << precision) + top - (1 << precision);
+	}
+
+	//The smallest latency counted in the given bucket.
+	static long lowestIn(int bucket) {
+		return lowestIn(bucket, PRECISION);
+	}
+
+	static long lowestIn(int bucket, int precision) {
+		int linear = 2 << precision;
+		if(bucket < linear) {
+			return bucket;
+		}
+		int magnitude = precision + 1 + (bucket - linear) / (1 << precision);
+		long top = (1 << precision) + (bucket - linear) % (1 << precision);
+		return top << (magnitude - precision);
+	}
+
+	//Number of latencies recorded.
+	public long getTotal() {
+		return total.sum();
+	}
+
+	//Sum of the latencies recorded.
+	public long getSum() {
+		return sum.sum();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public double getMean() {
+		long n = getTotal();
+		return (n == 0) ? 0 : getSum() / (double) n;
+	}
+
+	//The latency that the given fraction of latencies were within, to the width of a bucket.
+	public long percentile(double fraction) {
+		return percentiles(fraction)[0];
+	}
+
+	//As above, for each of the given fractions, all from the same reading of the histogram.
+	public long[] percentiles(double... fractions) {
+		int buckets = counts.length();
+		long[] snapshot = new long[buckets];
+		long n = 0;
+		for(int i = 0; i < buckets; i++) {
+			snapshot[i] = counts.get(i);
+			n += snapshot[i];
+		}
+		long highest = max.get();
+		long[] latencies = new long[fractions.length];
+		for(int f = 0; f < fractions.length; f++) {
+			long rank = (long) Math.ceil(fractions[f] * n);
+			long seen = 0;
+			latencies[f] = highest;
+			for(int i = 0; i < buckets; i++) {
+				seen += snapshot[i];
+				if(seen >= rank && seen > 0) {
+					latencies[f] = (i == buckets - 1) ? highest : Math.min(lowestIn(i + 1, precision) - 1, highest);
+					break;
+				}
+			}
+		}
+		return latencies;
+	}
+
+	//Forgets every latency recorded. Latencies recorded while it runs may or may not be forgotten.
+	public void reset() {
+		for(int i = 0; i < counts.length(); i++) {
+			counts.set(i, 0);
+		}
+		total.reset();
+		sum.reset();
+		max.set(0);
+	}
+}
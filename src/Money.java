@@ -0,0 +1,100 @@
+/**
+ * @(#)Money.java
+ * Static helpers for amounts of money held as a primitive long number of cents. All pricing is done in whole cents, so totals
+ * are exact no matter how many amounts are added together, and nothing is boxed or turned into a BigDecimal along the way.
+ * Wherever a fraction of a cent comes up, the caller says how it should be rounded.
+ *
+ * @author Iain St. John
+ * @version 1.00 2026/10/18
+ */
+
+import java.math.RoundingMode;
+
+public final class Money {
+
+	private Money() {
+	}
+
+   /**Divides two whole numbers, rounding the quotient as requested. Supports every RoundingMode except UNNECESSARY, which
+    *throws an ArithmeticException when the division isn't exact.
+    *
+    *@param dividend  the number to divide.
+    *@param divisor   the number to divide by. Must be positive.
+    *@param mode      how to round a quotient that isn't whole.
+    *@return long     the rounded quotient.
+    */
+	public static long divide(long dividend, long divisor, RoundingMode mode) {
+		long quotient = dividend / divisor; //rounded toward zero
+		long remainder = dividend % divisor;
+		if(remainder == 0) {
+			return quotient;
+		}
+		int sign = (dividend < 0) ? -1 : 1;
+		boolean awayFromZero;
+		switch(mode) {
+			case DOWN:
+				awayFromZero = false;
+				break;
+			case UP:
+				awayFromZero = true;
+				break;
+			case FLOOR:
+				awayFromZero = (sign < 0);
+				break;
+			case CEILING:
+				awayFromZero = (sign > 0);
+				break;
+			case UNNECESSARY:
+				throw new ArithmeticException(dividend + " / " + divisor + " is not exact.");
+			default:
+				//compare twice the remainder against the divisor to see which side of the half the quotient lies on
+				long twice = 2 * Math.abs(remainder);
+				if(twice != divisor) {
+					awayFromZero = (twice > divisor);
+				}
+				else if(mode == RoundingMode.HALF_UP) {
+					awayFromZero = true;
+				}
+				else if(mode == RoundingMode.HALF_DOWN) {
+					awayFromZero = false;
+				}
+				else {
+					awayFromZero = (quotient & 1) != 0; //HALF_EVEN
+				}
+				break;
+		}
+		return awayFromZero ? quotient + sign : quotient;
+	}
+
+   /**Returns the given percentage of an amount, rounded to a whole cent as requested.
+    *
+    *@param cents    the amount, in cents.
+    *@param percent  the percentage of the amount wanted, 0 to 100.
+    *@param mode     how to round a fraction of a cent.
+    *@return long    the percentage of the amount, in cents.
+    */
+	public static long percentOf(long cents, int percent, RoundingMode mode) {
+		return divide(cents * percent, 100, mode);
+	}
+
+	/*Returns the amount formatted as dollars and cents, e.g. $1,234.50 is written as $1234.50, the same as String.format("$%.2f")
+	 *for any amount that isn't negative. A negative amount is written with the sign first, as -$0.99, where String.format would
+	 *write $-0.99. No charge on an agreement is ever negative. */
+	public static String format(long cents) {
+		return appendTo(new StringBuilder(12), cents).toString();
+	}
+
+	//Appends the amount to the given builder in the same form as format(), and returns the builder.
+	public static StringBuilder appendTo(StringBuilder sb, long cents) {
+		if(cents < 0) {
+			sb.append('-');
+			cents = -cents;
+		}
+		sb.append('$').append(cents / 100).append('.');
+		long c = cents % 100;
+		if(c < 10) {
+			sb.append('0');
+		}
+		return sb.append(c);
+	}
+}
@@ -0,0 +1,315 @@
+/**
+ * @(#)OpenAgreementStore.java
+ * Keeps the open rental agreements out of the Java heap, so that a store with millions of tools out on rent doesn't give the
+ * garbage collector millions of long-lived objects to trace. A RentalAgreement is an object with two LocalDates and
+ * references to its Tool and strings, about 160 bytes of heap, all of which the collector must visit on every old
+ * generation collection. Here each agreement is a fixed-width slot of 56 bytes in direct buffers, which the collector never
+ * looks inside:
+ *     4 bytes   tool, by its number in the store's tool table
+ *     4 bytes   checkout date, as an epoch day
+ *     4 bytes   days rented
+ *     4 bytes   chargeable days
+ *     8 bytes   base charge in cents
+ *     8 bytes   amount taken off by promotions in cents
+ *     8 bytes   discount amount in cents
+ *     8 bytes   final charge in cents
+ *     1 byte    discount percentage
+ *     1 byte    1 if the slot holds an open agreement
+ *     6 bytes   unused
+ * The due date is the checkout date plus the days rented, so it isn't stored. Strings are replaced by a ToolTable, which
+ * holds each distinct Tool once.
+ *
+ * Slots are numbered from 0, and are handed out again once their agreement is closed. Closed slots are chained through their
+ * tool fields, so the free list takes no heap either. The buffers are allocated a chunk of slots at a time, as they are needed.
+ *
+ * A View reads a slot in place, as AgreementMessage reads a message, so reading an open agreement creates no objects until
+ * toAgreement() is asked for. Opening and closing agreements is synchronized. A View may read any slot at any time, but reads
+ * of a slot being closed at that moment may see the agreement in part.
+ *
+ *     java OpenAgreementStore <agreements> <heap|offheap> [seconds]   compares heap used and GC pauses with the agreements held
+ *
+ * @author Iain St. John
+ * @version 1.00 2026/10/18
+ */
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+public final class OpenAgreementStore {
+	static final int SLOT_SIZE = 56;
+	static final int DEFAULT_CHUNK_SLOTS = 1 << 16; //3.5 MB of slots at a time
+	private static final int NO_SLOT = -1;
+
+	private final int chunkSlots;
+	private final int chunkShift;
+	private volatile ByteBuffer[] chunks = new ByteBuffer[16];
+	private int chunkCount;
+	private int used; //slots ever handed out; those from here on have never been used
+	private int freeSlot = NO_SLOT; //the first of the closed slots
+	private int open;
+
+	private final ToolTable tools = new ToolTable();
+
+	public OpenAgreementStore() {
+		this(DEFAULT_CHUNK_SLOTS);
+	}
+
+	//A store allocating the given number of slots at a time, which must be a power of 2.
+	OpenAgreementStore(int chunkSlots) {
+		if(Integer.bitCount(chunkSlots) != 1) {
+			throw new IllegalArgumentException("Slots are allocated a power of 2 at a time, not " + chunkSlots + ".");
+		}
+		this.chunkSlots = chunkSlots;
+		chunkShift = Integer.numberOfTrailingZeros(chunkSlots);
+	}
+
+   /**Stores an open agreement.
+    *
+    *@param agreement  the agreement.
+    *@return int  the slot it is stored in, which names it until it is closed.
+    *@throws IllegalStateException  if the store is full, at Integer.MAX_VALUE slots.
+    */
+	public synchronized int open(RentalAgreement agreement) {
+		int slot = freeSlot;
+		if(slot != NO_SLOT) {
+			freeSlot = chunk(slot).getInt(offset(slot));
+		}
+		else {
+			if(used == Integer.MAX_VALUE) {
+				throw new IllegalStateException("The store is full.");
+			}
+			slot = used++;
+			if(slot >> chunkShift == chunkCount) {
+				if(chunkCount == chunks.length) {
+					chunks = Arrays.copyOf(chunks, chunkCount * 2);
+				}
+				chunks[chunkCount++] = ByteBuffer.allocateDirect(chunkSlots * SLOT_SIZE);
+			}
+		}
+		ByteBuffer chunk = chunk(slot);
+		int at = offset(slot);
+		chunk.putInt(at, tools.numberOf(agreement.getTool()));
+		chunk.putInt(at + 4, (int) agreement.getCheckoutDay());
+		chunk.putInt(at + 8, agreement.getDaysRented());
+		chunk.putInt(at + 12, agreement.getChargeableDays());
+		chunk.putLong(at + 16, agreement.getBaseChargeCents());
+		chunk.putLong(at + 24, agreement.getPromotionAmountCents());
+		chunk.putLong(at + 32, agreement.getDiscountAmountCents());
+		chunk.putLong(at + 40, agreement.getFinalChargeCents());
+		chunk.put(at + 48, (byte) agreement.getDiscountPercent());
+		chunk.put(at + 49, (byte) 1);
+		open++;
+		return slot;
+	}
+
+   /**Closes an agreement, when its tool comes back, and frees its slot for another.
+    *
+    *@param slot  the agreement's slot.
+    *@throws IllegalArgumentException  if the slot holds no open agreement.
+    */
+	public synchronized void close(int slot) {
+		checkOpen(slot);
+		ByteBuffer chunk = chunk(slot);
+		int at = offset(slot);
+		chunk.put(at + 49, (byte) 0);
+		chunk.putInt(at, freeSlot);
+		freeSlot = slot;
+		open--;
+	}
+
+	private void checkOpen(int slot) {
+		if(!isOpen(slot)) {
+			throw new IllegalArgumentException("Slot " + slot + " holds no open agreement.");
+		}
+	}
+
+	//True if the slot holds an open agreement.
+	public boolean isOpen(int slot) {
+		ByteBuffer[] c = chunks;
+		return slot >= 0 && slot >> chunkShift < c.length && c[slot >> chunkShift] != null
+			&& c[slot >> chunkShift].get(offset(slot) + 49) == 1;
+	}
+
+	private ByteBuffer chunk(int slot) {
+		return chunks[slot >> chunkShift];
+	}
+
+	private int offset(int slot) {
+		return (slot & (chunkSlots - 1)) * SLOT_SIZE;
+	}
+
+	//The number of open agreements.
+	public synchronized int size() {
+		return open;
+	}
+
+	//The bytes allocated outside the heap for slots.
+	public synchronized long getOffHeapBytes() {
+		return (long) chunkCount * chunkSlots * SLOT_SIZE;
+	}
+
+	//A view for reading slots, to be kept and reused by one thread.
+	public View newView() {
+		return new View();
+	}
+
+	//Reads the agreement in one slot at a time, in place.
+	public final class View {
+		private ByteBuffer chunk;
+		private int at;
+
+		private View() {
+		}
+
+	   /**Moves the view to a slot.
+	    *
+	    *@param slot  the slot to read.
+	    *@return View  this view.
+	    *@throws IllegalArgumentException  if the slot holds no open agreement.
+	    */
+		public View of(int slot) {
+			checkOpen(slot);
+			chunk = chunk(slot);
+			at = offset(slot);
+			return this;
+		}
+
+		public Tool getTool() {
+			return tools.get(chunk.getInt(at));
+		}
+
+		public long getCheckoutDay() {
+			return chunk.getInt(at + 4);
+		}
+
+		public long getDueDay() {
+			return getCheckoutDay() + getDaysRented();
+		}
+
+		public int getDaysRented() {
+			return chunk.getInt(at + 8);
+		}
+
+		public int getChargeableDays() {
+			return chunk.getInt(at + 12);
+		}
+
+		public long getBaseChargeCents() {
+			return chunk.getLong(at + 16);
+		}
+
+		public long getPromotionAmountCents() {
+			return chunk.getLong(at + 24);
+		}
+
+		public long getDiscountAmountCents() {
+			return chunk.getLong(at + 32);
+		}
+
+		public long getFinalChargeCents() {
+			return chunk.getLong(at + 40);
+		}
+
+		public int getDiscountPercent() {
+			return chunk.get(at + 48);
+		}
+
+		//Makes a RentalAgreement on the heap of the agreement in the slot.
+		public RentalAgreement toAgreement() {
+			return new RentalAgreement(getTool(), getCheckoutDay(), getDaysRented(), getDiscountPercent(), getChargeableDays(),
+				getBaseChargeCents(), getPromotionAmountCents(), getDiscountAmountCents(), getFinalChargeCents());
+		}
+
+		//Appends the text of the agreement in the slot, as its toString() would be.
+		public StringBuilder appendTo(StringBuilder sb) {
+			return ReceiptWriter.appendTo(sb, getTool(), getCheckoutDay(), getDueDay(), getDaysRented(), getDiscountPercent(),
+				getBaseChargeCents(), getPromotionAmountCents(), getDiscountAmountCents(), getFinalChargeCents());
+		}
+	}
+
+	public static void main(String[] args) {
+		if(args.length < 2 || !(args[1].equals("heap") || args[1].equals("offheap"))) {
+			System.err.println("Usage: java OpenAgreementStore <agreements> <heap|offheap> [seconds]");
+			return;
+		}
+		int count = Integer.parseInt(args[0]);
+		boolean offHeap = args[1].equals("offheap");
+		int seconds = (args.length > 2) ? Integer.parseInt(args[2]) : 10;
+		ToolCatalog catalog = ToolCatalog.standard();
+		HolidayRules rules = HolidayRules.getDefault();
+		LocalDate first = LocalDate.of(2020, 1, 1);
+
+		//Price a year's worth of each tool and length once, and keep copies of them, so filling doesn't take minutes
+		RentalAgreement[] priced = new RentalAgreement[catalog.size() * 366 * 14];
+		for(int i = 0; i < priced.length; i++) {
+			priced[i] = new RentalAgreement(catalog.get(i % catalog.size()), first.plusDays(i / catalog.size() % 366), 1 + i % 14, 10,
+				rules);
+		}
+		long start = System.nanoTime();
+		RentalAgreement[] heap = offHeap ? null : new RentalAgreement[count];
+		OpenAgreementStore store = offHeap ? new OpenAgreementStore() : null;
+		for(int i = 0; i < count; i++) {
+			RentalAgreement p = priced[i % priced.length];
+			RentalAgreement agreement = new RentalAgreement(p.getTool(), p.getCheckoutDay(), p.getDaysRented(), p.getDiscountPercent(),
+				p.getChargeableDays(), p.getBaseChargeCents(), p.getPromotionAmountCents(), p.getDiscountAmountCents(),
+				p.getFinalChargeCents());
+			if(offHeap) {
+				store.open(agreement);
+			}
+			else {
+				heap[i] = agreement;
+			}
+		}
+		System.out.printf("Held %d open agreements %s in %.1f s.%n", count, offHeap ? "off the heap" : "on the heap",
+			(System.nanoTime() - start) / 1e9);
+
+		long fullGc = System.nanoTime();
+		System.gc();
+		fullGc = System.nanoTime() - fullGc;
+		Runtime runtime = Runtime.getRuntime();
+		long heapUsed = runtime.totalMemory() - runtime.freeMemory();
+		System.out.printf("Heap used after a full GC: %d MB. Off the heap: %d MB. The full GC took %.0f ms.%n", heapUsed >> 20,
+			offHeap ? store.getOffHeapBytes() >> 20 : 0, fullGc / 1e6);
+
+		//Checkouts churning short-lived objects, as terminals do, while the agreements are held
+		List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+		long[] counts = new long[collectors.size()];
+		long[] times = new long[collectors.size()];
+		for(int c = 0; c < counts.length; c++) {
+			counts[c] = collectors.get(c).getCollectionCount();
+			times[c] = collectors.get(c).getCollectionTime();
+		}
+		Checkout checkout = new Checkout();
+		String[] checkoutArgs = {"JAKR", "07/02/20", "4", "50"};
+		LatencyHistogram latencies = new LatencyHistogram();
+		long checkouts = 0;
+		long end = System.nanoTime() + seconds * 1000000000L;
+		long sum = 0;
+		for(long now = System.nanoTime(); now < end; checkouts++) {
+			try {
+				sum += checkout.runPOS(checkoutArgs).toString().length();
+			}
+			catch(CheckoutDiscountException e) {
+				throw new AssertionError(e);
+			}
+			long after = System.nanoTime();
+			latencies.record(after - now);
+			now = after;
+		}
+		System.out.printf("%d checkouts in %d s, p50 %d ns, p99.9 %d ns, max %d ns (%d).%n", checkouts, seconds,
+			latencies.percentile(0.5), latencies.percentile(0.999), latencies.percentile(1.0), sum % 10);
+		for(int c = 0; c < counts.length; c++) {
+			GarbageCollectorMXBean collector = collectors.get(c);
+			long n = collector.getCollectionCount() - counts[c];
+			long ms = collector.getCollectionTime() - times[c];
+			System.out.printf("  %s: %d collections, %d ms%s%n", collector.getName(), n, ms,
+				(n == 0) ? "" : String.format(", %.2f ms each", (double) ms / n));
+		}
+		//Keep what is held reachable until the end
+		System.out.println((offHeap ? store.size() : heap.length) + " agreements still open.");
+	}
+}
@@ -0,0 +1,107 @@
+/**
+ * @(#)OrderRequest.java
+ * The parsed and validated inputs of a multi-line order: one checkout date, number of days rented and discount percentage
+ * shared by every line, and the tools rented, each once per line with the number of them rented. CheckoutParser fills one in,
+ * and it can then be priced as a RentalOrder.
+ *
+ * Lines keep the catalog's own Tool instances, so a large order holds no more than an array slot per line. A tool added more
+ * than once goes on one line with a larger quantity. Like a CheckoutRequest, a request is meant to be reused by one thread for
+ * order after order, so parsing doesn't allocate once its arrays have grown to the size of the orders seen.
+ *
+ * @author Iain St. John
+ * @version 1.00 2026/10/18
+ */
+
+import java.time.LocalDate;
+
+public final class OrderRequest {
+	long checkoutDay;
+	int daysRented;
+	int discountPerc;
+
+	//The lines, in the order their tools were first added
+	Tool[] tools = new Tool[8];
+	int[] quantity = new int[8];
+	int lines;
+
+	//The line of each tool, by its catalog id. Only trusted if that line really holds the tool, so it never needs clearing.
+	private int[] lineOfId = new int[64];
+
+	//Empties the request, ready for the next order.
+	void clear() {
+		lines = 0;
+	}
+
+	//Adds one of a tool to the order, on the line the tool is already on if there is one.
+	void add(Tool tool) {
+		int id = tool.getId();
+		if(id >= 0 && id < lineOfId.length) {
+			int line = lineOfId[id];
+			if(line < lines && tools[line] == tool) {
+				quantity[line]++;
+				return;
+			}
+		}
+		else if(id >= 0) {
+			int[] grown = new int[Math.max(id + 1, lineOfId.length * 2)];
+			System.arraycopy(lineOfId, 0, grown, 0, lineOfId.length);
+			lineOfId = grown;
+		}
+		else {
+			for(int line = 0; line < lines; line++) { //a tool not from a catalog, which has no id to find its line by
+				if(tools[line] == tool) {
+					quantity[line]++;
+					return;
+				}
+			}
+		}
+		if(lines == tools.length) {
+			Tool[] grownTools = new Tool[lines * 2];
+			int[] grownQuantity = new int[lines * 2];
+			System.arraycopy(tools, 0, grownTools, 0, lines);
+			System.arraycopy(quantity, 0, grownQuantity, 0, lines);
+			tools = grownTools;
+			quantity = grownQuantity;
+		}
+		if(id >= 0) {
+			lineOfId[id] = lines;
+		}
+		tools[lines] = tool;
+		quantity[lines] = 1;
+		lines++;
+	}
+
+	//The checkout date as an epoch day.
+	public long getCheckoutDay() {
+		return checkoutDay;
+	}
+
+	public LocalDate getCheckoutDate() {
+		return LocalDate.ofEpochDay(checkoutDay);
+	}
+
+	public int getDaysRented() {
+		return daysRented;
+	}
+
+	public int getDiscountPercent() {
+		return discountPerc;
+	}
+
+	public int getLineCount() {
+		return lines;
+	}
+
+	public Tool getTool(int line) {
+		return tools[line];
+	}
+
+	public int getQuantity(int line) {
+		return quantity[line];
+	}
+
+	//Prices the request, with the default promotions for a customer with no loyalty tier or coupon.
+	public RentalOrder toOrder(HolidayRules rules) {
+		return new RentalOrder(this, rules, Promotions.getDefault().getPlan());
+	}
+}
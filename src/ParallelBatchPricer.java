@@ -0,0 +1,122 @@
+/**
+ * @(#)ParallelBatchPricer.java
+ * Prices a large RentalBatch on several cores at once. The batch is split in halves until the parts are small enough, and the
+ * parts are priced as fork/join tasks, so idle threads steal work from busy ones.
+ *
+ * Each part writes only its own positions of the results, and totals its own PricingSummary. The summaries are then merged in
+ * the order of the parts, so the results and the totals are identical to pricing the batch on one thread.
+ *
+ * Running this class prints a scaling report, pricing the same batch with 1 up to the given number of threads:
+ *     java ParallelBatchPricer [requests] [threads]
+ *
+ * @author Iain St. John
+ * @version 1.00 2026/10/18
+ */
+
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+public final class ParallelBatchPricer implements AutoCloseable {
+	//Parts of a batch smaller than this are priced without splitting any further
+	static final int MIN_CHUNK = 8192;
+
+	private final BatchPricer pricer;
+	private final ForkJoinPool pool;
+
+   /**Creates a parallel pricer.
+    *
+    *@param pricer       prices each part of a batch.
+    *@param parallelism  the number of threads to price with.
+    */
+	public ParallelBatchPricer(BatchPricer pricer, int parallelism) {
+		this.pricer = pricer;
+		pool = new ForkJoinPool(parallelism);
+	}
+
+   /**Prices every request in the batch.
+    *
+    *@param batch  the requests to price.
+    *@param out    receives one result per request, in the same order.
+    *@return PricingSummary  the totals of the batch.
+    */
+	public PricingSummary price(RentalBatch batch, PricingResults out) {
+		out.resize(batch.size);
+		return pool.invoke(new PriceTask(batch, out, 0, batch.size));
+	}
+
+	public int getParallelism() {
+		return pool.getParallelism();
+	}
+
+	//Stops the pricing threads.
+	public void close() {
+		pool.shutdown();
+	}
+
+	private final class PriceTask extends RecursiveTask<PricingSummary> {
+		private static final long serialVersionUID = 1L;
+
+		private final RentalBatch batch;
+		private final PricingResults out;
+		private final int from;
+		private final int to;
+
+		PriceTask(RentalBatch batch, PricingResults out, int from, int to) {
+			this.batch = batch;
+			this.out = out;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected PricingSummary compute() {
+			if(to - from <= MIN_CHUNK) {
+				pricer.price(batch, from, to, out);
+				return PricingSummary.of(batch, out, from, to, pricer.toolCount());
+			}
+			int mid = (from + to) >>> 1;
+			PriceTask left = new PriceTask(batch, out, from, mid);
+			PriceTask right = new PriceTask(batch, out, mid, to);
+			right.fork();
+			PricingSummary summary = left.compute();
+			return summary.merge(right.join());
+		}
+	}
+
+	//Prints how fast a random batch is priced with each number of threads from 1 up to the number given.
+	public static void main(String[] args) {
+		int requests = (args.length > 0) ? Integer.parseInt(args[0]) : 10000000;
+		int maxThreads = (args.length > 1) ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		BatchPricer pricer = BatchPricer.standard();
+		RentalBatch batch = new RentalBatch(requests);
+		Random random = new Random(42);
+		int firstDay = (int) LocalDate.of(2024, 1, 1).toEpochDay();
+		for(int i = 0; i < requests; i++) {
+			batch.add(random.nextInt(pricer.toolCount()), firstDay + random.nextInt(365), 1 + random.nextInt(90), random.nextInt(101));
+		}
+		PricingResults results = new PricingResults();
+		pricer.price(batch, results);
+		PricingSummary expected = PricingSummary.of(batch, results, 0, requests, pricer.toolCount());
+
+		System.out.println("Pricing " + requests + " requests. " + expected);
+		System.out.println("threads  quotes/sec  speedup  identical");
+		double single = 0;
+		for(int threads = 1; threads <= maxThreads; threads++) {
+			try(ParallelBatchPricer parallel = new ParallelBatchPricer(pricer, threads)) {
+				PricingSummary summary = null;
+				long best = Long.MAX_VALUE;
+				for(int run = 0; run < 5; run++) {
+					long start = System.nanoTime();
+					summary = parallel.price(batch, results);
+					best = Math.min(best, System.nanoTime() - start);
+				}
+				double rate = requests / (best / 1e9);
+				if(threads == 1) {
+					single = rate;
+				}
+				System.out.printf("%7d  %10.0f  %6.2fx  %s%n", threads, rate, rate / single, summary.equals(expected));
+			}
+		}
+	}
+}
@@ -0,0 +1,83 @@
+/**
+ * @(#)PricingResults.java
+ * The prices of a RentalBatch, in columns of primitive arrays that line up with the batch: the due date as an epoch day, the
+ * number of chargeable days, and the base charge, amount taken off by promotions, discount amount and final charge in cents.
+ * A request that could not be priced has a non-zero status and zero for everything else.
+ *
+ * The same PricingResults may be handed to BatchPricer again and again. It only allocates when a bigger batch comes along.
+ *
+ * @author Iain St. John
+ * @version 1.00 2026/10/18
+ */
+
+public final class PricingResults {
+	//Status codes for a request
+	public static final byte OK = 0;
+	public static final byte UNKNOWN_TOOL = 1; //the tool index is not the id of a tool in the pricer's catalog
+	public static final byte BAD_DAY_COUNT = 2; //less than 1 day, or more than CheckoutParser.MAX_DAYS_RENTED, rented
+	public static final byte BAD_DISCOUNT = 3; //discount outside of 0 - 100
+
+	byte[] status = new byte[0];
+	int[] dueDay = new int[0];
+	int[] chargeableDays = new int[0];
+	long[] baseCharge = new long[0];
+	long[] promotionAmount = new long[0];
+	long[] discountAmount = new long[0];
+	long[] finalCharge = new long[0];
+	int size;
+
+	//Makes room for at least the given number of results, and sets the number of results held.
+	void resize(int newSize) {
+		if(status.length < newSize) {
+			status = new byte[newSize];
+			dueDay = new int[newSize];
+			chargeableDays = new int[newSize];
+			baseCharge = new long[newSize];
+			promotionAmount = new long[newSize];
+			discountAmount = new long[newSize];
+			finalCharge = new long[newSize];
+		}
+		size = newSize;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public byte getStatus(int i) {
+		return status[i];
+	}
+
+	public int getDueDay(int i) {
+		return dueDay[i];
+	}
+
+	public int getChargeableDays(int i) {
+		return chargeableDays[i];
+	}
+
+	public long getBaseCharge(int i) {
+		return baseCharge[i];
+	}
+
+	public long getPromotionAmount(int i) {
+		return promotionAmount[i];
+	}
+
+	public long getDiscountAmount(int i) {
+		return discountAmount[i];
+	}
+
+	public long getFinalCharge(int i) {
+		return finalCharge[i];
+	}
+
+	//The sum of the final charges of every request that was priced, in cents.
+	public long totalFinalCharge() {
+		long total = 0;
+		for(int i = 0; i < size; i++) {
+			total += finalCharge[i];
+		}
+		return total;
+	}
+}
@@ -0,0 +1,124 @@
+/**
+ * @(#)PricingSummary.java
+ * Totals over the results of a priced batch: how many requests were priced or rejected, the sums of their charges in cents,
+ * including what promotions and discounts took off, and the number of rentals and final charges per tool.
+ *
+ * All totals are whole numbers of cents, so summaries of separate parts of a batch merge into exactly the same totals no matter
+ * how the batch was divided up.
+ *
+ * @author Iain St. John
+ * @version 1.00 2026/10/18
+ */
+
+import java.util.Arrays;
+
+public final class PricingSummary {
+	private long priced;
+	private long rejected;
+	private long baseCharge;
+	private long promotionAmount;
+	private long discountAmount;
+	private long finalCharge;
+	private final long[] toolRentals;
+	private final long[] toolFinalCharge;
+
+	public PricingSummary(int toolCount) {
+		toolRentals = new long[toolCount];
+		toolFinalCharge = new long[toolCount];
+	}
+
+   /**Summarizes results from through to-1 of a priced batch.
+    *
+    *@param batch    the batch that was priced.
+    *@param results  its results.
+    *@param from     the first request to include.
+    *@param to       one past the last request to include.
+    *@param toolCount  the number of tools in the pricer's catalog.
+    *@return PricingSummary  the totals of those requests.
+    */
+	public static PricingSummary of(RentalBatch batch, PricingResults results, int from, int to, int toolCount) {
+		PricingSummary summary = new PricingSummary(toolCount);
+		for(int i = from; i < to; i++) {
+			if(results.status[i] != PricingResults.OK) {
+				summary.rejected++;
+				continue;
+			}
+			int t = batch.tool[i];
+			summary.priced++;
+			summary.baseCharge += results.baseCharge[i];
+			summary.promotionAmount += results.promotionAmount[i];
+			summary.discountAmount += results.discountAmount[i];
+			summary.finalCharge += results.finalCharge[i];
+			summary.toolRentals[t]++;
+			summary.toolFinalCharge[t] += results.finalCharge[i];
+		}
+		return summary;
+	}
+
+	//Adds the totals of another summary to this one, and returns this summary.
+	public PricingSummary merge(PricingSummary other) {
+		priced += other.priced;
+		rejected += other.rejected;
+		baseCharge += other.baseCharge;
+		promotionAmount += other.promotionAmount;
+		discountAmount += other.discountAmount;
+		finalCharge += other.finalCharge;
+		for(int t = 0; t < toolRentals.length; t++) {
+			toolRentals[t] += other.toolRentals[t];
+			toolFinalCharge[t] += other.toolFinalCharge[t];
+		}
+		return this;
+	}
+
+	public long getPriced() {
+		return priced;
+	}
+
+	public long getRejected() {
+		return rejected;
+	}
+
+	public long getBaseCharge() {
+		return baseCharge;
+	}
+
+	//What promotions took off the base charges, before the discounts.
+	public long getPromotionAmount() {
+		return promotionAmount;
+	}
+
+	public long getDiscountAmount() {
+		return discountAmount;
+	}
+
+	public long getFinalCharge() {
+		return finalCharge;
+	}
+
+	public long getToolRentals(int tool) {
+		return toolRentals[tool];
+	}
+
+	public long getToolFinalCharge(int tool) {
+		return toolFinalCharge[tool];
+	}
+
+	public boolean equals(Object o) {
+		if(!(o instanceof PricingSummary)) {
+			return false;
+		}
+		PricingSummary s = (PricingSummary) o;
+		return priced == s.priced && rejected == s.rejected && baseCharge == s.baseCharge
+			&& promotionAmount == s.promotionAmount && discountAmount == s.discountAmount && finalCharge == s.finalCharge
+			&& Arrays.equals(toolRentals, s.toolRentals) && Arrays.equals(toolFinalCharge, s.toolFinalCharge);
+	}
+
+	public int hashCode() {
+		return Long.hashCode(finalCharge) * 31 + Arrays.hashCode(toolRentals);
+	}
+
+	public String toString() {
+		return String.format("%d priced, %d rejected. Base %s, promotions %s, discounts %s, final %s", priced, rejected,
+			Money.format(baseCharge), Money.format(promotionAmount), Money.format(discountAmount), Money.format(finalCharge));
+	}
+}
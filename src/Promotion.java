@@ -0,0 +1,228 @@
+/**
+ * @(#)Promotion.java
+ * A single promotion, taking a percentage or a fixed amount off the charge of the rentals it applies to. A promotion is one of:
+ * type     -- every rental of one tool type, e.g. 20% off ladders.
+ * days     -- rentals of at least a number of days, e.g. 15% off for a week or more. A rental gets only the day promotions for
+ *             the most days it qualifies for, so weekly and monthly rates can be declared side by side.
+ * loyalty  -- rentals by customers of one loyalty tier, e.g. 10% off for GOLD members.
+ * coupon   -- rentals that present one coupon code, e.g. $5.00 off with SPRING5.
+ * A days, loyalty or coupon promotion may also be limited to one tool type.
+ *
+ * Every promotion a rental gets is applied in order of priority, lowest first, each to what is left of the charge after those
+ * before it. Promotions of the same priority are applied in the order they were declared. A promotion may have a cap, the
+ * most it takes off any one rental, and none takes off more than is left.
+ *
+ * Promotions are only looked at while a PromotionPlan is being compiled, never while pricing a rental.
+ *
+ * @author Iain St. John
+ * @version 1.00 2026/10/18
+ */
+
+import java.math.RoundingMode;
+
+public final class Promotion {
+	public enum Kind { TYPE, DAYS, LOYALTY, COUPON }
+
+	public static final int DEFAULT_PRIORITY = 100;
+	public static final long NO_CAP = Long.MAX_VALUE;
+
+	private final String name;
+	private final Kind kind;
+	private final String toolType; //null for every type, except for TYPE
+	private final int minDays; //DAYS only
+	private final String key; //the loyalty tier for LOYALTY, the coupon code for COUPON
+	private final int percentOff; //0 - 100, or -1 for an amount off
+	private final long amountOff; //in cents, when percentOff is -1
+	private final int priority;
+	private final long cap; //in cents
+
+	private Promotion(Builder b) {
+		name = b.name;
+		kind = b.kind;
+		toolType = b.toolType;
+		minDays = b.minDays;
+		key = b.key;
+		percentOff = b.percentOff;
+		amountOff = b.amountOff;
+		priority = b.priority;
+		cap = b.cap;
+	}
+
+   /**Takes this promotion off what is left of a rental's charge.
+    *
+    *@param charge  what is left of the charge after the promotions applied before this one, in cents.
+    *@return long   the amount this promotion takes off, in cents. A percentage is rounded half up to a whole cent.
+    */
+	long amountOff(long charge) {
+		long off = (percentOff >= 0) ? Money.percentOf(charge, percentOff, RoundingMode.HALF_UP) : amountOff;
+		return Math.min(Math.min(off, cap), charge);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	//The tool type this promotion is limited to, or null if it applies to every type.
+	public String getToolType() {
+		return toolType;
+	}
+
+	public int getMinDays() {
+		return minDays;
+	}
+
+	//The loyalty tier or coupon code, or null for a type or days promotion.
+	public String getKey() {
+		return key;
+	}
+
+	//The percentage taken off, or -1 if a fixed amount is taken off instead.
+	public int getPercentOff() {
+		return percentOff;
+	}
+
+	public long getAmountOffCents() {
+		return amountOff;
+	}
+
+	public int getPriority() {
+		return priority;
+	}
+
+	//The most this promotion takes off one rental, in cents, or NO_CAP.
+	public long getCapCents() {
+		return cap;
+	}
+
+	public String toString() {
+		StringBuilder sb = new StringBuilder(64).append(name).append(" (");
+		if(percentOff >= 0) {
+			sb.append(percentOff).append('%');
+		}
+		else {
+			Money.appendTo(sb, amountOff);
+		}
+		sb.append(" off ");
+		if(kind == Kind.DAYS) {
+			sb.append(minDays).append("+ day rentals");
+		}
+		else if(kind == Kind.LOYALTY) {
+			sb.append("for ").append(key).append(" customers");
+		}
+		else if(kind == Kind.COUPON) {
+			sb.append("with coupon ").append(key);
+		}
+		else {
+			sb.append("every rental");
+		}
+		if(toolType != null) {
+			sb.append(" of a ").append(toolType);
+		}
+		if(cap != NO_CAP) {
+			Money.appendTo(sb.append(", at most "), cap);
+		}
+		return sb.append(')').toString();
+	}
+
+   /**Describes a promotion. Name it, say which rentals it applies to with one of type(), days(), loyalty() or coupon(), and
+    *how much it takes off with percentOff() or amountOff().
+    */
+	public static final class Builder {
+		private final String name;
+		private Kind kind;
+		private String toolType;
+		private int minDays;
+		private String key;
+		private int percentOff = -1;
+		private long amountOff = -1;
+		private int priority = DEFAULT_PRIORITY;
+		private long cap = NO_CAP;
+
+		public Builder(String name) {
+			this.name = name;
+		}
+
+		//Every rental of the given tool type.
+		public Builder type(String type) {
+			kind = Kind.TYPE;
+			toolType = type;
+			return this;
+		}
+
+		//Rentals of at least the given number of days.
+		public Builder days(int days) {
+			if(days < 1) {
+				throw new IllegalArgumentException("A days promotion needs at least 1 day, not " + days + ".");
+			}
+			kind = Kind.DAYS;
+			minDays = days;
+			return this;
+		}
+
+		//Rentals by customers of the given loyalty tier.
+		public Builder loyalty(String tier) {
+			kind = Kind.LOYALTY;
+			key = tier;
+			return this;
+		}
+
+		//Rentals that present the given coupon code.
+		public Builder coupon(String code) {
+			kind = Kind.COUPON;
+			key = code;
+			return this;
+		}
+
+		//Limits a days, loyalty or coupon promotion to rentals of one tool type.
+		public Builder forType(String type) {
+			toolType = type;
+			return this;
+		}
+
+		public Builder percentOff(int percent) {
+			if(percent < 0 || percent > 100) {
+				throw new IllegalArgumentException("Percentages are only in the range of 0 to 100, not " + percent + ".");
+			}
+			percentOff = percent;
+			amountOff = -1;
+			return this;
+		}
+
+		public Builder amountOff(long cents) {
+			if(cents < 0) {
+				throw new IllegalArgumentException("A promotion can't take off a negative amount.");
+			}
+			amountOff = cents;
+			percentOff = -1;
+			return this;
+		}
+
+		//Promotions are applied lowest priority first. The default is DEFAULT_PRIORITY.
+		public Builder priority(int priority) {
+			this.priority = priority;
+			return this;
+		}
+
+		public Builder cap(long cents) {
+			if(cents < 0) {
+				throw new IllegalArgumentException("A promotion's cap can't be negative.");
+			}
+			cap = cents;
+			return this;
+		}
+
+		public Promotion build() {
+			if(kind == null) {
+				throw new IllegalStateException("Promotion " + name + " doesn't say which rentals it applies to.");
+			}
+			if(percentOff < 0 && amountOff < 0) {
+				throw new IllegalStateException("Promotion " + name + " doesn't say how much it takes off.");
+			}
+			return new Promotion(this);
+		}
+	}
+}
@@ -0,0 +1,232 @@
+/**
+ * @(#)PromotionPlan.java
+ * A set of promotions compiled into a decision table, so that pricing a rental costs the same however many promotions
+ * marketing declares. Promotions are numbered in the order they are applied, and each cell of the table is a bit set of the
+ * promotions it selects. The table has a row for each tool type that some promotion is limited to, and a row for every other
+ * type. Within a row, the promotions a rental gets are the union of four cells:
+ *     always   -- the type promotions of the row.
+ *     days     -- the day promotions for the most days, of those the rental has been rented for at least.
+ *     loyalty  -- the loyalty promotions of the customer's tier.
+ *     coupon   -- the coupon promotions of the coupon presented.
+ * Pricing a rental looks up its row, tier and coupon, ORs the four cells a word at a time, and applies the promotions whose
+ * bits are set, in order. It touches no promotion that doesn't apply.
+ *
+ * Tiers and coupon codes are matched without regard to case. A tier or coupon no promotion names selects no promotions.
+ *
+ * A plan never changes once compiled, so any number of threads may price with it at once.
+ *
+ * @author Iain St. John
+ * @version 1.00 2026/10/18
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+
+public final class PromotionPlan {
+	//Row, tier and coupon 0 stand for a type, tier or coupon that no promotion names
+	public static final int OTHER = 0;
+
+	private final Promotion[] promotions; //in the order they are applied
+	private final int words; //the longs in each bit set
+	private final long[] none; //the empty bit set
+
+	private final Map<String, Integer> rows = new HashMap<String, Integer>();
+	private final Map<String, Integer> tiers = new HashMap<String, Integer>();
+	private final Map<String, Integer> coupons = new HashMap<String, Integer>();
+	private final long[][] always; //[row]
+	private final int[][] dayThresholds; //[row], each in descending order
+	private final long[][][] dayPromotions; //[row][threshold]
+	private final long[][][] tierPromotions; //[row][tier]
+	private final long[][][] couponPromotions; //[row][coupon]
+
+	public PromotionPlan(List<Promotion> declared) {
+		List<Promotion> ordered = new ArrayList<Promotion>(declared);
+		//A stable sort, so promotions of the same priority keep the order they were declared in
+		Collections.sort(ordered, new Comparator<Promotion>() {
+			public int compare(Promotion a, Promotion b) {
+				return Integer.compare(a.getPriority(), b.getPriority());
+			}
+		});
+		promotions = ordered.toArray(new Promotion[ordered.size()]);
+		words = Math.max(1, (promotions.length + 63) >>> 6);
+		none = new long[words];
+
+		for(Promotion p : promotions) {
+			if(p.getToolType() != null && !rows.containsKey(p.getToolType())) {
+				rows.put(p.getToolType(), rows.size() + 1);
+			}
+			if(p.getKind() == Promotion.Kind.LOYALTY && !tiers.containsKey(normalize(p.getKey()))) {
+				tiers.put(normalize(p.getKey()), tiers.size() + 1);
+			}
+			if(p.getKind() == Promotion.Kind.COUPON && !coupons.containsKey(normalize(p.getKey()))) {
+				coupons.put(normalize(p.getKey()), coupons.size() + 1);
+			}
+		}
+		int rowCount = rows.size() + 1;
+		always = new long[rowCount][];
+		dayThresholds = new int[rowCount][];
+		dayPromotions = new long[rowCount][][];
+		tierPromotions = new long[rowCount][tiers.size() + 1][];
+		couponPromotions = new long[rowCount][coupons.size() + 1][];
+		String rowType[] = new String[rowCount];
+		for(Map.Entry<String, Integer> row : rows.entrySet()) {
+			rowType[row.getValue()] = row.getKey();
+		}
+
+		for(int row = 0; row < rowCount; row++) {
+			always[row] = new long[words];
+			Arrays.fill(tierPromotions[row], none);
+			Arrays.fill(couponPromotions[row], none);
+			TreeSet<Integer> thresholds = new TreeSet<Integer>(Collections.reverseOrder());
+			for(int i = 0; i < promotions.length; i++) {
+				Promotion p = promotions[i];
+				if(p.getToolType() != null && !p.getToolType().equals(rowType[row])) {
+					continue;
+				}
+				switch(p.getKind()) {
+					case TYPE:
+						set(always[row], i);
+						break;
+					case DAYS:
+						thresholds.add(p.getMinDays());
+						break;
+					case LOYALTY:
+						int tier = tiers.get(normalize(p.getKey()));
+						tierPromotions[row][tier] = with(tierPromotions[row][tier], i);
+						break;
+					case COUPON:
+						int coupon = coupons.get(normalize(p.getKey()));
+						couponPromotions[row][coupon] = with(couponPromotions[row][coupon], i);
+						break;
+				}
+			}
+			dayThresholds[row] = new int[thresholds.size()];
+			dayPromotions[row] = new long[thresholds.size()][];
+			int t = 0;
+			for(int threshold : thresholds) {
+				dayThresholds[row][t] = threshold;
+				dayPromotions[row][t] = new long[words];
+				for(int i = 0; i < promotions.length; i++) {
+					Promotion p = promotions[i];
+					if(p.getKind() == Promotion.Kind.DAYS && p.getMinDays() == threshold
+							&& (p.getToolType() == null || p.getToolType().equals(rowType[row]))) {
+						set(dayPromotions[row][t], i);
+					}
+				}
+				t++;
+			}
+		}
+	}
+
+	private static void set(long[] bits, int i) {
+		bits[i >>> 6] |= 1L << i;
+	}
+
+	//The bit set with one more bit set, copied so that the shared empty set is never written to.
+	private static long[] with(long[] bits, int i) {
+		long copy[] = bits.clone();
+		set(copy, i);
+		return copy;
+	}
+
+	private static String normalize(String key) {
+		return key.toUpperCase(Locale.ROOT);
+	}
+
+	//The row of the table for a tool type.
+	public int rowOf(String toolType) {
+		Integer row = rows.get(toolType);
+		return (row == null) ? OTHER : row;
+	}
+
+	//The column of a loyalty tier, or OTHER for none.
+	public int tierOf(String tier) {
+		Integer id = (tier == null) ? null : tiers.get(normalize(tier));
+		return (id == null) ? OTHER : id;
+	}
+
+	//The column of a coupon code, or OTHER for none.
+	public int couponOf(String coupon) {
+		Integer id = (coupon == null) ? null : coupons.get(normalize(coupon));
+		return (id == null) ? OTHER : id;
+	}
+
+   /**Works out how much the promotions take off a rental.
+    *
+    *@param tool    the tool rented.
+    *@param days    the number of days rented.
+    *@param charge  the charge before any promotion, in cents.
+    *@param tier    the customer's loyalty tier, or null.
+    *@param coupon  the coupon code presented, or null.
+    *@return long   the total the promotions take off, in cents. Never more than the charge.
+    */
+	public long amountOff(Tool tool, int days, long charge, String tier, String coupon) {
+		if(promotions.length == 0) {
+			return 0;
+		}
+		return amountOff(rowOf(tool.getType()), days, charge, tierOf(tier), couponOf(coupon));
+	}
+
+	//As above, with the row, tier and coupon already looked up, as a batch does once for each tool.
+	public long amountOff(int row, int days, long charge, int tier, int coupon) {
+		long left = charge;
+		long[] a = always[row];
+		long[] d = daysCell(row, days);
+		long[] l = tierPromotions[row][tier];
+		long[] c = couponPromotions[row][coupon];
+		for(int w = 0; w < words; w++) {
+			long bits = a[w] | d[w] | l[w] | c[w];
+			while(bits != 0) {
+				left -= promotions[(w << 6) + Long.numberOfTrailingZeros(bits)].amountOff(left);
+				bits &= bits - 1;
+			}
+		}
+		return charge - left;
+	}
+
+	private long[] daysCell(int row, int days) {
+		int[] thresholds = dayThresholds[row];
+		for(int t = 0; t < thresholds.length; t++) {
+			if(days >= thresholds[t]) {
+				return dayPromotions[row][t];
+			}
+		}
+		return none;
+	}
+
+	//The promotions a rental gets, in the order they are applied.
+	public List<Promotion> promotionsFor(Tool tool, int days, String tier, String coupon) {
+		List<Promotion> applied = new ArrayList<Promotion>();
+		if(promotions.length == 0) {
+			return applied;
+		}
+		int row = rowOf(tool.getType());
+		long[] a = always[row];
+		long[] d = daysCell(row, days);
+		long[] l = tierPromotions[row][tierOf(tier)];
+		long[] c = couponPromotions[row][couponOf(coupon)];
+		for(int w = 0; w < words; w++) {
+			long bits = a[w] | d[w] | l[w] | c[w];
+			while(bits != 0) {
+				applied.add(promotions[(w << 6) + Long.numberOfTrailingZeros(bits)]);
+				bits &= bits - 1;
+			}
+		}
+		return applied;
+	}
+
+	public int size() {
+		return promotions.length;
+	}
+
+	public boolean isEmpty() {
+		return promotions.length == 0;
+	}
+}
@@ -0,0 +1,196 @@
+/**
+ * @(#)Promotions.java
+ * A named set of Promotion, such as this season's promotions, along with the PromotionPlan it compiles to. The set is compiled
+ * once, when it is made, so the number of promotions has no effect on the cost of a checkout.
+ *
+ * Promotion sets may be read from a plain text file, one promotion per line, in the form
+ *     name = type TYPE OFF [options]
+ *     name = days N OFF [options]
+ *     name = loyalty TIER OFF [options]
+ *     name = coupon CODE OFF [options]
+ * where OFF is a percentage such as 15% or an amount such as $5.00, and the options are any of
+ *     for TYPE      limits a days, loyalty or coupon promotion to one tool type
+ *     priority N    the order promotions are applied in, lowest first (100 if not given)
+ *     cap $X.XX     the most the promotion takes off one rental
+ * Tool types, tiers and codes are single words. Blank lines and lines starting with # are ignored.
+ *
+ * The default set is empty, so rentals are priced as they always have been, unless the toolrental.promotions system property
+ * names a promotion file to use instead.
+ *
+ * @author Iain St. John
+ * @version 1.00 2026/10/18
+ */
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+public final class Promotions {
+	private static final Promotions NONE = new Promotions("none", Collections.<Promotion>emptyList());
+
+	private final String name;
+	private final List<Promotion> promotions;
+	private final PromotionPlan plan;
+
+	public Promotions(String name, List<Promotion> promotions) {
+		this.name = name;
+		this.promotions = Collections.unmodifiableList(new ArrayList<Promotion>(promotions));
+		plan = new PromotionPlan(this.promotions);
+	}
+
+	//Lazily loads the default promotions the first time they are used.
+	private static class DefaultHolder {
+		static final Promotions DEFAULT = loadDefault();
+	}
+
+   /**Returns the promotions given to every RentalAgreement and BatchPricer that isn't given any. This is the file named by the
+    *toolrental.promotions system property if it is set, and no promotions otherwise.
+    */
+	public static Promotions getDefault() {
+		return DefaultHolder.DEFAULT;
+	}
+
+	//No promotions at all.
+	public static Promotions none() {
+		return NONE;
+	}
+
+	private static Promotions loadDefault() {
+		String file = System.getProperty("toolrental.promotions");
+		if(file == null) {
+			return NONE;
+		}
+		try {
+			return load(Paths.get(file));
+		}
+		catch(IOException e) {
+			throw new IllegalStateException("Unable to load promotions from " + file + ": " + e.getMessage(), e);
+		}
+	}
+
+   /**Reads a promotion set from a promotion file. The set is named after the file.
+    *
+    *@param file  the promotion file to read.
+    *@return Promotions  the promotions in the file.
+    *@throws IOException  if the file can't be read, or a line of it isn't a valid promotion.
+    */
+	public static Promotions load(Path file) throws IOException {
+		String fileName = file.getFileName().toString();
+		int dot = fileName.lastIndexOf('.');
+		return parse(dot > 0 ? fileName.substring(0, dot) : fileName, Files.readAllLines(file, StandardCharsets.UTF_8));
+	}
+
+   /**Parses the lines of a promotion file into a promotion set.
+    *
+    *@param name   the name to give the set.
+    *@param lines  the lines of the file.
+    *@return Promotions  the promotions described by the lines.
+    *@throws IOException  if a line isn't a valid promotion. The message gives the line number.
+    */
+	public static Promotions parse(String name, List<String> lines) throws IOException {
+		List<Promotion> promotions = new ArrayList<Promotion>();
+		int lineNumber = 0;
+		for(String line : lines) {
+			lineNumber++;
+			line = line.trim();
+			if(line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			try {
+				promotions.add(parsePromotion(line));
+			}
+			catch(RuntimeException e) {
+				throw new IOException("Line " + lineNumber + " is not a valid promotion (" + e.getMessage() + "): " + line, e);
+			}
+		}
+		return new Promotions(name, promotions);
+	}
+
+	private static Promotion parsePromotion(String line) {
+		int eq = line.indexOf('=');
+		if(eq < 1) {
+			throw new IllegalArgumentException("expected name = promotion");
+		}
+		Promotion.Builder builder = new Promotion.Builder(line.substring(0, eq).trim());
+		String parts[] = line.substring(eq + 1).trim().split("\\s+");
+		if(parts.length < 3 || parts.length % 2 == 0) {
+			throw new IllegalArgumentException("expected type, days, loyalty or coupon, what it applies to, the amount off, "
+				+ "and then options in pairs");
+		}
+		String kind = parts[0].toLowerCase(Locale.ROOT);
+		if(kind.equals("type")) {
+			builder.type(parts[1]);
+		}
+		else if(kind.equals("days")) {
+			builder.days(Integer.parseInt(parts[1]));
+		}
+		else if(kind.equals("loyalty")) {
+			builder.loyalty(parts[1]);
+		}
+		else if(kind.equals("coupon")) {
+			builder.coupon(parts[1]);
+		}
+		else {
+			throw new IllegalArgumentException("expected type, days, loyalty or coupon");
+		}
+		if(parts[2].endsWith("%")) {
+			builder.percentOff(Integer.parseInt(parts[2].substring(0, parts[2].length() - 1)));
+		}
+		else {
+			builder.amountOff(parseCents(parts[2]));
+		}
+		for(int i = 3; i < parts.length; i += 2) {
+			String option = parts[i].toLowerCase(Locale.ROOT);
+			if(option.equals("for") && !kind.equals("type")) {
+				builder.forType(parts[i + 1]);
+			}
+			else if(option.equals("priority")) {
+				builder.priority(Integer.parseInt(parts[i + 1]));
+			}
+			else if(option.equals("cap")) {
+				builder.cap(parseCents(parts[i + 1]));
+			}
+			else {
+				throw new IllegalArgumentException("unknown option " + parts[i]);
+			}
+		}
+		return builder.build();
+	}
+
+	//Parses an amount written as dollars, such as $5 or $5.00, into cents.
+	private static long parseCents(String s) {
+		if(!s.startsWith("$")) {
+			throw new IllegalArgumentException("expected a percentage such as 15% or an amount such as $5.00, not " + s);
+		}
+		return new BigDecimal(s.substring(1)).movePointRight(2).longValueExact();
+	}
+
+	//The compiled promotions, for pricing.
+	public PromotionPlan getPlan() {
+		return plan;
+	}
+
+	public boolean isEmpty() {
+		return promotions.isEmpty();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	//The promotions in the order they were declared.
+	public List<Promotion> getPromotions() {
+		return promotions;
+	}
+
+	public String toString() {
+		return name + " " + promotions;
+	}
+}
@@ -0,0 +1,317 @@
+/**
+ * @(#)QuoteCache.java
+ * A bounded cache of priced rentals. A quote depends only on the tool, the checkout date, the number of days rented and the
+ * discount, so once priced it can be handed out again for as long as the tool catalog and the holidays stay the same. The
+ * storefront asks for the same few quotes over and over, such as every tool rented from this Friday over the weekend.
+ *
+ * The four inputs are packed into a single long as the key: 17 bits of tool id, 24 bits of checkout date as an epoch day,
+ * 16 bits of days rented and 7 bits of discount. Rentals that don't fit, such as one for more than 65535 days, are priced
+ * without the cache.
+ *
+ * The cache is split into segments by key. Lookups take no lock: each segment is an open addressing table of entries that
+ * readers search without synchronizing. Inserting and evicting take the segment's lock. When a segment is full, the entry to
+ * evict is chosen by the CLOCK algorithm, which approximates least recently used without reordering anything on a hit: a hit
+ * only marks the entry as used, and the clock hand passes over marked entries once, clearing the mark, before evicting the
+ * first unmarked one. A lookup that runs while its entry is being moved may miss it, in which case the quote is simply priced
+ * again, since every price for the same key is the same.
+ *
+ * Everything cached is dropped when a different tool catalog is installed, or the holiday rules are changed.
+ *
+ * @author Iain St. John
+ * @version 1.00 2026/10/18
+ */
+
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public final class QuoteCache {
+	static final long NO_KEY = -1; //never a valid key, since no discount is 127
+
+	private final int maxEntries;
+	private final int segmentShift;
+	private final int segmentCount;
+	private volatile Table table;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder uncacheable = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder invalidations = new LongAdder();
+
+   /**Creates a cache for the default holidays.
+    *
+    *@param maxEntries  the most quotes to keep.
+    */
+	public QuoteCache(int maxEntries) {
+		this(maxEntries, HolidayRules.getDefault());
+	}
+
+   /**Creates a cache.
+    *
+    *@param maxEntries  the most quotes to keep.
+    *@param rules       the holidays that tools exempt from holiday charges are not charged on.
+    */
+	public QuoteCache(int maxEntries, HolidayRules rules) {
+		if(maxEntries < 1) {
+			throw new IllegalArgumentException("A quote cache must hold at least one quote, not " + maxEntries + ".");
+		}
+		this.maxEntries = maxEntries;
+		//About 1024 entries per segment, with at most 64 segments
+		segmentCount = Integer.highestOneBit(Math.max(1, Math.min(64, maxEntries >> 10)));
+		segmentShift = 32 - Integer.numberOfTrailingZeros(segmentCount);
+		table = new Table(ToolCatalog.getDefault(), rules);
+	}
+
+   /**Returns the agreement for a rental of a tool from the default catalog, pricing it if it isn't cached.
+    *
+    *@throws IllegalArgumentException  if no tool has the given code.
+    */
+	public RentalAgreement quote(String toolCode, LocalDate date, int days, int disc) {
+		Table t = current();
+		return quote(t, RentalAgreement.lookUpTool(t.catalog, toolCode), date.toEpochDay(), days, disc);
+	}
+
+	//Returns the agreement for a parsed checkout, pricing it if it isn't cached.
+	public RentalAgreement quote(CheckoutRequest request) {
+		return quote(current(), request.getTool(), request.getCheckoutDay(), request.getDaysRented(), request.getDiscountPercent());
+	}
+
+	private RentalAgreement quote(Table t, Tool tool, long checkoutDay, int days, int disc) {
+		long key = NO_KEY;
+		//A tool from some other catalog, or from none, can't be keyed by its id
+		if(tool.getId() >= 0 && tool.getId() < t.catalog.size() && t.catalog.get(tool.getId()) == tool) {
+			key = pack(tool.getId(), checkoutDay, days, disc);
+		}
+		if(key == NO_KEY) {
+			uncacheable.increment();
+			return new RentalAgreement(tool, LocalDate.ofEpochDay(checkoutDay), days, disc, t.rules);
+		}
+		int hash = hash(key);
+		Segment segment = t.segments[(segmentCount == 1) ? 0 : hash >>> segmentShift];
+		RentalAgreement agreement = segment.get(key, hash);
+		if(agreement != null) {
+			hits.increment();
+			return agreement;
+		}
+		misses.increment();
+		agreement = new RentalAgreement(tool, LocalDate.ofEpochDay(checkoutDay), days, disc, t.rules);
+		return segment.put(key, hash, agreement);
+	}
+
+   /**Packs the inputs of a quote into a key.
+    *
+    *@return long  the key, or NO_KEY if an input is out of the range a key can hold.
+    */
+	static long pack(int toolId, long checkoutDay, int days, int disc) {
+		if(toolId < 0 || toolId >= (1 << 17) || checkoutDay < 0 || checkoutDay >= (1 << 24) || days < 0 || days >= (1 << 16)
+				|| disc < 0 || disc > 100) {
+			return NO_KEY;
+		}
+		return ((long) toolId << 47) | (checkoutDay << 23) | ((long) days << 7) | disc;
+	}
+
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	//The table for the catalog installed now, replacing the cached one if another catalog has been installed since.
+	private Table current() {
+		Table t = table;
+		ToolCatalog catalog = ToolCatalog.getDefault();
+		if(t.catalog != catalog) {
+			synchronized(this) {
+				t = table;
+				if(t.catalog != catalog) {
+					t = new Table(catalog, t.rules);
+					table = t;
+					invalidations.increment();
+				}
+			}
+		}
+		return t;
+	}
+
+	//Drops every cached quote and prices with the given holidays from now on.
+	public synchronized void setHolidayRules(HolidayRules rules) {
+		table = new Table(ToolCatalog.getDefault(), rules);
+		invalidations.increment();
+	}
+
+	public HolidayRules getHolidayRules() {
+		return table.rules;
+	}
+
+	//Drops every cached quote.
+	public synchronized void invalidate() {
+		table = new Table(ToolCatalog.getDefault(), table.rules);
+		invalidations.increment();
+	}
+
+	//Number of quotes found in the cache.
+	public long getHits() {
+		return hits.sum();
+	}
+
+	//Number of quotes that had to be priced and were then cached.
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	//Number of quotes priced without the cache, because their inputs don't fit in a key.
+	public long getUncacheable() {
+		return uncacheable.sum();
+	}
+
+	//Number of quotes dropped to make room for others.
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	//Number of times the whole cache was dropped, for a new catalog, new holidays, or by invalidate().
+	public long getInvalidations() {
+		return invalidations.sum();
+	}
+
+	//Fraction of cacheable quotes found in the cache.
+	public double getHitRate() {
+		long h = getHits();
+		long total = h + getMisses();
+		return (total == 0) ? 0 : h / (double) total;
+	}
+
+	//Number of quotes held now.
+	public int size() {
+		int size = 0;
+		for(Segment segment : table.segments) {
+			size += segment.size();
+		}
+		return size;
+	}
+
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	public String toString() {
+		return String.format("%d of %d quotes cached. %d hits, %d misses (%.1f%% hits), %d uncacheable, %d evictions, %d invalidations",
+			size(), maxEntries, getHits(), getMisses(), getHitRate() * 100, getUncacheable(), getEvictions(), getInvalidations());
+	}
+
+	//The quotes of one catalog and holiday set.
+	private final class Table {
+		final ToolCatalog catalog;
+		final HolidayRules rules;
+		final Segment[] segments;
+
+		Table(ToolCatalog catalog, HolidayRules rules) {
+			this.catalog = catalog;
+			this.rules = rules;
+			segments = new Segment[segmentCount];
+			int perSegment = (maxEntries + segmentCount - 1) / segmentCount;
+			for(int i = 0; i < segmentCount; i++) {
+				segments[i] = new Segment(perSegment);
+			}
+		}
+	}
+
+	private static final class Entry {
+		final long key;
+		final RentalAgreement value;
+		boolean used; //set on every hit, cleared as the clock hand passes. A lost update only makes eviction less exact.
+
+		Entry(long key, RentalAgreement value) {
+			this.key = key;
+			this.value = value;
+		}
+	}
+
+	private final class Segment {
+		private final AtomicReferenceArray<Entry> slots; //open addressing with linear probing, at most half full
+		private final int mask;
+		private final Entry[] clock; //every entry, in the order the clock hand visits them
+		private int hand;
+		private int size;
+
+		Segment(int capacity) {
+			int slotCount = Integer.highestOneBit(Math.max(capacity, 2) * 2 - 1) << 1;
+			slots = new AtomicReferenceArray<Entry>(slotCount);
+			mask = slotCount - 1;
+			clock = new Entry[capacity];
+		}
+
+		RentalAgreement get(long key, int hash) {
+			for(int i = hash & mask; ; i = (i + 1) & mask) {
+				Entry e = slots.get(i);
+				if(e == null) {
+					return null;
+				}
+				if(e.key == key) {
+					if(!e.used) {
+						e.used = true;
+					}
+					return e.value;
+				}
+			}
+		}
+
+		//Adds a quote, unless another thread has just added the same one, and returns whichever is now cached.
+		synchronized RentalAgreement put(long key, int hash, RentalAgreement value) {
+			int i = hash & mask;
+			for(Entry e = slots.get(i); e != null; e = slots.get(i)) {
+				if(e.key == key) {
+					return e.value;
+				}
+				i = (i + 1) & mask;
+			}
+			Entry entry = new Entry(key, value);
+			if(size < clock.length) {
+				clock[size++] = entry;
+			}
+			else {
+				while(clock[hand].used) {
+					clock[hand].used = false;
+					hand = (hand + 1) % clock.length;
+				}
+				remove(clock[hand]);
+				clock[hand] = entry;
+				hand = (hand + 1) % clock.length;
+				evictions.increment();
+				//Removing may have moved entries, so find the new entry's slot again
+				i = hash & mask;
+				while(slots.get(i) != null) {
+					i = (i + 1) & mask;
+				}
+			}
+			slots.set(i, entry);
+			return value;
+		}
+
+		//Removes an entry, moving back any entries after it that would otherwise no longer be found.
+		private void remove(Entry entry) {
+			int i = hash(entry.key) & mask;
+			while(slots.get(i) != entry) {
+				i = (i + 1) & mask;
+			}
+			for(int j = (i + 1) & mask; ; j = (j + 1) & mask) {
+				Entry e = slots.get(j);
+				if(e == null) {
+					break;
+				}
+				int home = hash(e.key) & mask;
+				//e may move to the gap at i unless its home slot lies cyclically after i, up to j
+				boolean between = (i <= j) ? (i < home && home <= j) : (i < home || home <= j);
+				if(!between) {
+					slots.set(i, e);
+					i = j;
+				}
+			}
+			slots.set(i, null);
+		}
+
+		synchronized int size() {
+			return size;
+		}
+	}
+}
@@ -0,0 +1,284 @@
+/**
+ * @(#)QuoteLoadGenerator.java
+ * Drives a QuoteService with many open connections at once, the way the web and kiosk front ends do, and reports the latency
+ * of its quotes. All connections are opened first and kept alive. Requests are then sent at a fixed total rate, each on
+ * whichever connection is free, and every response is timed from when its request was due to be sent, not from when it was
+ * sent. A service that falls behind therefore shows the delay its callers would see, instead of slowing the generator down.
+ *
+ * One thread drives every connection through a selector, so the generator itself needs no more than one core.
+ *
+ *     java QuoteLoadGenerator <connections> <requests/sec> <seconds> [host:port]
+ *
+ * Without host:port, a QuoteService is started in the same JVM on a free port. Each connection takes a file descriptor at each
+ * end, so check ulimit -n before opening tens of thousands.
+ *
+ * @author Iain St. John
+ * @version 1.00 2026/10/18
+ */
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+public final class QuoteLoadGenerator {
+	//Connections are opened this many at a time, so the server's accept backlog doesn't overflow
+	private static final int CONNECT_WAVE = 500;
+	//Responses measured before this long into a run are left out, while the service warms up
+	private static final long WARMUP_NANOS = 3000000000L;
+
+	private final InetSocketAddress address;
+	private final byte[][] requests;
+	private final Selector selector;
+	private final ArrayDeque<Connection> idle = new ArrayDeque<Connection>();
+	private final LatencyHistogram latencies = new LatencyHistogram(); //in microseconds
+	private int open;
+	private long errors;
+
+	private static final class Connection {
+		final SocketChannel channel;
+		final ByteBuffer response = ByteBuffer.allocate(4096);
+		ByteBuffer request; //the part of the request not yet written, or null
+		long due; //when the request being answered was due to be sent, in System.nanoTime() terms
+
+		Connection(SocketChannel channel) {
+			this.channel = channel;
+		}
+	}
+
+	QuoteLoadGenerator(InetSocketAddress address) throws IOException {
+		this.address = address;
+		selector = Selector.open();
+		//A spread of tools, dates and rental periods, so the service doesn't answer the same quote every time
+		String codes[] = {"LADW", "CHNS", "JAKR", "JAKD"};
+		requests = new byte[256][];
+		for(int i = 0; i < requests.length; i++) {
+			String query = String.format("tool=%s&date=%02d/%02d/%02d&days=%d&discount=%d",
+				codes[i % 4], 1 + i % 12, 1 + i % 28, 15 + i % 10, 1 + (i * 7) % 60, (i * 13) % 101);
+			requests[i] = ("GET /quote?" + query + " HTTP/1.1\r\nHost: " + address.getHostString() + "\r\n\r\n")
+				.getBytes(StandardCharsets.US_ASCII);
+		}
+	}
+
+	//Opens the given number of connections, returning how many could be opened.
+	int connect(int connections) throws IOException {
+		while(open < connections) {
+			int wave = Math.min(CONNECT_WAVE, connections - open);
+			int pending = 0;
+			for(int i = 0; i < wave; i++) {
+				SocketChannel channel = SocketChannel.open();
+				channel.configureBlocking(false);
+				channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+				Connection connection = new Connection(channel);
+				if(channel.connect(address)) {
+					connected(channel.register(selector, 0, connection));
+				}
+				else {
+					channel.register(selector, SelectionKey.OP_CONNECT, connection);
+					pending++;
+				}
+			}
+			while(pending > 0) {
+				if(selector.select(10000) == 0) {
+					return open; //no progress in 10 seconds
+				}
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while(keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					pending--;
+					try {
+						((SocketChannel) key.channel()).finishConnect();
+						connected(key);
+					}
+					catch(IOException e) {
+						key.cancel();
+						key.channel().close();
+						System.err.println("Could not connect: " + e.getMessage());
+						return open;
+					}
+				}
+			}
+		}
+		return open;
+	}
+
+	private void connected(SelectionKey key) {
+		key.interestOps(SelectionKey.OP_READ);
+		idle.add((Connection) key.attachment());
+		open++;
+	}
+
+   /**Sends requests at the given rate for the given time, after a warm up, and returns the latencies of their responses.
+    */
+	LatencyHistogram run(double rate, long seconds) throws IOException {
+		long interval = (long) (1e9 / rate);
+		long start = System.nanoTime();
+		long measureFrom = start + WARMUP_NANOS;
+		long end = measureFrom + seconds * 1000000000L;
+		long nextDue = start;
+		int sent = 0;
+		while(true) {
+			long now = System.nanoTime();
+			if(now >= end) {
+				break;
+			}
+			//Selecting can only wait whole milliseconds, so requests due within the next one are sent now rather than spinning
+			while(nextDue <= now + 1000000 && !idle.isEmpty()) {
+				Connection connection = idle.poll();
+				connection.due = Math.min(nextDue, now); //timed from when it was sent, if that was early
+				connection.request = ByteBuffer.wrap(requests[sent++ & (requests.length - 1)]);
+				nextDue += interval;
+				try {
+					write(connection);
+				}
+				catch(IOException e) {
+					lost(connection, connection.channel.keyFor(selector));
+				}
+			}
+			long wait = idle.isEmpty() ? 1 : (nextDue - now) / 1000000;
+			selector.select(Math.max(wait, 1));
+			Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+			while(keys.hasNext()) {
+				SelectionKey key = keys.next();
+				keys.remove();
+				Connection connection = (Connection) key.attachment();
+				try {
+					if(key.isWritable()) {
+						write(connection);
+					}
+					if(key.isReadable()) {
+						read(connection, measureFrom);
+					}
+				}
+				catch(IOException e) {
+					lost(connection, key);
+				}
+			}
+		}
+		return latencies;
+	}
+
+	private void write(Connection connection) throws IOException {
+		connection.channel.write(connection.request);
+		SelectionKey key = connection.channel.keyFor(selector);
+		if(connection.request.hasRemaining()) {
+			key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+		}
+		else {
+			connection.request = null;
+			key.interestOps(SelectionKey.OP_READ);
+		}
+	}
+
+	private void read(Connection connection, long measureFrom) throws IOException {
+		ByteBuffer buffer = connection.response;
+		if(connection.channel.read(buffer) < 0) {
+			throw new IOException("Connection closed by the service");
+		}
+		int length = responseLength(buffer);
+		if(length < 0 || buffer.position() < length) {
+			if(!buffer.hasRemaining()) {
+				throw new IOException("Response too long");
+			}
+			return;
+		}
+		long now = System.nanoTime();
+		//The status code follows "HTTP/1.1 "
+		if(buffer.get(9) != '2') {
+			errors++;
+		}
+		else if(connection.due >= measureFrom) {
+			latencies.record((now - connection.due) / 1000);
+		}
+		buffer.clear();
+		idle.add(connection);
+	}
+
+	//Returns the length of the whole response once its headers are in, or -1 until then.
+	private static int responseLength(ByteBuffer buffer) {
+		byte[] bytes = buffer.array();
+		int end = buffer.position();
+		for(int i = 3; i < end; i++) {
+			if(bytes[i] == '\n' && bytes[i - 1] == '\r' && bytes[i - 2] == '\n' && bytes[i - 3] == '\r') {
+				String headers = new String(bytes, 0, i, StandardCharsets.US_ASCII).toLowerCase();
+				int at = headers.indexOf("content-length:");
+				if(at < 0) {
+					return i + 1;
+				}
+				int lineEnd = headers.indexOf('\r', at);
+				return i + 1 + Integer.parseInt(headers.substring(at + 15, lineEnd).trim());
+			}
+		}
+		return -1;
+	}
+
+	//Drops a connection the service has closed or that has failed. It isn't replaced.
+	private void lost(Connection connection, SelectionKey key) throws IOException {
+		errors++;
+		open--;
+		idle.remove(connection);
+		key.cancel();
+		connection.channel.close();
+	}
+
+	void close() throws IOException {
+		for(SelectionKey key : selector.keys()) {
+			key.channel().close();
+		}
+		selector.close();
+	}
+
+	int getOpenConnections() {
+		return open;
+	}
+
+	long getErrors() {
+		return errors;
+	}
+
+	public static void main(String[] args) throws Exception {
+		if(args.length < 3) {
+			System.err.println("Usage: java QuoteLoadGenerator <connections> <requests/sec> <seconds> [host:port]");
+			return;
+		}
+		int connections = Integer.parseInt(args[0]);
+		double rate = Double.parseDouble(args[1]);
+		long seconds = Long.parseLong(args[2]);
+		QuoteService service = null;
+		InetSocketAddress address;
+		if(args.length > 3) {
+			int colon = args[3].lastIndexOf(':');
+			address = new InetSocketAddress(args[3].substring(0, colon), Integer.parseInt(args[3].substring(colon + 1)));
+		}
+		else {
+			service = new QuoteService(new InetSocketAddress("127.0.0.1", 0), HolidayRules.getDefault());
+			service.start();
+			address = new InetSocketAddress("127.0.0.1", service.getPort());
+			System.out.println("Started a quote service on port " + service.getPort() + ", handling requests on "
+				+ service.getThreading() + ".");
+		}
+
+		QuoteLoadGenerator generator = new QuoteLoadGenerator(address);
+		long start = System.nanoTime();
+		int opened = generator.connect(connections);
+		System.out.printf("Opened %d of %d connections in %.1f s.%n", opened, connections, (System.nanoTime() - start) / 1e9);
+		LatencyHistogram latencies = generator.run(rate, seconds);
+		System.out.printf("%d quotes in %d s (%.0f/sec) over %d connections, %d errors.%n", latencies.getTotal(), seconds,
+			latencies.getTotal() / (double) seconds, generator.getOpenConnections(), generator.getErrors());
+		System.out.printf("Latency ms:  p50 %.2f  p90 %.2f  p99 %.2f  p99.9 %.2f  max %.2f%n", latencies.percentile(0.5) / 1e3,
+			latencies.percentile(0.9) / 1e3, latencies.percentile(0.99) / 1e3, latencies.percentile(0.999) / 1e3,
+			latencies.getMax() / 1e3);
+		generator.close();
+		if(service != null) {
+			System.out.println(service.getQuoteCache());
+			service.close();
+		}
+	}
+}
@@ -0,0 +1,462 @@
+/**
+ * @(#)QuoteService.java
+ * A small HTTP service that prices rentals for the web and kiosk front ends, built on the JDK's own HTTP server. It has two
+ * pricing endpoints, which take the same four parameters as runPOS(), either in the query string or as a form-encoded POST body:
+ *
+ *     GET /quote?tool=JAKR&date=07/02/20&days=4&discount=50      the priced rental as JSON
+ *     GET /checkout?tool=JAKR&date=07/02/20&days=4&discount=50   the text of the rental agreement
+ *
+ * Either returns the rental as an AgreementMessage instead when the request's Accept header asks for
+ * application/x-rental-agreement.
+ *
+ *     GET /metrics                                               CheckoutMetrics and the quote cache's counts, as Prometheus text
+ *
+ * Both pricing endpoints also take an optional loyalty tier and coupon code, as tier=GOLD&coupon=SPRING5, which are priced
+ * with the default Promotions. Quotes without them come from the cache, and those with them are priced afresh each time.
+ *
+ * A request that can't be priced gets a 400 response whose body says why, and a POST body longer than MAX_BODY_SIZE gets a 413
+ * without being read any further. Anything else going wrong while pricing gets a 500, and is counted in /metrics. Given a
+ * ToolInventory, /checkout reserves a unit of the tool for the rental, answering 409 if none is free, and reports the unit in a
+ * Tool-Unit header. Given an AgreementJournal, it records every agreement before answering, and reports its number in an
+ * Agreement-Number header. Requests share nothing but a QuoteCache of the quotes already priced, which is dropped whenever a
+ * new tool catalog is installed, so any number of requests may run at once.
+ *
+ * The server's dispatcher thread holds every open connection on one selector, so idle keep-alive connections cost no threads.
+ * Requests are handled on a virtual thread each when the JVM has them (Java 21 and later), and otherwise on a fixed pool of
+ * twice as many threads as cores. Pricing never blocks, but a /checkout with a journal waits until its agreement is forced to
+ * disk, so on the pool a slow disk can hold up quotes queued behind those checkouts.
+ *
+ *     java QuoteService [port] [journal file] [units per tool]      default port 8080, no journal and no inventory
+ *
+ * QuoteLoadGenerator drives a running service, or one of its own, with many connections at once.
+ *
+ * @author Iain St. John
+ * @version 1.00 2026/10/18
+ */
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+public final class QuoteService implements AutoCloseable {
+	//Connections waiting to be accepted. Linux caps this at net.core.somaxconn.
+	static final int BACKLOG = 4096;
+
+	/*The JDK's server reads these when it first starts. By default it closes keep-alive connections beyond the first 200 idle
+	 *ones, and leaves Nagle's algorithm on, which holds back the body of a response sent in a second write. */
+	static {
+		if(System.getProperty("sun.net.httpserver.maxIdleConnections") == null) {
+			System.setProperty("sun.net.httpserver.maxIdleConnections", "100000");
+		}
+		if(System.getProperty("sun.net.httpserver.nodelay") == null) {
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		}
+	}
+
+	//The storefront asks for the same quotes again and again, so this many are kept ready
+	static final int QUOTE_CACHE_SIZE = 65536;
+
+	//The four parameters and a tier and coupon fit in far less, so a longer POST body isn't a rental
+	static final int MAX_BODY_SIZE = 4096;
+
+	private static final String PARAMETERS[] = {"tool", "date", "days", "discount"};
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final QuoteCache quotes;
+	private final AgreementJournal journal;
+	private final ToolInventory inventory;
+	private final String threading;
+	private final AtomicLong faults = new AtomicLong(); //requests answered with a 500
+
+   /**Creates a service listening on the given address. It doesn't take requests until it is started.
+    *
+    *@param address  the address to listen on. Port 0 picks a free port.
+    *@param rules    the holidays that tools exempt from holiday charges are not charged on.
+    *@throws IOException  if the address can't be bound.
+    *@throws NullPointerException  if there are no holiday rules.
+    */
+	public QuoteService(InetSocketAddress address, HolidayRules rules) throws IOException {
+		this(address, rules, null);
+	}
+
+   /**Creates a service that records the agreements it makes in a journal.
+    *
+    *@param journal  the journal to append every agreement made through /checkout to, or null to keep none.
+    */
+	public QuoteService(InetSocketAddress address, HolidayRules rules, AgreementJournal journal) throws IOException {
+		this(address, rules, journal, null);
+	}
+
+   /**Creates a service that only checks out tools it has a free unit of.
+    *
+    *@param inventory  the units to reserve for agreements made through /checkout, or null to reserve none.
+    */
+	public QuoteService(InetSocketAddress address, HolidayRules rules, AgreementJournal journal, ToolInventory inventory)
+			throws IOException {
+		if(rules == null) {
+			throw new NullPointerException("rules");
+		}
+		this.journal = journal;
+		this.inventory = inventory;
+		quotes = new QuoteCache(QUOTE_CACHE_SIZE, rules);
+		server = HttpServer.create(address, BACKLOG);
+		ExecutorService virtual = newVirtualThreadExecutor();
+		if(virtual != null) {
+			executor = virtual;
+			threading = "a virtual thread per request";
+		}
+		else {
+			int threads = Math.max(2, Runtime.getRuntime().availableProcessors() * 2);
+			executor = Executors.newFixedThreadPool(threads);
+			threading = "a pool of " + threads + " threads";
+		}
+		server.setExecutor(executor);
+		server.createContext("/quote", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				serve(exchange, true);
+			}
+		});
+		server.createContext("/checkout", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				serve(exchange, false);
+			}
+		});
+		server.createContext("/metrics", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				respond(exchange, 200, "text/plain; version=0.0.4", appendMetrics(new StringBuilder(4096)).toString());
+			}
+		});
+	}
+
+	//The checkout stage latencies, then the quote cache's counts and the number of faults. A quote answered from the cache goes through no stage after
+	//parsing, so the cache's hits account for the checkouts missing from the later stages.
+	StringBuilder appendMetrics(StringBuilder sb) {
+		CheckoutMetrics.appendTo(sb);
+		sb.append("# HELP toolrental_quote_cache_lookups_total Quotes asked of the quote cache, by outcome.\n");
+		sb.append("# TYPE toolrental_quote_cache_lookups_total counter\n");
+		sb.append("toolrental_quote_cache_lookups_total{outcome=\"hit\"} ").append(quotes.getHits()).append('\n');
+		sb.append("toolrental_quote_cache_lookups_total{outcome=\"miss\"} ").append(quotes.getMisses()).append('\n');
+		sb.append("toolrental_quote_cache_lookups_total{outcome=\"uncacheable\"} ").append(quotes.getUncacheable()).append('\n');
+		sb.append("# HELP toolrental_quote_cache_evictions_total Quotes dropped from the quote cache to make room.\n");
+		sb.append("# TYPE toolrental_quote_cache_evictions_total counter\n");
+		sb.append("toolrental_quote_cache_evictions_total ").append(quotes.getEvictions()).append('\n');
+		sb.append("# HELP toolrental_quote_cache_entries Quotes in the quote cache.\n");
+		sb.append("# TYPE toolrental_quote_cache_entries gauge\n");
+		sb.append("toolrental_quote_cache_entries ").append(quotes.size()).append('\n');
+		sb.append("# HELP toolrental_quote_faults_total Requests that failed for a fault of the service's own, answered with a 500.\n");
+		sb.append("# TYPE toolrental_quote_faults_total counter\n");
+		sb.append("toolrental_quote_faults_total ").append(faults.get()).append('\n');
+		return sb;
+	}
+
+	//Returns Executors.newVirtualThreadPerTaskExecutor() if this JVM has virtual threads, or null if it doesn't.
+	static ExecutorService newVirtualThreadExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch(ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+	public void start() {
+		server.start();
+	}
+
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	//The cache of quotes already priced, with its hit and eviction counts.
+	public QuoteCache getQuoteCache() {
+		return quotes;
+	}
+
+	//How requests are handled: on virtual threads or on a pool.
+	public String getThreading() {
+		return threading;
+	}
+
+	//Stops taking requests, letting those already running finish.
+	public void close() {
+		server.stop(0);
+		executor.shutdown();
+	}
+
+	private void serve(HttpExchange exchange, boolean quote) throws IOException {
+		ToolInventory.Reservation reservation = null;
+		boolean recorded = false;
+		try {
+			String method = exchange.getRequestMethod();
+			String params = exchange.getRequestURI().getRawQuery();
+			if(method.equals("POST")) {
+				params = readBody(exchange);
+				if(params == null) {
+					respond(exchange, 413, "text/plain", "The request body is longer than " + MAX_BODY_SIZE + " bytes.");
+					return;
+				}
+			}
+			else if(!method.equals("GET")) {
+				exchange.getResponseHeaders().set("Allow", "GET, POST");
+				respond(exchange, 405, "text/plain", "Only GET and POST are supported.");
+				return;
+			}
+			CheckoutRequest request = new CheckoutRequest();
+			Map<String, String> parameters = parseParameters(params);
+			String problem = parse(parameters, request);
+			if(problem != null) {
+				respond(exchange, 400, "text/plain", problem);
+				return;
+			}
+			String tier = parameters.get("tier");
+			String coupon = parameters.get("coupon");
+			RentalAgreement agreement = (tier == null && coupon == null) ? quotes.quote(request)
+				: new RentalAgreement(request.getTool(), LocalDate.ofEpochDay(request.getCheckoutDay()), request.getDaysRented(),
+					request.getDiscountPercent(), quotes.getHolidayRules(), Promotions.getDefault().getPlan(), tier, coupon);
+			boolean binary = wantsBinary(exchange);
+			if(quote) {
+				if(binary) {
+					respond(exchange, agreement);
+				}
+				else {
+					respond(exchange, 200, "application/json", toJson(agreement));
+				}
+				return;
+			}
+			if(inventory != null) {
+				try {
+					reservation = inventory.reserve(agreement);
+				}
+				catch(IllegalArgumentException e) {
+					respond(exchange, 400, "text/plain", e.getMessage());
+					return;
+				}
+				if(reservation == null) {
+					StringBuilder taken = new StringBuilder(64).append("No ").append(agreement.getToolCode()).append(" is free from ");
+					ReceiptWriter.appendDate(taken, agreement.getCheckoutDate()).append(" until it would be due back on ");
+					respond(exchange, 409, "text/plain", ReceiptWriter.appendDate(taken, agreement.getDueDate()).append('.').toString());
+					return;
+				}
+				exchange.getResponseHeaders().set("Tool-Unit", Integer.toString(reservation.getUnit()));
+			}
+			if(journal != null) {
+				long number;
+				try {
+					number = journal.append(agreement);
+				}
+				catch(IOException e) {
+					if(reservation != null) {
+						inventory.release(reservation);
+					}
+					respond(exchange, 503, "text/plain", "The agreement could not be recorded: " + e.getMessage());
+					return;
+				}
+				exchange.getResponseHeaders().set("Agreement-Number", Long.toString(number));
+			}
+			recorded = true;
+			if(binary) {
+				respond(exchange, agreement);
+			}
+			else {
+				respond(exchange, 200, "text/plain", agreement.toString());
+			}
+		}
+		catch(RuntimeException e) {
+			//Not bad input, which is answered above, but a fault in pricing. The unit is given back unless the agreement was made.
+			if(reservation != null && !recorded) {
+				inventory.release(reservation);
+			}
+			faults.incrementAndGet();
+			if(exchange.getResponseCode() < 0) {
+				respond(exchange, 500, "text/plain", "The rental could not be priced.");
+			}
+		}
+		finally {
+			exchange.close();
+		}
+	}
+
+   /**Parses the request's parameters into out, with the tool catalog installed at the time. Nothing is thrown for bad input,
+    *so a flood of bad requests costs no more than good ones.
+    *
+    *@return String  null if the parameters are valid, or else what is wrong with them.
+    */
+	static String parse(Map<String, String> params, CheckoutRequest out) {
+		for(String name : PARAMETERS) {
+			String value = params.get(name);
+			if(value == null || value.isEmpty()) {
+				return "Missing parameter: " + name;
+			}
+		}
+		String tool = params.get("tool");
+		byte error = CheckoutParser.parse(ToolCatalog.getDefault(), tool, params.get("date"), params.get("days"),
+			params.get("discount"), out);
+		if(error == CheckoutParser.UNKNOWN_TOOL) {
+			return "ERROR! Tool code " + tool + " not recognized.";
+		}
+		return (error == CheckoutParser.OK) ? null : CheckoutParser.message(error);
+	}
+
+	//Splits a query string or form body into its decoded parameters. Malformed escapes are left undecoded.
+	static Map<String, String> parseParameters(String query) {
+		Map<String, String> params = new HashMap<String, String>();
+		if(query == null) {
+			return params;
+		}
+		for(String pair : query.split("&")) {
+			int eq = pair.indexOf('=');
+			if(eq > 0) {
+				params.put(decode(pair.substring(0, eq)), decode(pair.substring(eq + 1)));
+			}
+		}
+		return params;
+	}
+
+	private static String decode(String s) {
+		if(s.indexOf('%') < 0 && s.indexOf('+') < 0) {
+			return s;
+		}
+		try {
+			return URLDecoder.decode(s, "UTF-8");
+		}
+		catch(UnsupportedEncodingException e) {
+			throw new AssertionError(e); //every JVM supports UTF-8
+		}
+		catch(IllegalArgumentException e) {
+			return s;
+		}
+	}
+
+	//Returns the request's body, or null if it is longer than MAX_BODY_SIZE, in which case it is only read that far.
+	private static String readBody(HttpExchange exchange) throws IOException {
+		String length = exchange.getRequestHeaders().getFirst("Content-Length");
+		if(length != null && CheckoutParser.parseInt(length) > MAX_BODY_SIZE) {
+			return null;
+		}
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		try(InputStream in = exchange.getRequestBody()) {
+			for(int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+				if(body.size() + n > MAX_BODY_SIZE) {
+					return null;
+				}
+				body.write(buffer, 0, n);
+			}
+		}
+		return new String(body.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	static String toJson(RentalAgreement agreement) {
+		Tool tool = agreement.getTool();
+		StringBuilder sb = new StringBuilder(320);
+		sb.append("{\"tool\":");
+		appendJsonString(sb, tool.getCode());
+		sb.append(",\"brand\":");
+		appendJsonString(sb, tool.getBrand());
+		sb.append(",\"type\":");
+		appendJsonString(sb, tool.getType());
+		sb.append(",\"checkoutDate\":\"");
+		ReceiptWriter.appendDate(sb, agreement.getCheckoutDate()).append("\",\"dueDate\":\"");
+		ReceiptWriter.appendDate(sb, agreement.getDueDate()).append('"');
+		sb.append(",\"daysRented\":").append(agreement.getDaysRented());
+		sb.append(",\"chargeableDays\":").append(agreement.getChargeableDays());
+		sb.append(",\"dailyCharge\":\"");
+		Money.appendTo(sb, agreement.getDailyChargeCents()).append('"');
+		sb.append(",\"baseCharge\":\"");
+		Money.appendTo(sb, agreement.getBaseChargeCents()).append('"');
+		sb.append(",\"promotionAmount\":\"");
+		Money.appendTo(sb, agreement.getPromotionAmountCents()).append('"');
+		sb.append(",\"discountPercent\":").append(agreement.getDiscountPercent());
+		sb.append(",\"discountAmount\":\"");
+		Money.appendTo(sb, agreement.getDiscountAmountCents()).append('"');
+		sb.append(",\"finalCharge\":\"");
+		Money.appendTo(sb, agreement.getFinalChargeCents()).append('"');
+		return sb.append('}').toString();
+	}
+
+	private static void appendJsonString(StringBuilder sb, String s) {
+		sb.append('"');
+		for(int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if(c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			}
+			else if(c < ' ') {
+				sb.append(String.format("\\u%04x", (int) c));
+			}
+			else {
+				sb.append(c);
+			}
+		}
+		sb.append('"');
+	}
+
+	private static void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try(OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	//True if the client asked for the agreement as an AgreementMessage instead of text or JSON.
+	private static boolean wantsBinary(HttpExchange exchange) {
+		String accept = exchange.getRequestHeaders().getFirst("Accept");
+		return accept != null && accept.contains(AgreementMessage.CONTENT_TYPE);
+	}
+
+	private void respond(HttpExchange exchange, RentalAgreement agreement) throws IOException {
+		ByteBuffer message = ByteBuffer.allocate(AgreementMessage.HEADER_SIZE + AgreementMessage.BLOCK_LENGTH);
+		try {
+			new AgreementMessage().wrapForEncode(message, 0).encode(agreement);
+		}
+		catch(IllegalArgumentException e) {
+			faults.incrementAndGet();
+			respond(exchange, 500, "text/plain", e.getMessage());
+			return;
+		}
+		exchange.getResponseHeaders().set("Content-Type", AgreementMessage.CONTENT_TYPE);
+		exchange.sendResponseHeaders(200, message.capacity());
+		try(OutputStream out = exchange.getResponseBody()) {
+			out.write(message.array());
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		int port = (args.length > 0) ? Integer.parseInt(args[0]) : 8080;
+		AgreementJournal journal = (args.length > 1) ? new AgreementJournal(Paths.get(args[1])) : null;
+		ToolInventory inventory = (args.length > 2) ? new ToolInventory(ToolCatalog.getDefault(), Integer.parseInt(args[2])) : null;
+		QuoteService service = new QuoteService(new InetSocketAddress(port), HolidayRules.getDefault(), journal, inventory);
+		CheckoutMetrics.registerMBeans();
+		service.start();
+		System.out.println("Quote service listening on port " + service.getPort() + ", handling requests on "
+			+ service.getThreading() + ".");
+		if(journal != null) {
+			System.out.println("Recording agreements in " + journal.getFile() + ", which holds " + journal.size() + ".");
+		}
+		if(!Promotions.getDefault().isEmpty()) {
+			System.out.println("Pricing with " + Promotions.getDefault().getPromotions().size() + " promotions from "
+				+ Promotions.getDefault().getName() + ".");
+		}
+		System.out.println("Checkout stages are " + (CheckoutMetrics.isEnabled() ? "" : "not ") + "being measured. Switch with the "
+			+ "toolrental:type=CheckoutMetrics MBean, or start with -Dtoolrental.metrics=true.");
+	}
+}
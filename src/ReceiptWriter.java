@@ -0,0 +1,218 @@
+/**
+ * @(#)ReceiptWriter.java
+ * Writes a RentalAgreement as text straight into a buffer supplied by the caller, without String.format, so that printing
+ * and exporting agreements in bulk doesn't allocate. The text is exactly what RentalAgreement.toString() returns:
+ *
+ *     Rigid Jackhammer (JAKR) rented on 07/02/20.
+ *     Rental Period: 07/02/20 -- 07/06/20 (4)
+ *     Initial charge: $2.99. Discount Applied: 50% (Amount: $1.50)
+ *     Final amount due at return: $1.49
+ *
+ * with lines separated by the platform line separator, and dates written as MM/dd/yy. An agreement that promotions took
+ * something off shows it after the initial charge, as "Initial charge: $13.93. Promotions: $10.41. Discount Applied: ...".
+ *
+ * A RentalOrder is written as one receipt in the same layout, with a line for each tool rented between the rental period and
+ * the initial charge. See RentalOrder for its text.
+ *
+ * appendTo() is static and may be called from any thread. Writing to a CharBuffer or ByteBuffer goes through a scratch
+ * builder kept by the ReceiptWriter instance, so each thread should use its own instance.
+ *
+ * @author Iain St. John
+ * @version 1.00 2026/10/18
+ */
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.time.LocalDate;
+
+public final class ReceiptWriter {
+	private static final String LINE_SEPARATOR = System.lineSeparator();
+
+	private final StringBuilder scratch = new StringBuilder(256);
+	private char[] scratchChars = new char[256];
+	private byte[] scratchBytes = new byte[768];
+
+   /**Appends the text of an agreement to a builder.
+    *
+    *@param sb         the builder to append to.
+    *@param agreement  the agreement to write.
+    *@return StringBuilder  the builder.
+    */
+	public static StringBuilder appendTo(StringBuilder sb, RentalAgreement agreement) {
+		return appendTo(sb, agreement.getTool(), agreement.getCheckoutDay(), agreement.getDueDay(), agreement.getDaysRented(),
+			agreement.getDiscountPercent(), agreement.getBaseChargeCents(), agreement.getPromotionAmountCents(),
+			agreement.getDiscountAmountCents(), agreement.getFinalChargeCents());
+	}
+
+	//Appends the text of an agreement given by its parts, with dates as epoch days and amounts in cents.
+	static StringBuilder appendTo(StringBuilder sb, Tool tool, long checkoutDay, long dueDay, int daysRented, int discountPerc,
+			long baseCharge, long promotionAmount, long discountAmount, long finalCharge) {
+		long started = CheckoutMetrics.start();
+		sb.append(tool.getBrand()).append(' ').append(tool.getType()).append(" (").append(tool.getCode()).append(") rented on ");
+		appendDate(sb, checkoutDay).append('.').append(LINE_SEPARATOR);
+
+		sb.append("Rental Period: ");
+		appendDate(sb, checkoutDay).append(" -- ");
+		appendDate(sb, dueDay).append(" (").append(daysRented).append(')').append(LINE_SEPARATOR);
+
+		sb.append("Initial charge: ");
+		Money.appendTo(sb, baseCharge);
+		if(promotionAmount != 0) {
+			Money.appendTo(sb.append(". Promotions: "), promotionAmount);
+		}
+		sb.append(". Discount Applied: ").append(discountPerc);
+		sb.append("% (Amount: ");
+		Money.appendTo(sb, discountAmount).append(')').append(LINE_SEPARATOR);
+
+		sb.append("Final amount due at return: ");
+		Money.appendTo(sb, finalCharge);
+		CheckoutMetrics.lap(CheckoutMetrics.Stage.FORMAT, tool, started);
+		return sb;
+	}
+
+   /**Appends the receipt of a multi-line order to a builder. The dates and totals are written once for the whole order.
+    *
+    *@param sb     the builder to append to.
+    *@param order  the order to write.
+    *@return StringBuilder  the builder.
+    */
+	public static StringBuilder appendTo(StringBuilder sb, RentalOrder order) {
+		long checkoutDay = order.getCheckoutDay();
+		int tools = order.getToolCount();
+		sb.append("Order of ").append(tools).append((tools == 1) ? " tool" : " tools").append(" rented on ");
+		appendDate(sb, checkoutDay).append('.').append(LINE_SEPARATOR);
+
+		sb.append("Rental Period: ");
+		appendDate(sb, checkoutDay).append(" -- ");
+		appendDate(sb, order.getDueDay()).append(" (").append(order.getDaysRented()).append(')').append(LINE_SEPARATOR);
+
+		for(int i = 0; i < order.getLineCount(); i++) {
+			Tool tool = order.getTool(i);
+			int days = order.getChargeableDays(i);
+			sb.append(order.getQuantity(i)).append(" x ");
+			sb.append(tool.getBrand()).append(' ').append(tool.getType()).append(" (").append(tool.getCode()).append("): ");
+			sb.append(days).append((days == 1) ? " day at " : " days at ");
+			Money.appendTo(sb, tool.getDailyChargeCents()).append(": ");
+			Money.appendTo(sb, order.getBaseChargeCents(i));
+			if(order.getPromotionAmountCents(i) != 0) {
+				Money.appendTo(sb.append(". Promotions: "), order.getPromotionAmountCents(i));
+			}
+			sb.append(LINE_SEPARATOR);
+		}
+
+		sb.append("Initial charge: ");
+		Money.appendTo(sb, order.getBaseChargeCents());
+		if(order.getPromotionAmountCents() != 0) {
+			Money.appendTo(sb.append(". Promotions: "), order.getPromotionAmountCents());
+		}
+		sb.append(". Discount Applied: ").append(order.getDiscountPercent());
+		sb.append("% (Amount: ");
+		Money.appendTo(sb, order.getDiscountAmountCents()).append(')').append(LINE_SEPARATOR);
+
+		sb.append("Final amount due at return: ");
+		return Money.appendTo(sb, order.getFinalChargeCents());
+	}
+
+   /**Writes the text of an agreement into a char buffer, starting at its position.
+    *
+    *@throws BufferOverflowException  if the buffer doesn't have room for the whole text. Nothing is written in that case.
+    */
+	public void writeTo(RentalAgreement agreement, CharBuffer out) {
+		scratch.setLength(0);
+		appendTo(scratch, agreement);
+		int length = scratch.length();
+		if(out.remaining() < length) {
+			throw new BufferOverflowException();
+		}
+		growScratch(length);
+		scratch.getChars(0, length, scratchChars, 0);
+		out.put(scratchChars, 0, length); //CharBuffer.append() would copy the builder into a String first
+	}
+
+   /**Writes the text of an agreement into a byte buffer as UTF-8, starting at its position.
+    *
+    *@throws BufferOverflowException  if the buffer doesn't have room for the whole text. Nothing is written in that case.
+    */
+	public void writeTo(RentalAgreement agreement, ByteBuffer out) {
+		scratch.setLength(0);
+		appendTo(scratch, agreement);
+		encodeScratch(out);
+	}
+
+   /**Writes the text of request i of a priced batch into a byte buffer as UTF-8, as writeTo(RentalAgreement, ByteBuffer) does
+    *for an agreement. The request must have been priced successfully.
+    */
+	void writeTo(Tool tool, RentalBatch batch, PricingResults results, int i, ByteBuffer out) {
+		scratch.setLength(0);
+		appendTo(scratch, tool, batch.checkoutDay[i], results.dueDay[i], batch.days[i], batch.discount[i], results.baseCharge[i],
+			results.promotionAmount[i], results.discountAmount[i], results.finalCharge[i]);
+		encodeScratch(out);
+	}
+
+	//Makes the scratch arrays big enough for a text of the given length.
+	private void growScratch(int length) {
+		if(scratchChars.length < length) {
+			scratchChars = new char[length];
+			scratchBytes = new byte[length * 3]; //the most UTF-8 needs for one char
+		}
+	}
+
+	//Writes the scratch builder into a byte buffer as UTF-8. Throws BufferOverflowException, writing nothing, if it doesn't fit.
+	private void encodeScratch(ByteBuffer out) {
+		int length = scratch.length();
+		growScratch(length);
+		char[] chars = scratchChars;
+		byte[] bytes = scratchBytes;
+		scratch.getChars(0, length, chars, 0);
+		int n = 0;
+		for(int i = 0; i < length; i++) {
+			char c = chars[i];
+			if(c < 0x80) {
+				bytes[n++] = (byte) c;
+			}
+			else if(c < 0x800) {
+				bytes[n++] = (byte) (0xC0 | (c >> 6));
+				bytes[n++] = (byte) (0x80 | (c & 0x3F));
+			}
+			else if(Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(chars[i + 1])) {
+				int cp = Character.toCodePoint(c, chars[++i]);
+				bytes[n++] = (byte) (0xF0 | (cp >> 18));
+				bytes[n++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+				bytes[n++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+				bytes[n++] = (byte) (0x80 | (cp & 0x3F));
+			}
+			else if(Character.isSurrogate(c)) {
+				bytes[n++] = (byte) '?'; //a lone surrogate, as String.getBytes() writes it
+			}
+			else {
+				bytes[n++] = (byte) (0xE0 | (c >> 12));
+				bytes[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				bytes[n++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+		if(out.remaining() < n) {
+			throw new BufferOverflowException();
+		}
+		out.put(bytes, 0, n);
+	}
+
+	//Appends a date as MM/dd/yy, the same as %tD.
+	public static StringBuilder appendDate(StringBuilder sb, LocalDate date) {
+		appendTwoDigits(sb, date.getMonthValue()).append('/');
+		appendTwoDigits(sb, date.getDayOfMonth()).append('/');
+		return appendTwoDigits(sb, Math.floorMod(date.getYear(), 100));
+	}
+
+	//Appends a date given as an epoch day as MM/dd/yy.
+	static StringBuilder appendDate(StringBuilder sb, long epochDay) {
+		int ymd = BusinessDayIndex.yearMonthDay(epochDay);
+		appendTwoDigits(sb, ymd / 100 % 100).append('/');
+		appendTwoDigits(sb, ymd % 100).append('/');
+		return appendTwoDigits(sb, Math.floorMod(ymd / 10000, 100));
+	}
+
+	private static StringBuilder appendTwoDigits(StringBuilder sb, int n) {
+		return sb.append((char) ('0' + n / 10)).append((char) ('0' + n % 10));
+	}
+}
@@ -6,184 +6,170 @@
  * @version 1.00 2016/3/20
  */
 
-import java.util.Date;
-import java.util.Calendar;
-import java.lang.Math;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.math.RoundingMode;
 
 public class RentalAgreement {
-	//Private variables for a RentalAgreement instance
+	//Private variables for a RentalAgreement instance. An agreement is fully computed by its constructor and never changes
+	//afterwards, so it can be shared freely between threads.
 	//The following variables are passed from Checkout, and are used to derive other data.
-	private String toolCode;
-	private int daysRented;
-	private Date checkoutDate;
-	private int discountPerc;
+	private final String toolCode;
+	private final int daysRented;
+	private final LocalDate checkoutDate;
+	private final int discountPerc;
+	private final HolidayRules holidayRules;
 	
 	//The rest of the variables are calculated or otherwise derived
 	//Tool variables
-	private Tool rentedTool;
-	private String toolBrand;
-	private String toolType;
-	private double dailyToolCharge;
+	private final Tool rentedTool;
+	private final String toolBrand;
+	private final String toolType;
+	private final long dailyToolCharge; //in cents
 	
-	//Date/time variables
-	private Date dueDate;
-	private int chargeableDays;
+	//Date/time variables. Dates are also kept as epoch days (days since 01/01/1970) for the day arithmetic.
+	private final long checkoutDay;
+	private final long dueDay;
+	private final LocalDate dueDate;
+	private final int chargeableDays;
 	
-	//Currency variables
-	private double baseCharge;
-	private double discountAmnt;
-	private double finalCharge;
+	//Currency variables, all in cents
+	private final long baseCharge;
+	private final long promotionAmnt; //taken off the base charge before the discount
+	private final long discountAmnt;
+	private final long finalCharge;
     
-   /**RentalAgreement constructor that takes the 4 necessary variables from Checkout, and calls all this instance's
-    * private helper methods to generate the rest of the information contained within.
+   /**RentalAgreement constructor that takes the 4 necessary variables from Checkout, and derives the rest of the information
+    * contained within.
     *
     *@param code -- the desired tool's code.
-    *@param date -- a Date object containing the date of checkout.
+    *@param date -- the date of checkout.
     *@param days -- the number of days for which this tool will be rented.
     *@param disc -- the discount percentage to apply to the charge of this rental.
     */
-    public RentalAgreement(String code, Date date, int days, int disc) {
+    public RentalAgreement(String code, LocalDate date, int days, int disc) {
+    	this(code, date, days, disc, HolidayRules.getDefault());
+    }
+    
+   /**As above, but with the holidays of the given rule set (a region's holidays, for example) instead of the default ones.
+    *
+    *@param rules -- the holidays that tools exempt from holiday charges are not charged on.
+    */
+    public RentalAgreement(String code, LocalDate date, int days, int disc, HolidayRules rules) {
+    	this(lookUpTool(ToolCatalog.getDefault(), code), date, days, disc, rules);
+    }
+    
+   /**Creates an agreement for a tool that has already been looked up in a ToolCatalog, with the default promotions for a
+    * customer with no loyalty tier or coupon.
+    *
+    *@param tool  -- the tool being rented.
+    *@param date  -- the date of checkout.
+    *@param days  -- the number of days for which this tool will be rented.
+    *@param disc  -- the discount percentage to apply to the charge of this rental.
+    *@param rules -- the holidays that tools exempt from holiday charges are not charged on.
+    */
+    public RentalAgreement(Tool tool, LocalDate date, int days, int disc, HolidayRules rules) {
+    	this(tool, date, days, disc, rules, Promotions.getDefault().getPlan(), null, null);
+    }
+    
+   /**As above, with the given promotions for a customer of the given loyalty tier presenting the given coupon. The promotions
+    * come off the base charge first, and the discount percentage is then taken off what is left.
+    *
+    *@param promotions -- the promotions that may apply.
+    *@param tier       -- the customer's loyalty tier, or null.
+    *@param coupon     -- the coupon code presented, or null.
+    */
+    public RentalAgreement(Tool tool, LocalDate date, int days, int disc, HolidayRules rules, PromotionPlan promotions,
+    		String tier, String coupon) {
+    	holidayRules = rules;
     	//Save the arguments passed into this constructor
-    	toolCode = code;
-    	//Use checkout date and the number of days for the rental to determine due date
-    	checkoutDate = (Date) date.clone();
+    	rentedTool = tool;
+    	toolCode = tool.getCode();
+    	checkoutDate = date;
     	daysRented = days;
     	discountPerc = disc;
     	
-    	//Call all the helper methods below to fill in the rest of the data of this instance
-    	setToolVars();
-    	determineDueDate();
-    	determineCharge();
-    }
-    
-    //Returns a String representation of a RentalAgreement
-    public String toString() {
-    	finalCharge = Math.floor(finalCharge * 100)/100;
-    	String toolStr = String.format("%s %s (%s) rented on %tD.",toolBrand,toolType,toolCode,checkoutDate);
-    	String dateStr = String.format("Rental Period: %tD -- %tD (%d)",checkoutDate,dueDate,daysRented);
-    	String moneyStr = String.format("Initial charge: $%.2f. Discount Applied: %d%% (Amount: $%.2f)",baseCharge,discountPerc,discountAmnt);
-    	String feeStr = String.format("Final amount due at return: $%.2f",finalCharge);
-    	return (String.format("%s%n%s%n%s%n%s",toolStr,dateStr,moneyStr,feeStr));
-    }
-    
-    /*Private helper function that creates a Tool from the toolCode given by Checkout, and gets the rest of the resulting information
-     *from the Tool Object created.
-     */
-    private void setToolVars() {
-    	rentedTool = new Tool(toolCode);
+    	//Get the rest of the resulting information from the shared Tool
     	toolBrand = rentedTool.getBrand();
     	toolType = rentedTool.getType();
-    	dailyToolCharge = rentedTool.getDailyCharge();
-    }
-    
-   /**Private helper function that derives when the rented tool is due using the checkoutDate and the number of days it's rented.
-    */ 
-    private void determineDueDate() {
-    	Calendar c = Calendar.getInstance();
-    	c.setTime(checkoutDate);
-    	//add the number of days rented
-    	c.add(Calendar.DATE, daysRented);
-    	//copy the resulting date into due date
-    	dueDate = c.getTime();
-    }
-    
-  /**This helper method will perform the brunt of the work in this class. It first determines the number of chargeable days in the range
-    *of the day after checkout to the due date (inclusive). Then, it calculates the baseCharge using the number of days charged and the
-    *daily rate of the rented tool. Next, it calculates the dollar amount of the applied discount, and subtracts that from the base charge
-    *to yield the final charge of this rental.
-    */  
-    private void determineCharge() {
-    	Calendar c = Calendar.getInstance(); //working calendar, beginning at checkout date
-    	Calendar end = Calendar.getInstance(); //end condition calendar at the due date
-    	c.setTime(checkoutDate);
-    	end.setTime(dueDate);
-    	end.add(Calendar.DATE,1); //extend by one, so last rental day isn't missed
-    	String excluded = rentedTool.getDaysExempt();
-    	//What days are exempt from this tool's rental charge?
-    	//If the excluded days String is still null, the tool has no days exempt from charge, so every day is chargeable
-    	if(excluded == null) {
-    		chargeableDays = daysRented;
-    	}
-    	//If it isn't null, then weekends are definitely exempt, and Holdidays might be. Find all days without charge
-    	else {
-    		chargeableDays = daysRented;
-    		c.add(Calendar.DATE,1); //skip past rental day, as it is never charged
-    		int dow = c.get(Calendar.DAY_OF_WEEK);
-    		//Loop through the rental period range until we reach the checkout date
-    		while(!c.equals(end)) {
-    			//Get the integer values for the day in the month and week, and the month for the current calendar day
-    			int day = c.get(Calendar.DATE);
-    			int dayOfWeek = c.get(Calendar.DAY_OF_WEEK);
-    			int month = c.get(Calendar.MONTH);
-    			int year = c.get(Calendar.YEAR);
-    		   /*Two Holidays in the context of this problem are Independence Day and Labor Day
-    			*Independence Day is July 4th. Labor Day is the first monday in September.
-    			*/
-    			if(excluded.contains("Holidays")) {
-    				if(dayOfWeek == 2 && month == 8) {
-    					 if(this.isFirstWeekday(day, dayOfWeek, month, year)){
-    					 	chargeableDays--;
-    					 }
-    				}
-    				//Independence falls on a weekday
-    				if(day == 4 && month == 6 && (dayOfWeek != 1 && dayOfWeek != 7)) {
-    					chargeableDays--;
-    				}
-    				//It fell on a Sunday
-    				if(dayOfWeek == 2 && ((day - 1) == 4)) {
-    					chargeableDays--;
-    				}
-    				//It fell on a Saturday
-    				if(dayOfWeek == 6 && ((day + 1) == 4)) {
-    					chargeableDays--;
-    				}
-    			}
-    			//Weekends are excluded either way.
-    			if(dayOfWeek == 7) {
-    					chargeableDays--;
-    			}
-    			if(dayOfWeek == 1) {
-    					chargeableDays--;
-    			}
-    			//go to the next day for the next iteration
-    			c.add(Calendar.DATE,1);
-    		}
-    	}
-    	//chargeableDays will now have a value that acurately reflects the days in this rental period where a charge is necessary
+    	dailyToolCharge = rentedTool.getDailyChargeCents();
     	
-    	//Calculate the baseCharge
-    	baseCharge = chargeableDays * dailyToolCharge;
+    	//Use checkout date and the number of days for the rental to determine due date
+    	long started = CheckoutMetrics.start();
+    	checkoutDay = checkoutDate.toEpochDay();
+    	dueDay = checkoutDay + daysRented;
+    	dueDate = LocalDate.ofEpochDay(dueDay);
+    	long lap = CheckoutMetrics.lap(CheckoutMetrics.Stage.DUE_DATE, rentedTool, started);
     	
-    	//Calculate discount amount
-    	discountAmnt = ((((double) discountPerc/100)) * baseCharge);
-    	//Now, the final charge. Ensure this is rounded down
-    	finalCharge = baseCharge - discountAmnt;
-
+    	/*Determine the number of chargeable days in the range of the day after checkout to the due date (inclusive). Then calculate
+    	 *the baseCharge using the number of days charged and the daily rate of the rented tool. Next, calculate the amount of the
+    	 *applied discount, and subtract that from the base charge to yield the final charge of this rental. */
+    	chargeableDays = ChargeableDayCounter.count(holidayRules, checkoutDay, daysRented,
+    		rentedTool.isWeekendExempt(), rentedTool.isHolidayExempt());
+    	lap = CheckoutMetrics.lap(CheckoutMetrics.Stage.CHARGEABLE_DAYS, rentedTool, lap);
+    	baseCharge = chargeableDays * dailyToolCharge;
+    	promotionAmnt = promotions.amountOff(rentedTool, daysRented, baseCharge, tier, coupon);
+    	discountAmnt = discountAmount(baseCharge - promotionAmnt, discountPerc);
+    	finalCharge = finalCharge(baseCharge - promotionAmnt, discountPerc);
+    	CheckoutMetrics.lap(CheckoutMetrics.Stage.PRICING, rentedTool, lap);
     }
-   /**Private helper function that determines whether a given date is the first occurence of a weekday within the specified month.
+    
+   /**Restores an agreement made earlier, such as one read back from an AgreementJournal, with the charges it was made with
+    * rather than charges worked out again from today's prices and holidays.
     *
-    *@param dayOfMonth  The date.
-    *@param dayOfWeek   The day of the week of dayOfMonth.
-    *@param moth    The month we're checking within.
-    *@param year    The year we're checking in.
-    *@return boolean   True if there are no given weekdays before, false if there are not.
-    */ 
-    private boolean isFirstWeekday(int dayOfMonth, int dayOfWeek, int month, int year) {
-    	Calendar cal = Calendar.getInstance();
-    	cal.set(year, month, dayOfMonth);
-    	//go back one week, to the last time we were at this weekday
-    	cal.add(Calendar.DATE,-7);
-    	int m = cal.get(Calendar.MONTH);
-    	//if just one instance of this weekday was found in this month, then dayOfMonth isn't the first
-    	if(m == month) {
-    		return false;
-    	}
-    	//If we went back to the last same weekday, and it's a different month, then dayOfMonth must be the first in the month
-    	else {
-    		return true;
+    *@param tool        -- the tool as it was when rented.
+    *@param checkout    -- the date of checkout, as an epoch day.
+    *@param days        -- the number of days rented.
+    *@param disc        -- the discount percentage.
+    *@param chargeDays  -- the number of days charged.
+    *@param base        -- the base charge, in cents.
+    *@param promotion   -- the amount taken off by promotions, in cents.
+    *@param discAmount  -- the discount amount, in cents.
+    *@param fin         -- the final charge, in cents.
+    */
+    RentalAgreement(Tool tool, long checkout, int days, int disc, int chargeDays, long base, long promotion, long discAmount,
+    		long fin) {
+    	holidayRules = null; //the charges are already known, so no holidays are needed to work them out
+    	rentedTool = tool;
+    	toolCode = tool.getCode();
+    	toolBrand = tool.getBrand();
+    	toolType = tool.getType();
+    	dailyToolCharge = tool.getDailyChargeCents();
+    	daysRented = days;
+    	discountPerc = disc;
+    	checkoutDay = checkout;
+    	checkoutDate = LocalDate.ofEpochDay(checkoutDay);
+    	dueDay = checkoutDay + daysRented;
+    	dueDate = LocalDate.ofEpochDay(dueDay);
+    	chargeableDays = chargeDays;
+    	baseCharge = base;
+    	promotionAmnt = promotion;
+    	discountAmnt = discAmount;
+    	finalCharge = fin;
+    }
+    
+    //Returns the tool with the given code from the catalog, or throws an IllegalArgumentException if there isn't one.
+    static Tool lookUpTool(ToolCatalog catalog, String code) {
+    	Tool tool = catalog.get(code);
+    	if(tool == null) {
+    		throw new IllegalArgumentException("ERROR! Tool code " + code + " not recognized.");
     	}
+    	return tool;
+    }
+    
+    //The discount shown on an agreement: the discount percentage of the base charge, rounded half up to a whole cent.
+    static long discountAmount(long baseCharge, int discountPerc) {
+    	return Money.percentOf(baseCharge, discountPerc, RoundingMode.HALF_UP);
+    }
+    
+    /*The final charge is rounded down, so the customer is never charged a fraction of a cent. This means it is taken from the
+     *unrounded discount, not the rounded discount amount shown on the agreement. */
+    static long finalCharge(long baseCharge, int discountPerc) {
+    	return baseCharge - Money.percentOf(baseCharge, discountPerc, RoundingMode.CEILING);
+    }
+    
+    //Returns a String representation of a RentalAgreement. ReceiptWriter can write the same text without creating the String.
+    public String toString() {
+    	return ReceiptWriter.appendTo(new StringBuilder(200), this).toString();
     }
     
    /**Added to support iterative based calling of the below get methods. The index of the expected variable value in the testResults array is passed here, and
@@ -213,37 +199,88 @@ public class RentalAgreement {
     
     //Below are all the public "getter" methods for a Rental Agreement's variables. Used in JUnit testing
     public String getChargeDaysString() {
-    	return String.format("%d",chargeableDays); //I'm returning a String here to help facilitate the testing loop in validTest() method in the TestToolRental class.
+    	return Integer.toString(chargeableDays); //I'm returning a String here to help facilitate the testing loop in validTest() method in the TestToolRental class.
     }
     
     public String getDueDateString() {
-    	DateFormat simple = new SimpleDateFormat("MM/dd/yy");
-    	return simple.format(dueDate).toString();
+    	return ReceiptWriter.appendDate(new StringBuilder(8), dueDate).toString();
     }
     
     public String getDailyRateString() {
-    	return String.format("$%.2f",dailyToolCharge);
+    	return Money.format(dailyToolCharge);
     }
     
     public String getBaseChargeString() {
-    	return String.format("$%.2f",baseCharge);
+    	return Money.format(baseCharge);
     }
     
     public String getDiscountString() {
-    	return String.format("%d%%",discountPerc);
+    	return discountPerc + "%";
     }
     
     public String getDiscountAmntString() {
-    	return String.format("$%.2f",discountAmnt);
+    	return Money.format(discountAmnt);
     }
     
     public String getFinalChargeString() {
-    	finalCharge = Math.floor(finalCharge * 100) / 100;
-    	return String.format("$%.2f",finalCharge);
+    	return Money.format(finalCharge);
+    }
+    
+    //Numeric getters. Amounts of money are in cents, and dates are epoch days.
+    public String getToolCode() {
+    	return toolCode;
+    }
+    
+    public Tool getTool() {
+    	return rentedTool;
+    }
+    
+    public int getDaysRented() {
+    	return daysRented;
+    }
+    
+    public int getDiscountPercent() {
+    	return discountPerc;
+    }
+    
+    public LocalDate getCheckoutDate() {
+    	return checkoutDate;
+    }
+    
+    public LocalDate getDueDate() {
+    	return dueDate;
+    }
+    
+    public long getCheckoutDay() {
+    	return checkoutDay;
     }
     
+    public long getDueDay() {
+    	return dueDay;
+    }
     
+    public int getChargeableDays() {
+    	return chargeableDays;
+    }
     
-   	
+    public long getDailyChargeCents() {
+    	return dailyToolCharge;
+    }
     
+    public long getBaseChargeCents() {
+    	return baseCharge;
+    }
+    
+    //The amount taken off the base charge by promotions, before the discount.
+    public long getPromotionAmountCents() {
+    	return promotionAmnt;
+    }
+    
+    public long getDiscountAmountCents() {
+    	return discountAmnt;
+    }
+    
+    public long getFinalChargeCents() {
+    	return finalCharge;
+    }
 }
\ No newline at end of file
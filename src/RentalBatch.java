@@ -0,0 +1,76 @@
+/**
+ * @(#)RentalBatch.java
+ * A batch of rental requests laid out in columns, one primitive array per field, for pricing many rentals in a single call to
+ * BatchPricer. A request is the id of its tool in the pricer's ToolCatalog, the checkout date as an epoch day, the number of
+ * days rented, and the discount percentage.
+ *
+ * A batch may be cleared and refilled as many times as needed, and only allocates when it has to grow.
+ *
+ * @author Iain St. John
+ * @version 1.00 2026/10/18
+ */
+
+import java.util.Arrays;
+
+public final class RentalBatch {
+	int[] tool;
+	int[] checkoutDay;
+	int[] days;
+	int[] discount;
+	int size;
+
+	public RentalBatch(int capacity) {
+		capacity = Math.max(capacity, 16);
+		tool = new int[capacity];
+		checkoutDay = new int[capacity];
+		days = new int[capacity];
+		discount = new int[capacity];
+	}
+
+   /**Adds a request to the end of the batch.
+    *
+    *@param toolIndex    the id of the tool in the BatchPricer's catalog.
+    *@param checkoutDay  the checkout date as an epoch day.
+    *@param daysRented   the number of days the tool is rented.
+    *@param discountPerc the discount percentage.
+    */
+	public void add(int toolIndex, int checkoutDay, int daysRented, int discountPerc) {
+		if(size == tool.length) {
+			int capacity = size * 2;
+			tool = Arrays.copyOf(tool, capacity);
+			this.checkoutDay = Arrays.copyOf(this.checkoutDay, capacity);
+			days = Arrays.copyOf(days, capacity);
+			discount = Arrays.copyOf(discount, capacity);
+		}
+		tool[size] = toolIndex;
+		this.checkoutDay[size] = checkoutDay;
+		days[size] = daysRented;
+		discount[size] = discountPerc;
+		size++;
+	}
+
+	//Empties the batch, keeping its arrays for reuse.
+	public void clear() {
+		size = 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getToolIndex(int i) {
+		return tool[i];
+	}
+
+	public int getCheckoutDay(int i) {
+		return checkoutDay[i];
+	}
+
+	public int getDaysRented(int i) {
+		return days[i];
+	}
+
+	public int getDiscountPercent(int i) {
+		return discount[i];
+	}
+}
@@ -0,0 +1,517 @@
+/**
+ * @(#)RentalHistory.java
+ * The agreements of the past, kept for reporting: revenue by tool type, brand or tool, what promotions and discounts gave away
+ * (the leakage), and how many days each tool spent out on rent, week by week.
+ *
+ * Agreements are kept in columns of primitive arrays, as RentalBatch and PricingResults are, split into one segment per month
+ * of checkout. A report over a range of checkout dates reads only the segments of the months in the range. Those wholly inside
+ * it are summed without looking at a single date, so a report for a month or a quarter costs one pass over just the columns it
+ * needs, and the months at the ends of a range that isn't whole months look up where their part of it starts and ends. Rows
+ * are first summed by the tool they were for, then the few tool totals are rolled up into types or brands.
+ *
+ * So that summing by tool reads each column straight through, rather than adding each row into the totals of its tool, the
+ * rows of a segment are kept grouped by tool, and by checkout date within a tool. Agreements are added to the end of their
+ * segment, and the first report to read a segment after that groups its rows again, with a counting sort. The totals of a
+ * tool are then sums over one run of each column, taken in a single loop with the sums in locals, and a range cutting a month
+ * in two is found in each run by a binary search on the checkout dates. The loop is still scalar: C2 (as of Java 17) doesn't
+ * vectorize a loop of nothing but long sums, so what grouping gains is reading the columns in order with no scatter.
+ *
+ * A tool is kept as it was when the agreement was made, so a report prices nothing and a new catalog changes no totals.
+ *
+ * Reports may be run by any number of threads at once, but not while agreements are being added.
+ *
+ *     java RentalHistory <journal file> <mm/dd/yy> <mm/dd/yy>   reports on the agreements checked out between two dates
+ *
+ * @author Iain St. John
+ * @version 1.00 2026/10/18
+ */
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+public final class RentalHistory {
+	//The segment of each month that has any agreements, by months since 0000
+	private final TreeMap<Integer, Segment> months = new TreeMap<Integer, Segment>();
+	private Segment[] byMonth = new Segment[0]; //the same segments, from firstMonth on, for finding them as agreements are added
+	private int firstMonth;
+	private final ToolTable tools = new ToolTable();
+	private int maxDaysRented;
+	private long size;
+
+	//The agreements checked out in one month, in columns
+	private static final class Segment {
+		final long firstDay; //the first and last days of the month, as epoch days
+		final long lastDay;
+		int[] tool = new int[64];
+		int[] checkoutDay = new int[64];
+		int[] daysRented = new int[64];
+		int[] chargeableDays = new int[64];
+		long[] baseCharge = new long[64];
+		long[] promotionAmount = new long[64];
+		long[] discountAmount = new long[64];
+		long[] finalCharge = new long[64];
+		int size;
+		//The rows of tool t are from toolStart[t] up to toolStart[t + 1], for the first `grouped` rows; guarded by the segment
+		int grouped;
+		int[] toolStart = {0};
+
+		Segment(LocalDate month) {
+			firstDay = month.withDayOfMonth(1).toEpochDay();
+			lastDay = month.withDayOfMonth(month.lengthOfMonth()).toEpochDay();
+		}
+
+		void add(int toolId, int checkout, int days, int chargeable, long base, long promotion, long discount, long fin) {
+			if(size == tool.length) {
+				int capacity = size * 2;
+				tool = Arrays.copyOf(tool, capacity);
+				checkoutDay = Arrays.copyOf(checkoutDay, capacity);
+				daysRented = Arrays.copyOf(daysRented, capacity);
+				chargeableDays = Arrays.copyOf(chargeableDays, capacity);
+				baseCharge = Arrays.copyOf(baseCharge, capacity);
+				promotionAmount = Arrays.copyOf(promotionAmount, capacity);
+				discountAmount = Arrays.copyOf(discountAmount, capacity);
+				finalCharge = Arrays.copyOf(finalCharge, capacity);
+			}
+			tool[size] = toolId;
+			checkoutDay[size] = checkout;
+			daysRented[size] = days;
+			chargeableDays[size] = chargeable;
+			baseCharge[size] = base;
+			promotionAmount[size] = promotion;
+			discountAmount[size] = discount;
+			finalCharge[size] = fin;
+			size++;
+		}
+
+	   /**Groups the rows by tool, and by checkout date within a tool, if any have been added since they last were: sorted by day
+	    *of the month, then stably by tool.
+	    *
+	    *@param tools  the number of tools numbered so far, more than any number in the segment.
+	    */
+		synchronized void group(int tools) {
+			if(grouped == size) {
+				return;
+			}
+			int[] byDay = new int[size];
+			int[] next = new int[32];
+			for(int i = 0; i < size; i++) {
+				next[(int) (checkoutDay[i] - firstDay) + 1]++;
+			}
+			for(int d = 1; d < next.length; d++) {
+				next[d] += next[d - 1];
+			}
+			for(int i = 0; i < size; i++) {
+				byDay[next[(int) (checkoutDay[i] - firstDay)]++] = i;
+			}
+			int[] start = new int[tools + 1];
+			for(int i = 0; i < size; i++) {
+				start[tool[i] + 1]++;
+			}
+			for(int t = 1; t <= tools; t++) {
+				start[t] += start[t - 1];
+			}
+			int[] order = new int[size];
+			next = Arrays.copyOf(start, tools);
+			for(int k = 0; k < size; k++) {
+				int i = byDay[k];
+				order[next[tool[i]]++] = i;
+			}
+			tool = permute(tool, order);
+			checkoutDay = permute(checkoutDay, order);
+			daysRented = permute(daysRented, order);
+			chargeableDays = permute(chargeableDays, order);
+			baseCharge = permute(baseCharge, order);
+			promotionAmount = permute(promotionAmount, order);
+			discountAmount = permute(discountAmount, order);
+			finalCharge = permute(finalCharge, order);
+			toolStart = start;
+			grouped = size;
+		}
+
+		//The first row from lo up to hi, all of one tool, checked out on or after the given day; hi if none.
+		int firstFrom(int lo, int hi, long day) {
+			while(lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if(checkoutDay[mid] < day) {
+					lo = mid + 1;
+				}
+				else {
+					hi = mid;
+				}
+			}
+			return lo;
+		}
+
+		private static int[] permute(int[] column, int[] order) {
+			int[] moved = new int[column.length];
+			for(int k = 0; k < order.length; k++) {
+				moved[k] = column[order[k]];
+			}
+			return moved;
+		}
+
+		private static long[] permute(long[] column, int[] order) {
+			long[] moved = new long[column.length];
+			for(int k = 0; k < order.length; k++) {
+				moved[k] = column[order[k]];
+			}
+			return moved;
+		}
+	}
+
+	//Adds an agreement to the history.
+	public void add(RentalAgreement agreement) {
+		add(agreement.getTool(), (int) agreement.getCheckoutDay(), agreement.getDaysRented(), agreement.getChargeableDays(),
+			agreement.getBaseChargeCents(), agreement.getPromotionAmountCents(), agreement.getDiscountAmountCents(),
+			agreement.getFinalChargeCents());
+	}
+
+	//Adds an agreement from its fields, as a journal does without making a RentalAgreement of each record.
+	void add(Tool tool, int checkoutDay, int daysRented, int chargeableDays, long baseCharge, long promotionAmount,
+			long discountAmount, long finalCharge) {
+		segmentOf(checkoutDay).add(tools.numberOf(tool), checkoutDay, daysRented, chargeableDays, baseCharge, promotionAmount,
+			discountAmount, finalCharge);
+		maxDaysRented = Math.max(maxDaysRented, daysRented);
+		size++;
+	}
+
+	private Segment segmentOf(int checkoutDay) {
+		LocalDate checkout = LocalDate.ofEpochDay(checkoutDay);
+		int month = checkout.getYear() * 12 + checkout.getMonthValue() - 1;
+		int m = month - firstMonth;
+		if(m >= 0 && m < byMonth.length && byMonth[m] != null) {
+			return byMonth[m];
+		}
+		Segment segment = new Segment(checkout);
+		months.put(month, segment);
+		int first = months.firstKey();
+		int last = months.lastKey();
+		if(first != firstMonth || last - first >= byMonth.length) {
+			byMonth = new Segment[last - first + 1];
+			for(Map.Entry<Integer, Segment> e : months.entrySet()) {
+				byMonth[e.getKey() - first] = e.getValue();
+			}
+			firstMonth = first;
+		}
+		else {
+			byMonth[month - first] = segment;
+		}
+		return segment;
+	}
+
+   /**Adds the agreements of a journal that aren't in the history yet, the agreements numbered from the size of the history on.
+    *A history kept only from one journal can be brought up to date this way each night.
+    *
+    *@param journal  the journal to read.
+    *@return long    the number of agreements added.
+    *@throws IOException  if the journal can't be read, or holds fewer agreements than the history.
+    */
+	public long load(AgreementJournal journal) throws IOException {
+		long before = size;
+		journal.copyTo(this, size);
+		return size - before;
+	}
+
+	//The number of agreements in the history.
+	public long size() {
+		return size;
+	}
+
+	//Sums the rows checked out from first through last, by tool.
+	private Totals[] sumByTool(LocalDate first, LocalDate last) {
+		long from = first.toEpochDay();
+		long to = last.toEpochDay();
+		long[] rentals = new long[tools.size()];
+		long[] chargeable = new long[tools.size()];
+		long[] base = new long[tools.size()];
+		long[] promotion = new long[tools.size()];
+		long[] discount = new long[tools.size()];
+		long[] fin = new long[tools.size()];
+		for(Segment s : segments(from, to).values()) {
+			s.group(tools.size());
+			boolean whole = s.firstDay >= from && s.lastDay <= to;
+			int[] start = s.toolStart;
+			for(int t = 0; t < start.length - 1; t++) {
+				int lo = start[t];
+				int hi = start[t + 1];
+				if(!whole) {
+					lo = s.firstFrom(lo, hi, from);
+					hi = s.firstFrom(lo, hi, to + 1);
+				}
+				int[] chargeableDays = s.chargeableDays;
+				long[] baseCharge = s.baseCharge;
+				long[] promotionAmount = s.promotionAmount;
+				long[] discountAmount = s.discountAmount;
+				long[] finalCharge = s.finalCharge;
+				long c = 0, b = 0, p = 0, d = 0, f = 0;
+				for(int i = lo; i < hi; i++) {
+					c += chargeableDays[i];
+					b += baseCharge[i];
+					p += promotionAmount[i];
+					d += discountAmount[i];
+					f += finalCharge[i];
+				}
+				rentals[t] += hi - lo;
+				chargeable[t] += c;
+				base[t] += b;
+				promotion[t] += p;
+				discount[t] += d;
+				fin[t] += f;
+			}
+		}
+		Totals[] totals = new Totals[tools.size()];
+		for(int t = 0; t < tools.size(); t++) {
+			totals[t] = new Totals(rentals[t], chargeable[t], base[t], promotion[t], discount[t], fin[t]);
+		}
+		return totals;
+	}
+
+	//The segments of the months from the one holding the first day through the one holding the last.
+	private NavigableMap<Integer, Segment> segments(long first, long last) {
+		LocalDate from = LocalDate.ofEpochDay(first);
+		LocalDate to = LocalDate.ofEpochDay(last);
+		return months.subMap(from.getYear() * 12 + from.getMonthValue() - 1, true, to.getYear() * 12 + to.getMonthValue() - 1, true);
+	}
+
+	//What to group tools by in a report
+	private enum Group { CODE, TYPE, BRAND }
+
+	private Map<String, Totals> sumBy(Group group, LocalDate first, LocalDate last) {
+		Totals[] byTool = sumByTool(first, last);
+		Map<String, Totals> grouped = new TreeMap<String, Totals>();
+		for(int t = 0; t < tools.size(); t++) {
+			if(byTool[t].rentals == 0) {
+				continue;
+			}
+			Tool tool = tools.get(t);
+			String key = (group == Group.CODE) ? tool.getCode() : (group == Group.TYPE) ? tool.getType() : tool.getBrand();
+			Totals sum = grouped.get(key);
+			grouped.put(key, (sum == null) ? byTool[t] : sum.plus(byTool[t]));
+		}
+		return grouped;
+	}
+
+	//Revenue of the agreements checked out from first through last, by tool type, in order of type.
+	public Map<String, Totals> revenueByType(LocalDate first, LocalDate last) {
+		return sumBy(Group.TYPE, first, last);
+	}
+
+	//Revenue of the agreements checked out from first through last, by brand, in order of brand.
+	public Map<String, Totals> revenueByBrand(LocalDate first, LocalDate last) {
+		return sumBy(Group.BRAND, first, last);
+	}
+
+	//Revenue of the agreements checked out from first through last, by tool code, in order of code.
+	public Map<String, Totals> revenueByTool(LocalDate first, LocalDate last) {
+		return sumBy(Group.CODE, first, last);
+	}
+
+	//Revenue of every agreement checked out from first through last.
+	public Totals total(LocalDate first, LocalDate last) {
+		Totals total = new Totals(0, 0, 0, 0, 0, 0);
+		for(Totals t : sumByTool(first, last)) {
+			total = total.plus(t);
+		}
+		return total;
+	}
+
+   /**Counts the days each tool spent out on rent, week by week. As in ToolInventory, a rental has a tool out from its checkout
+    *date up to, but not including, its due date.
+    *
+    *@param firstDay  the first day of the first week.
+    *@param weeks     the number of weeks to count.
+    *@return Map<String, long[]>  for each tool code rented in those weeks, in order of code, the days its units spent out in
+    *                             each week.
+    */
+	public Map<String, long[]> rentalDaysByWeek(LocalDate firstDay, int weeks) {
+		long start = firstDay.toEpochDay();
+		long end = start + 7L * weeks; //exclusive
+		//Rentals out each day, kept as the changes from one day to the next
+		int[][] change = new int[tools.size()][];
+		for(Segment s : segments(start - maxDaysRented, end - 1).values()) {
+			for(int i = 0; i < s.size; i++) {
+				long out = Math.max(s.checkoutDay[i], start);
+				long back = Math.min((long) s.checkoutDay[i] + s.daysRented[i], end);
+				if(out < back) {
+					int[] c = change[s.tool[i]];
+					if(c == null) {
+						c = change[s.tool[i]] = new int[(int) (end - start) + 1];
+					}
+					c[(int) (out - start)]++;
+					c[(int) (back - start)]--;
+				}
+			}
+		}
+		Map<String, long[]> byTool = new TreeMap<String, long[]>();
+		for(int t = 0; t < tools.size(); t++) {
+			if(change[t] == null) {
+				continue;
+			}
+			long[] days = byTool.get(tools.get(t).getCode());
+			if(days == null) {
+				days = new long[weeks];
+				byTool.put(tools.get(t).getCode(), days);
+			}
+			int out = 0;
+			for(int d = 0; d < end - start; d++) {
+				out += change[t][d];
+				days[d / 7] += out;
+			}
+		}
+		return byTool;
+	}
+
+   /**The share of each tool's units that were out on rent, week by week: the days they were out over the days they could
+    *have been.
+    *
+    *@param inventory  the units the store has of each tool.
+    *@param firstDay   the first day of the first week.
+    *@param weeks      the number of weeks.
+    *@return Map<String, double[]>  for each tool code rented in those weeks that the inventory has units of, the fraction of
+    *                               its unit days out in each week, 0 to 1.
+    */
+	public Map<String, double[]> utilizationByWeek(ToolInventory inventory, LocalDate firstDay, int weeks) {
+		Map<String, double[]> utilization = new LinkedHashMap<String, double[]>();
+		for(Map.Entry<String, long[]> tool : rentalDaysByWeek(firstDay, weeks).entrySet()) {
+			int units = inventory.getUnitCount(tool.getKey());
+			if(units == 0) {
+				continue;
+			}
+			double[] share = new double[weeks];
+			for(int w = 0; w < weeks; w++) {
+				share[w] = tool.getValue()[w] / (7.0 * units);
+			}
+			utilization.put(tool.getKey(), share);
+		}
+		return utilization;
+	}
+
+	//The sums of a set of agreements, in cents.
+	public static final class Totals {
+		private final long rentals;
+		private final long chargeableDays;
+		private final long baseCharge;
+		private final long promotionAmount;
+		private final long discountAmount;
+		private final long finalCharge;
+
+		Totals(long rentals, long chargeableDays, long baseCharge, long promotionAmount, long discountAmount, long finalCharge) {
+			this.rentals = rentals;
+			this.chargeableDays = chargeableDays;
+			this.baseCharge = baseCharge;
+			this.promotionAmount = promotionAmount;
+			this.discountAmount = discountAmount;
+			this.finalCharge = finalCharge;
+		}
+
+		Totals plus(Totals other) {
+			return new Totals(rentals + other.rentals, chargeableDays + other.chargeableDays, baseCharge + other.baseCharge,
+				promotionAmount + other.promotionAmount, discountAmount + other.discountAmount, finalCharge + other.finalCharge);
+		}
+
+		public long getRentals() {
+			return rentals;
+		}
+
+		public long getChargeableDays() {
+			return chargeableDays;
+		}
+
+		public long getBaseCharge() {
+			return baseCharge;
+		}
+
+		public long getPromotionAmount() {
+			return promotionAmount;
+		}
+
+		public long getDiscountAmount() {
+			return discountAmount;
+		}
+
+		public long getFinalCharge() {
+			return finalCharge;
+		}
+
+		//What promotions and discounts took off the base charge, rounding and all.
+		public long getLeakage() {
+			return baseCharge - finalCharge;
+		}
+
+		//The leakage as a percentage of the base charge.
+		public double getLeakagePercent() {
+			return (baseCharge == 0) ? 0 : 100.0 * getLeakage() / baseCharge;
+		}
+
+		public boolean equals(Object o) {
+			if(!(o instanceof Totals)) {
+				return false;
+			}
+			Totals t = (Totals) o;
+			return rentals == t.rentals && chargeableDays == t.chargeableDays && baseCharge == t.baseCharge
+				&& promotionAmount == t.promotionAmount && discountAmount == t.discountAmount && finalCharge == t.finalCharge;
+		}
+
+		public int hashCode() {
+			return Arrays.hashCode(new long[] {rentals, chargeableDays, baseCharge, promotionAmount, discountAmount, finalCharge});
+		}
+
+		public String toString() {
+			return String.format("%d rentals, %d chargeable days, %s base, %s promotions, %s discounts, %s final (%.1f%% leakage)",
+				rentals, chargeableDays, Money.format(baseCharge), Money.format(promotionAmount), Money.format(discountAmount),
+				Money.format(getFinalCharge()), getLeakagePercent());
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if(args.length != 3) {
+			System.err.println("Usage: java RentalHistory <journal file> <mm/dd/yy> <mm/dd/yy>");
+			return;
+		}
+		long first = CheckoutParser.parseDate(args[1]);
+		long last = CheckoutParser.parseDate(args[2]);
+		if(first == CheckoutParser.NOT_A_DATE || last == CheckoutParser.NOT_A_DATE) {
+			System.err.println(CheckoutParser.message(CheckoutParser.BAD_DATE));
+			return;
+		}
+		LocalDate from = LocalDate.ofEpochDay(first);
+		LocalDate to = LocalDate.ofEpochDay(last);
+		RentalHistory history = new RentalHistory();
+		long start = System.nanoTime();
+		try(AgreementJournal journal = new AgreementJournal(Paths.get(args[0]))) {
+			history.load(journal);
+		}
+		System.out.printf("Loaded %d agreements in %.0f ms.%n", history.size(), (System.nanoTime() - start) / 1e6);
+
+		start = System.nanoTime();
+		Totals total = history.total(from, to);
+		Map<String, Totals> byType = history.revenueByType(from, to);
+		Map<String, Totals> byBrand = history.revenueByBrand(from, to);
+		LocalDate monday = from.minusDays(from.getDayOfWeek().getValue() - DayOfWeek.MONDAY.getValue());
+		int weeks = (int) ((last - monday.toEpochDay()) / 7 + 1);
+		Map<String, long[]> byWeek = history.rentalDaysByWeek(monday, weeks);
+		double millis = (System.nanoTime() - start) / 1e6;
+
+		System.out.println("Checked out " + args[1] + " - " + args[2] + ": " + total);
+		System.out.println("By type:");
+		for(Map.Entry<String, Totals> e : byType.entrySet()) {
+			System.out.println("  " + e.getKey() + ": " + e.getValue());
+		}
+		System.out.println("By brand:");
+		for(Map.Entry<String, Totals> e : byBrand.entrySet()) {
+			System.out.println("  " + e.getKey() + ": " + e.getValue());
+		}
+		System.out.println("Days out by week, from " + ReceiptWriter.appendDate(new StringBuilder(8), monday) + ":");
+		for(Map.Entry<String, long[]> e : byWeek.entrySet()) {
+			System.out.println("  " + e.getKey() + ": " + Arrays.toString(e.getValue()));
+		}
+		System.out.printf("Reported in %.1f ms.%n", millis);
+	}
+}
@@ -0,0 +1,162 @@
+/**
+ * @(#)RentalOrder.java
+ * A priced multi-line order: any number of tools rented together on one checkout date for the same number of days, with one
+ * discount for the whole order. Each line is a tool and the number of it rented, priced as that many RentalAgreements for the
+ * tool would be, promotions included. The order's discount is then taken once off the total of the lines, rounded as a
+ * RentalAgreement rounds its discount, rather than off each line.
+ *
+ * Every line shares the rental period, so its chargeable days are worked out once for each kind of exemption a tool may have
+ * (charged every day, weekends exempt, or weekends and holidays exempt) rather than once for each line. Lines are kept in
+ * arrays, with the catalog's own Tool instances, and the whole order is written as a single receipt:
+ *
+ *     Order of 3 tools rented on 07/02/20.
+ *     Rental Period: 07/02/20 -- 07/06/20 (4)
+ *     2 x Rigid Jackhammer (JAKR): 1 day at $2.99: $5.98
+ *     1 x Werner Ladder (LADW): 4 days at $1.99: $7.96
+ *     Initial charge: $13.94. Discount Applied: 50% (Amount: $6.97)
+ *     Final amount due at return: $6.97
+ *
+ * A line that promotions took something off shows it after the line's charge, as "... $7.96. Promotions: $0.80", and so does
+ * the order's initial charge when any line has one. An order is fully computed by its constructor and never changes
+ * afterwards, so it can be shared freely between threads.
+ *
+ * @author Iain St. John
+ * @version 1.00 2026/10/18
+ */
+
+public final class RentalOrder {
+	private final long checkoutDay;
+	private final int daysRented;
+	private final int discountPerc;
+
+	//The lines
+	private final Tool[] tools;
+	private final int[] quantity;
+	private final int[] chargeableDays; //of one of the tool
+	private final long[] lineBase; //in cents, for every one of the tool on the line
+	private final long[] linePromotion; //in cents, likewise
+
+	//The whole order, all in cents
+	private final int toolCount;
+	private final long baseCharge;
+	private final long promotionAmnt;
+	private final long discountAmnt;
+	private final long finalCharge;
+
+   /**Prices an order. Its lines are copied, so the request may be reused as soon as this returns.
+    *
+    *@param request     the order.
+    *@param rules       the holidays that tools exempt from holiday charges are not charged on.
+    *@param promotions  the promotions that may apply to each line.
+    */
+	RentalOrder(OrderRequest request, HolidayRules rules, PromotionPlan promotions) {
+		checkoutDay = request.checkoutDay;
+		daysRented = request.daysRented;
+		discountPerc = request.discountPerc;
+		int lines = request.lines;
+		tools = new Tool[lines];
+		quantity = new int[lines];
+		System.arraycopy(request.tools, 0, tools, 0, lines);
+		System.arraycopy(request.quantity, 0, quantity, 0, lines);
+		chargeableDays = new int[lines];
+		lineBase = new long[lines];
+		linePromotion = new long[lines];
+
+		//The chargeable days of the period for each kind of exemption, worked out the first time a line needs them
+		int[] daysOf = {-1, -1, -1};
+		int count = 0;
+		long base = 0;
+		long promotion = 0;
+		for(int i = 0; i < lines; i++) {
+			Tool tool = tools[i];
+			int exemption = !tool.isWeekendExempt() ? 0 : tool.isHolidayExempt() ? 2 : 1;
+			if(daysOf[exemption] < 0) {
+				daysOf[exemption] = ChargeableDayCounter.count(rules, checkoutDay, daysRented, exemption > 0, exemption == 2);
+			}
+			chargeableDays[i] = daysOf[exemption];
+			long unitBase = chargeableDays[i] * tool.getDailyChargeCents();
+			lineBase[i] = unitBase * quantity[i];
+			linePromotion[i] = promotions.amountOff(tool, daysRented, unitBase, null, null) * quantity[i];
+			count += quantity[i];
+			base += lineBase[i];
+			promotion += linePromotion[i];
+		}
+		toolCount = count;
+		baseCharge = base;
+		promotionAmnt = promotion;
+		discountAmnt = RentalAgreement.discountAmount(baseCharge - promotionAmnt, discountPerc);
+		finalCharge = RentalAgreement.finalCharge(baseCharge - promotionAmnt, discountPerc);
+	}
+
+	//The checkout date as an epoch day.
+	public long getCheckoutDay() {
+		return checkoutDay;
+	}
+
+	//The due date as an epoch day.
+	public long getDueDay() {
+		return checkoutDay + daysRented;
+	}
+
+	public int getDaysRented() {
+		return daysRented;
+	}
+
+	public int getDiscountPercent() {
+		return discountPerc;
+	}
+
+	public int getLineCount() {
+		return tools.length;
+	}
+
+	//The number of tools rented, counting each one on every line.
+	public int getToolCount() {
+		return toolCount;
+	}
+
+	public Tool getTool(int line) {
+		return tools[line];
+	}
+
+	public int getQuantity(int line) {
+		return quantity[line];
+	}
+
+	//The days each tool on the line is charged for.
+	public int getChargeableDays(int line) {
+		return chargeableDays[line];
+	}
+
+	//The charge for every tool on the line before promotions, in cents.
+	public long getBaseChargeCents(int line) {
+		return lineBase[line];
+	}
+
+	//The amount promotions take off the line, in cents.
+	public long getPromotionAmountCents(int line) {
+		return linePromotion[line];
+	}
+
+	//The order's charge before promotions, in cents.
+	public long getBaseChargeCents() {
+		return baseCharge;
+	}
+
+	public long getPromotionAmountCents() {
+		return promotionAmnt;
+	}
+
+	public long getDiscountAmountCents() {
+		return discountAmnt;
+	}
+
+	public long getFinalChargeCents() {
+		return finalCharge;
+	}
+
+	//Returns the receipt of the order. ReceiptWriter can write the same text without creating the String.
+	public String toString() {
+		return ReceiptWriter.appendTo(new StringBuilder(200 + 60 * tools.length), this).toString();
+	}
+}
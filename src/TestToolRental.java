@@ -8,9 +8,35 @@
 
 import org.junit.Test;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import java.lang.Exception;
 import org.junit.rules.ExpectedException;
 import org.junit.Rule;
+import java.util.Calendar;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 
 public class TestToolRental {
 	
@@ -130,4 +156,1609 @@ public class TestToolRental {
     }
     
     
+    /* Exhaustive check of ChargeableDayCounter against the day-by-day Calendar loop that RentalAgreement.determineCharge() used
+     * to run. For every checkout date in the window the loop is walked out to the longest duration once, and the running count is
+     * compared at every day, so every (start date, duration) pair is covered. The loop below is the original one, unchanged. It
+     * differs from the counter on purpose on the days listed by isObservedHolidayFix(): its observed Independence Day branches
+     * never checked the month, so every Monday the 5th and Friday the 3rd was a holiday, and the counter charges them. */
+    @Test
+    public void testChargeableDaysMatchLoop() throws Exception {
+    	System.out.print("Running chargeable day equivalence test...\n");
+    	String exempt[] = {null, "weekends", "weekends and Holidays."};
+    	int maxDays = 400;
+    	Calendar start = Calendar.getInstance();
+    	start.set(2015, Calendar.JANUARY, 1);
+    	Calendar stop = Calendar.getInstance();
+    	stop.set(2020, Calendar.JANUARY, 1);
+    	while(start.before(stop)) {
+    		long checkoutDay = LocalDate.of(start.get(Calendar.YEAR), start.get(Calendar.MONTH) + 1, start.get(Calendar.DATE)).toEpochDay();
+    		int fixes[] = observedHolidayFixes(start, maxDays);
+    		for(String excluded : exempt) {
+    			int expected[] = legacyChargeableDays(start, maxDays, excluded);
+    			boolean weekends = (excluded != null);
+    			boolean holidays = weekends && excluded.contains("Holidays");
+    			for(int days = 1; days <= maxDays; days++) {
+    				//the listed days are charged now, where the loop took them off
+    				int changed = holidays ? fixes[days] : 0;
+    				assertEquals(excluded + " from " + start.getTime() + " for " + days + " days",
+    					expected[days] + changed, ChargeableDayCounter.count(checkoutDay, days, weekends, holidays));
+    			}
+    		}
+    		start.add(Calendar.DATE, 1);
+    	}
+    	System.out.print("Chargeable day equivalence test passed.\n\n");
+    }
+    
+    //The per-year index must agree with java.time on where every year starts, and on which days are weekends and holidays.
+    @Test
+    public void testBusinessDayIndexYears() throws Exception {
+    	System.out.print("Running business day index test...\n");
+    	for(int year = 1900; year <= 2100; year++) {
+    		LocalDate jan1 = LocalDate.of(year, 1, 1);
+    		assertEquals(jan1.toEpochDay(), BusinessDayIndex.yearStart(year));
+    		assertEquals(year, BusinessDayIndex.yearOf(jan1.toEpochDay()));
+    		assertEquals(year, BusinessDayIndex.yearOf(jan1.toEpochDay() + jan1.lengthOfYear() - 1));
+    		BusinessDayIndex index = BusinessDayIndex.forYear(year);
+    		for(int i = 0; i < jan1.lengthOfYear(); i++) {
+    			LocalDate d = jan1.plusDays(i);
+    			assertEquals(d.toString(), d.getDayOfWeek().getValue() >= 6, index.isWeekend(i));
+    		}
+    	}
+    	assertTrue(BusinessDayIndex.forYear(2020).isHoliday(LocalDate.of(2020, 7, 3).getDayOfYear() - 1));
+    	assertTrue(BusinessDayIndex.forYear(2015).isHoliday(LocalDate.of(2015, 9, 7).getDayOfYear() - 1));
+    	assertTrue(BusinessDayIndex.forYear(2020) == BusinessDayIndex.forYear(2020));
+    	System.out.print("Business day index test passed.\n\n");
+    }
+    
+    //A range of many years must count the same from the 400 year cycle as year by year, and the longest rental is bounded.
+    @Test
+    public void testLongRentalPeriods() throws Exception {
+    	System.out.print("Running long rental period test...\n");
+    	HolidayRules rules = HolidayRules.getDefault();
+    	java.util.Random random = new java.util.Random(2);
+    	for(int i = 0; i < 200; i++) {
+    		long first = LocalDate.of(1500 + random.nextInt(1500), 1, 1).toEpochDay() + random.nextInt(366);
+    		long last = first + random.nextInt(i < 100 ? 3000 : 400000);
+    		for(boolean holidaysExempt : new boolean[] {false, true}) {
+    			int expected = 0;
+    			for(int year = BusinessDayIndex.yearOf(first); year <= BusinessDayIndex.yearOf(last); year++) {
+    				BusinessDayIndex index = rules.forYear(year);
+    				long from = Math.max(first, index.getFirstDay());
+    				long to = Math.min(last, index.getFirstDay() + index.getLength() - 1);
+    				expected += index.chargeableDays(from, to, holidaysExempt);
+    			}
+    			assertEquals(expected, BusinessDayIndex.chargeableDays(rules, first, last, holidaysExempt));
+    		}
+    	}
+    	//Two billion days cost no more than a week, and keep no years outside the cycle
+    	long checkoutDay = LocalDate.of(2020, 7, 2).toEpochDay();
+    	int days = Integer.MAX_VALUE - 1;
+    	int cycles = (int) (days / BusinessDayIndex.CYCLE_DAYS);
+    	int rest = (int) (days % BusinessDayIndex.CYCLE_DAYS);
+    	assertEquals((long) cycles * ChargeableDayCounter.count(checkoutDay, (int) BusinessDayIndex.CYCLE_DAYS, true, true)
+    		+ ChargeableDayCounter.count(checkoutDay + (long) cycles * BusinessDayIndex.CYCLE_DAYS, rest, true, true),
+    		ChargeableDayCounter.count(checkoutDay, days, true, true));
+    	assertEquals(CheckoutParser.OK, CheckoutParser.checkDayCount(CheckoutParser.MAX_DAYS_RENTED));
+    	assertEquals(CheckoutParser.BAD_DAY_COUNT, CheckoutParser.checkDayCount(CheckoutParser.MAX_DAYS_RENTED + 1));
+    	assertEquals(CheckoutParser.BAD_DAY_COUNT, CheckoutParser.parse(ToolCatalog.getDefault(), "JAKR", "07/02/20",
+    		"2000000000", "10", new CheckoutRequest()));
+    	System.out.print("Long rental period test passed.\n\n");
+    }
+    
+    //Regional holiday rules are compiled into the same per-year index, including holidays observed across New Year's.
+    @Test
+    public void testHolidayRules() throws Exception {
+    	System.out.print("Running holiday rules test...\n");
+    	HolidayRules rules = HolidayRules.parse("test", Arrays.asList(
+    		"# comment",
+    		"New Year's Day = fixed 1 1 observed",
+    		"Memorial Day = last MONDAY 5",
+    		"Thanksgiving = nth 4 THURSDAY 11",
+    		"",
+    		"Christmas Day = fixed 12 25 observed"));
+    	assertEquals(4, rules.getRules().size());
+    	BusinessDayIndex y2020 = rules.forYear(2020);
+    	BusinessDayIndex y2021 = rules.forYear(2021);
+    	assertTrue(y2020.isHoliday(LocalDate.of(2020, 5, 25).getDayOfYear() - 1));
+    	assertTrue(y2020.isHoliday(LocalDate.of(2020, 11, 26).getDayOfYear() - 1));
+    	assertTrue(y2021.isHoliday(LocalDate.of(2021, 12, 24).getDayOfYear() - 1)); //Christmas fell on a Saturday
+    	assertTrue(y2021.isHoliday(LocalDate.of(2021, 12, 31).getDayOfYear() - 1)); //and so did New Year's Day 2022
+    	assertTrue(!y2021.isHoliday(LocalDate.of(2021, 7, 5).getDayOfYear() - 1)); //Independence Day isn't in this set
+    	//Thursday 12/23/21 for 3 days: Friday is the observed Christmas, followed by the weekend
+    	long checkoutDay = LocalDate.of(2021, 12, 23).toEpochDay();
+    	assertEquals(0, ChargeableDayCounter.count(rules, checkoutDay, 3, true, true));
+    	assertEquals(1, ChargeableDayCounter.count(rules, checkoutDay, 3, true, false));
+    	assertEquals(3, ChargeableDayCounter.count(rules, checkoutDay, 3, false, false));
+    	exception.expect(IOException.class);
+    	HolidayRules.parse("bad", Arrays.asList("Someday = nth 6 MONDAY 1"));
+    }
+    
+    //Money.divide must round exactly as BigDecimal does, for every rounding mode and on both sides of zero.
+    @Test
+    public void testMoneyRounding() throws Exception {
+    	System.out.print("Running money rounding test...\n");
+    	for(RoundingMode mode : RoundingMode.values()) {
+    		if(mode == RoundingMode.UNNECESSARY) {
+    			continue;
+    		}
+    		for(long n = -1000; n <= 1000; n++) {
+    			for(long d = 1; d <= 12; d++) {
+    				long expected = BigDecimal.valueOf(n).divide(BigDecimal.valueOf(d), 0, mode).longValueExact();
+    				assertEquals(n + "/" + d + " " + mode, expected, Money.divide(n, d, mode));
+    			}
+    		}
+    	}
+    	assertEquals("$0.05", Money.format(5));
+    	assertEquals("$1234.50", Money.format(123450));
+    	assertEquals("-$0.99", Money.format(-99));
+    	System.out.print("Money rounding test passed.\n\n");
+    }
+    
+    //5 days of a ladder at $1.99 with no discount is exactly $9.95. With doubles, the final charge used to be rounded down to $9.94.
+    @Test
+    public void testExactFinalCharge() throws Exception {
+    	System.out.print("Running exact final charge test...\n");
+    	String args[] = {"LADW","09/03/15","5","0"};
+    	RentalAgreement result = new Checkout().runPOS(args);
+    	assertEquals("$9.95", result.getFinalChargeString());
+    	assertEquals("$9.95", result.getFinalChargeString());
+    	assertEquals(995, result.getFinalChargeCents());
+    	assertEquals(result.toString(), result.toString());
+    	System.out.print("Exact final charge test passed.\n\n");
+    }
+    
+    //Every request priced in a batch must come out exactly as a RentalAgreement prices it.
+    @Test
+    public void testBatchMatchesAgreement() throws Exception {
+    	System.out.print("Running batch pricing test...\n");
+    	BatchPricer pricer = BatchPricer.standard();
+    	RentalBatch batch = new RentalBatch(0);
+    	int first = (int) LocalDate.of(2019, 12, 1).toEpochDay();
+    	for(int i = 0; i < 20000; i++) {
+    		batch.add(i % 4, first + (i * 7) % 500, 1 + (i * 13) % 400, (i * 31) % 101);
+    	}
+    	batch.add(4, first, 5, 10);
+    	batch.add(0, first, 0, 10);
+    	batch.add(0, first, 5, 101);
+    	PricingResults results = new PricingResults();
+    	pricer.price(batch, results);
+    	assertEquals(batch.size(), results.size());
+    	for(int i = 0; i < 20000; i++) {
+    		RentalAgreement agreement = new RentalAgreement(pricer.getTool(batch.getToolIndex(i)).getCode(),
+    			LocalDate.ofEpochDay(batch.getCheckoutDay(i)), batch.getDaysRented(i), batch.getDiscountPercent(i));
+    		assertEquals(PricingResults.OK, results.getStatus(i));
+    		assertEquals(agreement.getDueDay(), results.getDueDay(i));
+    		assertEquals(agreement.getChargeableDays(), results.getChargeableDays(i));
+    		assertEquals(agreement.getBaseChargeCents(), results.getBaseCharge(i));
+    		assertEquals(agreement.getDiscountAmountCents(), results.getDiscountAmount(i));
+    		assertEquals(agreement.getFinalChargeCents(), results.getFinalCharge(i));
+    	}
+    	assertEquals(PricingResults.UNKNOWN_TOOL, results.getStatus(20000));
+    	assertEquals(PricingResults.BAD_DAY_COUNT, results.getStatus(20001));
+    	assertEquals(PricingResults.BAD_DISCOUNT, results.getStatus(20002));
+    	assertEquals(0, results.getFinalCharge(20002));
+    	System.out.print("Batch pricing test passed.\n\n");
+    }
+    
+    //Pricing a batch in parallel must give exactly the results and totals of pricing it on one thread.
+    @Test
+    public void testParallelMatchesSequential() throws Exception {
+    	System.out.print("Running parallel pricing test...\n");
+    	BatchPricer pricer = BatchPricer.standard();
+    	RentalBatch batch = new RentalBatch(0);
+    	int first = (int) LocalDate.of(2020, 1, 1).toEpochDay();
+    	for(int i = 0; i < 100000; i++) {
+    		batch.add(i % 5 == 4 ? 7 : i % 4, first + (i * 7) % 1000, (i * 13) % 120, (i * 31) % 102);
+    	}
+    	PricingResults sequential = new PricingResults();
+    	pricer.price(batch, sequential);
+    	PricingSummary expected = PricingSummary.of(batch, sequential, 0, batch.size(), pricer.toolCount());
+    	PricingResults parallel = new PricingResults();
+    	try(ParallelBatchPricer parallelPricer = new ParallelBatchPricer(pricer, 4)) {
+    		assertEquals(expected, parallelPricer.price(batch, parallel));
+    	}
+    	for(int i = 0; i < batch.size(); i++) {
+    		assertEquals(sequential.getStatus(i), parallel.getStatus(i));
+    		assertEquals(sequential.getChargeableDays(i), parallel.getChargeableDays(i));
+    		assertEquals(sequential.getFinalCharge(i), parallel.getFinalCharge(i));
+    	}
+    	assertTrue(expected.getRejected() > 0);
+    	System.out.print("Parallel pricing test passed.\n\n");
+    }
+    
+    //Tool codes must match the catalog exactly, and every lookup returns the one shared Tool instance.
+    @Test
+    public void testToolCatalog() throws Exception {
+    	System.out.print("Running tool catalog test...\n");
+    	ToolCatalog catalog = ToolCatalog.standard();
+    	String rejected[] = {"ADW", "W CH", "LADWJ", "ladw", "", "LADW CHNS", "LAD\u00c9"};
+    	for(String code : rejected) {
+    		assertEquals(code, -1, catalog.idOf(code));
+    	}
+    	assertEquals(-1, catalog.idOf(null));
+    	for(int id = 0; id < catalog.size(); id++) {
+    		Tool tool = catalog.get(id);
+    		assertEquals(id, tool.getId());
+    		assertTrue(catalog.get(tool.getCode()) == tool);
+    	}
+    	assertTrue(new Checkout().runPOS(new String[] {"JAKD","09/03/15","6","0"}).getTool() == catalog.get("JAKD"));
+    	//a catalog with thousands of codes still finds every one
+    	ToolCatalog.Builder builder = new ToolCatalog.Builder();
+    	for(int i = 0; i < 4000; i++) {
+    		builder.add(String.format("T%03X", i), "Brand", "Type", 100 + i, i % 2 == 0, i % 6 == 0);
+    	}
+    	ToolCatalog big = builder.build();
+    	for(int i = 0; i < 4000; i++) {
+    		assertEquals(i, big.idOf(String.format("T%03X", i)));
+    	}
+    	assertEquals(-1, big.idOf("LADW"));
+    	//holidays exempt but weekends charged would be charged on holidays anyway, so it is refused
+    	try {
+    		new ToolCatalog.Builder().add("HOLI", "Brand", "Type", 100, false, true);
+    		assertTrue(false);
+    	}
+    	catch(IllegalArgumentException e) {
+    	}
+    	System.out.print("Tool catalog test passed.\n\n");
+    }
+    
+    //A catalog written to a file reads back the same, and installing it reprices new checkouts without touching old agreements.
+    @Test
+    public void testCatalogFileReload() throws Exception {
+    	System.out.print("Running catalog file test...\n");
+    	Path file = Files.createTempFile("tools", ".cat");
+    	ToolCatalog original = ToolCatalog.getDefault();
+    	try {
+    		ToolCatalogFile.write(new ToolCatalog.Builder()
+    			.add("LADW", "Werner", "Ladder", 249, false, false)
+    			.add("JAKD", "DeWalt", "Jackhammer", 399, true, true)
+    			.add("PWSH", "K\u00e4rcher", "Pressure Washer", 1250, true, false)
+    			.build(), file);
+    		ToolCatalog loaded = ToolCatalogFile.read(file);
+    		assertEquals(3, loaded.size());
+    		assertEquals("K\u00e4rcher", loaded.get("PWSH").getBrand());
+    		assertEquals(1250, loaded.get("PWSH").getDailyChargeCents());
+    		assertTrue(loaded.get("PWSH").isWeekendExempt() && !loaded.get("PWSH").isHolidayExempt());
+    		//a file whose flags say holidays but not weekends is refused
+    		ByteBuffer patched = ByteBuffer.wrap(Files.readAllBytes(file));
+    		patched.put(ToolCatalogFile.HEADER_SIZE + 4, (byte) ToolCatalogFile.HOLIDAYS_EXEMPT);
+    		try {
+    			ToolCatalogFile.read(patched, "patched");
+    			assertTrue(false);
+    		}
+    		catch(IOException e) {
+    		}
+    		
+    		String args[] = {"JAKD","09/03/15","6","0"};
+    		RentalAgreement before = new Checkout().runPOS(args);
+    		ToolCatalog.install(loaded);
+    		RentalAgreement after = new Checkout().runPOS(args);
+    		assertEquals("$8.97", before.getFinalChargeString());
+    		assertEquals("$11.97", after.getFinalChargeString());
+    		assertEquals(-1, ToolCatalog.getDefault().idOf("CHNS"));
+    	}
+    	finally {
+    		ToolCatalog.install(original);
+    		Files.delete(file);
+    	}
+    	System.out.print("Catalog file test passed.\n\n");
+    }
+    
+    //ReceiptWriter must write exactly what the String.format based toString() used to return, into every kind of buffer.
+    @Test
+    public void testReceiptMatchesFormat() throws Exception {
+    	System.out.print("Running receipt rendering test...\n");
+    	ReceiptWriter writer = new ReceiptWriter();
+    	StringBuilder sb = new StringBuilder();
+    	CharBuffer chars = CharBuffer.allocate(1024);
+    	ByteBuffer bytes = ByteBuffer.allocate(1024);
+    	String codes[] = {"LADW", "CHNS", "JAKR", "JAKD"};
+    	LocalDate date = LocalDate.of(1999, 12, 20);
+    	for(int i = 0; i < 4000; i++) {
+    		RentalAgreement agreement = new RentalAgreement(codes[i % 4], date.plusDays(i * 3), 1 + (i * 17) % 400, (i * 7) % 101);
+    		String expected = String.format("%s %s (%s) rented on %tD.%nRental Period: %tD -- %tD (%d)%n"
+    			+ "Initial charge: $%.2f. Discount Applied: %d%% (Amount: $%.2f)%nFinal amount due at return: $%.2f",
+    			agreement.getTool().getBrand(), agreement.getTool().getType(), agreement.getToolCode(), agreement.getCheckoutDate(),
+    			agreement.getCheckoutDate(), agreement.getDueDate(), agreement.getDaysRented(),
+    			BigDecimal.valueOf(agreement.getBaseChargeCents(), 2), agreement.getDiscountPercent(),
+    			BigDecimal.valueOf(agreement.getDiscountAmountCents(), 2), BigDecimal.valueOf(agreement.getFinalChargeCents(), 2));
+    		assertEquals(expected, agreement.toString());
+    		assertEquals(String.format("%tD", agreement.getDueDate()).substring(0, 8), agreement.getDueDateString());
+    		
+    		sb.setLength(0);
+    		assertEquals(expected, ReceiptWriter.appendTo(sb, agreement).toString());
+    		chars.clear();
+    		writer.writeTo(agreement, chars);
+    		chars.flip();
+    		assertEquals(expected, chars.toString());
+    		bytes.clear();
+    		writer.writeTo(agreement, bytes);
+    		assertEquals(expected, new String(bytes.array(), 0, bytes.position(), StandardCharsets.UTF_8));
+    	}
+    	//A full buffer is left untouched
+    	ByteBuffer small = ByteBuffer.allocate(10);
+    	exception.expect(BufferOverflowException.class);
+    	try {
+    		writer.writeTo(new RentalAgreement("LADW", date, 5, 10), small);
+    	}
+    	finally {
+    		assertEquals(0, small.position());
+    	}
+    }
+    
+    //The parser reports every kind of bad input as an error code, and only runPOS() turns them into exceptions.
+    @Test
+    public void testCheckoutParser() throws Exception {
+    	System.out.print("Running checkout parser test...\n");
+    	ToolCatalog catalog = ToolCatalog.standard();
+    	CheckoutRequest request = new CheckoutRequest();
+    	assertEquals(CheckoutParser.OK, CheckoutParser.parse(catalog, new String[] {"JAKR", "7/2/20", " 4 ", "+50"}, request));
+    	assertTrue(request.getTool() == catalog.get("JAKR"));
+    	assertEquals(LocalDate.of(2020, 7, 2), request.getCheckoutDate());
+    	assertEquals(4, request.getDaysRented());
+    	assertEquals(50, request.getDiscountPercent());
+    	assertEquals(new RentalAgreement("JAKR", LocalDate.of(2020, 7, 2), 4, 50).toString(),
+    		request.toAgreement(HolidayRules.getDefault()).toString());
+    	
+    	String bad[][] = {
+    		{"ABCD", "07/02/20", "4", "50"}, {"JAKR", "07/02/20", "0", "50"}, {"JAKR", "07/02/20", "4", "-1"},
+    		{"JAKR", "02/30/20", "4", "50"}, {"JAKR", "07/02/20", "four", "50"}, {"JAKR", "07/02/20", "4", "5O"},
+    		{"JAKR", "07/02/2020", "4", "50"}, {"JAKR", "13/02/20", "4", "50"}, {"JAKR", "07-02-20", "4", "50"},
+    		{"JAKR", "07/02/20", "99999999999", "50"}, {"JAKR", "07/02", "4", "50"}, {"JAKR", "07/02/20", "", "50"}};
+    	byte expected[] = {CheckoutParser.UNKNOWN_TOOL, CheckoutParser.BAD_DAY_COUNT, CheckoutParser.BAD_DISCOUNT,
+    		CheckoutParser.BAD_DATE, CheckoutParser.DAYS_NOT_A_NUMBER, CheckoutParser.DISCOUNT_NOT_A_NUMBER,
+    		CheckoutParser.BAD_DATE, CheckoutParser.BAD_DATE, CheckoutParser.BAD_DATE,
+    		CheckoutParser.DAYS_NOT_A_NUMBER, CheckoutParser.BAD_DATE, CheckoutParser.DAYS_NOT_A_NUMBER};
+    	for(int i = 0; i < bad.length; i++) {
+    		assertEquals(Arrays.toString(bad[i]), expected[i], CheckoutParser.parse(catalog, bad[i], request));
+    	}
+    	assertEquals(CheckoutParser.WRONG_ARGUMENT_COUNT, CheckoutParser.parse(catalog, new String[] {"JAKR"}, request));
+    	
+    	//Every day from 2000 through 2099 parses to the date LocalDate gives
+    	for(LocalDate date = LocalDate.of(2000, 1, 1); date.getYear() < 2100; date = date.plusDays(1)) {
+    		assertEquals(date.toEpochDay(), CheckoutParser.parseDate(String.format("%tD", date)));
+    	}
+    	
+    	//At the edge, an unknown tool or a bad date is an IllegalArgumentException saying what was wrong
+    	try {
+    		new Checkout().runPOS(bad[0]);
+    		assertTrue(false);
+    	}
+    	catch(IllegalArgumentException e) {
+    		assertEquals("ERROR! Tool code ABCD not recognized.", e.getMessage());
+    	}
+    	try {
+    		new Checkout().runPOS(bad[3]);
+    		assertTrue(false);
+    	}
+    	catch(IllegalArgumentException e) {
+    		assertEquals(CheckoutParser.message(CheckoutParser.BAD_DATE), e.getMessage());
+    	}
+    	System.out.print("Checkout parser test passed.\n\n");
+    }
+    
+    //Cached quotes must be the same as freshly priced ones, stay within bounds, and be dropped with the catalog they came from.
+    @Test
+    public void testQuoteCache() throws Exception {
+    	System.out.print("Running quote cache test...\n");
+    	final QuoteCache cache = new QuoteCache(3000);
+    	final String codes[] = {"LADW", "CHNS", "JAKR", "JAKD"};
+    	final LocalDate date = LocalDate.of(2020, 6, 1);
+    	RentalAgreement first = cache.quote("JAKR", date, 5, 10);
+    	assertTrue(first == cache.quote("JAKR", date, 5, 10));
+    	assertEquals(1, cache.getHits());
+    	assertEquals(1, cache.getMisses());
+    	assertTrue(cache.quote("JAKR", date, 70000, 10) != cache.quote("JAKR", date, 70000, 10));
+    	assertEquals(2, cache.getUncacheable());
+    	
+    	//Four threads asking for 8000 different quotes, most of them repeatedly, through a cache that holds 3000
+    	final boolean wrong[] = new boolean[1];
+    	Thread threads[] = new Thread[4];
+    	for(int t = 0; t < threads.length; t++) {
+    		final int seed = t;
+    		threads[t] = new Thread(new Runnable() {
+    			public void run() {
+    				java.util.Random random = new java.util.Random(seed);
+    				for(int i = 0; i < 20000; i++) {
+    					int n = (random.nextInt(4) == 0) ? random.nextInt(8000) : random.nextInt(500);
+    					RentalAgreement quote = cache.quote(codes[n % 4], date.plusDays(n % 200), 1 + n % 40, n % 101);
+    					RentalAgreement fresh = new RentalAgreement(codes[n % 4], date.plusDays(n % 200), 1 + n % 40, n % 101);
+    					if(quote.getFinalChargeCents() != fresh.getFinalChargeCents() || !quote.getDueDate().equals(fresh.getDueDate())
+    							|| quote.getTool() != fresh.getTool()) {
+    						wrong[0] = true;
+    					}
+    				}
+    			}
+    		});
+    		threads[t].start();
+    	}
+    	for(Thread thread : threads) {
+    		thread.join();
+    	}
+    	assertTrue(!wrong[0]);
+    	assertTrue(cache.size() <= 3000);
+    	assertTrue(cache.getEvictions() > 0);
+    	assertTrue(cache.getHitRate() > 0.5);
+    	assertEquals(80002, cache.getHits() + cache.getMisses());
+    	
+    	//Installing a catalog drops every cached quote, and prices come from the new catalog
+    	ToolCatalog standard = ToolCatalog.getDefault();
+    	try {
+    		ToolCatalog.install(new ToolCatalog.Builder().add("JAKR", "Rigid", "Jackhammer", 399, true, true).build());
+    		RentalAgreement repriced = cache.quote("JAKR", date, 5, 10);
+    		assertEquals(1, cache.getInvalidations());
+    		assertEquals(399, repriced.getDailyChargeCents());
+    		assertEquals(1, cache.size());
+    	}
+    	finally {
+    		ToolCatalog.install(standard);
+    	}
+    	assertTrue(cache.quote("JAKR", date, 5, 10).getDailyChargeCents() == 299);
+    	cache.setHolidayRules(HolidayRules.parse("none", Arrays.<String>asList()));
+    	assertEquals(3, cache.getInvalidations());
+    	assertEquals(0, cache.size());
+    	//07/04/20 is a Saturday, observed on Friday 07/03, which is now charged
+    	assertEquals(2, cache.quote("JAKR", LocalDate.of(2020, 7, 2), 4, 0).getChargeableDays());
+    	System.out.print("Quote cache test passed.\n\n");
+    }
+    
+    //Agreements appended from several threads must all be kept, be found by tool and due date, and survive a torn last write.
+    @Test
+    public void testAgreementJournal() throws Exception {
+    	System.out.print("Running agreement journal test...\n");
+    	Path file = Files.createTempFile("agreements", ".jnl");
+    	Files.delete(file);
+    	final String codes[] = {"LADW", "CHNS", "JAKR", "JAKD"};
+    	final LocalDate date = LocalDate.of(2020, 6, 25);
+    	ToolCatalog standard = ToolCatalog.getDefault();
+    	try {
+    		final AgreementJournal journal = new AgreementJournal(file);
+    		Thread threads[] = new Thread[4];
+    		final boolean failed[] = new boolean[1];
+    		for(int t = 0; t < threads.length; t++) {
+    			final int thread = t;
+    			threads[t] = new Thread(new Runnable() {
+    				public void run() {
+    					try {
+    						for(int i = thread; i < 400; i += 4) {
+    							journal.append(new RentalAgreement(codes[i % 4], date.plusDays(i % 10), 1 + i % 7, i % 101));
+    						}
+    					}
+    					catch(IOException e) {
+    						failed[0] = true;
+    					}
+    				}
+    			});
+    			threads[t].start();
+    		}
+    		for(Thread thread : threads) {
+    			thread.join();
+    		}
+    		assertTrue(!failed[0]);
+    		assertEquals(400, journal.size());
+    		assertTrue(journal.getSyncCount() <= 400);
+    		long number = journal.appendAll(Arrays.asList(new RentalAgreement("JAKR", LocalDate.of(2020, 7, 2), 4, 50),
+    			new RentalAgreement("LADW", LocalDate.of(2020, 7, 2), 3, 10)));
+    		assertEquals(400, number);
+    		assertEquals(new RentalAgreement("JAKR", LocalDate.of(2020, 7, 2), 4, 50).toString(), journal.get(400).toString());
+    		assertEquals(100, journal.forTool("CHNS").size());
+    		assertEquals(0, journal.forTool("NONE").size());
+    		//Due on 07/06/20: rentals of i days from 06/25 + (i % 10), where i % 10 + 1 + i % 7 == 11, plus JAKR's from 07/02
+    		int expected = 1;
+    		for(int i = 0; i < 400; i++) {
+    			expected += (i % 10 + 1 + i % 7 == 11) ? 1 : 0;
+    		}
+    		List<RentalAgreement> due = journal.dueOn(LocalDate.of(2020, 7, 6));
+    		assertEquals(expected, due.size());
+    		assertEquals(expected, journal.countDueOn(LocalDate.of(2020, 7, 6)));
+    		for(RentalAgreement agreement : due) {
+    			assertEquals(LocalDate.of(2020, 7, 6), agreement.getDueDate());
+    		}
+    		journal.close();
+    		
+    		//Half a record left by a crash is cut off when the journal is opened again, and the rest replays as it was
+    		Files.write(file, new byte[50], StandardOpenOption.APPEND);
+    		AgreementJournal reopened = new AgreementJournal(file);
+    		assertEquals(402, reopened.size());
+    		assertEquals(50, reopened.getTruncatedBytes());
+    		assertEquals(expected, reopened.dueOn(LocalDate.of(2020, 7, 6)).size());
+    		assertEquals(101, reopened.forTool("JAKR").size());
+    		
+    		//An agreement reads back with the price it was made at, even after the catalog changes
+    		ToolCatalog.install(new ToolCatalog.Builder().add("JAKR", "Ridgid", "Jackhammer", 399, true, true).build());
+    		RentalAgreement old = reopened.get(400);
+    		assertEquals("$2.99", old.getDailyRateString());
+    		assertEquals("$1.49", old.getFinalChargeString());
+    		assertEquals("Jackhammer", old.getTool().getType());
+    		assertEquals(402, reopened.append(new RentalAgreement("JAKR", LocalDate.of(2020, 7, 2), 4, 50)));
+    		assertEquals("$3.99", reopened.get(402).getDailyRateString());
+    		assertTrue(reopened.get(402).getTool() == ToolCatalog.getDefault().get("JAKR"));
+    		
+    		//Reading each agreement as it is appended maps the file again only as it doubles, and closing cuts the room off
+    		int mappings = reopened.getMappingCount();
+    		for(int i = 0; i < 2000; i++) {
+    			long appended = reopened.append(new RentalAgreement("JAKR", date, 1 + i % 7, 0));
+    			assertEquals(1 + i % 7, reopened.get(appended).getDaysRented());
+    		}
+    		assertTrue(reopened.getMappingCount() - mappings <= 1);
+    		reopened.close();
+    		assertEquals(AgreementJournal.HEADER_SIZE + 2403L * AgreementJournal.RECORD_SIZE, Files.size(file));
+    		
+    		//A record whose checksum doesn't match was never finished either
+    		long size = Files.size(file);
+    		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+    			channel.write(ByteBuffer.wrap(new byte[] {1}), size - 10);
+    		}
+    		reopened = new AgreementJournal(file);
+    		assertEquals(2402, reopened.size());
+    		assertEquals(AgreementJournal.RECORD_SIZE, reopened.getTruncatedBytes());
+    		reopened.close();
+    	}
+    	finally {
+    		ToolCatalog.install(standard);
+    		Files.deleteIfExists(file);
+    	}
+    	System.out.print("Agreement journal test passed.\n\n");
+    }
+    
+    //A reservation given back twice, or released after being checked in, must not free days another reservation holds.
+    @Test
+    public void testReleaseOnlyOnce() throws Exception {
+    	System.out.print("Running reservation release test...\n");
+    	ToolInventory inventory = new ToolInventory();
+    	inventory.addUnits("JAKR", 1);
+    	LocalDate checkout = LocalDate.of(2020, 7, 2);
+    	ToolInventory.Reservation first = inventory.reserve("JAKR", checkout, 5);
+    	inventory.release(first);
+    	assertTrue(first.isReleased());
+    	ToolInventory.Reservation second = inventory.reserve("JAKR", checkout, 5);
+    	assertEquals(first.getUnit(), second.getUnit());
+    	inventory.release(first);
+    	inventory.checkIn(first, checkout.plusDays(1));
+    	assertTrue(inventory.isReserved("JAKR", second.getUnit(), checkout.plusDays(2)));
+    	assertEquals(null, inventory.reserve("JAKR", checkout, 5));
+    	//checked in early, then released: the days after the return are free, and stay given back only once
+    	inventory.checkIn(second, checkout.plusDays(2));
+    	ToolInventory.Reservation third = inventory.reserve("JAKR", checkout.plusDays(2), 3);
+    	assertTrue(third != null);
+    	inventory.release(second);
+    	assertTrue(inventory.isReserved("JAKR", third.getUnit(), checkout.plusDays(3)));
+    	assertEquals(null, inventory.reserve("JAKR", checkout.plusDays(2), 3));
+    	System.out.print("Reservation release test passed.\n\n");
+    }
+    
+    //Many threads reserving and releasing the same few units must never be given one unit for overlapping days.
+    @Test
+    public void testInventoryContention() throws Exception {
+    	System.out.print("Running inventory contention test...\n");
+    	final ToolInventory inventory = new ToolInventory();
+    	assertEquals(3, inventory.addUnits("JAKR", 3));
+    	final LocalDate first = LocalDate.of(2020, 6, 1);
+    	final List<List<ToolInventory.Reservation>> kept = new ArrayList<List<ToolInventory.Reservation>>();
+    	final long reserved[] = new long[8];
+    	Thread threads[] = new Thread[8];
+    	for(int t = 0; t < threads.length; t++) {
+    		final List<ToolInventory.Reservation> held = new ArrayList<ToolInventory.Reservation>();
+    		kept.add(held);
+    		final int thread = t;
+    		threads[t] = new Thread(new Runnable() {
+    			public void run() {
+    				java.util.Random random = new java.util.Random(thread);
+    				for(int i = 0; i < 20000; i++) {
+    					//Mostly short rentals, with some long enough to span several words of a bitmap
+    					int days = (random.nextInt(10) == 0) ? 1 + random.nextInt(150) : 1 + random.nextInt(10);
+    					ToolInventory.Reservation reservation = inventory.reserve("JAKR", first.plusDays(random.nextInt(200)), days);
+    					if(reservation != null) {
+    						held.add(reservation);
+    						reserved[thread]++;
+    					}
+    					if(held.size() > 4 || (!held.isEmpty() && random.nextInt(3) == 0)) {
+    						inventory.release(held.remove(random.nextInt(held.size())));
+    					}
+    				}
+    			}
+    		});
+    		threads[t].start();
+    	}
+    	for(Thread thread : threads) {
+    		thread.join();
+    	}
+    	long total = 0;
+    	for(long count : reserved) {
+    		total += count;
+    	}
+    	assertTrue(total > 10000);
+    	
+    	//The reservations still held never overlap on a unit, and the bitmaps hold exactly their days
+    	boolean taken[][] = new boolean[3][400];
+    	for(List<ToolInventory.Reservation> held : kept) {
+    		for(ToolInventory.Reservation reservation : held) {
+    			for(long day = reservation.getCheckoutDay(); day < reservation.getDueDay(); day++) {
+    				int d = (int) (day - first.toEpochDay());
+    				assertTrue(!taken[reservation.getUnit()][d]);
+    				taken[reservation.getUnit()][d] = true;
+    			}
+    		}
+    	}
+    	for(int unit = 0; unit < 3; unit++) {
+    		for(int d = 0; d < 400; d++) {
+    			assertEquals(taken[unit][d], inventory.isReserved("JAKR", unit, first.plusDays(d)));
+    		}
+    	}
+    	for(List<ToolInventory.Reservation> held : kept) {
+    		for(ToolInventory.Reservation reservation : held) {
+    			inventory.release(reservation);
+    		}
+    	}
+    	assertEquals(3, inventory.countAvailable("JAKR", first, 400));
+    	
+    	//Three units can be out at once, and one returned early can be rented again from the day it came back
+    	ToolInventory.Reservation out[] = new ToolInventory.Reservation[3];
+    	for(int i = 0; i < 3; i++) {
+    		out[i] = inventory.reserve("JAKR", first, 30);
+    	}
+    	assertTrue(inventory.reserve("JAKR", first.plusDays(29), 1) == null);
+    	assertTrue(inventory.reserve("LADW", first, 1) == null);
+    	assertEquals("JAKR unit " + out[1].getUnit() + " from 06/01/20 to 07/01/20", out[1].toString());
+    	inventory.checkIn(out[1], first.plusDays(10));
+    	assertTrue(inventory.isReserved("JAKR", out[1].getUnit(), first.plusDays(9)));
+    	ToolInventory.Reservation again = inventory.reserve("JAKR", first.plusDays(10), 20);
+    	assertEquals(out[1].getUnit(), again.getUnit());
+    	assertEquals(0, inventory.countAvailable("JAKR", first.plusDays(20), 5));
+    	assertEquals(3, inventory.countAvailable("JAKR", first.plusDays(30), 5));
+    	System.out.print("Inventory contention test passed.\n\n");
+    }
+    
+    //The free units and earliest availability found a word at a time must match checking every unit day by day.
+    @Test
+    public void testAvailabilityQueries() throws Exception {
+    	System.out.print("Running availability test...\n");
+    	ToolInventory inventory = new ToolInventory(ToolCatalog.standard(), 12);
+    	LocalDate first = LocalDate.of(2020, 1, 1);
+    	java.util.Random random = new java.util.Random(18);
+    	for(int i = 0; i < 3000; i++) {
+    		String code = (i % 3 == 0) ? "JAKD" : ((i % 3 == 1) ? "JAKR" : "CHNS");
+    		int days = (random.nextInt(8) == 0) ? 1 + random.nextInt(90) : 1 + random.nextInt(14);
+    		inventory.reserve(code, first.plusDays(random.nextInt(500)), days);
+    	}
+    	for(int q = 0; q < 200; q++) {
+    		LocalDate checkout = first.plusDays(random.nextInt(560));
+    		int days = 1 + random.nextInt((q % 4 == 0) ? 100 : 10);
+    		Map<String, int[]> free = inventory.freeUnitsOfType(ToolCatalog.standard(), "Jackhammer", checkout, checkout.plusDays(days));
+    		assertEquals(Arrays.asList("JAKR", "JAKD"), new ArrayList<String>(free.keySet()));
+    		for(String code : free.keySet()) {
+    			int expected[] = new int[12];
+    			int count = 0;
+    			for(int unit = 0; unit < 12; unit++) {
+    				if(isFreeByDay(inventory, code, unit, checkout, days)) {
+    					expected[count++] = unit;
+    				}
+    			}
+    			assertTrue(Arrays.equals(Arrays.copyOf(expected, count), free.get(code)));
+    		}
+    		LocalDate earliest = checkout;
+    		boolean found = false;
+    		while(!found) {
+    			for(int unit = 0; unit < 12 && !found; unit++) {
+    				found = isFreeByDay(inventory, "CHNS", unit, earliest, days);
+    			}
+    			earliest = found ? earliest : earliest.plusDays(1);
+    		}
+    		assertEquals(earliest, inventory.earliestAvailable("CHNS", checkout, days));
+    	}
+    	assertEquals(12, inventory.freeUnitsOfType(ToolCatalog.standard(), "Ladder", first, first.plusDays(7)).get("LADW").length);
+    	assertTrue(inventory.freeUnitsOfType(ToolCatalog.standard(), "Lawnmower", first, first.plusDays(7)).isEmpty());
+    	//With every chainsaw out for November 2099, there aren't 40 days left before the end of the calendar
+    	for(int unit = 0; unit < 12; unit++) {
+    		inventory.reserve("CHNS", LocalDate.of(2099, 11, 1), 30);
+    	}
+    	assertTrue(inventory.earliestAvailable("CHNS", LocalDate.of(2099, 11, 1), 40) == null);
+    	assertEquals(LocalDate.of(2099, 12, 1), inventory.earliestAvailable("CHNS", LocalDate.of(2099, 11, 1), 31));
+    	System.out.print("Availability test passed.\n\n");
+    }
+    
+    private static boolean isFreeByDay(ToolInventory inventory, String code, int unit, LocalDate checkout, int days) {
+    	for(int d = 0; d < days; d++) {
+    		if(inventory.isReserved(code, unit, checkout.plusDays(d))) {
+    			return false;
+    		}
+    	}
+    	return true;
+    }
+    
+    //Replaying a log must write exactly the agreements runPOS() would give, however the lines fall across reads.
+    @Test
+    public void testCheckoutLogProcessor() throws Exception {
+    	System.out.print("Running checkout log test...\n");
+    	String sep = System.lineSeparator();
+    	String codes[] = {"LADW", "CHNS", "JAKR", "JAKD"};
+    	StringBuilder log = new StringBuilder();
+    	StringBuilder expected = new StringBuilder();
+    	LocalDate date = LocalDate.of(2014, 12, 28);
+    	int line = 0;
+    	for(int i = 0; i < 5000; i++) {
+    		LocalDate checkout = date.plusDays(i % 900);
+    		int days = 1 + (i * 13) % 120;
+    		int discount = (i * 31) % 101;
+    		String dateStr = String.format("%tD", checkout);
+    		log.append(codes[i % 4]).append(',').append(dateStr).append(',').append(days).append(',').append(discount);
+    		log.append((i % 3 == 0) ? "\r\n" : "\n");
+    		line++;
+    		if(i % 250 == 0) {
+    			log.append((i % 500 == 0) ? "\r\n" : " \t\r\n"); //blank lines with Windows line endings are skipped
+    			line++;
+    		}
+    		Checkout pos = new Checkout();
+    		String args[] = {codes[i % 4], dateStr, Integer.toString(days), Integer.toString(discount)};
+    		expected.append(pos.runPOS(args)).append(sep).append(sep);
+    	}
+    	String rejects[] = {"ABCD,07/02/20,5,10", "LADW,07/02/20,0,10", "LADW,07/02/20,5,101", "LADW,02/30/20,5,10",
+    		"LADW,7/2/20,five,10", "LADW 07/02/20 5 10", "LADW,07/02/20,5,10,1", ",07/02/20,5,10",
+    		"LADW,07/02/20,5," + "1234567890123456789012345678901234567890123456789012345678901234567890"};
+    	String reasons[] = {"tool code not recognized.", "unable to rent a tool for any less than 1 day, or more than 3653.",
+    		"discount is not in the range of 0 to 100."};
+    	for(int i = 0; i < rejects.length; i++) {
+    		log.append(rejects[i]).append("\n\n");
+    		line += 2;
+    		String reason = (i < reasons.length) ? reasons[i]
+    			: "not a checkout record of tool code, mm/dd/yy, days rented and discount.";
+    		expected.append("Line ").append(line - 1).append(": ").append(reason).append(sep).append(sep);
+    	}
+    	log.append("  JAKR , 7/2/20 , 4 , 50  ");
+    	expected.append(new RentalAgreement("JAKR", LocalDate.of(2020, 7, 2), 4, 50)).append(sep).append(sep);
+    	
+    	//A 64 byte buffer splits many lines across two reads, and the last reject is too long to fit in it at all
+    	CheckoutLogProcessor processor = new CheckoutLogProcessor(BatchPricer.standard(), 64);
+    	for(int run = 0; run < 2; run++) {
+    		ByteArrayOutputStream out = new ByteArrayOutputStream();
+    		CheckoutLogProcessor.Report report = processor.process(
+    			Channels.newChannel(new ByteArrayInputStream(log.toString().getBytes(StandardCharsets.US_ASCII))),
+    			Channels.newChannel(out));
+    		assertEquals(5000 + rejects.length + 1, report.getRecords());
+    		assertEquals(rejects.length, report.getRejected());
+    		assertEquals(expected.toString(), new String(out.toByteArray(), StandardCharsets.UTF_8));
+    	}
+    	System.out.print("Checkout log test passed.\n\n");
+    }
+    
+    //The quote service must price exactly as RentalAgreement does, and turn bad requests away with the reason.
+    @Test
+    public void testQuoteService() throws Exception {
+    	System.out.print("Running quote service test...\n");
+    	try(QuoteService service = new QuoteService(new InetSocketAddress("127.0.0.1", 0), HolidayRules.getDefault())) {
+    		service.start();
+    		String base = "http://127.0.0.1:" + service.getPort();
+    		RentalAgreement agreement = new RentalAgreement("JAKR", LocalDate.of(2020, 7, 2), 4, 50);
+    		assertEquals("200 " + QuoteService.toJson(agreement),
+    			httpGet(base + "/quote?tool=JAKR&date=07%2F02%2F20&days=4&discount=50"));
+    		assertEquals("200 " + agreement, httpGet(base + "/checkout?discount=50&days=4&date=07/02/20&tool=JAKR"));
+    		assertEquals("400 ERROR! Tool code ABCD not recognized.", httpGet(base + "/quote?tool=ABCD&date=07/02/20&days=4&discount=50"));
+    		assertEquals("400 Missing parameter: days", httpGet(base + "/quote?tool=JAKR&date=07/02/20&discount=50"));
+    		assertEquals("400 " + CheckoutParser.message(CheckoutParser.BAD_DATE), httpGet(base + "/quote?tool=JAKR&date=02/30/20&days=4&discount=50"));
+    		assertEquals("400 " + CheckoutParser.message(CheckoutParser.BAD_DISCOUNT),
+    			httpGet(base + "/checkout?tool=JAKR&date=07/02/20&days=4&discount=101"));
+    		assertEquals("200 " + agreement, httpPost(base + "/checkout", "tool=JAKR&date=07%2F02%2F20&days=4&discount=50"));
+    		char padding[] = new char[QuoteService.MAX_BODY_SIZE];
+    		Arrays.fill(padding, 'x');
+    		assertEquals("413 The request body is longer than " + QuoteService.MAX_BODY_SIZE + " bytes.",
+    			httpPost(base + "/checkout", "tool=JAKR&date=07/02/20&days=4&discount=50&pad=" + new String(padding)));
+    	}
+    	//A service needs holiday rules to price with
+    	try {
+    		new QuoteService(new InetSocketAddress("127.0.0.1", 0), null);
+    		assertTrue(false);
+    	}
+    	catch(NullPointerException e) {
+    	}
+    	//A tool the catalog gives no brand can't be written, which is the service's fault and not the request's
+    	ToolCatalog standard = ToolCatalog.getDefault();
+    	try(QuoteService service = new QuoteService(new InetSocketAddress("127.0.0.1", 0), HolidayRules.getDefault())) {
+    		service.start();
+    		String base = "http://127.0.0.1:" + service.getPort();
+    		ToolCatalog.install(new ToolCatalog.Builder().add("LADW", "Werner", "Ladder", 199, false, false)
+    			.add("NOBR", null, "Ladder", 199, false, false).build());
+    		assertEquals("500 The rental could not be priced.", httpGet(base + "/quote?tool=NOBR&date=07/02/20&days=4&discount=50"));
+    		assertEquals("200 " + new RentalAgreement("LADW", LocalDate.of(2020, 7, 2), 4, 50),
+    			httpGet(base + "/checkout?tool=LADW&date=07/02/20&days=4&discount=50"));
+    		assertTrue(service.appendMetrics(new StringBuilder()).toString().contains("toolrental_quote_faults_total 1\n"));
+    	}
+    	finally {
+    		ToolCatalog.install(standard);
+    	}
+    	System.out.print("Quote service test passed.\n\n");
+    }
+    
+    //Every stage of a checkout must be counted, for all tools and for its own tool, only while measuring is switched on.
+    @Test
+    public void testCheckoutMetrics() throws Exception {
+    	System.out.print("Running checkout metrics test...\n");
+    	LatencyHistogram histogram = new LatencyHistogram();
+    	for(long latency = 1; latency <= 100000; latency++) {
+    		histogram.record(latency);
+    	}
+    	long percentiles[] = histogram.percentiles(0.5, 0.99, 1.0);
+    	assertTrue(Math.abs(percentiles[0] - 50000) <= 50000 * 0.032);
+    	assertTrue(Math.abs(percentiles[1] - 99000) <= 99000 * 0.032);
+    	assertEquals(100000, percentiles[2]);
+    	assertEquals(100000, histogram.getTotal());
+    	assertEquals(100000L * 100001 / 2, histogram.getSum());
+    	for(long latency = 1; latency < (1L << 50); latency = latency * 3 + 1) {
+    		int bucket = LatencyHistogram.bucket(latency);
+    		assertTrue(LatencyHistogram.lowestIn(bucket) <= latency);
+    		assertTrue(bucket == LatencyHistogram.BUCKETS - 1 || LatencyHistogram.lowestIn(bucket + 1) > latency);
+    		int coarse = LatencyHistogram.bucket(latency, LatencyHistogram.COARSE_PRECISION);
+    		long lowest = LatencyHistogram.lowestIn(coarse, LatencyHistogram.COARSE_PRECISION);
+    		assertTrue(lowest <= latency && (latency >= (1L << 43) || latency - lowest <= latency / 8));
+    	}
+    	assertEquals(328, LatencyHistogram.buckets(LatencyHistogram.COARSE_PRECISION));
+    	
+    	String args[] = {"JAKR", "07/02/20", "4", "50"};
+    	String unknown[] = {"ABCD", "07/02/20", "4", "50"};
+    	CheckoutMetrics.setEnabled(false);
+    	CheckoutMetrics.reset();
+    	new Checkout().runPOS(args);
+    	assertEquals(0, CheckoutMetrics.get(CheckoutMetrics.Stage.PRICING).getTotal());
+    	try {
+    		CheckoutMetrics.setEnabled(true);
+    		CheckoutMetrics.registerMBeans();
+    		for(int i = 0; i < 10; i++) {
+    			new Checkout().runPOS(args).toString(); //writing out the agreement is the format stage
+    			try {
+    				new Checkout().runPOS(unknown);
+    			}
+    			catch(IllegalArgumentException e) {
+    				//counted as a tool lookup, for no tool
+    			}
+    		}
+    		assertEquals(20, CheckoutMetrics.get(CheckoutMetrics.Stage.TOOL_LOOKUP).getTotal());
+    		assertEquals(10, CheckoutMetrics.get(CheckoutMetrics.Stage.TOOL_LOOKUP, "JAKR").getTotal());
+    		for(CheckoutMetrics.Stage stage : CheckoutMetrics.Stage.values()) {
+    			assertEquals(10, CheckoutMetrics.get(stage, "JAKR").getTotal());
+    			assertEquals(0, CheckoutMetrics.get(stage, "LADW").getTotal());
+    		}
+    		String scrape = CheckoutMetrics.scrape();
+    		assertTrue(scrape.contains("toolrental_metrics_enabled 1\n"));
+    		assertTrue(scrape.contains("toolrental_checkout_stage_nanos_count{stage=\"toolLookup\"} 20\n"));
+    		assertTrue(scrape.contains("toolrental_checkout_stage_nanos_count{stage=\"chargeableDays\",tool=\"JAKR\"} 10\n"));
+    		assertTrue(scrape.contains("toolrental_checkout_stage_nanos{stage=\"format\",tool=\"JAKR\",quantile=\"0.99\"} "));
+    		assertTrue(!scrape.contains("tool=\"LADW\""));
+    		
+    		javax.management.MBeanServer server = java.lang.management.ManagementFactory.getPlatformMBeanServer();
+    		javax.management.ObjectName pricing = new javax.management.ObjectName("toolrental:type=CheckoutStage,stage=pricing");
+    		assertEquals(10L, server.getAttribute(pricing, "Count"));
+    		assertTrue(server.queryNames(new javax.management.ObjectName("toolrental:type=CheckoutStage,tool=*,*"), null).isEmpty());
+    		assertTrue(CheckoutMetrics.getToolCount() >= 1);
+    		server.invoke(new javax.management.ObjectName("toolrental:type=CheckoutMetrics"), "reset", null, null);
+    		assertEquals(0L, server.getAttribute(pricing, "Count"));
+    		
+    		try(QuoteService service = new QuoteService(new InetSocketAddress("127.0.0.1", 0), HolidayRules.getDefault())) {
+    			service.start();
+    			String base = "http://127.0.0.1:" + service.getPort();
+    			httpGet(base + "/quote?tool=LADW&date=07/02/20&days=4&discount=50");
+    			httpGet(base + "/quote?tool=LADW&date=07/02/20&days=4&discount=50");
+    			String metrics = httpGet(base + "/metrics");
+    			assertTrue(metrics.startsWith("200 "));
+    			assertTrue(metrics.contains("toolrental_checkout_stage_nanos_count{stage=\"parse\",tool=\"LADW\"} 2\n"));
+    			assertTrue(metrics.contains("toolrental_checkout_stage_nanos_count{stage=\"pricing\",tool=\"LADW\"} 1\n"));
+    			assertTrue(metrics.contains("toolrental_quote_cache_lookups_total{outcome=\"hit\"} 1\n"));
+    		}
+    	}
+    	finally {
+    		CheckoutMetrics.setEnabled(false);
+    		CheckoutMetrics.reset();
+    	}
+    	System.out.print("Checkout metrics test passed.\n\n");
+    }
+    
+    //A compiled promotion plan must take off exactly what applying each promotion in turn would, however many there are.
+    @Test
+    public void testPromotions() throws Exception {
+    	System.out.print("Running promotions test...\n");
+    	Promotions sample = Promotions.parse("sample", Arrays.asList(
+    		"# weekly and monthly rates",
+    		"Weekly rate = days 7 15%",
+    		"Monthly rate = days 28 30%",
+    		"Chainsaw monthly extra = days 28 10% for Chainsaw",
+    		"",
+    		"Ladder season = type Ladder 20% priority 50",
+    		"Gold members = loyalty GOLD 10% priority 200 cap $25.00",
+    		"Spring coupon = coupon SPRING5 $5.00 priority 300"));
+    	//Ladder season $2.79, then the weekly rate $1.67, Gold $0.95 and the coupon $5.00, off $13.93 for 7 days
+    	RentalAgreement agreement = new RentalAgreement(ToolCatalog.standard().get("LADW"), LocalDate.of(2020, 9, 1), 7, 10,
+    		HolidayRules.getDefault(), sample.getPlan(), "gold", "Spring5");
+    	assertEquals(1393, agreement.getBaseChargeCents());
+    	assertEquals(1041, agreement.getPromotionAmountCents());
+    	assertEquals(35, agreement.getDiscountAmountCents());
+    	assertEquals(316, agreement.getFinalChargeCents());
+    	assertTrue(agreement.toString().contains("Initial charge: $13.93. Promotions: $10.41. Discount Applied: 10% (Amount: $0.35)"));
+    	assertEquals(Arrays.asList("Ladder season", "Weekly rate"), names(sample.getPlan().promotionsFor(agreement.getTool(), 7, null, null)));
+    	assertEquals(Arrays.asList("Monthly rate", "Chainsaw monthly extra"),
+    		names(sample.getPlan().promotionsFor(ToolCatalog.standard().get("CHNS"), 30, "SILVER", "NONE")));
+    	String bad[] = {"Odd = days 0 10%", "Odd = week 7 10%", "Odd = days 7 110%", "Odd = days 7 5", "Odd = coupon X $5 cap"};
+    	for(String line : bad) {
+    		try {
+    			Promotions.parse("bad", Arrays.asList("", line));
+    			assertTrue(false);
+    		}
+    		catch(IOException e) {
+    			assertTrue(e.getMessage().startsWith("Line 2 "));
+    		}
+    	}
+    	
+    	//Enough promotions to take three words of bits
+    	java.util.Random random = new java.util.Random(20);
+    	String types[] = {"Ladder", "Chainsaw", "Jackhammer", "Drill", null};
+    	String keys[] = {"A", "B", "C"};
+    	List<Promotion> declared = new ArrayList<Promotion>();
+    	for(int i = 0; i < 150; i++) {
+    		Promotion.Builder builder = new Promotion.Builder("P" + i);
+    		int kind = random.nextInt(4);
+    		if(kind == 0) {
+    			builder.type(types[random.nextInt(4)]);
+    		}
+    		else {
+    			if(kind == 1) {
+    				builder.days(1 + random.nextInt(30));
+    			}
+    			else if(kind == 2) {
+    				builder.loyalty(keys[random.nextInt(3)]);
+    			}
+    			else {
+    				builder.coupon(keys[random.nextInt(3)]);
+    			}
+    			builder.forType(types[random.nextInt(5)]);
+    		}
+    		if(random.nextBoolean()) {
+    			builder.percentOff(random.nextInt(30));
+    		}
+    		else {
+    			builder.amountOff(random.nextInt(500));
+    		}
+    		if(random.nextInt(4) == 0) {
+    			builder.cap(random.nextInt(1000));
+    		}
+    		declared.add(builder.priority(random.nextInt(6)).build());
+    	}
+    	PromotionPlan plan = new Promotions("random", declared).getPlan();
+    	for(int i = 0; i < 5000; i++) {
+    		Tool tool = ToolCatalog.standard().get(random.nextInt(ToolCatalog.standard().size()));
+    		int days = 1 + random.nextInt(40);
+    		long charge = random.nextInt(100000);
+    		String tier = (random.nextInt(4) == 0) ? null : keys[random.nextInt(3)];
+    		String coupon = (random.nextInt(4) == 0) ? null : keys[random.nextInt(3)].toLowerCase();
+    		assertEquals(referenceAmountOff(declared, tool, days, charge, tier, coupon), plan.amountOff(tool, days, charge, tier, coupon));
+    	}
+    	
+    	//A batch must be priced with the same promotions as its agreements
+    	BatchPricer pricer = new BatchPricer(ToolCatalog.standard(), HolidayRules.getDefault(), plan);
+    	RentalBatch batch = new RentalBatch(0);
+    	int first = (int) LocalDate.of(2020, 1, 1).toEpochDay();
+    	for(int i = 0; i < 2000; i++) {
+    		batch.add(i % 4, first + (i * 7) % 1000, 1 + (i * 13) % 45, (i * 31) % 101);
+    	}
+    	PricingResults results = new PricingResults();
+    	pricer.price(batch, results);
+    	long promotionTotal = 0;
+    	for(int i = 0; i < batch.size(); i++) {
+    		RentalAgreement expected = new RentalAgreement(pricer.getTool(batch.getToolIndex(i)),
+    			LocalDate.ofEpochDay(batch.getCheckoutDay(i)), batch.getDaysRented(i), batch.getDiscountPercent(i),
+    			HolidayRules.getDefault(), plan, null, null);
+    		promotionTotal += expected.getPromotionAmountCents();
+    		assertEquals(expected.getPromotionAmountCents(), results.getPromotionAmount(i));
+    		assertEquals(expected.getDiscountAmountCents(), results.getDiscountAmount(i));
+    		assertEquals(expected.getFinalChargeCents(), results.getFinalCharge(i));
+    	}
+    	//and its summary must say what they gave away, however it is split up
+    	PricingSummary summary = PricingSummary.of(batch, results, 0, batch.size(), pricer.toolCount());
+    	assertTrue(promotionTotal > 0);
+    	assertEquals(promotionTotal, summary.getPromotionAmount());
+    	assertEquals(summary, PricingSummary.of(batch, results, 0, 700, pricer.toolCount())
+    		.merge(PricingSummary.of(batch, results, 700, batch.size(), pricer.toolCount())));
+    	
+    	Path file = Files.createTempFile("promotions", ".jnl");
+    	Files.delete(file);
+    	try(AgreementJournal journal = new AgreementJournal(file)) {
+    		journal.append(agreement);
+    	}
+    	try(AgreementJournal journal = new AgreementJournal(file)) {
+    		assertEquals(agreement.toString(), journal.get(0).toString());
+    	}
+    	finally {
+    		Files.delete(file);
+    	}
+    	System.out.print("Promotions test passed.\n\n");
+    }
+    
+    private static List<String> names(List<Promotion> promotions) {
+    	List<String> names = new ArrayList<String>();
+    	for(Promotion p : promotions) {
+    		names.add(p.getName());
+    	}
+    	return names;
+    }
+    
+    //Applies every promotion a rental gets one at a time, in order of priority, without a plan.
+    private static long referenceAmountOff(List<Promotion> declared, Tool tool, int days, long charge, String tier, String coupon) {
+    	int mostDays = 0;
+    	for(Promotion p : declared) {
+    		if(p.getKind() == Promotion.Kind.DAYS && (p.getToolType() == null || p.getToolType().equals(tool.getType()))
+    				&& days >= p.getMinDays()) {
+    			mostDays = Math.max(mostDays, p.getMinDays());
+    		}
+    	}
+    	List<Promotion> applied = new ArrayList<Promotion>();
+    	for(Promotion p : declared) {
+    		boolean applies = p.getToolType() == null || p.getToolType().equals(tool.getType());
+    		if(p.getKind() == Promotion.Kind.DAYS) {
+    			applies &= p.getMinDays() == mostDays;
+    		}
+    		else if(p.getKind() == Promotion.Kind.LOYALTY) {
+    			applies &= p.getKey().equalsIgnoreCase(tier);
+    		}
+    		else if(p.getKind() == Promotion.Kind.COUPON) {
+    			applies &= p.getKey().equalsIgnoreCase(coupon);
+    		}
+    		if(applies) {
+    			applied.add(p);
+    		}
+    	}
+    	java.util.Collections.sort(applied, new java.util.Comparator<Promotion>() {
+    		public int compare(Promotion a, Promotion b) {
+    			return a.getPriority() - b.getPriority();
+    		}
+    	});
+    	long left = charge;
+    	for(Promotion p : applied) {
+    		long off = (p.getPercentOff() >= 0) ? Money.percentOf(left, p.getPercentOff(), RoundingMode.HALF_UP) : p.getAmountOffCents();
+    		left -= Math.min(Math.min(off, p.getCapCents()), left);
+    	}
+    	return charge - left;
+    }
+    
+    //Fees accrued night by night must be what pricing each late return on its own would charge.
+    @Test
+    public void testLateFees() throws Exception {
+    	System.out.print("Running late fees test...\n");
+    	//Due Monday 07/06/20, back Friday 07/10/20: four weekdays late at $2.99
+    	RentalAgreement jackhammer = new RentalAgreement("JAKR", LocalDate.of(2020, 7, 2), 4, 50);
+    	assertEquals(0, LateFeeLedger.lateFee(jackhammer, LocalDate.of(2020, 7, 6), HolidayRules.getDefault()));
+    	assertEquals(1196, LateFeeLedger.lateFee(jackhammer, LocalDate.of(2020, 7, 10), HolidayRules.getDefault()));
+    	LateFeeLedger ledger = new LateFeeLedger(LocalDate.of(2020, 7, 1), HolidayRules.getDefault());
+    	ledger.open(7, jackhammer);
+    	ledger.accrueThrough(LocalDate.of(2020, 7, 9));
+    	assertEquals(897, ledger.accruedFee(7));
+    	assertEquals(897, ledger.getAccruedFees());
+    	assertEquals(1196, ledger.checkIn(7, LocalDate.of(2020, 7, 10)));
+    	assertEquals(0, ledger.getAccruedFees());
+    	try {
+    		ledger.checkIn(7, LocalDate.of(2020, 7, 10));
+    		assertTrue(false);
+    	}
+    	catch(IllegalArgumentException e) {
+    	}
+    	
+    	//Agreements opened already overdue or not yet due, across July 4th and Labor Day, returned at random
+    	java.util.Random random = new java.util.Random(21);
+    	String codes[] = {"LADW", "CHNS", "JAKR", "JAKD"};
+    	LocalDate asOf = LocalDate.of(2020, 6, 20);
+    	ledger = new LateFeeLedger(asOf, HolidayRules.getDefault());
+    	RentalAgreement agreements[] = new RentalAgreement[3000];
+    	boolean returned[] = new boolean[agreements.length];
+    	for(int n = 0; n < agreements.length; n++) {
+    		agreements[n] = new RentalAgreement(codes[random.nextInt(4)], asOf.plusDays(random.nextInt(100) - 50), 1 + random.nextInt(30), 0);
+    		ledger.open(n, agreements[n]);
+    	}
+    	for(int night = 0; night <= 90; night++) {
+    		LocalDate day = asOf.plusDays(night);
+    		ledger.accrueThrough(day);
+    		assertEquals(day, ledger.getLastAccrued());
+    		long total = 0;
+    		int overdue = 0;
+    		for(int n = 0; n < agreements.length; n++) {
+    			if(returned[n]) {
+    				continue;
+    			}
+    			long expected = LateFeeLedger.lateFee(agreements[n], day, HolidayRules.getDefault());
+    			if(random.nextInt(20) == 0) {
+    				LocalDate back = day.plusDays(random.nextInt(3));
+    				assertEquals(LateFeeLedger.lateFee(agreements[n], back, HolidayRules.getDefault()), ledger.checkIn(n, back));
+    				returned[n] = true;
+    				continue;
+    			}
+    			assertEquals(expected, ledger.accruedFee(n));
+    			total += expected;
+    			if(agreements[n].getDueDay() < day.toEpochDay()) {
+    				overdue++;
+    			}
+    		}
+    		assertEquals(total, ledger.getAccruedFees());
+    		assertEquals(overdue, ledger.getOverdueCount());
+    	}
+    	
+    	//Returns kept in a file are skipped when the journal's agreements are opened again
+    	Path file = Files.createTempFile("returns", ".dat");
+    	try {
+    		try(LateFeeLedger kept = new LateFeeLedger(asOf, HolidayRules.getDefault(), file)) {
+    			for(int n = 0; n < 3; n++) {
+    				assertTrue(kept.open(n, agreements[n]));
+    			}
+    			kept.checkIn(1, asOf);
+    		}
+    		Files.write(file, new byte[5], StandardOpenOption.APPEND); //a return cut short by a crash
+    		try(LateFeeLedger reopened = new LateFeeLedger(asOf, HolidayRules.getDefault(), file)) {
+    			assertEquals(12, Files.size(file));
+    			assertEquals(1, reopened.getReturnedCount());
+    			assertTrue(reopened.open(0, agreements[0]));
+    			assertTrue(!reopened.open(1, agreements[1]));
+    			assertTrue(reopened.open(2, agreements[2]));
+    			assertEquals(2, reopened.getOpenCount());
+    			try {
+    				reopened.checkIn(1, asOf);
+    				assertTrue(false);
+    			}
+    			catch(IllegalArgumentException e) {
+    			}
+    		}
+    	}
+    	finally {
+    		Files.delete(file);
+    	}
+    	System.out.print("Late fees test passed.\n\n");
+    }
+    
+    //Reports from the columnar history must match totals worked out one agreement at a time.
+    @Test
+    public void testRentalHistory() throws Exception {
+    	System.out.print("Running rental history test...\n");
+    	Promotions promotions = Promotions.parse("test", Arrays.asList("Weekly rate = days 7 15%", "Gold = loyalty GOLD 10%"));
+    	ToolCatalog catalog = ToolCatalog.standard();
+    	java.util.Random random = new java.util.Random(22);
+    	LocalDate firstDay = LocalDate.of(2019, 11, 1);
+    	List<RentalAgreement> agreements = new ArrayList<RentalAgreement>();
+    	RentalHistory history = new RentalHistory();
+    	for(int i = 0; i < 20000; i++) {
+    		RentalAgreement agreement = new RentalAgreement(catalog.get(random.nextInt(catalog.size())),
+    			firstDay.plusDays(random.nextInt(400)), 1 + random.nextInt(30), random.nextInt(5) * 10, HolidayRules.getDefault(),
+    			promotions.getPlan(), random.nextBoolean() ? "GOLD" : null, null);
+    		agreements.add(agreement);
+    		history.add(agreement);
+    	}
+    	assertEquals(20000, history.size());
+    	//Whole months, and ranges that cut months in two
+    	LocalDate ranges[][] = {{LocalDate.of(2020, 1, 1), LocalDate.of(2020, 3, 31)}, {LocalDate.of(2020, 2, 10), LocalDate.of(2020, 7, 4)},
+    		{LocalDate.of(2020, 5, 5), LocalDate.of(2020, 5, 5)}, {LocalDate.of(2010, 1, 1), LocalDate.of(2030, 1, 1)}};
+    	for(LocalDate[] range : ranges) {
+    		Map<String, long[]> byType = new java.util.TreeMap<String, long[]>();
+    		long total[] = new long[6];
+    		for(RentalAgreement a : agreements) {
+    			if(a.getCheckoutDate().isBefore(range[0]) || a.getCheckoutDate().isAfter(range[1])) {
+    				continue;
+    			}
+    			long sums[] = byType.get(a.getTool().getType());
+    			if(sums == null) {
+    				byType.put(a.getTool().getType(), sums = new long[6]);
+    			}
+    			for(long[] s : new long[][] {sums, total}) {
+    				s[0]++;
+    				s[1] += a.getChargeableDays();
+    				s[2] += a.getBaseChargeCents();
+    				s[3] += a.getPromotionAmountCents();
+    				s[4] += a.getDiscountAmountCents();
+    				s[5] += a.getFinalChargeCents();
+    			}
+    		}
+    		Map<String, RentalHistory.Totals> report = history.revenueByType(range[0], range[1]);
+    		assertEquals(byType.keySet(), report.keySet());
+    		for(Map.Entry<String, long[]> e : byType.entrySet()) {
+    			assertEquals(e.getKey(), Arrays.toString(e.getValue()), Arrays.toString(sums(report.get(e.getKey()))));
+    		}
+    		RentalHistory.Totals all = history.total(range[0], range[1]);
+    		assertEquals(Arrays.toString(total), Arrays.toString(sums(all)));
+    		assertEquals(total[2] - total[5], all.getLeakage());
+    		long byBrand = 0;
+    		for(RentalHistory.Totals t : history.revenueByBrand(range[0], range[1]).values()) {
+    			byBrand += t.getFinalCharge();
+    		}
+    		assertEquals(all.getFinalCharge(), byBrand);
+    	}
+    	
+    	//Days out by week, counted a day at a time
+    	LocalDate monday = LocalDate.of(2020, 3, 2);
+    	Map<String, long[]> byWeek = history.rentalDaysByWeek(monday, 10);
+    	Map<String, long[]> expected = new java.util.TreeMap<String, long[]>();
+    	for(RentalAgreement a : agreements) {
+    		for(LocalDate d = a.getCheckoutDate(); d.isBefore(a.getDueDate()); d = d.plusDays(1)) {
+    			long week = (d.toEpochDay() - monday.toEpochDay()) / 7;
+    			if(!d.isBefore(monday) && week < 10) {
+    				if(!expected.containsKey(a.getTool().getCode())) {
+    					expected.put(a.getTool().getCode(), new long[10]);
+    				}
+    				expected.get(a.getTool().getCode())[(int) week]++;
+    			}
+    		}
+    	}
+    	assertEquals(expected.keySet(), byWeek.keySet());
+    	for(String code : expected.keySet()) {
+    		assertEquals(code, Arrays.toString(expected.get(code)), Arrays.toString(byWeek.get(code)));
+    	}
+    	ToolInventory inventory = new ToolInventory(catalog, 0);
+    	inventory.addUnits("LADW", 4);
+    	Map<String, double[]> utilization = history.utilizationByWeek(inventory, monday, 10);
+    	assertEquals(Arrays.asList("LADW"), new ArrayList<String>(utilization.keySet()));
+    	assertEquals(expected.get("LADW")[3] / 28.0, utilization.get("LADW")[3], 1e-9);
+    	
+    	//A history loaded from a journal, in two goes, reports the same
+    	Path file = Files.createTempFile("history", ".jnl");
+    	Files.delete(file);
+    	try(AgreementJournal journal = new AgreementJournal(file)) {
+    		journal.appendAll(agreements.subList(0, 12000));
+    		RentalHistory loaded = new RentalHistory();
+    		assertEquals(12000, loaded.load(journal));
+    		assertEquals(12000, loaded.total(LocalDate.of(2010, 1, 1), LocalDate.of(2030, 1, 1)).getRentals()); //grouped, then added to
+    		journal.appendAll(agreements.subList(12000, agreements.size()));
+    		assertEquals(8000, loaded.load(journal));
+    		assertEquals(0, loaded.load(journal));
+    		for(LocalDate[] range : ranges) {
+    			assertEquals(history.revenueByTool(range[0], range[1]), loaded.revenueByTool(range[0], range[1]));
+    		}
+    	}
+    	finally {
+    		Files.delete(file);
+    	}
+    	System.out.print("Rental history test passed.\n\n");
+    }
+    
+    private static long[] sums(RentalHistory.Totals t) {
+    	return new long[] {t.getRentals(), t.getChargeableDays(), t.getBaseCharge(), t.getPromotionAmount(), t.getDiscountAmount(),
+    		t.getFinalCharge()};
+    }
+    
+    //An agreement sent as a binary message must read back exactly, in place, whatever version wrote it.
+    @Test
+    public void testAgreementMessage() throws Exception {
+    	System.out.print("Running agreement message test...\n");
+    	Promotions promotions = Promotions.parse("test", Arrays.asList("Ladder season = type Ladder 20%"));
+    	RentalAgreement agreements[] = {new RentalAgreement("JAKR", LocalDate.of(2020, 7, 2), 4, 50),
+    		new RentalAgreement(ToolCatalog.standard().get("LADW"), LocalDate.of(2020, 9, 1), 7, 10, HolidayRules.getDefault(),
+    			promotions.getPlan(), null, null),
+    		new RentalAgreement(new Tool(-1, "SAWZ", "Ryobi \u00dcnlimited", "Saw", 1250, true, false), LocalDate.of(2021, 2, 26), 9, 0,
+    			HolidayRules.getDefault())};
+    	ByteBuffer buffer = ByteBuffer.allocate(1024);
+    	AgreementMessage message = new AgreementMessage();
+    	int offset = 0;
+    	for(RentalAgreement agreement : agreements) {
+    		offset += message.wrapForEncode(buffer, offset).encode(agreement).getEncodedLength();
+    	}
+    	assertEquals(3 * 128, offset);
+    	offset = 0;
+    	for(RentalAgreement agreement : agreements) {
+    		message.wrapForDecode(buffer, offset);
+    		assertEquals(agreement.toString(), message.toString());
+    		assertEquals(agreement.toString(), message.toAgreement().toString());
+    		assertEquals(agreement.getFinalChargeCents(), message.getFinalChargeCents());
+    		assertEquals(agreement.getDueDay(), message.getDueDay());
+    		assertEquals(agreement.getTool().getBrand(), message.appendBrand(new StringBuilder()).toString());
+    		assertEquals(agreement.getToolCode(), message.appendToolCode(new StringBuilder()).toString());
+    		offset += message.getEncodedLength();
+    	}
+    	//Tools of the catalog are found without decoding any text, and only when nothing about them has changed
+    	assertTrue(message.wrapForDecode(buffer, 0).getTool(ToolCatalog.getDefault()) == ToolCatalog.getDefault().get("JAKR"));
+    	assertTrue(message.wrapForDecode(buffer, 256).getTool(ToolCatalog.getDefault()) == null);
+    	ToolCatalog repriced = new ToolCatalog.Builder().add("JAKR", "Ridgid", "Jackhammer", 399, true, true).build();
+    	assertTrue(message.wrapForDecode(buffer, 0).getTool(repriced) == null);
+    	
+    	//A message's block holds the same bytes as the agreement's journal record, up to the record's checksum
+    	Path file = Files.createTempFile("messages", ".jnl");
+    	Files.delete(file);
+    	try(AgreementJournal journal = new AgreementJournal(file)) {
+    		journal.appendAll(Arrays.asList(agreements));
+    	}
+    	try {
+    		byte[] records = Files.readAllBytes(file);
+    		for(int i = 0; i < agreements.length; i++) {
+    			for(int b = 0; b < AgreementMessage.BLOCK_LENGTH; b++) {
+    				assertEquals(records[AgreementJournal.HEADER_SIZE + i * AgreementJournal.RECORD_SIZE + b],
+    					buffer.get(i * 128 + AgreementMessage.HEADER_SIZE + b));
+    			}
+    		}
+    	}
+    	finally {
+    		Files.delete(file);
+    	}
+    	
+    	//A message of a later version, with a field this version doesn't know, is read and skipped over
+    	ByteBuffer later = ByteBuffer.allocate(512);
+    	message.wrapForEncode(later, 0).encode(agreements[1]);
+    	later.putShort(0, (short) (AgreementMessage.BLOCK_LENGTH + 16)).putShort(6, (short) 2).putLong(128, -1L).putLong(136, -1L);
+    	message.wrapForEncode(later, 144).encode(agreements[0]);
+    	assertEquals(2, message.wrapForDecode(later, 0).getVersion());
+    	assertEquals(agreements[1].toString(), message.toString());
+    	assertEquals(agreements[0].toString(), message.wrapForDecode(later, message.getEncodedLength()).toString());
+    	
+    	String problems[] = {"template", "short block", "underflow", "order"};
+    	for(String problem : problems) {
+    		ByteBuffer bad = ByteBuffer.allocate(128);
+    		message.wrapForEncode(bad, 0).encode(agreements[0]);
+    		try {
+    			if(problem.equals("template")) {
+    				message.wrapForDecode(bad.putShort(2, (short) 2), 0);
+    			}
+    			else if(problem.equals("short block")) {
+    				message.wrapForDecode(bad.putShort(0, (short) 64), 0);
+    			}
+    			else if(problem.equals("underflow")) {
+    				message.wrapForDecode((ByteBuffer) bad.limit(100), 0);
+    			}
+    			else {
+    				message.wrapForDecode(bad.order(java.nio.ByteOrder.LITTLE_ENDIAN), 0);
+    			}
+    			assertTrue(problem, false);
+    		}
+    		catch(IllegalArgumentException | java.nio.BufferUnderflowException e) {
+    		}
+    	}
+    	
+    	//The quote service sends the same message when asked for one
+    	try(QuoteService service = new QuoteService(new InetSocketAddress("127.0.0.1", 0), HolidayRules.getDefault())) {
+    		service.start();
+    		HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + service.getPort()
+    			+ "/checkout?tool=JAKR&date=07/02/20&days=4&discount=50").openConnection();
+    		connection.setRequestProperty("Accept", AgreementMessage.CONTENT_TYPE);
+    		assertEquals(200, connection.getResponseCode());
+    		assertEquals(AgreementMessage.CONTENT_TYPE, connection.getContentType());
+    		ByteArrayOutputStream body = new ByteArrayOutputStream();
+    		try(InputStream in = connection.getInputStream()) {
+    			byte[] chunk = new byte[256];
+    			for(int n = in.read(chunk); n >= 0; n = in.read(chunk)) {
+    				body.write(chunk, 0, n);
+    			}
+    		}
+    		assertEquals(agreements[0].toString(), message.wrapForDecode(ByteBuffer.wrap(body.toByteArray()), 0).toString());
+    	}
+    	System.out.print("Agreement message test passed.\n\n");
+    }
+    
+    //A tool table must number each Tool instance once, whether or not it is from a catalog, and whatever its catalog id.
+    @Test
+    public void testToolTable() throws Exception {
+    	System.out.print("Running tool table test...\n");
+    	ToolTable table = new ToolTable();
+    	Tool jackhammer = ToolCatalog.getDefault().get("JAKR");
+    	Tool loose = new Tool(-1, "SAWZ", "Ryobi", "Saw", 1250, true, false);
+    	Tool far = new Tool(ToolTable.MAX_CATALOG_ID + 5, "DRLL", "Bosch", "Drill", 399, true, true);
+    	Tool copy = new Tool(jackhammer.getId(), "JAKR", "Ridgid", "Jackhammer", 299, true, true);
+    	Tool order[] = {jackhammer, loose, far, copy, far, loose, jackhammer, copy};
+    	int expected[] = {0, 1, 2, 3, 2, 1, 0, 3};
+    	for(int i = 0; i < order.length; i++) {
+    		assertEquals(expected[i], table.numberOf(order[i]));
+    		assertTrue(table.get(expected[i]) == order[i]);
+    	}
+    	assertEquals(4, table.size());
+    	System.out.print("Tool table test passed.\n\n");
+    }
+    
+    //Agreements held off the heap must read back as they went in, and closed slots must be handed out again.
+    @Test
+    public void testOpenAgreementStore() throws Exception {
+    	System.out.print("Running open agreement store test...\n");
+    	Promotions promotions = Promotions.parse("test", Arrays.asList("Weekly rate = days 7 15%"));
+    	OpenAgreementStore store = new OpenAgreementStore(64);
+    	OpenAgreementStore.View view = store.newView();
+    	java.util.Random random = new java.util.Random(24);
+    	String codes[] = {"LADW", "CHNS", "JAKR", "JAKD"};
+    	Map<Integer, RentalAgreement> open = new java.util.HashMap<Integer, RentalAgreement>();
+    	for(int i = 0; i < 5000; i++) {
+    		if(!open.isEmpty() && random.nextInt(3) == 0) {
+    			Integer slot = open.keySet().iterator().next();
+    			store.close(slot);
+    			open.remove(slot);
+    			assertTrue(!store.isOpen(slot));
+    			continue;
+    		}
+    		Tool tool = (i % 50 == 0) ? new Tool(-1, "OLDT", "Makita", "Drill", 350 + i, true, true)
+    			: ToolCatalog.getDefault().get(codes[random.nextInt(4)]);
+    		RentalAgreement agreement = new RentalAgreement(tool, LocalDate.of(2020, 1, 1).plusDays(random.nextInt(900)),
+    			1 + random.nextInt(40), random.nextInt(101), HolidayRules.getDefault(), promotions.getPlan(), null, null);
+    		int slot = store.open(agreement);
+    		assertTrue(!open.containsKey(slot));
+    		open.put(slot, agreement);
+    	}
+    	assertEquals(open.size(), store.size());
+    	//Closed slots are reused before new ones, so no more are allocated than were ever open at once
+    	assertTrue(store.getOffHeapBytes() <= 64L * OpenAgreementStore.SLOT_SIZE * ((5000 + 63) / 64));
+    	for(Map.Entry<Integer, RentalAgreement> e : open.entrySet()) {
+    		RentalAgreement agreement = e.getValue();
+    		view.of(e.getKey());
+    		assertTrue(view.getTool() == agreement.getTool());
+    		assertEquals(agreement.getDueDay(), view.getDueDay());
+    		assertEquals(agreement.getFinalChargeCents(), view.getFinalChargeCents());
+    		assertEquals(agreement.toString(), view.appendTo(new StringBuilder()).toString());
+    		assertEquals(agreement.toString(), view.toAgreement().toString());
+    	}
+    	int closed = 0;
+    	while(store.isOpen(closed)) {
+    		closed++;
+    	}
+    	for(int slot : new int[] {-1, closed, 1 << 20}) {
+    		try {
+    			view.of(slot);
+    			assertTrue(false);
+    		}
+    		catch(IllegalArgumentException e) {
+    		}
+    	}
+    	System.out.print("Open agreement store test passed.\n\n");
+    }
+    
+    //An order of several tools must cost what their agreements do, with the order's discount taken once.
+    @Test
+    public void testRentalOrder() throws Exception {
+    	System.out.print("Running rental order test...\n");
+    	Checkout checkout = new Checkout();
+    	String sep = System.lineSeparator();
+    	RentalOrder order = checkout.runOrder(new String[] {"07/02/20", "4", "50", "JAKR", "LADW", " JAKR"});
+    	assertEquals(2, order.getLineCount());
+    	assertEquals(3, order.getToolCount());
+    	assertEquals(2, order.getQuantity(0));
+    	assertEquals(1, order.getChargeableDays(0));
+    	assertEquals(4, order.getChargeableDays(1));
+    	assertEquals("Order of 3 tools rented on 07/02/20." + sep
+    		+ "Rental Period: 07/02/20 -- 07/06/20 (4)" + sep
+    		+ "2 x Rigid Jackhammer (JAKR): 1 day at $2.99: $5.98" + sep
+    		+ "1 x Werner Ladder (LADW): 4 days at $1.99: $7.96" + sep
+    		+ "Initial charge: $13.94. Discount Applied: 50% (Amount: $6.97)" + sep
+    		+ "Final amount due at return: $6.97", order.toString());
+    	
+    	//A one line order is priced as the same agreement from runPOS, and a larger one as its lines' agreements added up with
+    	//the discount taken once off the total
+    	java.util.Random random = new java.util.Random(25);
+    	String codes[] = {"LADW", "CHNS", "JAKR", "JAKD"};
+    	for(int i = 0; i < 500; i++) {
+    		String date = String.format("%02d/%02d/%02d", 1 + random.nextInt(12), 1 + random.nextInt(28), 10 + random.nextInt(20));
+    		String days = Integer.toString(1 + random.nextInt(40));
+    		String discount = Integer.toString(random.nextInt(101));
+    		String args[] = new String[4 + random.nextInt(12)];
+    		args[0] = date;
+    		args[1] = days;
+    		args[2] = discount;
+    		long base = 0;
+    		long promotion = 0;
+    		for(int j = 3; j < args.length; j++) {
+    			args[j] = codes[random.nextInt(4)];
+    			RentalAgreement agreement = checkout.runPOS(new String[] {args[j], date, days, discount});
+    			base += agreement.getBaseChargeCents();
+    			promotion += agreement.getPromotionAmountCents();
+    			if(args.length == 4) {
+    				RentalOrder single = checkout.runOrder(args);
+    				assertEquals(agreement.getDiscountAmountCents(), single.getDiscountAmountCents());
+    				assertEquals(agreement.getFinalChargeCents(), single.getFinalChargeCents());
+    			}
+    		}
+    		order = checkout.runOrder(args);
+    		assertEquals(args.length - 3, order.getToolCount());
+    		assertEquals(base, order.getBaseChargeCents());
+    		assertEquals(promotion, order.getPromotionAmountCents());
+    		assertEquals(RentalAgreement.finalCharge(base - promotion, Integer.parseInt(discount)), order.getFinalChargeCents());
+    	}
+    	
+    	//Bad orders are reported as runPOS reports them
+    	String bad[][] = {{"07/02/20", "4", "10"}, {"07/02/20", "4", "10", "LADW", "XXXX"}, {"07/02/20", "0", "10", "LADW"},
+    		{"02/30/20", "4", "10", "LADW"}};
+    	for(String args[] : bad) {
+    		try {
+    			checkout.runOrder(args);
+    			assertTrue(false);
+    		}
+    		catch(IllegalArgumentException e) {
+    		}
+    	}
+    	try {
+    		checkout.runOrder(new String[] {"07/02/20", "4", "101", "LADW"});
+    		assertTrue(false);
+    	}
+    	catch(CheckoutDiscountException e) {
+    	}
+    	System.out.print("Rental order test passed.\n\n");
+    }
+    
+    //Returns the status code and body of a POST of a form-encoded body, separated by a space.
+    private static String httpPost(String url, String form) throws IOException {
+    	HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+    	connection.setRequestMethod("POST");
+    	connection.setDoOutput(true);
+    	connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+    	OutputStream out = connection.getOutputStream();
+    	out.write(form.getBytes(StandardCharsets.UTF_8));
+    	out.close();
+    	return response(connection);
+    }
+    
+    //Returns the status code and body of a GET request, separated by a space.
+    private static String httpGet(String url) throws IOException {
+    	return response((HttpURLConnection) new URL(url).openConnection());
+    }
+    
+    //Returns the status code and body of the response to a request, separated by a space.
+    private static String response(HttpURLConnection connection) throws IOException {
+    	int status = connection.getResponseCode();
+    	InputStream in = (status < 400) ? connection.getInputStream() : connection.getErrorStream();
+    	ByteArrayOutputStream body = new ByteArrayOutputStream();
+    	byte[] buffer = new byte[1024];
+    	for(int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+    		body.write(buffer, 0, n);
+    	}
+    	in.close();
+    	return status + " " + new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+    
+    //Runs the legacy loop for maxDays days, recording the chargeable day count at each possible due date.
+    private static int[] legacyChargeableDays(Calendar checkout, int maxDays, String excluded) {
+    	int counts[] = new int[maxDays + 1];
+    	Calendar c = (Calendar) checkout.clone();
+    	int chargeableDays = 0;
+    	for(int daysRented = 1; daysRented <= maxDays; daysRented++) {
+    		c.add(Calendar.DATE, 1);
+    		chargeableDays++;
+    		if(excluded != null) {
+    			int day = c.get(Calendar.DATE);
+    			int dayOfWeek = c.get(Calendar.DAY_OF_WEEK);
+    			int month = c.get(Calendar.MONTH);
+    			int year = c.get(Calendar.YEAR);
+    			if(excluded.contains("Holidays")) {
+    				if(dayOfWeek == 2 && month == 8) {
+    					if(isFirstWeekday(day, month, year)) {
+    						chargeableDays--;
+    					}
+    				}
+    				//Independence falls on a weekday
+    				if(day == 4 && month == 6 && (dayOfWeek != 1 && dayOfWeek != 7)) {
+    					chargeableDays--;
+    				}
+    				//It fell on a Sunday
+    				if(dayOfWeek == 2 && ((day - 1) == 4)) {
+    					chargeableDays--;
+    				}
+    				//It fell on a Saturday
+    				if(dayOfWeek == 6 && ((day + 1) == 4)) {
+    					chargeableDays--;
+    				}
+    			}
+    			if(dayOfWeek == 7) {
+    				chargeableDays--;
+    			}
+    			if(dayOfWeek == 1) {
+    				chargeableDays--;
+    			}
+    		}
+    		counts[daysRented] = chargeableDays;
+    	}
+    	return counts;
+    }
+    
+    //The days the legacy loop took off that aren't holidays: a Monday the 5th or Friday the 3rd of any month but July.
+    private static boolean isObservedHolidayFix(Calendar c) {
+    	int day = c.get(Calendar.DATE);
+    	int dayOfWeek = c.get(Calendar.DAY_OF_WEEK);
+    	return c.get(Calendar.MONTH) != Calendar.JULY && ((dayOfWeek == Calendar.MONDAY && day == 5)
+    		|| (dayOfWeek == Calendar.FRIDAY && day == 3));
+    }
+    
+    //The number of days from the day after checkout through each possible due date that isObservedHolidayFix() lists.
+    private static int[] observedHolidayFixes(Calendar checkout, int maxDays) {
+    	int counts[] = new int[maxDays + 1];
+    	Calendar c = (Calendar) checkout.clone();
+    	for(int daysRented = 1; daysRented <= maxDays; daysRented++) {
+    		c.add(Calendar.DATE, 1);
+    		counts[daysRented] = counts[daysRented - 1] + (isObservedHolidayFix(c) ? 1 : 0);
+    	}
+    	return counts;
+    }
+    
+    private static boolean isFirstWeekday(int dayOfMonth, int month, int year) {
+    	Calendar cal = Calendar.getInstance();
+    	cal.set(year, month, dayOfMonth);
+    	cal.add(Calendar.DATE,-7);
+    	return cal.get(Calendar.MONTH) != month;
+    }
+    
 }
\ No newline at end of file
@@ -8,112 +8,93 @@
  * Daily Rate -- The amount the tool rental store charges per day to rent a particular tool.
  * Exempt Days -- Some tools are not charged on specific days during their rental period.
  *
+ * Tools are immutable. Each one is created once by the ToolCatalog it belongs to, and that one instance is shared by every
+ * agreement renting it.
+ *
  * @author Iain St. John
  * @version 1.00 2016/3/20
  */
 
 
-public class Tool {
+public final class Tool {
 	//Tool Attributes
-	private String code;
-	private String brand;
-	private String type;
-	private double dailyCharge;
-	private String daysExempt;
-	
-  /**
-    *Default, empty Tool constructor method which initializes all String properties to null and the double property to 0.00.
-    */	
-    public Tool() {
-    	code = null;
-    	brand = null;
-    	type = null;
-    	dailyCharge = 0.00;
-    	daysExempt = null;
-    }
-   /**
-    *Tool constructor which takes a tool code.
-    *
-    *@param toolCode
-    */ 
-    public Tool(String toolCode) {
-    	code = toolCode;
-    	//Helper function fills in the rest of the info.
-    	this.determineInfoFromCode(toolCode);
-    }
-    
-    //"Setter" methods
+	private final int id; //dense index of this tool within its catalog, or -1 for a tool restored from a journal
+	private final String code;
+	private final String brand;
+	private final String type;
+	private final long dailyCharge; //in cents
+	private final String daysExempt;
+	private final boolean weekendsExempt; //true if this tool isn't charged on Saturdays and Sundays
+	private final boolean holidaysExempt; //true if this tool isn't charged on observed holidays
+
    /**
-    *Set this tool instance's code to the code String specified.
+    *Tool constructor, used by ToolCatalog and AgreementJournal.
     *
-    *@param toolCode -- the code you wish to set this tool's code to.
-    */ 
-    public void setCode(String toolCode) {
-    	code = toolCode;
+    *@param id              -- the tool's index within its catalog, or -1 if it isn't in one.
+    *@param code            -- the tool's four character code.
+    *@param brand           -- the manufacturer.
+    *@param type            -- the kind of tool.
+    *@param dailyCharge     -- the daily rental charge, in cents.
+    *@param weekendsExempt  -- true if the tool isn't charged on weekends.
+    *@param holidaysExempt  -- true if the tool isn't charged on observed holidays. Only with weekendsExempt, which ToolCatalog
+    *                          enforces.
+    */
+    Tool(int id, String code, String brand, String type, long dailyCharge, boolean weekendsExempt, boolean holidaysExempt) {
+    	this.id = id;
+    	this.code = code;
+    	this.brand = brand;
+    	this.type = type;
+    	this.dailyCharge = dailyCharge;
+    	this.weekendsExempt = weekendsExempt;
+    	this.holidaysExempt = holidaysExempt;
+    	if(holidaysExempt) {
+    		daysExempt = "weekends and Holidays.";
+    	}
+    	else if(weekendsExempt) {
+    		daysExempt = "weekends";
+    	}
+    	else {
+    		daysExempt = null;
+    	}
     }
-    
+
     //"Getter" methods
+    public int getId() {
+    	return id;
+    }
+
     public String getType() {
     	return type;
     }
-    
+
     public String getCode() {
     	return code;
     }
-    
+
     public String getBrand() {
     	return brand;
     }
-    
-    public double getDailyCharge() {
+
+    //The daily rental charge, in cents
+    public long getDailyChargeCents() {
     	return dailyCharge;
     }
-    
+
     public String getDaysExempt() {
     	return daysExempt;
     }
-    
-   /**
-    *Private helper method which determines this Tool's correct brand, type, dailyCharge, and daysExempt from a given tool code.
-    *
-    *@param toolCode  the tool code passed to this tool instance's constructor method.
-    *@return void     determines the correct information for the tool based on the given code, and sets the corresponding properties accordingly.
-    */ 
-    private void determineInfoFromCode(String toolCode) {
-    	if(toolCode.equals("LADW")) {
-    		type = "Ladder";
-    		brand = "Werner";
-    		dailyCharge = 1.99;
-    		daysExempt = null;
-    		
-    	}
-    	else if(toolCode.equals("CHNS")) {
-    		type = "Chainsaw";
-    		brand = "Stihl";
-    		dailyCharge = 1.49;
-    		daysExempt = "weekends";
-    	}
-    	else if(toolCode.equals("JAKR")) {
-    		type = "Jackhammer";
-    		brand = "Rigid";
-    		dailyCharge = 2.99;
-    		daysExempt = "weekends and Holidays.";
-    	}
-    	else if(toolCode.equals("JAKD")) {
-    		type = "Jackhammer";
-    		brand = "DeWalt";
-    		dailyCharge = 2.99;
-    		daysExempt = "weekends and Holidays.";
-    	}
-    	else {
-    		System.out.println("ERROR! Tool code not recognized.");
-    		return;
-    	}
+
+    public boolean isWeekendExempt() {
+    	return weekendsExempt;
     }
-    
+
+    public boolean isHolidayExempt() {
+    	return holidaysExempt;
+    }
+
     //Returns a string representation of a Tool for output
     public String toString() {
-    	String feeStr = String.format("$%.3d");
+    	String feeStr = Money.format(dailyCharge);
     	String s = (brand + " " + type + "(" + code + ") Rental fee per day: " + feeStr);
     	if(daysExempt == null) {
     		s += ".";
@@ -122,5 +103,5 @@ public class Tool {
     		s += (", except on " + daysExempt +".");
     	}
     	return s;
-    } 
-}
\ No newline at end of file
+    }
+}
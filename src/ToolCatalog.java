@@ -0,0 +1,211 @@
+/**
+ * @(#)ToolCatalog.java
+ * The set of tools the store rents. A catalog is built once from its tool definitions and never changes, and each of its tools
+ * is a single shared, immutable Tool instance.
+ *
+ * Tools are numbered 0 to size()-1 in the order they were defined, so a tool can be referred to by that dense id. Looking a tool
+ * up by its code is constant time: every code is exactly four characters, which are packed into an int and looked up in an
+ * open-addressed hash table. Codes must match exactly, so "ADW" or "ladw" is not mistaken for LADW.
+ *
+ * The default catalog can be replaced while the application is running, for example when ToolCatalogFile sees a new price list.
+ * Replacing it swaps in a whole new catalog at once, so a checkout that already took the catalog keeps a consistent set of
+ * prices, and nothing ever waits on a lock. The default catalog starts as the standard one, unless the toolrental.catalog
+ * system property names a catalog file to load instead.
+ *
+ * @author Iain St. John
+ * @version 1.00 2026/10/18
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.io.IOException;
+import java.nio.file.Paths;
+
+public final class ToolCatalog {
+	private static final ToolCatalog STANDARD = new Builder()
+		.add("LADW", "Werner", "Ladder", 199, false, false)
+		.add("CHNS", "Stihl", "Chainsaw", 149, true, false)
+		.add("JAKR", "Rigid", "Jackhammer", 299, true, true)
+		.add("JAKD", "DeWalt", "Jackhammer", 299, true, true)
+		.build();
+	private static final AtomicReference<ToolCatalog> CURRENT = new AtomicReference<ToolCatalog>(loadDefault());
+
+	private final Tool[] tools;
+	private final int[] slotKeys; //packed tool codes, 0 for an empty slot
+	private final int[] slotIds; //the id of the tool whose code is in the same slot
+	private final int mask;
+	private final int shift;
+	private final Map<String, List<Tool>> byType = new HashMap<String, List<Tool>>();
+
+	private ToolCatalog(Tool[] tools) {
+		this.tools = tools;
+		int capacity = Integer.highestOneBit(Math.max(tools.length, 2) * 2 - 1) << 1; //at most half full
+		slotKeys = new int[capacity];
+		slotIds = new int[capacity];
+		mask = capacity - 1;
+		shift = 32 - Integer.numberOfTrailingZeros(capacity);
+		for(Tool tool : tools) {
+			int key = pack(tool.getCode());
+			int slot = slotOf(key);
+			while(slotKeys[slot] != 0) {
+				if(slotKeys[slot] == key) {
+					throw new IllegalArgumentException("Tool code " + tool.getCode() + " is defined twice.");
+				}
+				slot = (slot + 1) & mask;
+			}
+			slotKeys[slot] = key;
+			slotIds[slot] = tool.getId();
+			List<Tool> ofType = byType.get(tool.getType());
+			if(ofType == null) {
+				ofType = new ArrayList<Tool>(2);
+				byType.put(tool.getType(), ofType);
+			}
+			ofType.add(tool);
+		}
+	}
+
+	//The catalog of the four tools this store has always rented.
+	public static ToolCatalog standard() {
+		return STANDARD;
+	}
+
+	//The catalog currently used by Checkout and by every RentalAgreement that isn't given a Tool.
+	public static ToolCatalog getDefault() {
+		return CURRENT.get();
+	}
+
+   /**Makes the given catalog the default one. Checkouts already under way finish with the catalog they started with.
+    *
+    *@param catalog  the new default catalog.
+    *@return ToolCatalog  the catalog it replaced.
+    */
+	public static ToolCatalog install(ToolCatalog catalog) {
+		if(catalog == null) {
+			throw new NullPointerException("catalog");
+		}
+		return CURRENT.getAndSet(catalog);
+	}
+
+	private static ToolCatalog loadDefault() {
+		String file = System.getProperty("toolrental.catalog");
+		if(file == null) {
+			return STANDARD;
+		}
+		try {
+			return ToolCatalogFile.read(Paths.get(file));
+		}
+		catch(IOException e) {
+			throw new IllegalStateException("Unable to load tools from " + file + ": " + e.getMessage(), e);
+		}
+	}
+
+   /**Returns the id of the tool with the given code.
+    *
+    *@param code  a tool code.
+    *@return int  the tool's id, or -1 if no tool has exactly this code.
+    */
+	public int idOf(String code) {
+		if(code == null) {
+			return -1;
+		}
+		return idOfKey(pack(code));
+	}
+
+	//Returns the id of the tool whose code packs to the given key, or -1 if there isn't one. See pack().
+	int idOfKey(int key) {
+		if(key == 0) {
+			return -1;
+		}
+		for(int slot = slotOf(key); slotKeys[slot] != 0; slot = (slot + 1) & mask) {
+			if(slotKeys[slot] == key) {
+				return slotIds[slot];
+			}
+		}
+		return -1;
+	}
+
+	//Returns the tool with the given code, or null if there isn't one.
+	public Tool get(String code) {
+		int id = idOf(code);
+		return (id < 0) ? null : tools[id];
+	}
+
+	//Returns the tool with the given id.
+	public Tool get(int id) {
+		return tools[id];
+	}
+
+	//Returns true if a tool has exactly the given code.
+	public boolean contains(String code) {
+		return idOf(code) >= 0;
+	}
+
+	public int size() {
+		return tools.length;
+	}
+
+	//Every tool of the given type, such as "Jackhammer", in id order.
+	public List<Tool> getToolsOfType(String type) {
+		List<Tool> ofType = byType.get(type);
+		return (ofType == null) ? Collections.<Tool>emptyList() : Collections.unmodifiableList(ofType);
+	}
+
+	//Every tool in the catalog, in id order.
+	public List<Tool> getTools() {
+		return Collections.unmodifiableList(Arrays.asList(tools));
+	}
+
+   /**Packs a four character code into an int, one byte per character. Returns 0 if the code isn't four printable ASCII
+    *characters, which no tool code can be.
+    */
+	static int pack(String code) {
+		if(code.length() != 4) {
+			return 0;
+		}
+		int key = 0;
+		for(int i = 0; i < 4; i++) {
+			char c = code.charAt(i);
+			if(c <= ' ' || c > '~') {
+				return 0;
+			}
+			key = (key << 8) | c;
+		}
+		return key;
+	}
+
+	private int slotOf(int key) {
+		return (key * 0x9E3779B9) >>> shift; //the top bits of a Fibonacci hash
+	}
+
+   /**Collects tool definitions for a new catalog. Each tool gets the next id in the order it is added.
+    */
+	public static final class Builder {
+		private Tool[] tools = new Tool[16];
+		private int size;
+
+		//A tool may be exempt on weekends, or on weekends and holidays, but not on holidays alone.
+		public Builder add(String code, String brand, String type, long dailyCharge, boolean weekendsExempt, boolean holidaysExempt) {
+			if(pack(code) == 0) {
+				throw new IllegalArgumentException("Tool code \"" + code + "\" is not four printable characters.");
+			}
+			if(holidaysExempt && !weekendsExempt) {
+				throw new IllegalArgumentException("Tool " + code + " can't be exempt on holidays without being exempt on weekends.");
+			}
+			if(size == tools.length) {
+				tools = Arrays.copyOf(tools, size * 2);
+			}
+			tools[size] = new Tool(size, code, brand, type, dailyCharge, weekendsExempt, holidaysExempt);
+			size++;
+			return this;
+		}
+
+		public ToolCatalog build() {
+			return new ToolCatalog(Arrays.copyOf(tools, size));
+		}
+	}
+}
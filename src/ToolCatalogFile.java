@@ -0,0 +1,221 @@
+/**
+ * @(#)ToolCatalogFile.java
+ * Reads and writes tool catalogs in a compact binary file, so prices can be changed by replacing the file instead of rebuilding
+ * the application, and so a large catalog loads quickly.
+ *
+ * The file is a 16 byte header followed by one fixed-width 72 byte record per tool, all big-endian:
+ *     header:  int magic ('TOOL'), short version (1), short record size (72), int tool count, int unused
+ *     record:  4 bytes   tool code, ASCII
+ *              1 byte    flags: 1 = exempt on weekends, 2 = exempt on holidays, which is only allowed with 1
+ *              3 bytes   unused
+ *              8 bytes   daily charge in cents
+ *              28 bytes  brand: 1 byte length, then up to 27 bytes of UTF-8
+ *              28 bytes  type: as brand
+ * Files are read through a memory mapping, straight from the page cache. They are written to a temporary file that is then
+ * moved over the old one, so a reader never sees a half-written catalog.
+ *
+ * To write the standard catalog to a file:  java ToolCatalogFile tools.cat
+ *
+ * @author Iain St. John
+ * @version 1.00 2026/10/18
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Map;
+
+public final class ToolCatalogFile {
+	static final int MAGIC = 0x544F4F4C; //"TOOL"
+	static final short VERSION = 1;
+	static final int HEADER_SIZE = 16;
+	static final int RECORD_SIZE = 72;
+	static final int NAME_SIZE = 28;
+	static final int WEEKENDS_EXEMPT = 1;
+	static final int HOLIDAYS_EXEMPT = 2;
+
+	private ToolCatalogFile() {
+	}
+
+   /**Reads a catalog from a catalog file.
+    *
+    *@param file  the file to read.
+    *@return ToolCatalog  the tools in the file, numbered in the order they appear.
+    *@throws IOException  if the file can't be read or isn't a valid catalog file.
+    */
+	public static ToolCatalog read(Path file) throws IOException {
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if(size < HEADER_SIZE) {
+				throw new IOException(file + " is too short to be a tool catalog.");
+			}
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			return read(buffer, file.toString());
+		}
+	}
+
+	//Reads a catalog from a buffer holding the contents of a catalog file, starting at its position.
+	static ToolCatalog read(ByteBuffer buffer, String source) throws IOException {
+		int base = buffer.position();
+		if(buffer.getInt(base) != MAGIC) {
+			throw new IOException(source + " is not a tool catalog.");
+		}
+		if(buffer.getShort(base + 4) != VERSION || buffer.getShort(base + 6) != RECORD_SIZE) {
+			throw new IOException(source + " is a tool catalog of an unsupported version.");
+		}
+		int count = buffer.getInt(base + 8);
+		if(count < 0 || (long) count * RECORD_SIZE > buffer.remaining() - HEADER_SIZE) {
+			throw new IOException(source + " is truncated: it should hold " + count + " tools.");
+		}
+		//Brands and types repeat across many tools, so each distinct name is only kept once
+		Map<String, String> names = new HashMap<String, String>();
+		ToolCatalog.Builder builder = new ToolCatalog.Builder();
+		byte[] scratch = new byte[NAME_SIZE];
+		for(int i = 0; i < count; i++) {
+			int r = base + HEADER_SIZE + i * RECORD_SIZE;
+			char[] code = new char[4];
+			for(int c = 0; c < 4; c++) {
+				code[c] = (char) (buffer.get(r + c) & 0xFF);
+			}
+			int flags = buffer.get(r + 4);
+			long dailyCharge = buffer.getLong(r + 8);
+			String brand = readName(buffer, r + 16, scratch, names);
+			String type = readName(buffer, r + 16 + NAME_SIZE, scratch, names);
+			try {
+				builder.add(new String(code), brand, type, dailyCharge, (flags & WEEKENDS_EXEMPT) != 0, (flags & HOLIDAYS_EXEMPT) != 0);
+			}
+			catch(IllegalArgumentException e) {
+				throw new IOException(source + ", tool " + i + ": " + e.getMessage(), e);
+			}
+		}
+		return builder.build();
+	}
+
+	static String readName(ByteBuffer buffer, int offset, byte[] scratch, Map<String, String> names) throws IOException {
+		int length = buffer.get(offset) & 0xFF;
+		if(length >= NAME_SIZE) {
+			throw new IOException("A name in the catalog is " + length + " bytes long.");
+		}
+		for(int i = 0; i < length; i++) {
+			scratch[i] = buffer.get(offset + 1 + i);
+		}
+		String name = new String(scratch, 0, length, StandardCharsets.UTF_8);
+		String known = names.putIfAbsent(name, name);
+		return (known == null) ? name : known;
+	}
+
+   /**Writes a catalog to a catalog file, replacing the file in one step once it is complete.
+    *
+    *@param catalog  the tools to write.
+    *@param file     the file to write them to.
+    *@throws IOException  if the file can't be written, or a brand or type is too long for a record.
+    */
+	public static void write(ToolCatalog catalog, Path file) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + catalog.size() * RECORD_SIZE);
+		buffer.putInt(MAGIC).putShort(VERSION).putShort((short) RECORD_SIZE).putInt(catalog.size()).putInt(0);
+		for(int i = 0; i < catalog.size(); i++) {
+			Tool tool = catalog.get(i);
+			int r = buffer.position();
+			for(int c = 0; c < 4; c++) {
+				buffer.put((byte) tool.getCode().charAt(c));
+			}
+			int flags = (tool.isWeekendExempt() ? WEEKENDS_EXEMPT : 0) | (tool.isHolidayExempt() ? HOLIDAYS_EXEMPT : 0);
+			buffer.put((byte) flags).put((byte) 0).put((byte) 0).put((byte) 0);
+			buffer.putLong(tool.getDailyChargeCents());
+			writeName(buffer, r + 16, tool.getBrand(), tool);
+			writeName(buffer, r + 16 + NAME_SIZE, tool.getType(), tool);
+			buffer.position(r + RECORD_SIZE);
+		}
+		buffer.flip();
+
+		Path dir = file.toAbsolutePath().getParent();
+		Path temp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+		try {
+			try(FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				while(buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+				channel.force(true);
+			}
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	static void writeName(ByteBuffer buffer, int offset, String name, Tool tool) throws IOException {
+		byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+		if(bytes.length >= NAME_SIZE) {
+			throw new IOException("\"" + name + "\" of tool " + tool.getCode() + " is longer than " + (NAME_SIZE - 1) + " bytes.");
+		}
+		buffer.put(offset, (byte) bytes.length);
+		for(int i = 0; i < bytes.length; i++) {
+			buffer.put(offset + 1 + i, bytes[i]);
+		}
+	}
+
+   /**Starts a daemon thread that installs the catalog in the given file as the default catalog whenever the file is replaced
+    *or changed. A file that can't be read is reported on System.err, and the catalog already installed stays in use.
+    *
+    *@param file  the catalog file to watch.
+    *@return WatchService  close it to stop watching.
+    *@throws IOException  if the file's directory can't be watched.
+    */
+	public static WatchService watch(final Path file) throws IOException {
+		final Path dir = file.toAbsolutePath().getParent();
+		final Path name = file.getFileName();
+		final WatchService watcher = dir.getFileSystem().newWatchService();
+		dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					while(true) {
+						WatchKey key = watcher.take();
+						boolean changed = false;
+						for(WatchEvent<?> event : key.pollEvents()) {
+							changed |= name.equals(event.context());
+						}
+						key.reset();
+						if(changed) {
+							try {
+								ToolCatalog.install(read(file));
+							}
+							catch(IOException e) {
+								System.err.println("Keeping the current tool catalog: " + e.getMessage());
+							}
+						}
+					}
+				}
+				catch(InterruptedException | ClosedWatchServiceException e) {
+					//stopped watching
+				}
+			}
+		}, "tool catalog watcher");
+		thread.setDaemon(true);
+		thread.start();
+		return watcher;
+	}
+
+	public static void main(String[] args) throws IOException {
+		if(args.length != 1) {
+			System.err.println("Usage: java ToolCatalogFile <catalog file to write>");
+			return;
+		}
+		write(ToolCatalog.standard(), Paths.get(args[0]));
+		System.out.println("Wrote " + ToolCatalog.standard().size() + " tools to " + args[0]);
+	}
+}
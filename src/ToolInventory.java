@@ -0,0 +1,458 @@
+/**
+ * @(#)ToolInventory.java
+ * Tracks the physical units the store has of each tool and the days each unit is rented out, so that a tool isn't checked out
+ * when every unit of it is already out on one of the days asked for.
+ *
+ * Each unit keeps a bitmap of the days it is reserved, one bit per day from 01/01/2000 to 12/31/2099, the years a checkout date
+ * can be entered in. A rental reserves the days from its checkout date up to, but not including, its due date, so a unit due
+ * back on a day can be rented out again the same day.
+ *
+ * Reserving takes no locks, so terminals checking out the same popular tool at the same moment don't queue behind each other.
+ * The words of a unit's bitmap that cover the rental are claimed one at a time, in order, each by compare-and-set. A claim that
+ * finds one of its days taken gives back the words it has already claimed and tries the next unit. Since every reservation
+ * claims words in the same order, of the reservations that want the same days one always gets through. Each attempt starts at
+ * a random unit, so terminals mostly claim different units instead of racing for the first free one.
+ *
+ * A reservation is refused once it has found every unit taken. If a rental was cancelled or returned meanwhile, it looks again,
+ * since the unit passed over may now be free. A day may also have looked taken only because another reservation had claimed
+ * it for a moment before giving it back, so when that has happened it looks again a few more times too.
+ *
+ * The booking calendar asks which units are free over a range of days, and the earliest date a tool can be rented for so long.
+ * Both are answered from the same bitmaps a word at a time, 64 days per read, so the time they take depends on the number of
+ * units and the length of the range, not on the number of rentals booked.
+ *
+ * Units are keyed by tool code rather than by the tools of a catalog, so a new catalog leaves them as they are.
+ *
+ *     java ToolInventory <threads> <units> <seconds>      measures reservations by many threads of one tool
+ *
+ * @author Iain St. John
+ * @version 1.00 2026/10/18
+ */
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public final class ToolInventory {
+	//The first day a unit can be reserved, and the number of days after it that can be
+	static final long FIRST_DAY = LocalDate.of(2000, 1, 1).toEpochDay();
+	static final int DAYS = (int) (LocalDate.of(2100, 1, 1).toEpochDay() - FIRST_DAY);
+	static final int WORDS = (DAYS + 63) >>> 6;
+
+	private final ConcurrentHashMap<String, Stock> stock = new ConcurrentHashMap<String, Stock>();
+
+	//The units of one tool
+	private static final class Stock {
+		volatile AtomicLongArray[] units = new AtomicLongArray[0]; //each unit's reserved days, replaced whole to add units
+		final AtomicLong released = new AtomicLong(); //counts the reservations cancelled or returned
+		final AtomicLong abandoned = new AtomicLong(); //counts the claims given back part way through
+	}
+
+	//How many more times a reservation looks for a unit after claims it ran into were given back
+	private static final int ABANDONED_RETRIES = 3;
+
+	//Creates an inventory with no units of any tool.
+	public ToolInventory() {
+	}
+
+	//Creates an inventory with the given number of units of every tool in the catalog.
+	public ToolInventory(ToolCatalog catalog, int unitsPerTool) {
+		for(Tool tool : catalog.getTools()) {
+			addUnits(tool.getCode(), unitsPerTool);
+		}
+	}
+
+   /**Adds units of a tool, numbered after those already held. The new units are free on every day.
+    *
+    *@return int  the number of units of the tool now held.
+    */
+	public synchronized int addUnits(String toolCode, int count) {
+		if(count < 0) {
+			throw new IllegalArgumentException("Can't add " + count + " units of " + toolCode + ".");
+		}
+		Stock tool = stock.get(toolCode);
+		if(tool == null) {
+			tool = new Stock();
+			stock.put(toolCode, tool);
+		}
+		AtomicLongArray[] units = Arrays.copyOf(tool.units, tool.units.length + count);
+		for(int i = tool.units.length; i < units.length; i++) {
+			units[i] = new AtomicLongArray(WORDS);
+		}
+		tool.units = units;
+		return units.length;
+	}
+
+	//Number of units held of a tool.
+	public int getUnitCount(String toolCode) {
+		Stock tool = stock.get(toolCode);
+		return (tool == null) ? 0 : tool.units.length;
+	}
+
+   /**Reserves a unit of a tool for a rental.
+    *
+    *@param toolCode  the tool to rent.
+    *@param checkout  the date of checkout.
+    *@param days      the number of days rented.
+    *@return Reservation  the unit reserved, or null if no unit of the tool is free on every day of the rental.
+    *@throws IllegalArgumentException  if the rental has no days, or any of them is outside of 2000 - 2099.
+    */
+	public Reservation reserve(String toolCode, LocalDate checkout, int days) {
+		long checkoutDay = checkout.toEpochDay();
+		int from = dayIndex(checkoutDay, days);
+		Stock tool = stock.get(toolCode);
+		if(tool == null) {
+			return null;
+		}
+		int to = from + days;
+		int retries = 0;
+		while(true) {
+			long released = tool.released.get();
+			long abandoned = tool.abandoned.get();
+			AtomicLongArray[] units = tool.units;
+			int start = (units.length < 2) ? 0 : ThreadLocalRandom.current().nextInt(units.length);
+			for(int i = 0; i < units.length; i++) {
+				int unit = start + i;
+				if(unit >= units.length) {
+					unit -= units.length;
+				}
+				if(claim(units[unit], from, to, tool)) {
+					return new Reservation(toolCode, unit, checkoutDay, checkoutDay + days);
+				}
+			}
+			//Each release is another thread's progress, so looking again after one can't go on forever
+			if(tool.released.get() == released
+					&& (tool.abandoned.get() == abandoned || ++retries > ABANDONED_RETRIES)) {
+				return null;
+			}
+		}
+	}
+
+	//Reserves a unit for the rental in an agreement, returning null if none is free.
+	public Reservation reserve(RentalAgreement agreement) {
+		return reserve(agreement.getToolCode(), agreement.getCheckoutDate(), agreement.getDaysRented());
+	}
+
+	//Cancels a reservation, giving back every one of its days. A reservation already released or checked in is left alone.
+	public void release(Reservation reservation) {
+		giveBack(reservation, reservation.getCheckoutDay());
+	}
+
+   /**Records that a rented unit has come back, giving back the days of the rental from the day it was returned on. A unit
+    *returned on or after its due date gives back nothing, since its days after the due date were never reserved. Like
+    *release(), this gives back a reservation's days only once, however many times either is called.
+    */
+	public void checkIn(Reservation reservation, LocalDate returned) {
+		giveBack(reservation, Math.max(returned.toEpochDay(), reservation.getCheckoutDay()));
+	}
+
+	private void giveBack(Reservation reservation, long fromDay) {
+		//The days may already belong to another reservation, so only the first give back may clear them
+		if(!reservation.released.compareAndSet(false, true) || fromDay >= reservation.getDueDay()) {
+			return;
+		}
+		Stock tool = stock.get(reservation.getToolCode());
+		int from = (int) (fromDay - FIRST_DAY);
+		int to = (int) (reservation.getDueDay() - FIRST_DAY);
+		AtomicLongArray days = tool.units[reservation.getUnit()];
+		for(int w = from >>> 6; w <= (to - 1) >>> 6; w++) {
+			clear(days, w, mask(w, from, to));
+		}
+		tool.released.incrementAndGet();
+	}
+
+	//True if the unit of the tool is reserved on the given day.
+	public boolean isReserved(String toolCode, int unit, LocalDate day) {
+		int d = dayIndex(day.toEpochDay(), 1);
+		Stock tool = stock.get(toolCode);
+		return tool != null && (tool.units[unit].get(d >>> 6) & (1L << d)) != 0;
+	}
+
+	//Number of units of the tool free on every day of the given rental, as of the moment each unit is looked at.
+	public int countAvailable(String toolCode, LocalDate checkout, int days) {
+		int from = dayIndex(checkout.toEpochDay(), days);
+		Stock tool = stock.get(toolCode);
+		if(tool == null) {
+			return 0;
+		}
+		int to = from + days;
+		int free = 0;
+		for(AtomicLongArray unit : tool.units) {
+			free += isFree(unit, from, to) ? 1 : 0;
+		}
+		return free;
+	}
+
+   /**Returns the units of a tool that are free from a checkout date until a due date, so that any of them could be rented for
+    *that time.
+    *
+    *@return int[]  the numbers of the free units, in increasing order.
+    */
+	public int[] freeUnits(String toolCode, LocalDate checkout, LocalDate due) {
+		long checkoutDay = checkout.toEpochDay();
+		int days = (int) (due.toEpochDay() - checkoutDay);
+		int from = dayIndex(checkoutDay, days);
+		Stock tool = stock.get(toolCode);
+		if(tool == null) {
+			return new int[0];
+		}
+		AtomicLongArray[] units = tool.units;
+		int[] free = new int[units.length];
+		int count = 0;
+		for(int unit = 0; unit < units.length; unit++) {
+			if(isFree(units[unit], from, from + days)) {
+				free[count++] = unit;
+			}
+		}
+		return Arrays.copyOf(free, count);
+	}
+
+   /**Returns the free units of every tool of a type, such as every Jackhammer, from a checkout date until a due date.
+    *
+    *@param catalog  the catalog giving the tools of each type.
+    *@return Map  the free units of each tool of the type, by tool code in catalog order. A tool with no unit free maps to an
+    *             empty array.
+    */
+	public Map<String, int[]> freeUnitsOfType(ToolCatalog catalog, String type, LocalDate checkout, LocalDate due) {
+		Map<String, int[]> free = new LinkedHashMap<String, int[]>();
+		for(Tool tool : catalog.getToolsOfType(type)) {
+			free.put(tool.getCode(), freeUnits(tool.getCode(), checkout, due));
+		}
+		return free;
+	}
+
+   /**Returns the first date, on or after the given one, that some unit of a tool can be checked out for the given number of
+    *days. Each unit's bitmap is read a word at a time, skipping straight over the days it is out, and no further than the
+    *earliest date already found on another unit.
+    *
+    *@return LocalDate  the earliest checkout date, or null if no unit is free for so long before the end of 2099.
+    */
+	public LocalDate earliestAvailable(String toolCode, LocalDate notBefore, int days) {
+		int from = dayIndex(notBefore.toEpochDay(), days);
+		Stock tool = stock.get(toolCode);
+		if(tool == null) {
+			return null;
+		}
+		int earliest = DAYS;
+		for(AtomicLongArray unit : tool.units) {
+			int d = firstFreeRun(unit, from, days, earliest);
+			if(d >= 0) {
+				earliest = d;
+				if(earliest == from) {
+					break;
+				}
+			}
+		}
+		return (earliest == DAYS) ? null : LocalDate.ofEpochDay(FIRST_DAY + earliest);
+	}
+
+	//The first day, from from up to but not including limit, that begins length free days in a row, or -1 if there is none.
+	private static int firstFreeRun(AtomicLongArray days, int from, int length, int limit) {
+		int d = from;
+		while(true) {
+			d = nextFree(days, d);
+			if(d < 0 || d >= limit || d + length > DAYS) {
+				return -1;
+			}
+			int taken = nextTaken(days, d, d + length);
+			if(taken < 0) {
+				return d;
+			}
+			d = taken + 1;
+		}
+	}
+
+	//The first free day from d on, or -1 if every day from d on is taken.
+	private static int nextFree(AtomicLongArray days, int d) {
+		int w = d >>> 6;
+		long free = ~days.get(w) & (-1L << d);
+		while(free == 0) {
+			if(++w == WORDS) {
+				return -1;
+			}
+			free = ~days.get(w);
+		}
+		return (w << 6) + Long.numberOfTrailingZeros(free);
+	}
+
+	//The first taken day from from up to but not including to, or -1 if they are all free.
+	private static int nextTaken(AtomicLongArray days, int from, int to) {
+		for(int w = from >>> 6; w <= (to - 1) >>> 6; w++) {
+			long taken = days.get(w) & mask(w, from, to);
+			if(taken != 0) {
+				return (w << 6) + Long.numberOfTrailingZeros(taken);
+			}
+		}
+		return -1;
+	}
+
+	//The index of a rental's first day in the bitmaps, checking that the rental is within them.
+	private static int dayIndex(long checkoutDay, int days) {
+		if(days < 1) {
+			throw new IllegalArgumentException("A rental must be for at least 1 day, not " + days + ".");
+		}
+		if(checkoutDay < FIRST_DAY || checkoutDay + days > FIRST_DAY + DAYS) {
+			throw new IllegalArgumentException("Rentals can only be reserved from 01/01/00 to 12/31/99.");
+		}
+		return (int) (checkoutDay - FIRST_DAY);
+	}
+
+   /**Sets the bits from..to-1 of a unit's days, unless any of them is already set. Words are claimed in increasing order, and
+    *a word found taken gives back the words before it.
+    *
+    *@return boolean  true if every day was claimed, false if none was.
+    */
+	private static boolean claim(AtomicLongArray days, int from, int to, Stock tool) {
+		int first = from >>> 6;
+		int last = (to - 1) >>> 6;
+		for(int w = first; w <= last; w++) {
+			long mask = mask(w, from, to);
+			while(true) {
+				long old = days.get(w);
+				if((old & mask) != 0) {
+					for(int v = first; v < w; v++) {
+						clear(days, v, mask(v, from, to));
+					}
+					if(w > first) {
+						tool.abandoned.incrementAndGet();
+					}
+					return false;
+				}
+				if(days.compareAndSet(w, old, old | mask)) {
+					break;
+				}
+			}
+		}
+		return true;
+	}
+
+	private static boolean isFree(AtomicLongArray days, int from, int to) {
+		for(int w = from >>> 6; w <= (to - 1) >>> 6; w++) {
+			if((days.get(w) & mask(w, from, to)) != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void clear(AtomicLongArray days, int w, long mask) {
+		long old = days.get(w);
+		while(!days.compareAndSet(w, old, old & ~mask)) {
+			old = days.get(w);
+		}
+	}
+
+	//The bits of word w that lie in from..to-1.
+	static long mask(int w, int from, int to) {
+		int lo = Math.max(from - (w << 6), 0);
+		int hi = Math.min(to - (w << 6), 64);
+		return ((hi == 64) ? -1L : (1L << hi) - 1) & (-1L << lo);
+	}
+
+   /**A unit of a tool reserved for a rental, from its checkout day up to its due day.
+    */
+	public static final class Reservation {
+		private final String toolCode;
+		private final int unit;
+		private final long checkoutDay;
+		private final long dueDay;
+		final AtomicBoolean released = new AtomicBoolean(); //set once, by the first release or check in
+
+		Reservation(String toolCode, int unit, long checkoutDay, long dueDay) {
+			this.toolCode = toolCode;
+			this.unit = unit;
+			this.checkoutDay = checkoutDay;
+			this.dueDay = dueDay;
+		}
+
+		public String getToolCode() {
+			return toolCode;
+		}
+
+		//The unit's number among the units of its tool, from 0.
+		public int getUnit() {
+			return unit;
+		}
+
+		//The first day reserved, as an epoch day.
+		public long getCheckoutDay() {
+			return checkoutDay;
+		}
+
+		//The day after the last day reserved, as an epoch day.
+		public long getDueDay() {
+			return dueDay;
+		}
+
+		//True once the reservation has been released or checked in.
+		public boolean isReleased() {
+			return released.get();
+		}
+
+		public String toString() {
+			StringBuilder sb = new StringBuilder(48).append(toolCode).append(" unit ").append(unit).append(" from ");
+			ReceiptWriter.appendDate(sb, checkoutDay).append(" to ");
+			return ReceiptWriter.appendDate(sb, dueDay).toString();
+		}
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		if(args.length != 3) {
+			System.err.println("Usage: java ToolInventory <threads> <units> <seconds>");
+			return;
+		}
+		int threadCount = Integer.parseInt(args[0]);
+		final ToolInventory inventory = new ToolInventory();
+		inventory.addUnits("JAKR", Integer.parseInt(args[1]));
+		final long end = System.nanoTime() + Long.parseLong(args[2]) * 1000000000L;
+		final long[] reserved = new long[threadCount];
+		final long[] refused = new long[threadCount];
+		Thread[] threads = new Thread[threadCount];
+		for(int t = 0; t < threadCount; t++) {
+			final int thread = t;
+			threads[t] = new Thread(new Runnable() {
+				public void run() {
+					//Every thread books rentals of up to two weeks over the same 90 days, returning each after a while
+					ThreadLocalRandom random = ThreadLocalRandom.current();
+					LocalDate first = LocalDate.of(2020, 6, 1);
+					Reservation[] held = new Reservation[8];
+					for(long i = 0; (i & 1023) != 0 || System.nanoTime() < end; i++) {
+						int slot = (int) (i & 7);
+						if(held[slot] != null) {
+							inventory.release(held[slot]);
+						}
+						held[slot] = inventory.reserve("JAKR", first.plusDays(random.nextInt(90)), 1 + random.nextInt(14));
+						if(held[slot] == null) {
+							refused[thread]++;
+						}
+						else {
+							reserved[thread]++;
+						}
+					}
+				}
+			});
+		}
+		long start = System.nanoTime();
+		for(Thread thread : threads) {
+			thread.start();
+		}
+		for(Thread thread : threads) {
+			thread.join();
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		long total = 0;
+		long refusals = 0;
+		for(int t = 0; t < threadCount; t++) {
+			total += reserved[t];
+			refusals += refused[t];
+		}
+		System.out.printf("%d threads made %d reservations of %s units in %.1f s, and had %d refused (%.0f attempts/sec).%n",
+			threadCount, total, args[1], seconds, refusals, (total + refusals) / seconds);
+	}
+}
@@ -0,0 +1,65 @@
+/**
+ * @(#)ToolTable.java
+ * Numbers the distinct Tools a store of agreements has seen, from 0, so that each agreement can hold its tool as an int and
+ * the table holds each Tool once. Tools are told apart by identity, as the catalog hands out one instance of each.
+ *
+ * A tool from a catalog is found again by its catalog id in an array, without hashing. Catalog ids of 1 << 16 and above, which
+ * no real catalog reaches, are left to the map so a stray id can't grow the array without bound. Tools not from a catalog
+ * (id -1) are always found through the map.
+ *
+ * A table is not synchronized. Its users add tools under their own lock, but get() may be called without it: the array of
+ * tools is replaced, not changed, when it grows, and is published after the tool is written to it.
+ *
+ * @author Iain St. John
+ * @version 1.00 2026/10/18
+ */
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+public final class ToolTable {
+	//Tools with catalog ids from here on are only found through the map
+	static final int MAX_CATALOG_ID = 1 << 16;
+
+	private final Map<Tool, Integer> numbers = new IdentityHashMap<Tool, Integer>();
+	private int[] catalogNumbers = new int[0]; //the number of each catalog tool by its id in the catalog, plus one; 0 if none
+	private volatile Tool[] tools = new Tool[16];
+	private int size;
+
+	//The number of the tool in the table, adding it if it isn't there yet.
+	public int numberOf(Tool tool) {
+		int c = tool.getId();
+		int number = (c >= 0 && c < catalogNumbers.length) ? catalogNumbers[c] - 1 : -1;
+		if(number >= 0 && tools[number] == tool) {
+			return number;
+		}
+		Integer known = numbers.get(tool);
+		if(known == null) {
+			Tool[] table = tools;
+			if(size == table.length) {
+				table = Arrays.copyOf(table, size * 2);
+			}
+			table[size] = tool;
+			tools = table; //published before any number handed out for it is stored
+			known = size++;
+			numbers.put(tool, known);
+		}
+		if(c >= 0 && c < MAX_CATALOG_ID) {
+			if(c >= catalogNumbers.length) {
+				catalogNumbers = Arrays.copyOf(catalogNumbers, Math.max(c + 1, catalogNumbers.length * 2));
+			}
+			catalogNumbers[c] = known + 1;
+		}
+		return known;
+	}
+
+	public Tool get(int number) {
+		return tools[number];
+	}
+
+	//The number of tools in the table.
+	public int size() {
+		return size;
+	}
+}